@@ -5,6 +5,62 @@
     -- ========================================================================
 
     -- Eliminar tablas si existen (para recreaciÃ³n limpia)
+    BEGIN
+        EXECUTE IMMEDIATE 'DROP TABLE SesionesHttpAtributos CASCADE CONSTRAINTS';
+    EXCEPTION
+        WHEN OTHERS THEN NULL;
+    END;
+    /
+
+    BEGIN
+        EXECUTE IMMEDIATE 'DROP TABLE SesionesHttp CASCADE CONSTRAINTS';
+    EXCEPTION
+        WHEN OTHERS THEN NULL;
+    END;
+    /
+
+    BEGIN
+        EXECUTE IMMEDIATE 'DROP TABLE LatidoReplica CASCADE CONSTRAINTS';
+    EXCEPTION
+        WHEN OTHERS THEN NULL;
+    END;
+    /
+
+    BEGIN
+        EXECUTE IMMEDIATE 'DROP TABLE VentasHoraPendiente CASCADE CONSTRAINTS';
+    EXCEPTION
+        WHEN OTHERS THEN NULL;
+    END;
+    /
+
+    BEGIN
+        EXECUTE IMMEDIATE 'DROP TABLE VentasHora CASCADE CONSTRAINTS';
+    EXCEPTION
+        WHEN OTHERS THEN NULL;
+    END;
+    /
+
+    BEGIN
+        EXECUTE IMMEDIATE 'DROP TABLE ClienteComprasMes CASCADE CONSTRAINTS';
+    EXCEPTION
+        WHEN OTHERS THEN NULL;
+    END;
+    /
+
+    BEGIN
+        EXECUTE IMMEDIATE 'DROP TABLE ClienteResumenCompras CASCADE CONSTRAINTS';
+    EXCEPTION
+        WHEN OTHERS THEN NULL;
+    END;
+    /
+
+    BEGIN
+        EXECUTE IMMEDIATE 'DROP TABLE MovimientosStock CASCADE CONSTRAINTS';
+    EXCEPTION
+        WHEN OTHERS THEN NULL;
+    END;
+    /
+
     BEGIN
         EXECUTE IMMEDIATE 'DROP TABLE detalleFactura CASCADE CONSTRAINTS';
     EXCEPTION
@@ -286,6 +342,107 @@
         CONSTRAINT uk_detalle_factura_producto UNIQUE (IdFactura, IdProducto) -- Un producto por factura
     );
 
+    -- Tabla MovimientosStock: Kardex de entradas y salidas de inventario
+    CREATE TABLE MovimientosStock (
+        IdMovimiento NUMBER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, -- Clave primaria autoincremental
+        IdProducto NUMBER NOT NULL, -- Producto afectado
+        tipo VARCHAR2(20) NOT NULL CHECK (tipo IN ('ENTRADA_PEDIDO', 'SALIDA_FACTURA', 'AJUSTE')), -- Tipo de movimiento
+        cantidad NUMBER NOT NULL, -- Unidades movidas (positivas en entradas)
+        stock_resultante NUMBER, -- Stock del producto después del movimiento
+        IdPedido NUMBER, -- Pedido que originó la entrada, si aplica
+        observaciones VARCHAR2(200), -- Observaciones del movimiento
+        fecha DATE DEFAULT SYSDATE, -- Fecha del movimiento
+        FOREIGN KEY (IdProducto) REFERENCES Productos(IdProducto), -- Relación con tabla Productos
+        FOREIGN KEY (IdPedido) REFERENCES Pedidos(IdPedido) -- Relación con tabla Pedidos
+    );
+
+    CREATE INDEX idx_movstock_pedido ON MovimientosStock(IdPedido, IdProducto);
+    CREATE INDEX idx_movstock_producto ON MovimientosStock(IdProducto, fecha);
+
+    -- Tabla ClienteComprasMes: Compras pagadas por cliente y mes (acumulado incremental)
+    CREATE TABLE ClienteComprasMes (
+        IdCliente NUMBER NOT NULL, -- Referencia al cliente
+        mes DATE NOT NULL, -- Primer día del mes
+        total NUMBER(14,2) DEFAULT 0 NOT NULL, -- Total facturado pagado en el mes
+        num_facturas NUMBER DEFAULT 0 NOT NULL, -- Facturas pagadas en el mes
+        CONSTRAINT pk_cliente_compras_mes PRIMARY KEY (IdCliente, mes),
+        FOREIGN KEY (IdCliente) REFERENCES Clientes(IdCliente) -- Relación con tabla Clientes
+    );
+
+    -- Tabla ClienteResumenCompras: Resumen de compras por cliente para VIP, ranking y RFM
+    CREATE TABLE ClienteResumenCompras (
+        IdCliente NUMBER PRIMARY KEY, -- Referencia al cliente
+        total_historico NUMBER(14,2) DEFAULT 0 NOT NULL, -- Total pagado desde el registro
+        num_facturas NUMBER DEFAULT 0 NOT NULL, -- Facturas pagadas desde el registro
+        total_12_meses NUMBER(14,2) DEFAULT 0 NOT NULL, -- Total pagado en los últimos 12 meses (por mes calendario)
+        num_facturas_12_meses NUMBER DEFAULT 0 NOT NULL, -- Facturas pagadas en los últimos 12 meses
+        ultima_compra DATE, -- Fecha de la última factura pagada
+        fecha_actualizacion DATE DEFAULT SYSDATE, -- Fecha de la última actualización
+        FOREIGN KEY (IdCliente) REFERENCES Clientes(IdCliente) -- Relación con tabla Clientes
+    );
+
+    CREATE INDEX idx_resumen_total_12m ON ClienteResumenCompras(total_12_meses DESC);
+    CREATE INDEX idx_resumen_total_hist ON ClienteResumenCompras(total_historico DESC);
+
+    -- Tabla SesionesHttp: Sesiones web compartidas entre nodos (ferreteria.sesiones.jdbc.habilitado)
+    CREATE TABLE SesionesHttp (
+        id_interno VARCHAR2(36) PRIMARY KEY, -- Identificador estable de la sesión
+        id_sesion VARCHAR2(36) NOT NULL, -- Valor de la cookie; cambia al iniciar sesión
+        creacion NUMBER(19) NOT NULL, -- Creación (epoch ms)
+        ultimo_acceso NUMBER(19) NOT NULL, -- Último acceso registrado (epoch ms)
+        max_inactivo NUMBER(10) NOT NULL, -- Segundos de inactividad permitidos
+        expira NUMBER(19) NOT NULL, -- ultimo_acceso + max_inactivo, para el barrido
+        usuario VARCHAR2(100), -- Usuario autenticado, si lo hay
+        CONSTRAINT uk_sesiones_http_id UNIQUE (id_sesion)
+    );
+
+    CREATE INDEX idx_sesiones_http_expira ON SesionesHttp(expira);
+    CREATE INDEX idx_sesiones_http_usuario ON SesionesHttp(usuario);
+
+    -- Tabla SesionesHttpAtributos: Un atributo serializado por fila, para escribir solo los que cambian
+    CREATE TABLE SesionesHttpAtributos (
+        id_interno VARCHAR2(36) NOT NULL, -- Referencia a la sesión
+        nombre VARCHAR2(200) NOT NULL, -- Nombre del atributo
+        valor BLOB NOT NULL, -- Valor serializado (comprimido si es grande)
+        CONSTRAINT pk_sesiones_http_atrib PRIMARY KEY (id_interno, nombre),
+        CONSTRAINT fk_sesiones_http_atrib FOREIGN KEY (id_interno)
+            REFERENCES SesionesHttp(id_interno) ON DELETE CASCADE
+    );
+
+    -- Tabla VentasHora: Ventas pagadas por día, hora, método de pago y usuario (acumulado incremental)
+    CREATE TABLE VentasHora (
+        dia DATE NOT NULL, -- Día de la factura (sin hora)
+        hora NUMBER(2) NOT NULL CHECK (hora BETWEEN 0 AND 23), -- Hora de la factura
+        metodo_pago VARCHAR2(30) NOT NULL, -- Método de pago
+        IdUsuario NUMBER DEFAULT 0 NOT NULL, -- Usuario que facturó; 0 si la factura no tiene usuario
+        total NUMBER(14,2) DEFAULT 0 NOT NULL, -- Total facturado pagado
+        num_facturas NUMBER DEFAULT 0 NOT NULL, -- Facturas pagadas
+        CONSTRAINT pk_ventas_hora PRIMARY KEY (dia, hora, metodo_pago, IdUsuario)
+    );
+
+    -- Tabla VentasHoraPendiente: Cambios de facturas que no se pudieron aplicar a VentasHora y se reintentan
+    CREATE TABLE VentasHoraPendiente (
+        id NUMBER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, -- Clave primaria autoincremental
+        IdFactura NUMBER, -- Factura que cambió
+        antes_dia DATE, -- Celda que la factura aportaba antes (NULL si no aportaba)
+        antes_hora NUMBER(2),
+        antes_metodo_pago VARCHAR2(30),
+        antes_IdUsuario NUMBER,
+        antes_total NUMBER(14,2),
+        despues_dia DATE, -- Celda que aporta después (NULL si ya no aporta)
+        despues_hora NUMBER(2),
+        despues_metodo_pago VARCHAR2(30),
+        despues_IdUsuario NUMBER,
+        despues_total NUMBER(14,2),
+        fecha_registro DATE DEFAULT SYSDATE NOT NULL -- Cuándo falló el cambio
+    );
+
+    -- Tabla LatidoReplica: Marca de tiempo que la aplicación escribe en la principal para medir el retraso de las réplicas
+    CREATE TABLE LatidoReplica (
+        id NUMBER(1) PRIMARY KEY CHECK (id = 1), -- Fila única
+        marca TIMESTAMP NOT NULL -- Último latido escrito en la principal
+    );
+
     -- ========================================================================
     -- SECUENCIAS PARA NUMERACIÃ“N AUTOMÃTICA
     -- ========================================================================
@@ -405,6 +562,8 @@
     /
 
     -- TRIGGER 8: Actualizar total del pedido
+    -- Los pedidos se indexan por su Id para recalcular cada total una sola vez
+    -- por sentencia, aunque un lote inserte cientos de lineas del mismo pedido.
     CREATE OR REPLACE TRIGGER trg_pedidos_actualizar_total
     FOR INSERT OR UPDATE OR DELETE ON detallePedido
     COMPOUND TRIGGER
@@ -414,7 +573,7 @@
     PROCEDURE add_id(p_id NUMBER) IS
     BEGIN
         IF p_id IS NOT NULL THEN
-        g_ids(g_ids.COUNT+1) := p_id;
+        g_ids(p_id) := p_id;
         END IF;
     END;
 
@@ -430,22 +589,23 @@
     END AFTER EACH ROW;
 
     AFTER STATEMENT IS
+        v_id PLS_INTEGER;
     BEGIN
-        IF g_ids.COUNT > 0 THEN
-        FOR i IN 1..g_ids.COUNT LOOP
+        v_id := g_ids.FIRST;
+        WHILE v_id IS NOT NULL LOOP
             DECLARE v_total NUMBER(12,2);
             BEGIN
         SELECT NVL(SUM(precioUni * cantidad), 0)
         INTO v_total
         FROM detallePedido
-            WHERE IdPedido = g_ids(i);
+            WHERE IdPedido = v_id;
         UPDATE Pedidos
                 SET total = v_total,
                     fecha_modificacion = SYSDATE
-            WHERE IdPedido = g_ids(i);
+            WHERE IdPedido = v_id;
             END;
+            v_id := g_ids.NEXT(v_id);
         END LOOP;
-        END IF;
     END AFTER STATEMENT;
     END;
     /
@@ -523,7 +683,17 @@
             SELECT IdProducto, cantidad
             FROM detallePedido
             WHERE IdPedido = :NEW.IdPedido;
+        v_recepciones NUMBER;
     BEGIN
+        -- Si la aplicación ya registró la recepción (MERGE por lotes y kardex),
+        -- el stock está actualizado y no se debe sumar de nuevo
+        SELECT COUNT(*) INTO v_recepciones
+        FROM MovimientosStock
+        WHERE IdPedido = :NEW.IdPedido AND tipo = 'ENTRADA_PEDIDO' AND ROWNUM = 1;
+        IF v_recepciones > 0 THEN
+            RETURN;
+        END IF;
+
         -- Recorre todos los productos del pedido y actualiza el stock
         FOR producto IN cur_productos_pedido LOOP
             -- Actualiza el stock del producto aumentando la cantidad recibida
@@ -1169,49 +1339,53 @@
         PROCEDURE sp_actualizar_limites_credito AS
             -- Cursor para clientes VIP con historial de compras
             CURSOR cur_clientes_vip IS
-                SELECT c.IdCliente, c.nombreCliente, c.apellidos, 
-                    NVL(SUM(f.total), 0) as total_compras,
-                    COUNT(f.IdFactura) as num_facturas
+                SELECT c.IdCliente,
+                    GREATEST(ROUND(NVL(SUM(f.total), 0) * 0.20, 2), 5000) as nuevo_limite
                 FROM Clientes c
                 LEFT JOIN Factura f ON c.IdCliente = f.IdCliente 
                     AND f.fecha >= ADD_MONTHS(SYSDATE, -12)
                     AND f.estado = 'PAGADA'
                 WHERE c.tipo_cliente = 'VIP' AND c.activo = 1
-                GROUP BY c.IdCliente, c.nombreCliente, c.apellidos
+                GROUP BY c.IdCliente
                 HAVING NVL(SUM(f.total), 0) > 10000;
             
-            v_nuevo_limite NUMBER;
+            TYPE t_ids IS TABLE OF Clientes.IdCliente%TYPE;
+            TYPE t_limites IS TABLE OF NUMBER;
+            v_ids t_ids;
+            v_limites t_limites;
             v_count NUMBER := 0;
         BEGIN
-            -- Recorre clientes VIP y actualiza sus lÃ­mites de crÃ©dito
-            FOR cliente IN cur_clientes_vip LOOP
-                -- Calcula nuevo lÃ­mite basado en el historial (20% del total de compras)
-                v_nuevo_limite := ROUND(cliente.total_compras * 0.20, 2);
+            -- Procesa los clientes en bloques de 500 (BULK COLLECT + FORALL)
+            -- en lugar de un UPDATE por fila; el límite es el 20% de lo
+            -- comprado en 12 meses, con un mínimo de $5000 para clientes VIP.
+            -- La aplicación ejecuta el mismo cálculo en paralelo desde
+            -- LimiteCreditoService leyendo ClienteResumenCompras.
+            OPEN cur_clientes_vip;
+            LOOP
+                FETCH cur_clientes_vip BULK COLLECT INTO v_ids, v_limites LIMIT 500;
+                EXIT WHEN v_ids.COUNT = 0;
                 
-                -- MÃ­nimo de $5000 para clientes VIP
-                IF v_nuevo_limite < 5000 THEN
-                    v_nuevo_limite := 5000;
-                END IF;
+                FORALL i IN 1..v_ids.COUNT
+                    UPDATE Clientes 
+                    SET limite_credito = v_limites(i),
+                        fecha_modificacion = SYSDATE
+                    WHERE IdCliente = v_ids(i)
+                      AND NVL(limite_credito, -1) <> v_limites(i);
                 
-                -- Actualiza el lÃ­mite de crÃ©dito
-                UPDATE Clientes 
-                SET limite_credito = v_nuevo_limite,
-                    fecha_modificacion = SYSDATE
-                WHERE IdCliente = cliente.IdCliente;
-                
-                v_count := v_count + 1;
-                
-                DBMS_OUTPUT.PUT_LINE('Cliente ' || cliente.nombreCliente || ' ' || cliente.apellidos || 
-                                ' - Nuevo lÃ­mite: $' || v_nuevo_limite);
+                v_count := v_count + SQL%ROWCOUNT;
+                COMMIT;
             END LOOP;
+            CLOSE cur_clientes_vip;
             
-            COMMIT;
-            DBMS_OUTPUT.PUT_LINE('Total de lÃ­mites de crÃ©dito actualizados: ' || v_count);
+            DBMS_OUTPUT.PUT_LINE('Total de límites de crédito actualizados: ' || v_count);
             
         EXCEPTION
             WHEN OTHERS THEN
+                IF cur_clientes_vip%ISOPEN THEN
+                    CLOSE cur_clientes_vip;
+                END IF;
                 ROLLBACK;
-                DBMS_OUTPUT.PUT_LINE('Error al actualizar lÃ­mites de crÃ©dito: ' || SQLERRM);
+                DBMS_OUTPUT.PUT_LINE('Error al actualizar límites de crédito: ' || SQLERRM);
         END sp_actualizar_limites_credito;
         
         -- FunciÃ³n para obtener un cliente especÃ­fico
@@ -1658,9 +1832,9 @@
                     f.metodo_pago
                 FROM Factura f
                 INNER JOIN Clientes c ON f.IdCliente = c.IdCliente
-                WHERE EXTRACT(MONTH FROM f.fecha) = p_mes
-                AND EXTRACT(YEAR FROM f.fecha) = p_anio
-                AND f.estado = 'PAGADA'
+                WHERE f.estado = 'PAGADA'
+                AND f.fecha >= TO_DATE(TO_CHAR(p_anio, 'FM0000') || TO_CHAR(p_mes, 'FM00'), 'YYYYMM')
+                AND f.fecha < ADD_MONTHS(TO_DATE(TO_CHAR(p_anio, 'FM0000') || TO_CHAR(p_mes, 'FM00'), 'YYYYMM'), 1)
                 ORDER BY f.fecha DESC;
             RETURN cur_ventas;
         END fn_reporte_ventas_mes;
@@ -2398,6 +2572,51 @@
     END;
     /
 
+    -- Listado paginado de pedidos por llave (fecha, IdPedido) y consulta de cambios
+    BEGIN
+    EXECUTE IMMEDIATE 'CREATE INDEX idx_pedidos_fecha_id ON Pedidos(fecha DESC, IdPedido DESC)';
+    EXCEPTION
+    WHEN OTHERS THEN IF SQLCODE IN (-955, -1408) THEN NULL; ELSE RAISE; END IF;
+    END;
+    /
+
+    BEGIN
+    EXECUTE IMMEDIATE 'CREATE INDEX idx_pedidos_prov_fecha ON Pedidos(IdProveedor, fecha DESC, IdPedido DESC)';
+    EXCEPTION
+    WHEN OTHERS THEN IF SQLCODE IN (-955, -1408) THEN NULL; ELSE RAISE; END IF;
+    END;
+    /
+
+    BEGIN
+    EXECUTE IMMEDIATE 'CREATE INDEX idx_pedidos_estado_fecha ON Pedidos(estado, fecha DESC, IdPedido DESC)';
+    EXCEPTION
+    WHEN OTHERS THEN IF SQLCODE IN (-955, -1408) THEN NULL; ELSE RAISE; END IF;
+    END;
+    /
+
+    BEGIN
+    EXECUTE IMMEDIATE 'CREATE INDEX idx_pedidos_fecha_mod ON Pedidos(fecha_modificacion, IdPedido)';
+    EXCEPTION
+    WHEN OTHERS THEN IF SQLCODE IN (-955, -1408) THEN NULL; ELSE RAISE; END IF;
+    END;
+    /
+
+    -- Consulta de horarios por rango de fechas con paginado por llave (fecha, IdHorario)
+    BEGIN
+    EXECUTE IMMEDIATE 'CREATE INDEX idx_horarios_fecha_id ON Horarios(fecha, IdHorario)';
+    EXCEPTION
+    WHEN OTHERS THEN IF SQLCODE IN (-955, -1408) THEN NULL; ELSE RAISE; END IF;
+    END;
+    /
+
+    -- Reportes de ventas por rango de fechas: el total va en el índice para no leer la tabla
+    BEGIN
+    EXECUTE IMMEDIATE 'CREATE INDEX idx_factura_estado_fecha ON Factura(estado, fecha, total)';
+    EXCEPTION
+    WHEN OTHERS THEN IF SQLCODE IN (-955, -1408) THEN NULL; ELSE RAISE; END IF;
+    END;
+    /
+
     -- ========================================================================
     -- COMENTARIOS FINALES
     -- ========================================================================
@@ -0,0 +1,191 @@
+package com.ferreteria.sistema.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Codificador de contraseñas con concurrencia acotada
+ *
+ * Envuelve al codificador BCrypt y ejecuta cada verificación en un pool
+ * propio de tamaño fijo con una cola limitada: una ráfaga de inicios de
+ * sesión no puede ocupar más núcleos que los asignados, y cuando el pool y la
+ * cola están ocupados la solicitud se rechaza de inmediato en lugar de
+ * acumularse. Una verificación abandonada por tiempo de espera sigue
+ * ocupando su lugar hasta que BCrypt termina, porque no se puede interrumpir;
+ * si todavía estaba en la cola se retira sin ejecutarla.
+ *
+ * Los hash nuevos (alta o cambio de contraseña) los pide un usuario ya
+ * autenticado y se calculan en el hilo que llama, fuera del pool de inicios
+ * de sesión.
+ *
+ * Las verificaciones exitosas se recuerdan unos minutos en memoria. La clave
+ * es un HMAC-SHA256 (con una clave aleatoria generada al arrancar) de la
+ * contraseña junto con su hash almacenado; nunca se guarda el texto plano y
+ * un cambio de contraseña invalida la entrada porque cambia el hash.
+ */
+public class AcotadoPasswordEncoder implements PasswordEncoder, DisposableBean {
+
+    private final PasswordEncoder delegado;
+    private final ThreadPoolExecutor executor;
+    // Verificaciones encoladas o en ejecución, incluidas las abandonadas
+    private final AtomicInteger enCurso = new AtomicInteger();
+    private final int maxEnCurso;
+    private final long esperaMs;
+    private final long ttlCacheMs;
+    private final int maxEntradasCache;
+
+    private final Map<String, Long> verificadas = new ConcurrentHashMap<>();
+    private final byte[] claveCache = new byte[32];
+    private final ThreadLocal<Mac> mac;
+
+    private final Timer tiempoMatches;
+    private final Timer tiempoEncode;
+    private final Counter rechazos;
+    private final Counter aciertosCache;
+    private final Counter fallosCache;
+
+    public AcotadoPasswordEncoder(PasswordEncoder delegado, int hilos, int capacidadCola, long esperaMs,
+                                  long ttlCacheSegundos, int maxEntradasCache, MeterRegistry registry) {
+        this.delegado = delegado;
+        this.esperaMs = esperaMs;
+        this.ttlCacheMs = ttlCacheSegundos * 1000;
+        this.maxEntradasCache = maxEntradasCache;
+
+        AtomicInteger n = new AtomicInteger();
+        this.maxEnCurso = hilos + Math.max(1, capacidadCola);
+        this.executor = new ThreadPoolExecutor(hilos, hilos, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, capacidadCola)), r -> {
+                    Thread t = new Thread(r, "bcrypt-" + n.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy());
+
+        new SecureRandom().nextBytes(claveCache);
+        this.mac = ThreadLocal.withInitial(() -> {
+            try {
+                Mac m = Mac.getInstance("HmacSHA256");
+                m.init(new SecretKeySpec(claveCache, "HmacSHA256"));
+                return m;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("HmacSHA256 no disponible", e);
+            }
+        });
+
+        this.tiempoMatches = Timer.builder("ferreteria.auth.bcrypt").tag("operacion", "matches").register(registry);
+        this.tiempoEncode = Timer.builder("ferreteria.auth.bcrypt").tag("operacion", "encode").register(registry);
+        this.rechazos = Counter.builder("ferreteria.auth.bcrypt.rechazos").register(registry);
+        this.aciertosCache = Counter.builder("ferreteria.auth.cache").tag("resultado", "acierto").register(registry);
+        this.fallosCache = Counter.builder("ferreteria.auth.cache").tag("resultado", "fallo").register(registry);
+        Gauge.builder("ferreteria.auth.bcrypt.cola", executor, e -> e.getQueue().size()).register(registry);
+        Gauge.builder("ferreteria.auth.bcrypt.activos", executor, ThreadPoolExecutor::getActiveCount).register(registry);
+        Gauge.builder("ferreteria.auth.bcrypt.encurso", enCurso, AtomicInteger::get).register(registry);
+        Gauge.builder("ferreteria.auth.cache.entradas", verificadas, Map::size).register(registry);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return tiempoEncode.record(() -> delegado.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        if (rawPassword == null || encodedPassword == null || encodedPassword.isEmpty()) {
+            return false;
+        }
+        String clave = ttlCacheMs > 0 ? claveCache(rawPassword, encodedPassword) : null;
+        if (clave != null) {
+            Long expira = verificadas.get(clave);
+            if (expira != null && expira > System.currentTimeMillis()) {
+                aciertosCache.increment();
+                return true;
+            }
+            fallosCache.increment();
+        }
+
+        boolean ok = ejecutar(() -> tiempoMatches.recordCallable(() -> delegado.matches(rawPassword, encodedPassword)));
+        if (ok && clave != null) {
+            recordar(clave);
+        }
+        return ok;
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegado.upgradeEncoding(encodedPassword);
+    }
+
+    private <T> T ejecutar(Callable<T> tarea) {
+        if (enCurso.incrementAndGet() > maxEnCurso) {
+            enCurso.decrementAndGet();
+            rechazos.increment();
+            throw new AuthenticationServiceException("Demasiados inicios de sesión simultáneos, intente nuevamente");
+        }
+        FutureTask<T> futuro = new FutureTask<>(() -> {
+            try {
+                return tarea.call();
+            } finally {
+                enCurso.decrementAndGet();
+            }
+        });
+        try {
+            executor.execute(futuro);
+        } catch (RejectedExecutionException ex) {
+            enCurso.decrementAndGet();
+            rechazos.increment();
+            throw new AuthenticationServiceException("Demasiados inicios de sesión simultáneos, intente nuevamente");
+        }
+        try {
+            return futuro.get(esperaMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            // Solo se puede descartar si no empezó; en ejecución sigue contando hasta terminar
+            if (executor.remove(futuro)) {
+                enCurso.decrementAndGet();
+            }
+            rechazos.increment();
+            throw new AuthenticationServiceException("Tiempo de espera agotado al verificar la contraseña");
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new AuthenticationServiceException("Verificación de contraseña interrumpida", ex);
+        } catch (ExecutionException ex) {
+            Throwable causa = ex.getCause();
+            if (causa instanceof RuntimeException re) throw re;
+            throw new AuthenticationServiceException("Error al verificar la contraseña", causa);
+        }
+    }
+
+    private String claveCache(CharSequence rawPassword, String encodedPassword) {
+        Mac m = mac.get();
+        m.update(rawPassword.toString().getBytes(StandardCharsets.UTF_8));
+        m.update((byte) 0);
+        return Base64.getEncoder().encodeToString(m.doFinal(encodedPassword.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private void recordar(String clave) {
+        long ahora = System.currentTimeMillis();
+        if (verificadas.size() >= maxEntradasCache) {
+            verificadas.values().removeIf(expira -> expira <= ahora);
+            if (verificadas.size() >= maxEntradasCache) verificadas.clear();
+        }
+        verificadas.put(clave, ahora + ttlCacheMs);
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
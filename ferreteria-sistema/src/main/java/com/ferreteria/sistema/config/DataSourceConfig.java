@@ -0,0 +1,120 @@
+package com.ferreteria.sistema.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.util.StringUtils;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Pools de conexiones
+ *
+ * El pool principal (spring.datasource.hikari.*) atiende facturación,
+ * inventario y todo lo transaccional, incluido JPA. Los reportes, el
+ * tablero y las exportaciones leen por un segundo pool más pequeño
+ * (ferreteria.reportes.datasource.hikari.*) contra la misma base: cuando los
+ * reportes lo saturan esperan en su propio pool sin quitar conexiones a las
+ * cajas. Los DAOs de reportes lo reciben con @Qualifier(REPORTES).
+ *
+ * Ambos pools publican sus métricas hikaricp.* etiquetadas con su nombre.
+ *
+ * Con ferreteria.replicas.habilitado=true el DataSource primario pasa a ser
+ * un ReplicasDataSource: las transacciones readOnly se leen de las réplicas
+ * de ferreteria.replicas.urls y el resto sigue en el pool principal.
+ */
+@Configuration
+public class DataSourceConfig {
+
+    public static final String REPORTES = "reportesDataSource";
+
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = "ferreteria.replicas.habilitado", havingValue = "false", matchIfMissing = true)
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource dataSource(DataSourceProperties properties) {
+        HikariDataSource ds = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        ds.setPoolName("ferreteria-principal");
+        return ds;
+    }
+
+    @Bean(REPORTES)
+    @ConfigurationProperties("ferreteria.reportes.datasource.hikari")
+    public HikariDataSource reportesDataSource(DataSourceProperties properties) {
+        HikariDataSource ds = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        ds.setPoolName("ferreteria-reportes");
+        ds.setReadOnly(true);
+        ds.setMaximumPoolSize(5);
+        ds.setMinimumIdle(1);
+        ds.setConnectionTimeout(10000);
+        return ds;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "ferreteria.replicas.habilitado", havingValue = "true")
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource principalDataSource(DataSourceProperties properties) {
+        HikariDataSource ds = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        ds.setPoolName("ferreteria-principal");
+        return ds;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "ferreteria.replicas.habilitado", havingValue = "true")
+    public ReplicasDataSource replicasDataSource(@Qualifier("principalDataSource") HikariDataSource principalDataSource,
+            DataSourceProperties properties, Environment env, MeterRegistry meterRegistry,
+            @Value("${ferreteria.replicas.urls:}") String urls,
+            @Value("${ferreteria.replicas.usuario:${spring.datasource.username}}") String usuario,
+            @Value("${ferreteria.replicas.contrasena:${spring.datasource.password}}") String contrasena,
+            @Value("${ferreteria.replicas.retraso-maximo-ms:5000}") long retrasoMaximoMs) {
+        if (env.getProperty("spring.jpa.open-in-view", Boolean.class, true)) {
+            // El EntityManager de la petición retendría la primera conexión (réplica o principal) hasta el final
+            throw new IllegalStateException("ferreteria.replicas.habilitado=true requiere spring.jpa.open-in-view=false");
+        }
+        Map<String, HikariDataSource> replicas = new LinkedHashMap<>();
+        for (String url : StringUtils.commaDelimitedListToStringArray(urls)) {
+            if (!StringUtils.hasText(url)) continue;
+            HikariDataSource ds = new HikariDataSource();
+            ds.setJdbcUrl(url.trim());
+            ds.setUsername(usuario);
+            ds.setPassword(contrasena);
+            ds.setDriverClassName(properties.determineDriverClassName());
+            ds.setReadOnly(true);
+            ds.setMaximumPoolSize(10);
+            ds.setConnectionTimeout(5000);
+            Binder.get(env).bind("ferreteria.replicas.hikari", Bindable.ofInstance(ds));
+            ds.setPoolName("ferreteria-replica-" + (replicas.size() + 1));
+            ds.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+            replicas.put(ds.getPoolName(), ds);
+        }
+        if (replicas.isEmpty()) {
+            throw new IllegalArgumentException("ferreteria.replicas.habilitado=true requiere ferreteria.replicas.urls");
+        }
+        return new ReplicasDataSource(principalDataSource, replicas, retrasoMaximoMs);
+    }
+
+    /**
+     * La conexión real se pide en la primera sentencia, cuando la transacción
+     * ya está marcada readOnly y el enrutador puede elegir réplica.
+     */
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = "ferreteria.replicas.habilitado", havingValue = "true")
+    public DataSource enrutadoDataSource(ReplicasDataSource replicasDataSource) {
+        return new LazyConnectionDataSourceProxy(replicasDataSource);
+    }
+}
@@ -0,0 +1,302 @@
+package com.ferreteria.sistema.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Enrutamiento de conexiones entre la base principal y sus réplicas
+ *
+ * Las transacciones readOnly se atienden en una réplica al día; todo lo
+ * demás (escrituras y accesos sin transacción) va a la principal. Debe
+ * usarse detrás de un LazyConnectionDataSourceProxy para que la conexión se
+ * pida cuando la transacción ya está marcada como de solo lectura.
+ *
+ * Cada intervalo la principal escribe su SYSTIMESTAMP en LatidoReplica y
+ * se lee en cada réplica: la diferencia con la marca de la principal es su
+ * retraso, y una réplica que se atrasa más de lo permitido o no responde
+ * deja de usarse hasta la siguiente verificación exitosa.
+ *
+ * Lectura de lo propio escrito: al confirmarse una escritura se recuerda la
+ * hora por usuario, y sus lecturas siguen en la principal hasta que una
+ * réplica muestre un latido posterior. Las escrituras sin transacción de
+ * Spring (JdbcTemplate en autocommit) también cuentan: la conexión que se
+ * entrega fuera de una transacción anota al usuario al cerrarse si ejecutó
+ * algo distinto de una consulta. Todas las horas son del reloj de la
+ * principal: la de la escritura se obtiene con la diferencia entre ese reloj
+ * y el del nodo medida en cada verificación, redondeada hacia adelante.
+ *
+ * Las lecturas que no toleran ningún retraso (autenticación, bloqueo de
+ * cuentas, cambios incrementales) se ejecutan dentro de enPrincipal.
+ */
+public class ReplicasDataSource extends AbstractRoutingDataSource implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicasDataSource.class);
+
+    static final String PRINCIPAL = "principal";
+    private static final Object MARCA_ESCRITURA = new Object();
+    // Lecturas del hilo que deben ir a la principal aunque sean readOnly
+    private static final ThreadLocal<Boolean> SOLO_PRINCIPAL = new ThreadLocal<>();
+
+    private final JdbcTemplate principal;
+    private final List<Replica> replicas;
+    private final long retrasoMaximoMs;
+    private final AtomicInteger turno = new AtomicInteger();
+    // Hora de la última escritura confirmada por usuario
+    private final Map<String, Long> escrituras = new ConcurrentHashMap<>();
+    // Reloj de la principal menos reloj del nodo (ms), medido en la última verificación
+    private volatile long desfaseMs;
+
+    public ReplicasDataSource(DataSource principal, Map<String, HikariDataSource> replicas, long retrasoMaximoMs) {
+        this.principal = new JdbcTemplate(principal);
+        this.retrasoMaximoMs = retrasoMaximoMs;
+        this.replicas = replicas.entrySet().stream().map(e -> new Replica(e.getKey(), e.getValue())).toList();
+        Map<Object, Object> destinos = new HashMap<>(replicas);
+        destinos.put(PRINCIPAL, principal);
+        setTargetDataSources(destinos);
+        setDefaultTargetDataSource(principal);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            return PRINCIPAL;
+        }
+        String usuario = usuarioActual();
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            recordarEscritura(usuario);
+            return PRINCIPAL;
+        }
+        if (Boolean.TRUE.equals(SOLO_PRINCIPAL.get())) {
+            return PRINCIPAL;
+        }
+        Long escritura = usuario != null ? escrituras.get(usuario) : null;
+        Replica r = elegir(escritura != null ? escritura : Long.MIN_VALUE);
+        return r != null ? r.nombre : PRINCIPAL;
+    }
+
+    /**
+     * Ejecuta el trabajo con todas sus conexiones en la principal, aunque sus
+     * transacciones sean readOnly. Sin réplicas configuradas no tiene efecto.
+     */
+    public static <T> T enPrincipal(Supplier<T> trabajo) {
+        Boolean anterior = SOLO_PRINCIPAL.get();
+        SOLO_PRINCIPAL.set(Boolean.TRUE);
+        try {
+            return trabajo.get();
+        } finally {
+            if (anterior == null) SOLO_PRINCIPAL.remove();
+            else SOLO_PRINCIPAL.set(anterior);
+        }
+    }
+
+    private Replica elegir(long escritura) {
+        int n = replicas.size();
+        int inicio = Math.floorMod(turno.getAndIncrement(), n);
+        for (int i = 0; i < n; i++) {
+            Replica r = replicas.get((inicio + i) % n);
+            if (r.disponible && r.vistoHasta >= escritura) return r;
+        }
+        return null;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return anotarEscrituras(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return anotarEscrituras(super.getConnection(username, password));
+    }
+
+    /**
+     * Fuera de una transacción cada sentencia se confirma sola: si la conexión
+     * ejecutó alguna escritura, al cerrarla se anota al usuario
+     */
+    private Connection anotarEscrituras(Connection conexion) {
+        String usuario = usuarioActual();
+        if (usuario == null || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return conexion;
+        }
+        boolean[] escribio = new boolean[1];
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, metodo, args) -> {
+                    String nombre = metodo.getName();
+                    if ((nombre.equals("prepareStatement") || nombre.equals("prepareCall")) && args != null
+                            && args[0] instanceof String sql && (nombre.equals("prepareCall") || esEscritura(sql))) {
+                        escribio[0] = true;
+                    }
+                    if (nombre.equals("close") && escribio[0]) {
+                        escribio[0] = false;
+                        escrituras.put(usuario, System.currentTimeMillis() + desfaseMs);
+                    }
+                    Object resultado = invocar(conexion, metodo, args);
+                    if (nombre.equals("createStatement")) {
+                        Statement sentencia = (Statement) resultado;
+                        return Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[]{Statement.class},
+                                (p, m, a) -> {
+                                    if (a != null && a.length > 0 && a[0] instanceof String sql
+                                            && (m.getName().startsWith("execute") || m.getName().equals("addBatch"))
+                                            && esEscritura(sql)) {
+                                        escribio[0] = true;
+                                    }
+                                    return invocar(sentencia, m, a);
+                                });
+                    }
+                    return resultado;
+                });
+    }
+
+    private static Object invocar(Object destino, Method metodo, Object[] args) throws Throwable {
+        try {
+            return metodo.invoke(destino, args);
+        } catch (InvocationTargetException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    // Todo lo que no empieza con SELECT o WITH (DML, DDL, bloques PL/SQL) puede modificar datos
+    static boolean esEscritura(String sql) {
+        String s = sql.stripLeading();
+        while (s.startsWith("(")) s = s.substring(1).stripLeading();
+        String inicio = s.length() >= 6 ? s.substring(0, 6).toUpperCase() : s.toUpperCase();
+        return !inicio.startsWith("SELECT") && !inicio.startsWith("WITH");
+    }
+
+    private void recordarEscritura(String usuario) {
+        if (usuario == null || !TransactionSynchronizationManager.isSynchronizationActive()
+                || TransactionSynchronizationManager.hasResource(MARCA_ESCRITURA)) {
+            return;
+        }
+        TransactionSynchronizationManager.bindResource(MARCA_ESCRITURA, usuario);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                escrituras.put(usuario, System.currentTimeMillis() + desfaseMs);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(MARCA_ESCRITURA);
+            }
+        });
+    }
+
+    private static String usuarioActual() {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        return auth != null && auth.isAuthenticated() ? auth.getName() : null;
+    }
+
+    /**
+     * Escribe el latido en la principal y mide el retraso de cada réplica.
+     * Sin retraso máximo (0 o menos) no se usa el latido: una réplica que
+     * responde se considera al día en la hora de la principal leída al
+     * empezar la verificación.
+     */
+    @Scheduled(fixedDelayString = "${ferreteria.replicas.intervalo-verificacion-ms:2000}")
+    public void verificar() {
+        // La hora local se toma antes que la de la principal: el desfase nunca queda corto
+        long local = System.currentTimeMillis();
+        long ahora;
+        try {
+            if (retrasoMaximoMs > 0) {
+                principal.update("MERGE INTO LatidoReplica l USING dual ON (l.id = 1) "
+                        + "WHEN MATCHED THEN UPDATE SET l.marca = SYSTIMESTAMP "
+                        + "WHEN NOT MATCHED THEN INSERT (id, marca) VALUES (1, SYSTIMESTAMP)");
+                ahora = principal.queryForObject("SELECT marca FROM LatidoReplica WHERE id = 1", Timestamp.class).getTime();
+            } else {
+                ahora = principal.queryForObject("SELECT CAST(SYSTIMESTAMP AS TIMESTAMP) FROM DUAL", Timestamp.class).getTime();
+            }
+            desfaseMs = ahora - local;
+        } catch (Exception ex) {
+            // Sin la hora de la principal no se puede medir el retraso: se lee de la principal hasta la próxima verificación
+            log.warn("No se pudo escribir el latido de réplicas: {}", ex.getMessage());
+            for (Replica r : replicas) r.disponible = false;
+            return;
+        }
+        long minimoVisto = Long.MAX_VALUE;
+        for (Replica r : replicas) {
+            boolean antes = r.disponible;
+            try {
+                if (retrasoMaximoMs > 0) {
+                    Timestamp marca = r.jdbc.queryForObject("SELECT marca FROM LatidoReplica WHERE id = 1", Timestamp.class);
+                    r.vistoHasta = marca != null ? marca.getTime() : Long.MIN_VALUE;
+                    r.retrasoMs = ahora - r.vistoHasta;
+                    r.disponible = r.retrasoMs <= retrasoMaximoMs;
+                } else {
+                    r.jdbc.queryForObject("SELECT 1 FROM DUAL", Integer.class);
+                    r.vistoHasta = ahora;
+                    r.retrasoMs = 0;
+                    r.disponible = true;
+                }
+            } catch (Exception ex) {
+                r.disponible = false;
+                if (antes) log.warn("Réplica {} no disponible: {}", r.nombre, ex.getMessage());
+            }
+            if (antes && !r.disponible && r.retrasoMs > retrasoMaximoMs) {
+                log.warn("Réplica {} atrasada {} ms; se usa la principal", r.nombre, r.retrasoMs);
+            } else if (!antes && r.disponible) {
+                log.info("Réplica {} disponible (retraso {} ms)", r.nombre, r.retrasoMs);
+            }
+            minimoVisto = Math.min(minimoVisto, r.vistoHasta);
+        }
+        // Una escritura que todas las réplicas ya muestran, o más vieja que el retraso tolerado, ya no obliga a leer de la principal
+        long visto = minimoVisto;
+        escrituras.values().removeIf(t -> t <= visto || (retrasoMaximoMs > 0 && t < ahora - retrasoMaximoMs));
+    }
+
+    /** Estado de las réplicas, para diagnóstico */
+    public Map<String, Object> estado() {
+        Map<String, Object> estado = new HashMap<>();
+        for (Replica r : replicas) {
+            estado.put(r.nombre, Map.of("disponible", r.disponible, "retrasoMs", r.retrasoMs));
+        }
+        return estado;
+    }
+
+    @Override
+    public void destroy() {
+        for (Replica r : replicas) r.dataSource.close();
+    }
+
+    private static final class Replica {
+        final String nombre;
+        final HikariDataSource dataSource;
+        final JdbcTemplate jdbc;
+        volatile boolean disponible;
+        // Último latido de la principal que la réplica ya muestra (epoch ms)
+        volatile long vistoHasta = Long.MIN_VALUE;
+        volatile long retrasoMs;
+
+        Replica(String nombre, HikariDataSource dataSource) {
+            this.nombre = nombre;
+            this.dataSource = dataSource;
+            this.jdbc = new JdbcTemplate(dataSource);
+            this.jdbc.setQueryTimeout(5);
+        }
+    }
+}
@@ -1,8 +1,16 @@
 package com.ferreteria.sistema.config;
 
+import com.ferreteria.sistema.service.RolAutoridadService;
+import com.ferreteria.sistema.service.TokenService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.access.expression.method.DefaultMethodSecurityExpressionHandler;
+import org.springframework.security.access.expression.method.MethodSecurityExpressionHandler;
+import org.springframework.security.access.hierarchicalroles.RoleHierarchy;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
@@ -16,6 +24,7 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.AuthenticationSuccessHandler;
 import org.springframework.security.web.authentication.AuthenticationFailureHandler;
+import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
 import org.springframework.security.web.util.matcher.OrRequestMatcher;
 import org.springframework.security.web.util.matcher.RequestMatcher;
@@ -36,24 +45,44 @@ public class SecurityConfig {
 
     // Eliminado: inyección de handlers para evitar ciclo de dependencias.
 
+    @Value("${ferreteria.seguridad.bcrypt.hilos:0}")
+    private int bcryptHilos;
+
+    @Value("${ferreteria.seguridad.bcrypt.capacidad-cola:64}")
+    private int bcryptCapacidadCola;
+
+    @Value("${ferreteria.seguridad.bcrypt.espera-ms:5000}")
+    private long bcryptEsperaMs;
+
+    @Value("${ferreteria.seguridad.verificacion-cache.ttl-segundos:300}")
+    private long verificacionCacheTtl;
+
+    @Value("${ferreteria.seguridad.verificacion-cache.max-entradas:10000}")
+    private int verificacionCacheMax;
+
     /**
      * Configuración del codificador de contraseñas
-     * @return BCryptPasswordEncoder para encriptar contraseñas
+     * @param meterRegistry registro de métricas del pool de hash
+     * @return BCrypt (fuerza 12) ejecutado en un pool acotado, con cache de verificaciones
      */
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder(12); // Fuerza 12 para mayor seguridad
+    public PasswordEncoder passwordEncoder(MeterRegistry meterRegistry) {
+        // Por defecto la mitad de los núcleos, para dejar CPU a las solicitudes normales
+        int hilos = bcryptHilos > 0 ? bcryptHilos : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        return new AcotadoPasswordEncoder(new BCryptPasswordEncoder(12), // Fuerza 12 para mayor seguridad
+                hilos, bcryptCapacidadCola, bcryptEsperaMs, verificacionCacheTtl, verificacionCacheMax, meterRegistry);
     }
 
     /**
      * Configuración del proveedor de autenticación
+     * @param passwordEncoder codificador de contraseñas
      * @return DaoAuthenticationProvider configurado
      */
     @Bean
-    public DaoAuthenticationProvider authenticationProvider() {
+    public DaoAuthenticationProvider authenticationProvider(PasswordEncoder passwordEncoder) {
         DaoAuthenticationProvider authProvider = new DaoAuthenticationProvider();
         authProvider.setUserDetailsService(userDetailsService);
-        authProvider.setPasswordEncoder(passwordEncoder());
+        authProvider.setPasswordEncoder(passwordEncoder);
         authProvider.setHideUserNotFoundExceptions(false); // Para mejor manejo de errores
         return authProvider;
     }
@@ -69,16 +98,48 @@ public class SecurityConfig {
         return config.getAuthenticationManager();
     }
 
+    /**
+     * Jerarquía de roles respaldada por la cache de roles: las comprobaciones
+     * de URL y de @PreAuthorize solo aceptan autoridades de roles que siguen
+     * existiendo y activos
+     * @param rolAutoridadService cache de roles (se obtiene al primer uso)
+     * @return RoleHierarchy
+     */
+    @Bean
+    static RoleHierarchy roleHierarchy(ObjectProvider<RolAutoridadService> rolAutoridadService) {
+        return autoridades -> rolAutoridadService.getObject().vigentes(autoridades);
+    }
+
+    /**
+     * Evaluador de expresiones de @PreAuthorize con la jerarquía de roles
+     * @param roleHierarchy jerarquía de roles
+     * @return MethodSecurityExpressionHandler
+     */
+    @Bean
+    static MethodSecurityExpressionHandler methodSecurityExpressionHandler(RoleHierarchy roleHierarchy) {
+        DefaultMethodSecurityExpressionHandler handler = new DefaultMethodSecurityExpressionHandler();
+        handler.setRoleHierarchy(roleHierarchy);
+        return handler;
+    }
+
     /**
      * Configuración principal de la cadena de filtros de seguridad
      * @param http objeto HttpSecurity para configurar
+     * @param authenticationProvider proveedor DAO con el codificador acotado
+     * @param tokenService verificador de tokens bearer para la API
+     * @param sesionJdbcRegistry registro de sesiones compartido, si las sesiones son JDBC
      * @return SecurityFilterChain configurado
      * @throws Exception si hay error en la configuración
      */
     @Bean
     public SecurityFilterChain filterChain(HttpSecurity http,
                                            AuthenticationSuccessHandler customAuthenticationSuccessHandler,
-                                           AuthenticationFailureHandler customAuthenticationFailureHandler) throws Exception {
+                                           AuthenticationFailureHandler customAuthenticationFailureHandler,
+                                           DaoAuthenticationProvider authenticationProvider,
+                                           TokenService tokenService,
+                                           ObjectProvider<SesionJdbcRegistry> sesionJdbcRegistry) throws Exception {
+        // Sin sesiones JDBC se usa el registro en memoria y el límite es por nodo
+        SesionJdbcRegistry registroCompartido = sesionJdbcRegistry.getIfAvailable();
         http
             // Configuración de autorización de solicitudes
             .authorizeHttpRequests(authz -> authz
@@ -147,11 +208,15 @@ public class SecurityConfig {
             })
             
             // Configuración de sesiones
-            .sessionManagement(session -> session
-                .maximumSessions(3) // Máximo 3 sesiones por usuario
-                .maxSessionsPreventsLogin(false) // Permite nuevas sesiones expirando las antiguas
-                .expiredUrl("/login?expired")
-            )
+            .sessionManagement(session -> {
+                var concurrencia = session
+                    .maximumSessions(3) // Máximo 3 sesiones por usuario
+                    .maxSessionsPreventsLogin(false) // Permite nuevas sesiones expirando las antiguas
+                    .expiredUrl("/login?expired");
+                if (registroCompartido != null) {
+                    concurrencia.sessionRegistry(registroCompartido);
+                }
+            })
             
             // Configuración de recordar usuario
             .rememberMe(remember -> remember
@@ -176,8 +241,11 @@ public class SecurityConfig {
                 .csrfTokenRepository(org.springframework.security.web.csrf.CookieCsrfTokenRepository.withHttpOnlyFalse())
             )
             
+            // Tokens bearer para clientes de la API sin sesión (terminales de caja)
+            .addFilterBefore(new TokenAuthenticationFilter(tokenService), UsernamePasswordAuthenticationFilter.class)
+            
             // Configuración del proveedor de autenticación
-            .authenticationProvider(authenticationProvider());
+            .authenticationProvider(authenticationProvider);
 
         return http.build();
     }
@@ -0,0 +1,54 @@
+package com.ferreteria.sistema.config;
+
+import com.ferreteria.sistema.dao.SesionHttpDao;
+import com.ferreteria.sistema.service.SesionJdbcService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+/**
+ * Sesiones compartidas en Oracle para ejecutar varios nodos sin afinidad
+ *
+ * Solo se activa con ferreteria.sesiones.jdbc.habilitado=true; por defecto
+ * se sigue usando la sesión en memoria de Tomcat.
+ */
+@Configuration
+@ConditionalOnProperty(name = "ferreteria.sesiones.jdbc.habilitado", havingValue = "true")
+public class SesionJdbcConfig {
+
+    @Value("${server.servlet.session.cookie.name:FERRETERIA_SESSION}")
+    private String nombreCookie;
+
+    @Value("${server.servlet.session.cookie.secure:false}")
+    private boolean cookieSegura;
+
+    @Value("${server.servlet.session.cookie.http-only:true}")
+    private boolean cookieHttpOnly;
+
+    /**
+     * Filtro de sesión JDBC, por delante de la cadena de Spring Security
+     * @param sesionJdbcService almacén de sesiones
+     * @return registro del filtro
+     */
+    @Bean
+    public FilterRegistrationBean<SesionJdbcFilter> sesionJdbcFilter(SesionJdbcService sesionJdbcService) {
+        FilterRegistrationBean<SesionJdbcFilter> registro = new FilterRegistrationBean<>(
+                new SesionJdbcFilter(sesionJdbcService, nombreCookie, cookieSegura, cookieHttpOnly));
+        registro.setOrder(Ordered.HIGHEST_PRECEDENCE + 50);
+        return registro;
+    }
+
+    /**
+     * Registro de sesiones compartido, para que el máximo de sesiones por
+     * usuario se cuente en todos los nodos
+     * @param sesionHttpDao acceso a SesionesHttp
+     * @return registro de sesiones
+     */
+    @Bean
+    public SesionJdbcRegistry sesionJdbcRegistry(SesionHttpDao sesionHttpDao) {
+        return new SesionJdbcRegistry(sesionHttpDao);
+    }
+}
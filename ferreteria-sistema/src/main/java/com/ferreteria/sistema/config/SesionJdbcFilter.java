@@ -0,0 +1,190 @@
+package com.ferreteria.sistema.config;
+
+import com.ferreteria.sistema.service.SesionJdbcService;
+import com.ferreteria.sistema.service.SesionJdbcService.SesionJdbc;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.*;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Sustituye la sesión del contenedor por la del almacén JDBC
+ *
+ * Envuelve la solicitud para que getSession() devuelva una sesión cargada
+ * desde Oracle (solo cuando alguien la pide, así los recursos estáticos no
+ * consultan la base de datos) y la guarda antes de que se confirme la
+ * respuesta. Se registra antes que la cadena de Spring Security.
+ */
+public class SesionJdbcFilter extends OncePerRequestFilter {
+
+    private final SesionJdbcService sesionJdbcService;
+    private final String nombreCookie;
+    private final boolean cookieSegura;
+    private final boolean cookieHttpOnly;
+
+    public SesionJdbcFilter(SesionJdbcService sesionJdbcService, String nombreCookie,
+                            boolean cookieSegura, boolean cookieHttpOnly) {
+        this.sesionJdbcService = sesionJdbcService;
+        this.nombreCookie = nombreCookie;
+        this.cookieSegura = cookieSegura;
+        this.cookieHttpOnly = cookieHttpOnly;
+    }
+
+    @Override
+    protected boolean shouldNotFilterErrorDispatch() {
+        // Las páginas de error también muestran el usuario autenticado
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Solicitud solicitud = new Solicitud(request, response);
+        Respuesta respuesta = new Respuesta(response, solicitud);
+        try {
+            chain.doFilter(solicitud, respuesta);
+        } finally {
+            solicitud.confirmar();
+        }
+    }
+
+    private final class Solicitud extends HttpServletRequestWrapper {
+        private final HttpServletResponse response;
+        private final String idSolicitado;
+        private SesionJdbc sesion;
+        private boolean buscada;
+
+        Solicitud(HttpServletRequest request, HttpServletResponse response) {
+            super(request);
+            this.response = response;
+            this.idSolicitado = leerCookie(request);
+        }
+
+        @Override
+        public HttpSession getSession(boolean create) {
+            if (sesion != null && !sesion.isInvalidada()) {
+                return sesion;
+            }
+            if (!buscada) {
+                buscada = true;
+                if (idSolicitado != null) {
+                    sesion = sesionJdbcService.cargar(idSolicitado);
+                    if (sesion != null) return sesion;
+                }
+            }
+            if (!create) {
+                return null;
+            }
+            sesion = sesionJdbcService.crear();
+            escribirCookie(sesion.getId(), -1);
+            return sesion;
+        }
+
+        @Override
+        public HttpSession getSession() {
+            return getSession(true);
+        }
+
+        @Override
+        public String changeSessionId() {
+            HttpSession actual = getSession(false);
+            if (actual == null) {
+                throw new IllegalStateException("No hay sesión asociada a la solicitud");
+            }
+            String nuevo = sesion.cambiarId();
+            escribirCookie(nuevo, -1);
+            return nuevo;
+        }
+
+        @Override
+        public String getRequestedSessionId() {
+            return idSolicitado;
+        }
+
+        @Override
+        public boolean isRequestedSessionIdValid() {
+            HttpSession actual = getSession(false);
+            return idSolicitado != null && actual != null && idSolicitado.equals(actual.getId());
+        }
+
+        @Override
+        public boolean isRequestedSessionIdFromCookie() {
+            return idSolicitado != null;
+        }
+
+        @Override
+        public boolean isRequestedSessionIdFromURL() {
+            return false;
+        }
+
+        void confirmar() {
+            if (sesion != null && !sesion.isInvalidada()) {
+                sesionJdbcService.guardar(sesion);
+            }
+        }
+
+        private void escribirCookie(String valor, long maxAge) {
+            if (response.isCommitted()) return;
+            String ruta = getContextPath().isEmpty() ? "/" : getContextPath();
+            ResponseCookie cookie = ResponseCookie.from(nombreCookie, valor)
+                    .path(ruta)
+                    .httpOnly(cookieHttpOnly)
+                    .secure(cookieSegura || isSecure())
+                    .sameSite("Lax")
+                    .maxAge(maxAge)
+                    .build();
+            response.addHeader(HttpHeaders.SET_COOKIE, cookie.toString());
+        }
+    }
+
+    /**
+     * Guarda la sesión antes de que una redirección o un error confirmen la respuesta
+     */
+    private static final class Respuesta extends HttpServletResponseWrapper {
+        private final Solicitud solicitud;
+
+        Respuesta(HttpServletResponse response, Solicitud solicitud) {
+            super(response);
+            this.solicitud = solicitud;
+        }
+
+        @Override
+        public void sendRedirect(String location) throws IOException {
+            solicitud.confirmar();
+            super.sendRedirect(location);
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            solicitud.confirmar();
+            super.sendError(sc);
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            solicitud.confirmar();
+            super.sendError(sc, msg);
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            solicitud.confirmar();
+            super.flushBuffer();
+        }
+    }
+
+    private String leerCookie(HttpServletRequest request) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) return null;
+        for (Cookie c : cookies) {
+            if (nombreCookie.equals(c.getName()) && !c.getValue().isEmpty()) {
+                return c.getValue();
+            }
+        }
+        return null;
+    }
+}
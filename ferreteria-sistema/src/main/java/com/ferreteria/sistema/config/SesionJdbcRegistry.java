@@ -0,0 +1,81 @@
+package com.ferreteria.sistema.config;
+
+import com.ferreteria.sistema.dao.SesionHttpDao;
+import org.springframework.security.core.session.SessionInformation;
+import org.springframework.security.core.session.SessionRegistry;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Registro de sesiones de Spring Security respaldado por SesionesHttp
+ *
+ * Con sesiones JDBC el límite de sesiones por usuario tiene que contar las
+ * de todos los nodos, no solo las que conoce el SessionRegistryImpl local.
+ * Las sesiones se consultan en la tabla por el usuario que guarda el almacén;
+ * expirar una la elimina, así que el siguiente acceso con esa cookie ya no
+ * encuentra sesión y vuelve al login.
+ *
+ * getSessionInformation devuelve null para que el ConcurrentSessionFilter no
+ * consulte la base de datos en cada solicitud: una sesión expirada ya no
+ * existe en la tabla. Registrar y quitar sesiones no hace nada porque de eso
+ * se encarga SesionJdbcService.
+ */
+public class SesionJdbcRegistry implements SessionRegistry {
+
+    private final SesionHttpDao sesionHttpDao;
+
+    public SesionJdbcRegistry(SesionHttpDao sesionHttpDao) {
+        this.sesionHttpDao = sesionHttpDao;
+    }
+
+    @Override
+    public List<Object> getAllPrincipals() {
+        return new ArrayList<>(sesionHttpDao.usuarios(System.currentTimeMillis()));
+    }
+
+    @Override
+    public List<SessionInformation> getAllSessions(Object principal, boolean includeExpiredSessions) {
+        List<SessionInformation> sesiones = new ArrayList<>();
+        for (Object[] s : sesionHttpDao.sesionesDeUsuario(nombre(principal), System.currentTimeMillis())) {
+            sesiones.add(new Sesion(principal, (String) s[0], new Date((Long) s[1])));
+        }
+        return sesiones;
+    }
+
+    @Override
+    public SessionInformation getSessionInformation(String sessionId) {
+        return null;
+    }
+
+    @Override
+    public void refreshLastRequest(String sessionId) {
+    }
+
+    @Override
+    public void registerNewSession(String sessionId, Object principal) {
+    }
+
+    @Override
+    public void removeSessionInformation(String sessionId) {
+    }
+
+    private static String nombre(Object principal) {
+        return principal instanceof UserDetails u ? u.getUsername() : String.valueOf(principal);
+    }
+
+    private final class Sesion extends SessionInformation {
+
+        Sesion(Object principal, String sessionId, Date lastRequest) {
+            super(principal, sessionId, lastRequest);
+        }
+
+        @Override
+        public void expireNow() {
+            super.expireNow();
+            sesionHttpDao.eliminarPorIdSesion(getSessionId());
+        }
+    }
+}
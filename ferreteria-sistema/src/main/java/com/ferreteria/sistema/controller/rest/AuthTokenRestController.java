@@ -0,0 +1,103 @@
+package com.ferreteria.sistema.controller.rest;
+
+import com.ferreteria.sistema.service.CustomUserDetailsService;
+import com.ferreteria.sistema.service.TokenService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Emisión de tokens para clientes de la API sin sesión (terminales de caja)
+ *
+ * Las páginas web siguen usando el formulario de login y la sesión; estos
+ * endpoints son públicos y devuelven un token de acceso de vida corta y uno
+ * de refresco para enviar en "Authorization: Bearer".
+ */
+@RestController
+@RequestMapping("/api/public/auth")
+@CrossOrigin(origins = "*")
+public class AuthTokenRestController {
+
+    @Autowired
+    private AuthenticationManager authenticationManager;
+
+    @Autowired
+    private UserDetailsService userDetailsService;
+
+    @Autowired
+    private TokenService tokenService;
+
+    /**
+     * Valida usuario y contraseña y emite el par de tokens
+     */
+    @PostMapping("/token")
+    public ResponseEntity<?> token(@RequestBody CredencialesRequest req) {
+        if (req == null || req.username == null || req.password == null) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Validación", "mensaje", "Usuario y contraseña son obligatorios"));
+        }
+        try {
+            Authentication auth = authenticationManager.authenticate(
+                    UsernamePasswordAuthenticationToken.unauthenticated(req.username, req.password));
+            return ResponseEntity.ok(emitir((UserDetails) auth.getPrincipal()));
+        } catch (AuthenticationServiceException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(Map.of("error", "No disponible", "mensaje", e.getMessage()));
+        } catch (AuthenticationException e) {
+            return noAutorizado("Credenciales inválidas");
+        }
+    }
+
+    /**
+     * Emite un par nuevo a partir de un token de refresco vigente.
+     * Vuelve a leer el usuario para que un usuario desactivado o con otro
+     * rol no siga obteniendo tokens con los permisos anteriores.
+     */
+    @PostMapping("/refresh")
+    public ResponseEntity<?> refresh(@RequestBody RefrescoRequest req) {
+        Optional<TokenService.UsuarioToken> token =
+                tokenService.verificar(req != null ? req.refreshToken : null, TokenService.REFRESCO);
+        if (token.isEmpty()) {
+            return noAutorizado("Token de refresco inválido o vencido");
+        }
+        try {
+            UserDetails usuario = userDetailsService.loadUserByUsername(token.get().getName());
+            if (!usuario.isEnabled() || !usuario.isAccountNonLocked()) {
+                return noAutorizado("Usuario inactivo");
+            }
+            return ResponseEntity.ok(emitir(usuario));
+        } catch (AuthenticationException e) {
+            return noAutorizado("Usuario no encontrado");
+        }
+    }
+
+    private TokenService.Tokens emitir(UserDetails usuario) {
+        Long id = usuario instanceof CustomUserDetailsService.CustomUserPrincipal p ? p.getId() : null;
+        return tokenService.emitir(id, usuario.getUsername(), usuario.getAuthorities());
+    }
+
+    private ResponseEntity<?> noAutorizado(String mensaje) {
+        return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                .body(Map.of("error", "No autorizado", "mensaje", mensaje));
+    }
+
+    public static class CredencialesRequest {
+        public String username;
+        public String password;
+    }
+
+    public static class RefrescoRequest {
+        public String refreshToken;
+    }
+}
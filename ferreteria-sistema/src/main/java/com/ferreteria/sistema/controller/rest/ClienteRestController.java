@@ -1,7 +1,10 @@
 package com.ferreteria.sistema.controller.rest;
 
 import com.ferreteria.sistema.entity.Cliente;
+import com.ferreteria.sistema.service.ClienteComprasService;
 import com.ferreteria.sistema.service.ClienteService;
+import com.ferreteria.sistema.service.ExposicionCreditoService;
+import com.ferreteria.sistema.service.LimiteCreditoService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataAccessException;
 import org.springframework.http.HttpStatus;
@@ -27,6 +30,15 @@ public class ClienteRestController {
     @Autowired
     private ClienteService clienteService;
 
+    @Autowired
+    private ClienteComprasService clienteComprasService;
+
+    @Autowired
+    private ExposicionCreditoService exposicionCreditoService;
+
+    @Autowired
+    private LimiteCreditoService limiteCreditoService;
+
     /**
      * Obtiene todos los clientes
      * @return lista de clientes
@@ -74,6 +86,106 @@ public class ClienteRestController {
         return ResponseEntity.ok(clientes);
     }
 
+    /**
+     * Sugiere clientes mientras se escribe (nombre, apellidos, cédula, email o teléfono)
+     * @param q texto escrito
+     * @param limite máximo de sugerencias
+     * @param incluirInactivos si se incluyen clientes desactivados
+     * @return lista de sugerencias
+     */
+    @GetMapping("/sugerir")
+    @PreAuthorize("hasAnyRole('ADMINISTRADOR', 'GERENTE', 'VENDEDOR')")
+    public ResponseEntity<?> sugerir(@RequestParam String q,
+                                     @RequestParam(defaultValue = "10") int limite,
+                                     @RequestParam(defaultValue = "false") boolean incluirInactivos) {
+        return ResponseEntity.ok(clienteService.sugerir(q, limite, incluirInactivos));
+    }
+
+    /**
+     * Obtiene clientes VIP activos con compras pagadas superiores al monto
+     * @param minimo monto mínimo de compras
+     * @return lista de clientes VIP ordenada por compras
+     */
+    @GetMapping("/vip")
+    @PreAuthorize("hasAnyRole('ADMINISTRADOR', 'GERENTE')")
+    public ResponseEntity<List<Cliente>> obtenerVip(@RequestParam(defaultValue = "0") java.math.BigDecimal minimo) {
+        return ResponseEntity.ok(clienteService.obtenerClientesVIPConMayorCompras(minimo));
+    }
+
+    /**
+     * Obtiene los clientes con mayor volumen de compras
+     * @param limite cantidad de clientes
+     * @param periodo HISTORICO o ANUAL (últimos 12 meses)
+     * @param minimo monto mínimo en el periodo (opcional)
+     * @return resumen de compras por cliente
+     */
+    @GetMapping("/top")
+    @PreAuthorize("hasAnyRole('ADMINISTRADOR', 'GERENTE')")
+    public ResponseEntity<?> obtenerTop(@RequestParam(defaultValue = "10") int limite,
+                                        @RequestParam(defaultValue = "HISTORICO") String periodo,
+                                        @RequestParam(required = false) java.math.BigDecimal minimo) {
+        try {
+            return ResponseEntity.ok(clienteService.obtenerTopCompradores(limite, "ANUAL".equalsIgnoreCase(periodo), minimo));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(new ErrorResponse("Error de validación", e.getMessage()));
+        }
+    }
+
+    /**
+     * Obtiene la segmentación RFM de los clientes con compras en los últimos 12 meses
+     * @param segmento CAMPEONES, LEALES, NUEVOS, EN_RIESGO, PERDIDOS u OCASIONALES (opcional)
+     * @return clientes con puntajes y segmento
+     */
+    @GetMapping("/rfm")
+    @PreAuthorize("hasAnyRole('ADMINISTRADOR', 'GERENTE')")
+    public ResponseEntity<?> obtenerRfm(@RequestParam(required = false) String segmento) {
+        return ResponseEntity.ok(clienteService.obtenerSegmentosRfm(segmento));
+    }
+
+    /**
+     * Reconstruye los acumulados de compras por cliente desde las facturas
+     * @return cantidad de clientes con compras
+     */
+    @PostMapping("/resumen-compras/reconstruir")
+    @PreAuthorize("hasRole('ADMINISTRADOR')")
+    public ResponseEntity<?> reconstruirResumenCompras() {
+        try {
+            return ResponseEntity.ok(java.util.Map.of("clientes", clienteComprasService.reconstruir()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(new ErrorResponse("En curso", e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(new ErrorResponse("Error interno", "Error al reconstruir los acumulados de compras"));
+        }
+    }
+
+    /**
+     * Obtiene el crédito de un cliente: límite, saldo pendiente y disponible
+     * @param id ID del cliente
+     * @return exposición de crédito
+     */
+    @GetMapping("/{id}/credito")
+    @PreAuthorize("hasAnyRole('ADMINISTRADOR', 'GERENTE', 'VENDEDOR')")
+    public ResponseEntity<?> obtenerCredito(@PathVariable Long id) {
+        return ResponseEntity.ok(exposicionCreditoService.obtener(id));
+    }
+
+    /**
+     * Recalcula los límites de crédito de los clientes VIP
+     * @return resumen del recálculo
+     */
+    @PostMapping("/limites-credito/recalcular")
+    @PreAuthorize("hasRole('ADMINISTRADOR')")
+    public ResponseEntity<?> recalcularLimitesCredito() {
+        try {
+            return ResponseEntity.ok(limiteCreditoService.recalcular());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(new ErrorResponse("Error interno", "Error al recalcular los límites de crédito"));
+        }
+    }
+
     /**
      * Obtiene clientes por tipo
      * @param tipo tipo de cliente (REGULAR, MAYORISTA, VIP)
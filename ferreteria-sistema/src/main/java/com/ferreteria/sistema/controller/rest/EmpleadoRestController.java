@@ -2,12 +2,15 @@ package com.ferreteria.sistema.controller.rest;
 
 import com.ferreteria.sistema.entity.Empleado;
 import com.ferreteria.sistema.service.EmpleadoService;
+import com.ferreteria.sistema.service.NominaHorasService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
 
@@ -19,10 +22,24 @@ public class EmpleadoRestController {
     @Autowired
     private EmpleadoService empleadoService;
 
+    @Autowired
+    private NominaHorasService nominaHorasService;
+
     @GetMapping
     @PreAuthorize("hasAnyRole('ADMINISTRADOR','GERENTE')")
     public ResponseEntity<List<Empleado>> listar() { return ResponseEntity.ok(empleadoService.obtenerTodos()); }
 
+    @GetMapping("/horas")
+    @PreAuthorize("hasAnyRole('ADMINISTRADOR','GERENTE')")
+    public ResponseEntity<?> horas(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+                                   @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta) {
+        try {
+            return ResponseEntity.ok(nominaHorasService.totales(desde, hasta));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Parámetros inválidos", "mensaje", e.getMessage()));
+        }
+    }
+
     @GetMapping("/{id}")
     @PreAuthorize("hasAnyRole('ADMINISTRADOR','GERENTE')")
     public ResponseEntity<?> obtener(@PathVariable Long id) {
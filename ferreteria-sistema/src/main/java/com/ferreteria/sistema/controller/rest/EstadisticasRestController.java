@@ -0,0 +1,48 @@
+package com.ferreteria.sistema.controller.rest;
+
+import com.ferreteria.sistema.service.EstadisticasService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/**
+ * Controlador REST de estadísticas
+ *
+ * Devuelve conteos agrupados por entidad sin descargar los listados
+ * completos, para que las páginas y el tablero muestren sus totales.
+ */
+@RestController
+@RequestMapping("/api/estadisticas")
+@CrossOrigin(origins = "*")
+public class EstadisticasRestController {
+
+    @Autowired
+    private EstadisticasService estadisticasService;
+
+    /**
+     * Totales del tablero: clientes, productos, facturas y ventas del mes
+     */
+    @GetMapping("/resumen")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<?> resumen() {
+        return ResponseEntity.ok(estadisticasService.resumen());
+    }
+
+    /**
+     * Conteos de una entidad por estado y por sus dimensiones
+     * (tipo, categoría, marca, condiciones de pago, puesto o rol)
+     * @param entidad clientes, productos, proveedores, empleados o usuarios
+     */
+    @GetMapping("/{entidad}")
+    @PreAuthorize("hasAnyRole('ADMINISTRADOR','GERENTE','VENDEDOR','BODEGUERO')")
+    public ResponseEntity<?> porEntidad(@PathVariable String entidad) {
+        try {
+            return ResponseEntity.ok(estadisticasService.obtener(entidad));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Validación", "mensaje", e.getMessage()));
+        }
+    }
+}
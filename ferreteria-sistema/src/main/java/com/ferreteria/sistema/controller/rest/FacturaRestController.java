@@ -269,8 +269,9 @@ public class FacturaRestController {
             System.out.println("DEBUG - Agregando datos de prueba a la factura " + id);
             
             // Agregar algunos productos de prueba (IDs 1, 2, 3 con datos básicos)
-            facturaService.agregarDetalle(id, 1L, new java.math.BigDecimal("15.50"), 2, java.math.BigDecimal.ZERO);
-            facturaService.agregarDetalle(id, 2L, new java.math.BigDecimal("25.00"), 1, new java.math.BigDecimal("2.50"));
+            facturaService.agregarDetalles(id, List.of(
+                    new FacturaService.DetalleFacturaRequest(1L, new java.math.BigDecimal("15.50"), 2, java.math.BigDecimal.ZERO),
+                    new FacturaService.DetalleFacturaRequest(2L, new java.math.BigDecimal("25.00"), 1, new java.math.BigDecimal("2.50"))));
             
             return ResponseEntity.ok(Map.of("mensaje", "Datos de prueba agregados correctamente"));
         } catch (Exception e) {
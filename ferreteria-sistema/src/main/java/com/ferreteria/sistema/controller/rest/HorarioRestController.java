@@ -1,12 +1,15 @@
 package com.ferreteria.sistema.controller.rest;
 
 import com.ferreteria.sistema.entity.Horario;
+import com.ferreteria.sistema.service.GeneracionHorariosService;
 import com.ferreteria.sistema.service.HorarioService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
 
@@ -18,10 +21,35 @@ public class HorarioRestController {
     @Autowired
     private HorarioService horarioService;
 
+    @Autowired
+    private GeneracionHorariosService generacionHorariosService;
+
     @GetMapping
     @PreAuthorize("hasAnyRole('ADMINISTRADOR','GERENTE')")
     public ResponseEntity<List<Horario>> listar() { return ResponseEntity.ok(horarioService.obtenerTodos()); }
 
+    @GetMapping("/rango")
+    @PreAuthorize("hasAnyRole('ADMINISTRADOR','GERENTE')")
+    public ResponseEntity<?> buscarRango(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+                                         @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta,
+                                         @RequestParam(required = false) Long idEmpleado,
+                                         @RequestParam(required = false) String cursor,
+                                         @RequestParam(defaultValue = "100") int limite) {
+        try {
+            return ResponseEntity.ok(horarioService.buscarRango(desde, hasta, idEmpleado, cursor, limite));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Parámetros inválidos", "mensaje", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/semana")
+    @PreAuthorize("hasAnyRole('ADMINISTRADOR','GERENTE')")
+    public ResponseEntity<HorarioService.ResumenSemana> resumenSemana(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fecha,
+            @RequestParam(required = false) Long idEmpleado) {
+        return ResponseEntity.ok(horarioService.resumenSemana(fecha, idEmpleado));
+    }
+
     @GetMapping("/{id}")
     @PreAuthorize("hasAnyRole('ADMINISTRADOR','GERENTE')")
     public ResponseEntity<?> obtener(@PathVariable Long id) {
@@ -72,6 +100,22 @@ public class HorarioRestController {
         }
     }
 
+    @PostMapping("/generar")
+    @PreAuthorize("hasAnyRole('ADMINISTRADOR','GERENTE')")
+    public ResponseEntity<?> generar(@RequestBody GeneracionHorariosService.SolicitudGeneracion solicitud) {
+        try {
+            GeneracionHorariosService.ResultadoGeneracion resultado = generacionHorariosService.generar(solicitud);
+            if (resultado.generados == 0 && !resultado.conflictos.isEmpty()) {
+                return ResponseEntity.status(409).body(resultado);
+            }
+            return ResponseEntity.ok(resultado);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Parámetros inválidos", "mensaje", e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(409).body(Map.of("error", "Conflicto", "mensaje", e.getMessage()));
+        }
+    }
+
     @PutMapping("/{id}")
     @PreAuthorize("hasAnyRole('ADMINISTRADOR','GERENTE')")
     public ResponseEntity<?> actualizar(@PathVariable Long id, @RequestBody Horario h) {
@@ -1,14 +1,20 @@
 package com.ferreteria.sistema.controller.rest;
 
+import com.ferreteria.sistema.dao.PedidoSpDao;
 import com.ferreteria.sistema.entity.Pedido;
 import com.ferreteria.sistema.service.PedidoService;
+import com.ferreteria.sistema.service.ReabastecimientoService;
+import com.ferreteria.sistema.service.RecepcionPedidoService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/pedidos")
@@ -18,10 +24,42 @@ public class PedidoRestController {
     @Autowired
     private PedidoService pedidoService;
 
+    @Autowired
+    private ReabastecimientoService reabastecimientoService;
+
+    @Autowired
+    private RecepcionPedidoService recepcionPedidoService;
+
     @GetMapping
     @PreAuthorize("hasAnyRole('ADMINISTRADOR','GERENTE','BODEGUERO')")
     public ResponseEntity<List<Pedido>> listar() { return ResponseEntity.ok(pedidoService.obtenerTodos()); }
 
+    @GetMapping("/pagina")
+    @PreAuthorize("hasAnyRole('ADMINISTRADOR','GERENTE','BODEGUERO')")
+    public ResponseEntity<?> buscarPagina(@RequestParam(required = false) Long idProveedor,
+                                          @RequestParam(required = false) String estado,
+                                          @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate entregaDesde,
+                                          @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate entregaHasta,
+                                          @RequestParam(required = false) String cursor,
+                                          @RequestParam(defaultValue = "50") int limite) {
+        try {
+            return ResponseEntity.ok(pedidoService.buscarPagina(idProveedor, estado, entregaDesde, entregaHasta, cursor, limite));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Parámetros inválidos", "mensaje", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/cambios")
+    @PreAuthorize("hasAnyRole('ADMINISTRADOR','GERENTE','BODEGUERO')")
+    public ResponseEntity<?> cambios(@RequestParam(required = false) String desde,
+                                     @RequestParam(defaultValue = "200") int limite) {
+        try {
+            return ResponseEntity.ok(pedidoService.cambiosDesde(desde, limite));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Parámetros inválidos", "mensaje", e.getMessage()));
+        }
+    }
+
     @GetMapping("/{id}")
     @PreAuthorize("hasAnyRole('ADMINISTRADOR','GERENTE','BODEGUERO')")
     public ResponseEntity<?> obtener(@PathVariable Long id) {
@@ -50,11 +88,47 @@ public class PedidoRestController {
     @PostMapping("/{id}/estado")
     @PreAuthorize("hasAnyRole('ADMINISTRADOR','GERENTE','BODEGUERO')")
     public ResponseEntity<?> actualizarEstado(@PathVariable Long id, @RequestParam String estado) {
-        pedidoService.actualizarEstado(id, estado);
+        try {
+            pedidoService.actualizarEstado(id, estado);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Cambio de estado inválido", "mensaje", e.getMessage()));
+        }
         return ResponseEntity.ok().build();
     }
-}
 
+    @PostMapping("/{id}/recepcion")
+    @PreAuthorize("hasAnyRole('ADMINISTRADOR','GERENTE','BODEGUERO')")
+    public ResponseEntity<?> recibir(@PathVariable Long id, @RequestBody(required = false) List<RecepcionPedidoService.LineaRecepcion> lineas) {
+        try {
+            return ResponseEntity.ok(recepcionPedidoService.recibir(id, lineas));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Recepción inválida", "mensaje", e.getMessage()));
+        }
+    }
 
+    @PostMapping("/{id}/detalles/bulk")
+    @PreAuthorize("hasAnyRole('ADMINISTRADOR','GERENTE','BODEGUERO')")
+    public ResponseEntity<?> agregarDetallesBulk(@PathVariable Long id, @RequestBody List<PedidoSpDao.LineaPedido> lineas) {
+        try {
+            int insertadas = pedidoService.agregarDetalles(id, lineas);
+            return ResponseEntity.ok(Map.of("idPedido", id, "lineasInsertadas", insertadas));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Datos inválidos", "mensaje", e.getMessage()));
+        } catch (org.springframework.dao.DataIntegrityViolationException e) {
+            return ResponseEntity.status(409).body(Map.of("error", "Conflicto de datos",
+                    "mensaje", "Alguno de los productos ya existe en el pedido o no es válido"));
+        }
+    }
 
+    @GetMapping("/reabastecimiento")
+    @PreAuthorize("hasAnyRole('ADMINISTRADOR','GERENTE')")
+    public ResponseEntity<?> proponerReabastecimiento() {
+        return ResponseEntity.ok(reabastecimientoService.ejecutar(false));
+    }
 
+    @PostMapping("/reabastecimiento")
+    @PreAuthorize("hasAnyRole('ADMINISTRADOR','GERENTE')")
+    public ResponseEntity<?> generarReabastecimiento() {
+        return ResponseEntity.ok(reabastecimientoService.ejecutar(true));
+    }
+}
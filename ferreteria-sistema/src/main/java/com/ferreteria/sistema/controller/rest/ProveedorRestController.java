@@ -1,6 +1,7 @@
 package com.ferreteria.sistema.controller.rest;
 
 import com.ferreteria.sistema.entity.Proveedor;
+import com.ferreteria.sistema.service.ProveedorRendimientoService;
 import com.ferreteria.sistema.service.ProveedorService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
@@ -17,6 +18,9 @@ public class ProveedorRestController {
     @Autowired
     private ProveedorService proveedorService;
 
+    @Autowired
+    private ProveedorRendimientoService proveedorRendimientoService;
+
     @GetMapping
     @PreAuthorize("hasAnyRole('ADMINISTRADOR','GERENTE','BODEGUERO','VENDEDOR')")
     public ResponseEntity<List<Proveedor>> listar() {
@@ -31,6 +35,12 @@ public class ProveedorRestController {
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    @GetMapping("/{id}/rendimiento")
+    @PreAuthorize("hasAnyRole('ADMINISTRADOR','GERENTE','BODEGUERO')")
+    public ResponseEntity<?> rendimiento(@PathVariable Long id) {
+        return ResponseEntity.ok(proveedorRendimientoService.obtener(id));
+    }
+
     @PostMapping
     @PreAuthorize("hasAnyRole('ADMINISTRADOR','GERENTE','BODEGUERO')")
     public ResponseEntity<?> crear(@RequestBody Proveedor p) {
@@ -0,0 +1,203 @@
+package com.ferreteria.sistema.controller.rest;
+
+import com.ferreteria.sistema.service.CuboVentasService;
+import com.ferreteria.sistema.service.MasVendidosService;
+import com.ferreteria.sistema.service.ReporteVentasService;
+import com.ferreteria.sistema.service.TrabajoReporteService;
+import com.ferreteria.sistema.service.VentasHoraService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+@RestController
+@RequestMapping("/api/reportes")
+@CrossOrigin(origins = "*")
+public class ReporteRestController {
+
+    @Autowired
+    private ReporteVentasService reporteVentasService;
+
+    @Autowired
+    private VentasHoraService ventasHoraService;
+
+    @Autowired
+    private CuboVentasService cuboVentasService;
+
+    @Autowired
+    private MasVendidosService masVendidosService;
+
+    @Autowired
+    private TrabajoReporteService trabajoReporteService;
+
+    @GetMapping("/ventas-diarias")
+    @PreAuthorize("hasAnyRole('ADMINISTRADOR','GERENTE')")
+    public ResponseEntity<?> ventasDiarias(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+                                           @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta) {
+        try {
+            return ResponseEntity.ok(reporteVentasService.ventasDiarias(desde, hasta));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Parámetros inválidos", "mensaje", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/ventas-mes")
+    @PreAuthorize("hasAnyRole('ADMINISTRADOR','GERENTE')")
+    public ResponseEntity<?> ventasMes(@RequestParam int anio, @RequestParam int mes) {
+        try {
+            return ResponseEntity.ok(reporteVentasService.reporteMes(anio, mes));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Parámetros inválidos", "mensaje", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/ventas-hora")
+    @PreAuthorize("hasAnyRole('ADMINISTRADOR','GERENTE')")
+    public ResponseEntity<?> ventasPorHora(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+                                           @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta,
+                                           @RequestParam(required = false) String metodoPago,
+                                           @RequestParam(required = false) Long idUsuario) {
+        try {
+            return ResponseEntity.ok(reporteVentasService.ventasPorHora(desde, hasta, metodoPago, idUsuario));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Parámetros inválidos", "mensaje", e.getMessage()));
+        }
+    }
+
+    @PostMapping("/ventas-hora/reconstruir")
+    @PreAuthorize("hasRole('ADMINISTRADOR')")
+    public ResponseEntity<?> reconstruirVentasHora() {
+        try {
+            return ResponseEntity.ok(Map.of("celdas", ventasHoraService.reconstruir()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", "En curso", "mensaje", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/ventas-hora/verificar")
+    @PreAuthorize("hasAnyRole('ADMINISTRADOR','GERENTE')")
+    public ResponseEntity<?> verificarVentasHora(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+                                                 @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta,
+                                                 @RequestParam(defaultValue = "100") int limite) {
+        try {
+            return ResponseEntity.ok(ventasHoraService.verificar(desde, hasta, limite));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Parámetros inválidos", "mensaje", e.getMessage()));
+        }
+    }
+
+    /**
+     * Ventas agrupadas por cualquier combinación de categoria, marca, mes, metodoPago y vendedor.
+     * Los filtros aceptan varios valores separados por comas; desde y hasta son meses (yyyy-MM).
+     */
+    @GetMapping("/cubo")
+    @PreAuthorize("hasAnyRole('ADMINISTRADOR','GERENTE')")
+    public ResponseEntity<?> cubo(@RequestParam(defaultValue = "categoria") List<String> agrupar,
+                                  @RequestParam(required = false) List<String> categoria,
+                                  @RequestParam(required = false) List<String> marca,
+                                  @RequestParam(required = false) List<String> metodoPago,
+                                  @RequestParam(required = false) List<String> vendedor,
+                                  @RequestParam(required = false) YearMonth desde,
+                                  @RequestParam(required = false) YearMonth hasta) {
+        if (!cuboVentasService.estaCargado()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("error", "El cubo de ventas aún no está cargado"));
+        }
+        Map<String, List<String>> filtros = new HashMap<>();
+        if (categoria != null) filtros.put("categoria", categoria);
+        if (marca != null) filtros.put("marca", marca);
+        if (metodoPago != null) filtros.put("metodoPago", metodoPago);
+        if (vendedor != null) filtros.put("vendedor", vendedor);
+        try {
+            return ResponseEntity.ok(cuboVentasService.consultar(agrupar, filtros, desde, hasta));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Parámetros inválidos", "mensaje", e.getMessage()));
+        }
+    }
+
+    /**
+     * Productos más vendidos del día, semana o mes que contiene la fecha. El periodo
+     * actual y el anterior se estiman en memoria (exacto = false, con cotas por
+     * producto); los demás periodos y los rangos desde/hasta se consultan exactos.
+     */
+    @GetMapping("/mas-vendidos")
+    @PreAuthorize("hasAnyRole('ADMINISTRADOR','GERENTE')")
+    public ResponseEntity<?> masVendidos(@RequestParam(defaultValue = "mes") String periodo,
+                                         @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fecha,
+                                         @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+                                         @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta,
+                                         @RequestParam(defaultValue = "10") int limite) {
+        try {
+            return ResponseEntity.ok(masVendidosService.masVendidos(periodo, fecha, desde, hasta, limite));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Parámetros inválidos", "mensaje", e.getMessage()));
+        }
+    }
+
+    /**
+     * Solicita un reporte CSV en segundo plano (tipo: ventas-detalle, ventas-diarias o productos-vendidos).
+     * Si ya existe uno igual en curso, o en caché para un periodo cerrado, se devuelve ese.
+     */
+    @PostMapping("/trabajos")
+    @PreAuthorize("hasAnyRole('ADMINISTRADOR','GERENTE')")
+    public ResponseEntity<?> solicitarTrabajo(@RequestParam String tipo,
+                                              @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+                                              @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta,
+                                              Authentication authentication) {
+        try {
+            TrabajoReporteService.Trabajo t = trabajoReporteService.solicitar(tipo, desde, hasta,
+                    authentication != null ? authentication.getName() : null);
+            return ResponseEntity.status(t.estado == TrabajoReporteService.EstadoTrabajo.COMPLETADO
+                    ? HttpStatus.OK : HttpStatus.ACCEPTED).body(t);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Parámetros inválidos", "mensaje", e.getMessage()));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(Map.of("error", "Hay demasiados reportes en cola, intente más tarde"));
+        }
+    }
+
+    @GetMapping("/trabajos/{id}")
+    @PreAuthorize("hasAnyRole('ADMINISTRADOR','GERENTE')")
+    public ResponseEntity<?> obtenerTrabajo(@PathVariable String id) {
+        return trabajoReporteService.obtener(id)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @GetMapping("/trabajos/{id}/archivo")
+    @PreAuthorize("hasAnyRole('ADMINISTRADOR','GERENTE')")
+    public ResponseEntity<?> descargarTrabajo(@PathVariable String id) {
+        TrabajoReporteService.Trabajo t = trabajoReporteService.obtener(id).orElse(null);
+        if (t == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (t.estado != TrabajoReporteService.EstadoTrabajo.COMPLETADO) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(Map.of("error", "El reporte no está listo", "estado", t.estado.name()));
+        }
+        FileSystemResource archivo = new FileSystemResource(t.rutaArchivo());
+        if (!archivo.exists()) {
+            return ResponseEntity.status(HttpStatus.GONE).body(Map.of("error", "El archivo del reporte ya no existe"));
+        }
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(t.nombreArchivo(), StandardCharsets.UTF_8).build().toString())
+                .contentType(new MediaType("text", "csv", StandardCharsets.UTF_8))
+                .body(archivo);
+    }
+}
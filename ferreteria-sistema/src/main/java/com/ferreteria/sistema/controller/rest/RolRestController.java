@@ -1,10 +1,12 @@
 package com.ferreteria.sistema.controller.rest;
 
 import com.ferreteria.sistema.entity.Rol;
-import com.ferreteria.sistema.entity.Usuario;
+import com.ferreteria.sistema.event.EntidadModificadaEvent;
 import com.ferreteria.sistema.repository.RolRepository;
 import com.ferreteria.sistema.repository.UsuarioRepository;
+import com.ferreteria.sistema.service.RolAutoridadService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -24,20 +26,16 @@ public class RolRestController {
     @Autowired
     private UsuarioRepository usuarioRepository;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     @GetMapping
     @PreAuthorize("hasRole('ADMINISTRADOR')")
     public ResponseEntity<List<RolWithInfo>> listar() {
-        List<Rol> roles = rolRepository.findAllByOrderByNombreAsc();
-        List<RolWithInfo> rolesWithInfo = roles.stream().map(rol -> {
-            Long usuariosCount = rolRepository.countUsuariosActivosByRol(rol.getIdRol());
-            return new RolWithInfo(rol, usuariosCount != null ? usuariosCount : 0L);
-        }).collect(Collectors.toList());
-        
-        System.out.println("DEBUG - Enviando " + rolesWithInfo.size() + " roles con información de usuarios");
-        for (RolWithInfo r : rolesWithInfo) {
-            System.out.println("Rol: " + r.getNombre() + " - Usuarios: " + r.getUsuariosCount());
-        }
-        
+        List<RolWithInfo> rolesWithInfo = rolRepository.findAllConUsuariosActivos().stream()
+                .map(f -> new RolWithInfo((Long) f[0], (String) f[1], (String) f[2], (Boolean) f[3],
+                        ((Number) f[4]).longValue()))
+                .collect(Collectors.toList());
         return ResponseEntity.ok(rolesWithInfo);
     }
 
@@ -68,6 +66,7 @@ public class RolRestController {
             rol.setActivo(true);
             
             Rol creado = rolRepository.save(rol);
+            eventPublisher.publishEvent(new EntidadModificadaEvent(RolAutoridadService.ROLES));
             Long usuariosCount = rolRepository.countUsuariosActivosByRol(creado.getIdRol());
             RolWithInfo resultado = new RolWithInfo(creado, usuariosCount != null ? usuariosCount : 0L);
             
@@ -89,6 +88,7 @@ public class RolRestController {
             rol.setDescripcion(rolRequest.getDescripcion());
             
             Rol actualizado = rolRepository.save(rol);
+            eventPublisher.publishEvent(new EntidadModificadaEvent(RolAutoridadService.ROLES));
             Long usuariosCount = rolRepository.countUsuariosActivosByRol(actualizado.getIdRol());
             RolWithInfo resultado = new RolWithInfo(actualizado, usuariosCount != null ? usuariosCount : 0L);
             
@@ -105,6 +105,7 @@ public class RolRestController {
                 return ResponseEntity.badRequest().body(error("Error", "No se puede eliminar el rol con usuarios activos asociados"));
             }
             rolRepository.delete(rol);
+            eventPublisher.publishEvent(new EntidadModificadaEvent(RolAutoridadService.ROLES));
             return ResponseEntity.noContent().build();
         }).orElse(ResponseEntity.notFound().build());
     }
@@ -112,18 +113,14 @@ public class RolRestController {
     @GetMapping("/{id}/usuarios")
     @PreAuthorize("hasRole('ADMINISTRADOR')")
     public ResponseEntity<List<UsuarioInfo>> obtenerUsuariosPorRol(@PathVariable Long id) {
-        List<Usuario> usuarios = usuarioRepository.findByRolIdAndActivoTrue(id);
-        List<UsuarioInfo> usuariosInfo = usuarios.stream().map(usuario -> 
-            new UsuarioInfo(
-                usuario.getIdUsuario(),
-                usuario.getNombreUsuario(),
-                usuario.getNombreCompleto().trim(),
-                usuario.getEmail(),
-                usuario.getActivo()
-            )
-        ).collect(Collectors.toList());
-        
-        System.out.println("DEBUG - Enviando " + usuariosInfo.size() + " usuarios para rol " + id);
+        List<UsuarioInfo> usuariosInfo = usuarioRepository.findResumenActivosPorRol(id).stream()
+                .map(f -> new UsuarioInfo(
+                        (Long) f[0],
+                        (String) f[1],
+                        ((f[2] != null ? f[2] : "") + " " + (f[3] != null ? f[3] : "")).trim(),
+                        (String) f[4],
+                        (Boolean) f[5]))
+                .collect(Collectors.toList());
         return ResponseEntity.ok(usuariosInfo);
     }
 
@@ -153,10 +150,14 @@ public class RolRestController {
         private Long usuariosCount;
 
         public RolWithInfo(Rol rol, Long usuariosCount) {
-            this.idRol = rol.getIdRol();
-            this.nombre = rol.getNombre();
-            this.descripcion = rol.getDescripcion();
-            this.activo = rol.getActivo();
+            this(rol.getIdRol(), rol.getNombre(), rol.getDescripcion(), rol.getActivo(), usuariosCount);
+        }
+
+        public RolWithInfo(Long idRol, String nombre, String descripcion, Boolean activo, Long usuariosCount) {
+            this.idRol = idRol;
+            this.nombre = nombre;
+            this.descripcion = descripcion;
+            this.activo = activo;
             this.usuariosCount = usuariosCount;
         }
 
@@ -40,7 +40,7 @@ public class DashboardController {
             CustomUserDetailsService.CustomUserPrincipal userPrincipal = 
                 (CustomUserDetailsService.CustomUserPrincipal) authentication.getPrincipal();
             
-            model.addAttribute("usuario", userPrincipal.getUsuario());
+            model.addAttribute("usuario", userPrincipal);
             model.addAttribute("nombreCompleto", userPrincipal.getNombreCompleto());
             model.addAttribute("rol", userPrincipal.getRol());
             model.addAttribute("esAdmin", userPrincipal.isAdmin());
@@ -216,7 +216,7 @@ public class DashboardController {
             CustomUserDetailsService.CustomUserPrincipal userPrincipal = 
                 (CustomUserDetailsService.CustomUserPrincipal) authentication.getPrincipal();
             
-            model.addAttribute("usuario", userPrincipal.getUsuario());
+            model.addAttribute("usuario", userPrincipal);
         }
         
         model.addAttribute("titulo", "Mi Perfil");
@@ -0,0 +1,313 @@
+package com.ferreteria.sistema.dao;
+
+import com.ferreteria.sistema.config.DataSourceConfig;
+import com.ferreteria.sistema.event.FacturaSnapshot;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Acumulados de compras por cliente (ClienteComprasMes y ClienteResumenCompras).
+ *
+ * Solo cuentan las facturas PAGADA. Los totales de los últimos 12 meses se
+ * calculan por mes calendario: el mes actual y los 11 anteriores.
+ *
+ * Los acumulados se mantienen en el pool principal; los listados de
+ * análisis (VIP, top y RFM) se leen con el pool de reportes.
+ */
+@Repository
+public class ClienteComprasDao {
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate reportesJdbcTemplate;
+
+    public ClienteComprasDao(DataSource dataSource, @Qualifier(DataSourceConfig.REPORTES) DataSource reportes,
+            @Value("${ferreteria.reportes.datasource.timeout-consulta-segundos:300}") int timeoutSegundos) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.reportesJdbcTemplate = new JdbcTemplate(reportes);
+        this.reportesJdbcTemplate.setQueryTimeout(timeoutSegundos);
+    }
+
+    private static final String INICIO_12_MESES = "ADD_MONTHS(TRUNC(SYSDATE, 'MM'), -11)";
+
+    public static class ResumenCompras {
+        public Long idCliente;
+        public String nombreCliente;
+        public String apellidos;
+        public String tipoCliente;
+        public BigDecimal totalHistorico;
+        public long numFacturas;
+        public BigDecimal total12Meses;
+        public long numFacturas12Meses;
+        public LocalDateTime ultimaCompra;
+        public BigDecimal ticketPromedio;
+    }
+
+    public static class ResumenRfm extends ResumenCompras {
+        public int recencia;
+        public int frecuencia;
+        public int monto;
+        public String segmento;
+    }
+
+    private static final String SELECT_RESUMEN = """
+            SELECT r.IdCliente, c.nombreCliente, c.apellidos, c.tipo_cliente,
+                   r.total_historico, r.num_facturas, r.total_12_meses, r.num_facturas_12_meses, r.ultima_compra
+            """;
+
+    private static void mapResumen(java.sql.ResultSet rs, ResumenCompras r) throws java.sql.SQLException {
+        r.idCliente = rs.getLong("IDCLIENTE");
+        r.nombreCliente = rs.getString("NOMBRECLIENTE");
+        r.apellidos = rs.getString("APELLIDOS");
+        r.tipoCliente = rs.getString("TIPO_CLIENTE");
+        r.totalHistorico = rs.getBigDecimal("TOTAL_HISTORICO");
+        r.numFacturas = rs.getLong("NUM_FACTURAS");
+        r.total12Meses = rs.getBigDecimal("TOTAL_12_MESES");
+        r.numFacturas12Meses = rs.getLong("NUM_FACTURAS_12_MESES");
+        Timestamp ultima = rs.getTimestamp("ULTIMA_COMPRA");
+        r.ultimaCompra = ultima != null ? ultima.toLocalDateTime() : null;
+        r.ticketPromedio = r.numFacturas > 0 && r.totalHistorico != null
+                ? r.totalHistorico.divide(BigDecimal.valueOf(r.numFacturas), 2, RoundingMode.HALF_UP)
+                : BigDecimal.ZERO;
+    }
+
+    private final RowMapper<ResumenCompras> resumenMapper = (rs, i) -> {
+        ResumenCompras r = new ResumenCompras();
+        mapResumen(rs, r);
+        return r;
+    };
+
+    /**
+     * Suma (o resta, con valores negativos) compras pagadas al mes indicado
+     * y recalcula la fila de resumen del cliente a partir de sus meses.
+     * @param idCliente ID del cliente
+     * @param mes cualquier día del mes afectado
+     * @param total importe a sumar
+     * @param facturas facturas a sumar
+     * @param fecha fecha de la factura; con delta positivo puede pasar a ser la última compra
+     */
+    public void aplicarDelta(Long idCliente, LocalDate mes, BigDecimal total, int facturas, LocalDateTime fecha) {
+        mergeConReintento("""
+                MERGE INTO ClienteComprasMes m
+                USING (SELECT ? AS IdCliente, TRUNC(?, 'MM') AS mes FROM dual) s
+                ON (m.IdCliente = s.IdCliente AND m.mes = s.mes)
+                WHEN MATCHED THEN UPDATE SET m.total = m.total + ?, m.num_facturas = m.num_facturas + ?
+                WHEN NOT MATCHED THEN INSERT (IdCliente, mes, total, num_facturas) VALUES (s.IdCliente, s.mes, ?, ?)
+                """, idCliente, Date.valueOf(mes), total, facturas, total, facturas);
+
+        mergeConReintento("""
+                MERGE INTO ClienteResumenCompras r
+                USING (SELECT ? AS IdCliente,
+                              NVL(SUM(total), 0) AS total_historico,
+                              NVL(SUM(num_facturas), 0) AS num_facturas,
+                              NVL(SUM(CASE WHEN mes >= %1$s THEN total END), 0) AS total_12_meses,
+                              NVL(SUM(CASE WHEN mes >= %1$s THEN num_facturas END), 0) AS num_facturas_12_meses
+                       FROM ClienteComprasMes WHERE IdCliente = ?) s
+                ON (r.IdCliente = s.IdCliente)
+                WHEN MATCHED THEN UPDATE SET r.total_historico = s.total_historico, r.num_facturas = s.num_facturas,
+                     r.total_12_meses = s.total_12_meses, r.num_facturas_12_meses = s.num_facturas_12_meses,
+                     r.fecha_actualizacion = SYSDATE
+                WHEN NOT MATCHED THEN INSERT (IdCliente, total_historico, num_facturas, total_12_meses,
+                     num_facturas_12_meses, fecha_actualizacion)
+                     VALUES (s.IdCliente, s.total_historico, s.num_facturas, s.total_12_meses,
+                     s.num_facturas_12_meses, SYSDATE)
+                """.formatted(INICIO_12_MESES), idCliente, idCliente);
+
+        if (total.signum() >= 0 && facturas >= 0 && fecha != null) {
+            jdbcTemplate.update("UPDATE ClienteResumenCompras SET ultima_compra = GREATEST(NVL(ultima_compra, ?), ?) " +
+                    "WHERE IdCliente = ?", Timestamp.valueOf(fecha), Timestamp.valueOf(fecha), idCliente);
+        } else {
+            // Al restar no se sabe si era la última compra: se vuelve a leer
+            jdbcTemplate.update("UPDATE ClienteResumenCompras SET ultima_compra = " +
+                    "(SELECT MAX(fecha) FROM Factura WHERE IdCliente = ? AND estado = 'PAGADA') WHERE IdCliente = ?",
+                    idCliente, idCliente);
+        }
+    }
+
+    /**
+     * Dos MERGE simultáneos sobre una clave nueva intentan insertarla ambos y
+     * uno falla con ORA-00001; al repetirlo la fila ya existe y se actualiza
+     */
+    private void mergeConReintento(String sql, Object... args) {
+        try {
+            jdbcTemplate.update(sql, args);
+        } catch (DuplicateKeyException ex) {
+            jdbcTemplate.update(sql, args);
+        }
+    }
+
+    public interface CandidatoLimiteHandler {
+        void cliente(long idCliente, BigDecimal total12Meses);
+    }
+
+    /**
+     * Clientes VIP activos cuyas compras de los últimos 12 meses superan el umbral.
+     * La ventana es móvil, como en sp_actualizar_limites_credito (desde
+     * ADD_MONTHS(SYSDATE, -12)), no por meses calendario: los 11 meses previos
+     * completos y el actual salen de ClienteComprasMes, y la parte del mes
+     * inicial que cae dentro de la ventana se suma desde Factura.
+     */
+    public void recorrerCandidatosLimite(BigDecimal umbral, CandidatoLimiteHandler handler) {
+        jdbcTemplate.query("""
+                SELECT c.IdCliente, NVL(m.total, 0) + NVL(f.total, 0) AS total_12_meses
+                FROM Clientes c
+                LEFT JOIN (SELECT IdCliente, SUM(total) AS total FROM ClienteComprasMes
+                           WHERE mes >= %1$s GROUP BY IdCliente) m ON m.IdCliente = c.IdCliente
+                LEFT JOIN (SELECT IdCliente, SUM(total) AS total FROM Factura
+                           WHERE estado = 'PAGADA' AND fecha >= ADD_MONTHS(SYSDATE, -12) AND fecha < %1$s
+                           GROUP BY IdCliente) f ON f.IdCliente = c.IdCliente
+                WHERE c.tipo_cliente = 'VIP' AND c.activo = 1
+                  AND NVL(m.total, 0) + NVL(f.total, 0) > ?
+                """.formatted(INICIO_12_MESES), rs -> {
+            handler.cliente(rs.getLong(1), rs.getBigDecimal(2));
+        }, umbral);
+    }
+
+    /**
+     * Desplaza la ventana de 12 meses de todos los clientes (proceso nocturno)
+     * @return filas actualizadas
+     */
+    public int refrescarUltimos12Meses() {
+        return jdbcTemplate.update("""
+                UPDATE ClienteResumenCompras r
+                SET (total_12_meses, num_facturas_12_meses) = (
+                        SELECT NVL(SUM(m.total), 0), NVL(SUM(m.num_facturas), 0)
+                        FROM ClienteComprasMes m
+                        WHERE m.IdCliente = r.IdCliente AND m.mes >= %s),
+                    fecha_actualizacion = SYSDATE
+                """.formatted(INICIO_12_MESES));
+    }
+
+    /**
+     * Reconstruye todos los acumulados desde la tabla Factura
+     * @return clientes con resumen
+     */
+    public int reconstruir() {
+        // Los cambios de otros nodos esperan a que termine la transacción
+        jdbcTemplate.execute("LOCK TABLE ClienteComprasMes IN EXCLUSIVE MODE");
+        jdbcTemplate.execute("LOCK TABLE ClienteResumenCompras IN EXCLUSIVE MODE");
+        jdbcTemplate.update("DELETE FROM ClienteResumenCompras");
+        jdbcTemplate.update("DELETE FROM ClienteComprasMes");
+        jdbcTemplate.update("""
+                INSERT INTO ClienteComprasMes (IdCliente, mes, total, num_facturas)
+                SELECT IdCliente, TRUNC(fecha, 'MM'), NVL(SUM(total), 0), COUNT(*)
+                FROM Factura
+                WHERE estado = 'PAGADA'
+                GROUP BY IdCliente, TRUNC(fecha, 'MM')
+                """);
+        return jdbcTemplate.update("""
+                INSERT INTO ClienteResumenCompras (IdCliente, total_historico, num_facturas, total_12_meses,
+                                                   num_facturas_12_meses, ultima_compra, fecha_actualizacion)
+                SELECT m.IdCliente, SUM(m.total), SUM(m.num_facturas),
+                       NVL(SUM(CASE WHEN m.mes >= %1$s THEN m.total END), 0),
+                       NVL(SUM(CASE WHEN m.mes >= %1$s THEN m.num_facturas END), 0),
+                       MAX(u.ultima), SYSDATE
+                FROM ClienteComprasMes m
+                JOIN (SELECT IdCliente, MAX(fecha) AS ultima FROM Factura WHERE estado = 'PAGADA' GROUP BY IdCliente) u
+                  ON u.IdCliente = m.IdCliente
+                GROUP BY m.IdCliente
+                """.formatted(INICIO_12_MESES));
+    }
+
+    /**
+     * Cabecera actual de las facturas indicadas (cliente, fecha, total y
+     * estado); dentro de una transacción SERIALIZABLE es la que vio la reconstrucción
+     */
+    public Map<Long, FacturaSnapshot> cabeceras(Collection<Long> ids) {
+        Map<Long, FacturaSnapshot> resultado = new HashMap<>();
+        List<Long> lista = new ArrayList<>(ids);
+        // Oracle admite hasta 1000 elementos por lista IN
+        for (int i = 0; i < lista.size(); i += 1000) {
+            List<Long> bloque = lista.subList(i, Math.min(i + 1000, lista.size()));
+            String marcas = String.join(",", Collections.nCopies(bloque.size(), "?"));
+            jdbcTemplate.query("SELECT IdFactura, IdCliente, fecha, total, estado FROM Factura " +
+                    "WHERE IdFactura IN (" + marcas + ")", rs -> {
+                FacturaSnapshot f = new FacturaSnapshot();
+                f.idFactura = rs.getLong("IdFactura");
+                long idCliente = rs.getLong("IdCliente");
+                f.idCliente = rs.wasNull() ? null : idCliente;
+                Timestamp fecha = rs.getTimestamp("fecha");
+                f.fecha = fecha != null ? fecha.toLocalDateTime() : null;
+                f.total = rs.getBigDecimal("total") != null ? rs.getBigDecimal("total") : BigDecimal.ZERO;
+                f.estado = rs.getString("estado");
+                resultado.put(f.idFactura, f);
+            }, bloque.toArray());
+        }
+        return resultado;
+    }
+
+    /**
+     * IDs de clientes VIP activos con compras históricas sobre el límite, de mayor a menor
+     */
+    public List<Long> idsVip(BigDecimal limite) {
+        return reportesJdbcTemplate.queryForList("""
+                SELECT r.IdCliente FROM ClienteResumenCompras r
+                JOIN Clientes c ON c.IdCliente = r.IdCliente
+                WHERE c.tipo_cliente = 'VIP' AND c.activo = 1 AND r.total_historico > ?
+                ORDER BY r.total_historico DESC
+                """, Long.class, limite);
+    }
+
+    /**
+     * Clientes activos con mayor volumen de compras
+     * @param limite cantidad de clientes
+     * @param ultimos12Meses ordena por los últimos 12 meses en vez del histórico
+     * @param minimo monto mínimo en el periodo (null para no filtrar)
+     */
+    public List<ResumenCompras> top(int limite, boolean ultimos12Meses, BigDecimal minimo) {
+        String columna = ultimos12Meses ? "r.total_12_meses" : "r.total_historico";
+        String sql = SELECT_RESUMEN +
+                "FROM ClienteResumenCompras r JOIN Clientes c ON c.IdCliente = r.IdCliente " +
+                "WHERE c.activo = 1 AND " + columna + " > 0" + (minimo != null ? " AND " + columna + " >= ?" : "") +
+                " ORDER BY " + columna + " DESC FETCH FIRST ? ROWS ONLY";
+        return minimo != null
+                ? reportesJdbcTemplate.query(sql, resumenMapper, minimo, limite)
+                : reportesJdbcTemplate.query(sql, resumenMapper, limite);
+    }
+
+    public java.util.Optional<ResumenCompras> obtener(Long idCliente) {
+        List<ResumenCompras> r = jdbcTemplate.query(SELECT_RESUMEN +
+                "FROM ClienteResumenCompras r JOIN Clientes c ON c.IdCliente = r.IdCliente WHERE r.IdCliente = ?",
+                resumenMapper, idCliente);
+        return r.stream().findFirst();
+    }
+
+    /**
+     * Puntajes RFM (1 a 5) de los clientes activos con compras en los últimos 12 meses.
+     * Recencia por última compra, frecuencia y monto por los acumulados de 12 meses.
+     */
+    public List<ResumenRfm> rfm() {
+        String sql = SELECT_RESUMEN + """
+                     , NTILE(5) OVER (ORDER BY r.ultima_compra) AS rec,
+                       NTILE(5) OVER (ORDER BY r.num_facturas_12_meses) AS frec,
+                       NTILE(5) OVER (ORDER BY r.total_12_meses) AS mon
+                FROM ClienteResumenCompras r JOIN Clientes c ON c.IdCliente = r.IdCliente
+                WHERE c.activo = 1 AND r.num_facturas_12_meses > 0
+                ORDER BY r.total_12_meses DESC
+                """;
+        return reportesJdbcTemplate.query(sql, (rs, i) -> {
+            ResumenRfm r = new ResumenRfm();
+            mapResumen(rs, r);
+            r.recencia = rs.getInt("REC");
+            r.frecuencia = rs.getInt("FREC");
+            r.monto = rs.getInt("MON");
+            return r;
+        });
+    }
+}
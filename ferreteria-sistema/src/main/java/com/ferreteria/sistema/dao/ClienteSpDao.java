@@ -148,6 +148,77 @@ public class ClienteSpDao {
         call.execute(in);
     }
 
+    public interface ClienteIndiceHandler {
+        void cliente(long idCliente, String nombre, String apellidos, String cedula, String email, String telefono, boolean activo);
+    }
+
+    /**
+     * Recorre los datos de búsqueda de todos los clientes sin materializar la lista
+     */
+    public void recorrerParaIndice(ClienteIndiceHandler handler) {
+        JdbcTemplate streaming = new JdbcTemplate(jdbcTemplate.getDataSource());
+        streaming.setFetchSize(2000);
+        streaming.query("SELECT IdCliente, nombreCliente, apellidos, cedula, email, telefono, activo FROM Clientes", rs -> {
+            handler.cliente(rs.getLong(1), rs.getString(2), rs.getString(3), rs.getString(4),
+                    rs.getString(5), rs.getString(6), rs.getInt(7) == 1);
+        });
+    }
+
+    public interface ExposicionHandler {
+        void cliente(long idCliente, java.math.BigDecimal limiteCredito, java.math.BigDecimal saldoPendiente);
+    }
+
+    /**
+     * Límite de crédito y saldo de facturas PENDIENTE de cada cliente activo
+     */
+    public void recorrerExposicion(ExposicionHandler handler) {
+        JdbcTemplate streaming = new JdbcTemplate(jdbcTemplate.getDataSource());
+        streaming.setFetchSize(2000);
+        streaming.query("""
+                SELECT c.IdCliente, NVL(c.limite_credito, 0) AS limite_credito, NVL(p.saldo, 0) AS saldo
+                FROM Clientes c
+                LEFT JOIN (SELECT IdCliente, SUM(total) AS saldo FROM Factura
+                           WHERE estado = 'PENDIENTE' GROUP BY IdCliente) p ON p.IdCliente = c.IdCliente
+                WHERE c.activo = 1
+                """, rs -> {
+            handler.cliente(rs.getLong(1), rs.getBigDecimal(2), rs.getBigDecimal(3));
+        });
+    }
+
+    /**
+     * Límite de crédito y saldo de facturas PENDIENTE de un cliente, activo o no
+     * @return false si el cliente no existe
+     */
+    public boolean leerExposicion(Long idCliente, ExposicionHandler handler) {
+        boolean[] encontrado = new boolean[1];
+        jdbcTemplate.query("""
+                SELECT c.IdCliente, NVL(c.limite_credito, 0) AS limite_credito,
+                       (SELECT NVL(SUM(f.total), 0) FROM Factura f
+                        WHERE f.IdCliente = c.IdCliente AND f.estado = 'PENDIENTE') AS saldo
+                FROM Clientes c
+                WHERE c.IdCliente = ?
+                """, rs -> {
+            encontrado[0] = true;
+            handler.cliente(rs.getLong(1), rs.getBigDecimal(2), rs.getBigDecimal(3));
+        }, idCliente);
+        return encontrado[0];
+    }
+
+    /**
+     * Actualiza límites de crédito por lotes; las filas sin cambio no se tocan
+     * @param limites pares IdCliente / nuevo límite
+     * @return filas actualizadas
+     */
+    public int actualizarLimitesCredito(Map<Long, java.math.BigDecimal> limites) {
+        List<Object[]> args = new ArrayList<>(limites.size());
+        limites.forEach((id, limite) -> args.add(new Object[]{limite, id, limite}));
+        int[] filas = jdbcTemplate.batchUpdate("UPDATE Clientes SET limite_credito = ?, fecha_modificacion = SYSDATE " +
+                "WHERE IdCliente = ? AND NVL(limite_credito, -1) <> ?", args);
+        int total = 0;
+        for (int f : filas) total += f > 0 ? f : (f == java.sql.Statement.SUCCESS_NO_INFO ? 1 : 0);
+        return total;
+    }
+
     public void eliminar(Long id) throws DataAccessException {
         SimpleJdbcCall call = new SimpleJdbcCall(jdbcTemplate)
                 .withCatalogName("PKG_FERRETERIA")
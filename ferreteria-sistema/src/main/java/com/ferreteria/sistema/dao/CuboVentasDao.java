@@ -0,0 +1,69 @@
+package com.ferreteria.sistema.dao;
+
+import com.ferreteria.sistema.config.DataSourceConfig;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+
+/**
+ * Lecturas en streaming para el cubo de ventas en memoria
+ */
+@Repository
+public class CuboVentasDao {
+    private final JdbcTemplate jdbcTemplate;
+
+    public CuboVentasDao(@Qualifier(DataSourceConfig.REPORTES) DataSource dataSource,
+            @Value("${ferreteria.reportes.datasource.timeout-consulta-segundos:300}") int timeoutSegundos) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setQueryTimeout(timeoutSegundos);
+        this.jdbcTemplate.setFetchSize(2000);
+    }
+
+    public interface LineaHandler {
+        /**
+         * @param mes año * 12 + mes - 1
+         * @param importe subtotal de la línea en centavos
+         */
+        void linea(long idFactura, int mes, String metodoPago, long idUsuario, long idProducto, long cantidad, long importe);
+    }
+
+    public interface ProductoHandler {
+        void producto(long idProducto, String categoria, String marca);
+    }
+
+    public interface UsuarioHandler {
+        void usuario(long idUsuario, String nombreUsuario);
+    }
+
+    /**
+     * Recorre las líneas de todas las facturas PAGADA, agrupadas por factura
+     */
+    public void recorrerLineasPagadas(LineaHandler handler) {
+        jdbcTemplate.query("""
+                SELECT d.IdFactura, EXTRACT(YEAR FROM f.fecha) * 12 + EXTRACT(MONTH FROM f.fecha) - 1,
+                       f.metodo_pago, NVL(f.IdUsuario, 0), d.IdProducto, d.cantidad, ROUND(d.subtotal * 100)
+                FROM detalleFactura d
+                INNER JOIN Factura f ON f.IdFactura = d.IdFactura
+                WHERE f.estado = 'PAGADA'
+                ORDER BY d.IdFactura
+                """, rs -> {
+            handler.linea(rs.getLong(1), rs.getInt(2), rs.getString(3), rs.getLong(4),
+                    rs.getLong(5), rs.getLong(6), rs.getLong(7));
+        });
+    }
+
+    public void recorrerProductos(ProductoHandler handler) {
+        jdbcTemplate.query("SELECT IdProducto, categoria, marca FROM Productos", rs -> {
+            handler.producto(rs.getLong(1), rs.getString(2), rs.getString(3));
+        });
+    }
+
+    public void recorrerUsuarios(UsuarioHandler handler) {
+        jdbcTemplate.query("SELECT IdUsuario, nombreUsuario FROM Usuarios", rs -> {
+            handler.usuario(rs.getLong(1), rs.getString(2));
+        });
+    }
+}
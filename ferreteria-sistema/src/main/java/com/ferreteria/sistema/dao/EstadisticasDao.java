@@ -0,0 +1,126 @@
+package com.ferreteria.sistema.dao;
+
+import com.ferreteria.sistema.config.DataSourceConfig;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Conteos agrupados de las entidades de catálogo.
+ *
+ * Cada entidad se resuelve con un único GROUP BY sobre sus dimensiones y
+ * los totales por dimensión se pliegan en memoria; nunca se cargan filas
+ * individuales.
+ */
+@Repository
+public class EstadisticasDao {
+    private final JdbcTemplate jdbcTemplate;
+
+    public EstadisticasDao(@Qualifier(DataSourceConfig.REPORTES) DataSource dataSource,
+            @Value("${ferreteria.reportes.datasource.timeout-consulta-segundos:300}") int timeoutSegundos) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setQueryTimeout(timeoutSegundos);
+    }
+
+    public static class Conteos {
+        public long total;
+        public Map<String, Map<String, Long>> grupos = new LinkedHashMap<>();
+
+        void sumar(String dimension, String valor, long cantidad) {
+            grupos.computeIfAbsent(dimension, k -> new TreeMap<>()).merge(valor, cantidad, Long::sum);
+        }
+    }
+
+    public static class ResumenGeneral {
+        public long clientes;
+        public long productos;
+        public long facturasMes;
+        public BigDecimal ventasMes = BigDecimal.ZERO;
+    }
+
+    /**
+     * @param sql consulta cuya última columna es COUNT(*) y las anteriores son las dimensiones
+     * @param dimensiones nombre de cada columna de agrupación, en orden
+     */
+    private Conteos agrupar(String sql, String... dimensiones) {
+        Conteos c = new Conteos();
+        for (String d : dimensiones) c.grupos.put(d, new TreeMap<>());
+        jdbcTemplate.query(sql, rs -> {
+            long cantidad = rs.getLong(dimensiones.length + 1);
+            c.total += cantidad;
+            for (int i = 0; i < dimensiones.length; i++) {
+                c.sumar(dimensiones[i], rs.getString(i + 1), cantidad);
+            }
+        });
+        return c;
+    }
+
+    private static final String ESTADO = "CASE WHEN activo = 1 THEN 'ACTIVO' ELSE 'INACTIVO' END";
+
+    public Conteos clientes() {
+        return agrupar("SELECT " + ESTADO + ", NVL(tipo_cliente, 'REGULAR'), COUNT(*) FROM Clientes " +
+                "GROUP BY activo, tipo_cliente", "estado", "tipo");
+    }
+
+    public Conteos productos() {
+        return agrupar("SELECT " + ESTADO + ", categoria, NVL(marca, 'SIN MARCA'), COUNT(*) FROM Productos " +
+                "GROUP BY activo, categoria, marca", "estado", "categoria", "marca");
+    }
+
+    public Conteos proveedores() {
+        return agrupar("SELECT " + ESTADO + ", NVL(condiciones_pago, 'SIN DEFINIR'), COUNT(*) FROM Proveedores " +
+                "GROUP BY activo, condiciones_pago", "estado", "condicionesPago");
+    }
+
+    public Conteos empleados() {
+        return agrupar("SELECT " + ESTADO + ", puesto, COUNT(*) FROM Empleados " +
+                "GROUP BY activo, puesto", "estado", "puesto");
+    }
+
+    public Conteos usuarios() {
+        return agrupar("SELECT CASE WHEN u.activo = 1 THEN 'ACTIVO' ELSE 'INACTIVO' END, r.nombre, COUNT(*) " +
+                "FROM Usuarios u JOIN Roles r ON r.IdRol = u.IdRol GROUP BY u.activo, r.nombre", "estado", "rol");
+    }
+
+    /**
+     * Clientes activos por tipo: {tipo, cantidad, límite de crédito promedio}, de más a menos clientes
+     */
+    public List<Object[]> clientesPorTipo() {
+        return jdbcTemplate.query("SELECT NVL(tipo_cliente, 'REGULAR') AS tipo, COUNT(*) AS cantidad, " +
+                "AVG(limite_credito) AS promedio FROM Clientes WHERE activo = 1 " +
+                "GROUP BY NVL(tipo_cliente, 'REGULAR') ORDER BY cantidad DESC",
+                (rs, i) -> new Object[]{rs.getString("tipo"), rs.getLong("cantidad"), rs.getBigDecimal("promedio")});
+    }
+
+    /**
+     * Totales del tablero: clientes y productos registrados, facturas y ventas PAGADA del mes
+     */
+    public ResumenGeneral resumenGeneral(LocalDate inicioMes) {
+        ResumenGeneral r = new ResumenGeneral();
+        Timestamp desde = Timestamp.valueOf(inicioMes.atStartOfDay());
+        Timestamp hasta = Timestamp.valueOf(inicioMes.plusMonths(1).atStartOfDay());
+        jdbcTemplate.query("""
+                SELECT (SELECT COUNT(*) FROM Clientes) AS clientes,
+                       (SELECT COUNT(*) FROM Productos) AS productos,
+                       (SELECT COUNT(*) FROM Factura WHERE estado = 'PAGADA' AND fecha >= ? AND fecha < ?) AS facturas,
+                       (SELECT NVL(SUM(total), 0) FROM VentasHora WHERE dia >= ? AND dia < ?) AS ventas
+                FROM dual
+                """, rs -> {
+            r.clientes = rs.getLong("CLIENTES");
+            r.productos = rs.getLong("PRODUCTOS");
+            r.facturasMes = rs.getLong("FACTURAS");
+            r.ventasMes = rs.getBigDecimal("VENTAS");
+        }, desde, hasta, desde, hasta);
+        return r;
+    }
+}
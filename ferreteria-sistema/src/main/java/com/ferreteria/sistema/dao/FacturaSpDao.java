@@ -4,6 +4,7 @@ import com.ferreteria.sistema.entity.Cliente;
 import com.ferreteria.sistema.entity.DetalleFactura;
 import com.ferreteria.sistema.entity.Factura;
 import com.ferreteria.sistema.entity.Usuario;
+import com.ferreteria.sistema.event.FacturaSnapshot;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
@@ -299,6 +300,41 @@ public class FacturaSpDao {
         }
     }
 
+    /**
+     * Cabecera y líneas de una factura, usadas para publicar sus cambios
+     */
+    public Optional<FacturaSnapshot> obtenerSnapshot(Long idFactura) {
+        String sql = "SELECT f.IdFactura, f.IdCliente, f.IdUsuario, f.fecha, f.total, f.estado, f.metodo_pago, " +
+                     "d.IdProducto, d.cantidad, d.subtotal " +
+                     "FROM Factura f LEFT JOIN detalleFactura d ON d.IdFactura = f.IdFactura " +
+                     "WHERE f.IdFactura = ?";
+        FacturaSnapshot[] snapshot = new FacturaSnapshot[1];
+        jdbcTemplate.query(sql, rs -> {
+            if (snapshot[0] == null) {
+                FacturaSnapshot s = new FacturaSnapshot();
+                s.idFactura = rs.getLong("IDFACTURA");
+                s.idCliente = rs.getLong("IDCLIENTE");
+                long idUsuario = rs.getLong("IDUSUARIO");
+                s.idUsuario = rs.wasNull() ? null : idUsuario;
+                java.sql.Timestamp f = rs.getTimestamp("FECHA");
+                s.fecha = f != null ? f.toLocalDateTime() : null;
+                s.total = rs.getBigDecimal("TOTAL") != null ? rs.getBigDecimal("TOTAL") : java.math.BigDecimal.ZERO;
+                s.estado = rs.getString("ESTADO");
+                s.metodoPago = rs.getString("METODO_PAGO");
+                snapshot[0] = s;
+            }
+            long idProducto = rs.getLong("IDPRODUCTO");
+            if (!rs.wasNull()) {
+                FacturaSnapshot.Linea l = new FacturaSnapshot.Linea();
+                l.idProducto = idProducto;
+                l.cantidad = rs.getLong("CANTIDAD");
+                l.subtotal = rs.getBigDecimal("SUBTOTAL") != null ? rs.getBigDecimal("SUBTOTAL") : java.math.BigDecimal.ZERO;
+                snapshot[0].lineas.add(l);
+            }
+        }, idFactura);
+        return Optional.ofNullable(snapshot[0]);
+    }
+
     public void anular(Long id) {
         new SimpleJdbcCall(jdbcTemplate)
                 .withCatalogName("PKG_VENTAS").withProcedureName("SP_ANULAR_FACTURA")
@@ -65,55 +65,95 @@ public class HorarioSpDao {
         };
     }
 
+    private static final String SELECT_CON_EMPLEADO = """
+            SELECT h.IDHORARIO, h.IDEMPLEADO, h.FECHA, h.HORA_ENTRADA, h.HORA_SALIDA,
+                   h.OBSERVACIONES, h.HORAS_TRABAJADAS,
+                   e.NOMBREEMPLEADO AS NOMBRE_EMPLEADO, e.APELLIDOS, e.PUESTO
+            FROM HORARIOS h
+            LEFT JOIN EMPLEADOS e ON h.IDEMPLEADO = e.IDEMPLEADO
+            """;
+
     public List<Horario> listar() {
-        try {
-            System.out.println("DEBUG - Iniciando consulta de horarios...");
-            
-            // Primero intentar una consulta simple para verificar la estructura
-            String simpleSql = "SELECT COUNT(*) FROM HORARIOS";
-            Integer count = jdbcTemplate.queryForObject(simpleSql, Integer.class);
-            System.out.println("DEBUG - Hay " + count + " registros en HORARIOS");
-            
-            // Verificar también empleados
-            String empSql = "SELECT COUNT(*) FROM EMPLEADOS";
-            Integer empCount = jdbcTemplate.queryForObject(empSql, Integer.class);
-            System.out.println("DEBUG - Hay " + empCount + " registros en EMPLEADOS");
-            
-            // Consulta con JOIN para incluir empleados
-            String sqlConJoin = """
-                SELECT h.IDHORARIO, h.IDEMPLEADO, h.FECHA, h.HORA_ENTRADA, h.HORA_SALIDA, 
-                       h.OBSERVACIONES,
-                       e.NOMBRE_EMPLEADO, e.APELLIDOS, e.PUESTO
-                FROM HORARIOS h 
-                LEFT JOIN EMPLEADOS e ON h.IDEMPLEADO = e.IDEMPLEADO
-                ORDER BY h.FECHA DESC, h.IDHORARIO DESC
-                """;
-            
-            System.out.println("DEBUG - Ejecutando consulta con JOIN...");
-            List<Horario> result = jdbcTemplate.query(sqlConJoin, mapperConEmpleado());
-            System.out.println("DEBUG - Resultado: " + result.size() + " horarios encontrados");
-            
-            return result;
-            
-        } catch (Exception e) {
-            System.out.println("ERROR en listar horarios: " + e.getMessage());
-            e.printStackTrace();
-            
-            // Si falla el JOIN, intentar sin él
-            try {
-                System.out.println("DEBUG - Intentando consulta básica como fallback...");
-                String basicSql = """
-                    SELECT h.IDHORARIO, h.IDEMPLEADO, h.FECHA, h.HORA_ENTRADA, h.HORA_SALIDA, 
-                           h.OBSERVACIONES
-                    FROM HORARIOS h 
-                    ORDER BY h.FECHA DESC, h.IDHORARIO DESC
-                    """;
-                return jdbcTemplate.query(basicSql, mapper());
-            } catch (Exception e2) {
-                System.out.println("ERROR también en consulta básica: " + e2.getMessage());
-                throw e2;
-            }
+        return jdbcTemplate.query(SELECT_CON_EMPLEADO + " ORDER BY h.FECHA DESC, h.IDHORARIO DESC", mapperConEmpleado());
+    }
+
+    /**
+     * Horarios con fecha en [desde, hastaExclusivo), en orden ascendente por llave (FECHA, IDHORARIO).
+     * Con despuesDeFecha/despuesDeId se continúa a partir de la última fila de la página anterior.
+     */
+    public List<Horario> buscarRango(java.time.LocalDate desde, java.time.LocalDate hastaExclusivo, Long idEmpleado,
+                                     java.time.LocalDate despuesDeFecha, Long despuesDeId, int limite) {
+        StringBuilder sql = new StringBuilder(SELECT_CON_EMPLEADO).append(" WHERE h.FECHA >= ? AND h.FECHA < ?");
+        List<Object> args = new ArrayList<>();
+        args.add(java.sql.Date.valueOf(desde));
+        args.add(java.sql.Date.valueOf(hastaExclusivo));
+        if (idEmpleado != null) { sql.append(" AND h.IDEMPLEADO = ?"); args.add(idEmpleado); }
+        if (despuesDeFecha != null && despuesDeId != null) {
+            java.sql.Date f = java.sql.Date.valueOf(despuesDeFecha);
+            sql.append(" AND (h.FECHA > ? OR (h.FECHA = ? AND h.IDHORARIO > ?))");
+            args.add(f); args.add(f); args.add(despuesDeId);
         }
+        sql.append(" ORDER BY h.FECHA, h.IDHORARIO FETCH FIRST ? ROWS ONLY");
+        args.add(limite);
+        return jdbcTemplate.query(sql.toString(), mapperConEmpleado(), args.toArray());
+    }
+
+    public static class HorasDia {
+        public Long idEmpleado;
+        public String nombreEmpleado;
+        public String apellidos;
+        public String puesto;
+        public java.time.LocalDate fecha;
+        public java.math.BigDecimal horas;
+    }
+
+    /**
+     * Horas trabajadas por empleado y día en [desde, hastaExclusivo), agrupadas en una sola consulta
+     */
+    public List<HorasDia> horasPorDia(java.time.LocalDate desde, java.time.LocalDate hastaExclusivo, Long idEmpleado) {
+        StringBuilder sql = new StringBuilder("""
+                SELECT h.IDEMPLEADO, e.NOMBREEMPLEADO AS NOMBRE_EMPLEADO, e.APELLIDOS, e.PUESTO, h.FECHA,
+                       SUM(h.HORAS_TRABAJADAS) AS HORAS
+                FROM HORARIOS h
+                LEFT JOIN EMPLEADOS e ON h.IDEMPLEADO = e.IDEMPLEADO
+                WHERE h.FECHA >= ? AND h.FECHA < ?
+                """);
+        List<Object> args = new ArrayList<>();
+        args.add(java.sql.Date.valueOf(desde));
+        args.add(java.sql.Date.valueOf(hastaExclusivo));
+        if (idEmpleado != null) { sql.append(" AND h.IDEMPLEADO = ?"); args.add(idEmpleado); }
+        sql.append(" GROUP BY h.IDEMPLEADO, e.NOMBREEMPLEADO, e.APELLIDOS, e.PUESTO, h.FECHA")
+           .append(" ORDER BY e.NOMBREEMPLEADO, e.APELLIDOS, h.IDEMPLEADO, h.FECHA");
+        return jdbcTemplate.query(sql.toString(), (rs, i) -> {
+            HorasDia d = new HorasDia();
+            d.idEmpleado = rs.getLong("IDEMPLEADO");
+            d.nombreEmpleado = rs.getString("NOMBRE_EMPLEADO");
+            d.apellidos = rs.getString("APELLIDOS");
+            d.puesto = rs.getString("PUESTO");
+            d.fecha = rs.getDate("FECHA").toLocalDate();
+            d.horas = rs.getBigDecimal("HORAS");
+            return d;
+        }, args.toArray());
+    }
+
+    public interface TurnoHandler {
+        void turno(long idEmpleado, int minutoEntrada, int minutoSalida);
+    }
+
+    /**
+     * Recorre los turnos con fecha en [desde, hastaExclusivo) sin materializar la lista.
+     * Las horas se leen ya convertidas a minutos desde medianoche.
+     */
+    public void recorrerTurnos(java.time.LocalDate desde, java.time.LocalDate hastaExclusivo, TurnoHandler handler) {
+        JdbcTemplate streaming = new JdbcTemplate(jdbcTemplate.getDataSource());
+        streaming.setFetchSize(2000);
+        streaming.query("""
+                SELECT IDEMPLEADO, ROUND(HORA_ENTRADA * 60), ROUND(HORA_SALIDA * 60)
+                FROM HORARIOS
+                WHERE FECHA >= ? AND FECHA < ?
+                """, rs -> {
+            handler.turno(rs.getLong(1), rs.getInt(2), rs.getInt(3));
+        }, java.sql.Date.valueOf(desde), java.sql.Date.valueOf(hastaExclusivo));
     }
 
     public Optional<Horario> obtenerPorId(Long id) {
@@ -131,7 +171,7 @@ public class HorarioSpDao {
         String sql = """
             SELECT h.IDHORARIO, h.IDEMPLEADO, h.FECHA, h.HORA_ENTRADA, h.HORA_SALIDA, 
                    h.OBSERVACIONES, h.HORAS_TRABAJADAS,
-                   e.NOMBRE_EMPLEADO, e.APELLIDOS, e.PUESTO
+                   e.NOMBREEMPLEADO AS NOMBRE_EMPLEADO, e.APELLIDOS, e.PUESTO
             FROM HORARIOS h 
             LEFT JOIN EMPLEADOS e ON h.IDEMPLEADO = e.IDEMPLEADO
             WHERE h.IDEMPLEADO = ?
@@ -214,6 +254,42 @@ public class HorarioSpDao {
         }
     }
 
+    /**
+     * Turnos con fecha en [desde, hastaExclusivo), sin datos del empleado
+     */
+    public List<Horario> listarTurnos(java.time.LocalDate desde, java.time.LocalDate hastaExclusivo) {
+        String sql = """
+            SELECT h.IDHORARIO, h.IDEMPLEADO, h.FECHA, h.HORA_ENTRADA, h.HORA_SALIDA, h.OBSERVACIONES
+            FROM HORARIOS h
+            WHERE h.FECHA >= ? AND h.FECHA < ?
+            """;
+        return jdbcTemplate.query(sql, mapper(), java.sql.Date.valueOf(desde), java.sql.Date.valueOf(hastaExclusivo));
+    }
+
+    /**
+     * Inserta varios horarios con una sentencia en lote
+     * @return filas insertadas
+     */
+    public int insertarLote(List<Horario> horarios) {
+        String sql = """
+            INSERT INTO HORARIOS (IDEMPLEADO, FECHA, HORA_ENTRADA, HORA_SALIDA, OBSERVACIONES)
+            VALUES (?, ?, ?, ?, ?)
+            """;
+        if (horarios.isEmpty()) return 0;
+        int[] filas = jdbcTemplate.batchUpdate(sql, new org.springframework.jdbc.core.BatchPreparedStatementSetter() {
+            @Override public void setValues(java.sql.PreparedStatement ps, int i) throws SQLException {
+                Horario h = horarios.get(i);
+                ps.setLong(1, h.getIdEmpleado());
+                ps.setDate(2, java.sql.Date.valueOf(h.getFecha()));
+                ps.setBigDecimal(3, h.getHoraEntrada());
+                ps.setBigDecimal(4, h.getHoraSalida());
+                ps.setString(5, h.getObservaciones());
+            }
+            @Override public int getBatchSize() { return horarios.size(); }
+        });
+        return filas.length;
+    }
+
     public void actualizar(Long id, Horario h) {
         String sql = """
             UPDATE HORARIOS 
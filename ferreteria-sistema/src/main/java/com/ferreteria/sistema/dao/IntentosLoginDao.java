@@ -0,0 +1,72 @@
+package com.ferreteria.sistema.dao;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Escrituras en lote de intentos fallidos y último acceso sobre Usuarios.
+ *
+ * Los usuarios se identifican por el texto con el que intentaron entrar,
+ * que puede ser el nombre de usuario o el email (igual que en el login).
+ */
+@Repository
+public class IntentosLoginDao {
+    private final JdbcTemplate jdbcTemplate;
+
+    public IntentosLoginDao(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    private static final String POR_LOGIN = "(NOMBREUSUARIO = ? OR EMAIL = ?)";
+
+    public static class Cambio {
+        public String login;
+        /** true si hubo un ingreso correcto: el contador parte de cero */
+        public boolean reiniciar;
+        public int fallos;
+        public LocalDateTime ultimoAcceso;
+    }
+
+    /**
+     * Aplica los cambios acumulados con dos sentencias en lote: primero las
+     * sumas de fallos y después los reinicios (con último acceso), que fijan
+     * el valor final de quienes ingresaron bien
+     */
+    public void aplicar(List<Cambio> cambios) {
+        List<Object[]> reinicios = new ArrayList<>();
+        List<Object[]> sumas = new ArrayList<>();
+        for (Cambio c : cambios) {
+            String login = c.login;
+            if (c.reiniciar) {
+                reinicios.add(new Object[]{c.fallos, Timestamp.valueOf(c.ultimoAcceso), login, login});
+            } else if (c.fallos > 0) {
+                sumas.add(new Object[]{c.fallos, login, login});
+            }
+        }
+        if (!sumas.isEmpty()) {
+            // FECHA_MODIFICACION marca el inicio del bloqueo para desbloquear()
+            jdbcTemplate.batchUpdate("UPDATE Usuarios SET INTENTOS_FALLIDOS = INTENTOS_FALLIDOS + ?, " +
+                    "FECHA_MODIFICACION = SYSDATE WHERE " + POR_LOGIN, sumas);
+        }
+        if (!reinicios.isEmpty()) {
+            jdbcTemplate.batchUpdate("UPDATE Usuarios SET INTENTOS_FALLIDOS = ?, ULTIMO_ACCESO = ?, " +
+                    "FECHA_MODIFICACION = SYSDATE WHERE " + POR_LOGIN, reinicios);
+        }
+    }
+
+    /**
+     * Reinicia en una sola sentencia a los usuarios bloqueados antes de la fecha límite
+     * @return usuarios desbloqueados
+     */
+    public int desbloquear(int limite, LocalDateTime bloqueadosAntesDe) {
+        return jdbcTemplate.update("UPDATE Usuarios SET INTENTOS_FALLIDOS = 0, FECHA_MODIFICACION = SYSDATE " +
+                "WHERE INTENTOS_FALLIDOS >= ? AND ACTIVO = 1 AND FECHA_MODIFICACION < ?",
+                limite, Timestamp.valueOf(bloqueadosAntesDe));
+    }
+}
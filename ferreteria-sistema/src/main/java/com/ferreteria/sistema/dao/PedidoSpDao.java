@@ -2,6 +2,7 @@ package com.ferreteria.sistema.dao;
 
 import com.ferreteria.sistema.entity.Pedido;
 import com.ferreteria.sistema.entity.Proveedor;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
@@ -9,6 +10,7 @@ import org.springframework.jdbc.core.simple.SimpleJdbcCall;
 import org.springframework.stereotype.Repository;
 
 import javax.sql.DataSource;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
@@ -20,7 +22,17 @@ public class PedidoSpDao {
 
     private RowMapper<Pedido> mapper() {
         return new RowMapper<Pedido>() {
+            // Columnas presentes en el cursor, leídas una sola vez por resultado
+            private Set<String> columnas;
+
             @Override public Pedido mapRow(ResultSet rs, int rowNum) throws SQLException {
+                if (columnas == null) {
+                    columnas = new HashSet<>();
+                    java.sql.ResultSetMetaData md = rs.getMetaData();
+                    for (int i = 1; i <= md.getColumnCount(); i++) {
+                        columnas.add(md.getColumnLabel(i).toUpperCase());
+                    }
+                }
                 Pedido p = new Pedido();
                 p.setIdPedido(rs.getLong("IDPEDIDO"));
                 p.setNumeroPedido(rs.getString("NUMERO_PEDIDO"));
@@ -35,28 +47,29 @@ public class PedidoSpDao {
                     try { p.setEstado(Pedido.EstadoPedido.valueOf(normalized)); } catch (IllegalArgumentException ignored) {}
                 }
                 // DESCRIPCION puede no venir en el cursor
-                try { p.setDescripcion(rs.getString("DESCRIPCION")); } catch (Exception ignored) {}
+                if (columnas.contains("DESCRIPCION")) p.setDescripcion(rs.getString("DESCRIPCION"));
+                if (columnas.contains("FECHA_MODIFICACION")) {
+                    java.sql.Timestamp fm = rs.getTimestamp("FECHA_MODIFICACION");
+                    if (fm != null) p.setFechaModificacion(fm.toLocalDateTime());
+                }
                 // Mapear proveedor por ID/nombre si vienen en el cursor
-                try {
-                    Proveedor prov = p.getProveedor();
-                    if (prov == null) prov = new Proveedor();
-                    boolean setAny = false;
-                    try {
-                        long idProv = rs.getLong("IDPROVEEDOR");
-                        if (!rs.wasNull()) {
-                            prov.setIdProveedor(idProv);
-                            setAny = true;
-                        }
-                    } catch (Exception ignoredInner) {}
-                    try {
-                        String nombreProv = rs.getString("NOMBREPROVEEDOR");
-                        if (nombreProv != null) {
-                            prov.setNombreProveedor(nombreProv);
-                            setAny = true;
-                        }
-                    } catch (Exception ignoredInner) {}
-                    if (setAny) p.setProveedor(prov);
-                } catch (Exception ignored) {}
+                Proveedor prov = new Proveedor();
+                boolean setAny = false;
+                if (columnas.contains("IDPROVEEDOR")) {
+                    long idProv = rs.getLong("IDPROVEEDOR");
+                    if (!rs.wasNull()) {
+                        prov.setIdProveedor(idProv);
+                        setAny = true;
+                    }
+                }
+                if (columnas.contains("NOMBREPROVEEDOR")) {
+                    String nombreProv = rs.getString("NOMBREPROVEEDOR");
+                    if (nombreProv != null) {
+                        prov.setNombreProveedor(nombreProv);
+                        setAny = true;
+                    }
+                }
+                if (setAny) p.setProveedor(prov);
                 java.sql.Timestamp fe = rs.getTimestamp("FECHA_ENTREGA_ESPERADA");
                 if (fe != null) {
                     p.setFechaEntregaEsperada(fe.toLocalDateTime().toLocalDate());
@@ -75,6 +88,76 @@ public class PedidoSpDao {
         return list != null ? list : Collections.emptyList();
     }
 
+    private static final String SELECT_LISTADO = """
+            SELECT p.IdPedido, p.numero_pedido, p.fecha, p.total, p.estado, p.descripcion,
+                   p.fecha_entrega_esperada, p.fecha_modificacion, p.IdProveedor, pr.nombreProveedor
+            FROM Pedidos p JOIN Proveedores pr ON pr.IdProveedor = p.IdProveedor
+            """;
+
+    /**
+     * Página de pedidos ordenada por fecha e Id descendentes.
+     * La paginación es por llave (fecha, IdPedido) en lugar de OFFSET, de modo
+     * que cada página cuesta lo mismo sin importar cuántas haya antes.
+     * @param despuesDeFecha fecha del último pedido de la página anterior (null en la primera)
+     * @param despuesDeId Id del último pedido de la página anterior
+     */
+    public static class FilasPagina {
+        public final List<Pedido> pedidos = new ArrayList<>();
+        // Fecha completa (con hora) de cada pedido, necesaria para la llave del cursor
+        public final List<java.time.LocalDateTime> fechas = new ArrayList<>();
+    }
+
+    public FilasPagina buscarPagina(Long idProveedor, String estado, java.time.LocalDate entregaDesde, java.time.LocalDate entregaHasta,
+                                     java.time.LocalDateTime despuesDeFecha, Long despuesDeId, int limite) {
+        StringBuilder sql = new StringBuilder(SELECT_LISTADO).append(" WHERE 1 = 1");
+        List<Object> args = new ArrayList<>();
+        if (idProveedor != null) { sql.append(" AND p.IdProveedor = ?"); args.add(idProveedor); }
+        if (estado != null && !estado.isBlank()) { sql.append(" AND p.estado = ?"); args.add(estado.trim().toUpperCase()); }
+        if (entregaDesde != null) { sql.append(" AND p.fecha_entrega_esperada >= ?"); args.add(java.sql.Date.valueOf(entregaDesde)); }
+        if (entregaHasta != null) { sql.append(" AND p.fecha_entrega_esperada < ?"); args.add(java.sql.Date.valueOf(entregaHasta.plusDays(1))); }
+        if (despuesDeFecha != null && despuesDeId != null) {
+            java.sql.Timestamp f = java.sql.Timestamp.valueOf(despuesDeFecha);
+            // CAST para comparar como DATE: un TIMESTAMP convertiría la columna y no usaría el índice
+            sql.append(" AND (p.fecha < CAST(? AS DATE) OR (p.fecha = CAST(? AS DATE) AND p.IdPedido < ?))");
+            args.add(f); args.add(f); args.add(despuesDeId);
+        }
+        sql.append(" ORDER BY p.fecha DESC, p.IdPedido DESC FETCH FIRST ? ROWS ONLY");
+        args.add(limite);
+        FilasPagina filas = new FilasPagina();
+        RowMapper<Pedido> m = mapper();
+        jdbcTemplate.query(sql.toString(), rs -> {
+            filas.pedidos.add(m.mapRow(rs, filas.pedidos.size()));
+            filas.fechas.add(rs.getTimestamp("FECHA").toLocalDateTime());
+        }, args.toArray());
+        return filas;
+    }
+
+    /**
+     * Pedidos modificados después de la marca (fecha_modificacion, IdPedido), en orden ascendente.
+     * fecha_modificacion se asigna al ejecutar la sentencia y no al confirmar, así
+     * que solo se devuelven cambios con más de margenSegundos de antigüedad: una
+     * transacción que confirma dentro de ese margen no queda detrás de la marca.
+     */
+    public List<Pedido> cambiosDesde(java.time.LocalDateTime desde, Long despuesDeId, int margenSegundos, int limite) {
+        java.sql.Timestamp f = java.sql.Timestamp.valueOf(desde);
+        String sql = SELECT_LISTADO + """
+                 WHERE (p.fecha_modificacion > CAST(? AS DATE)
+                        OR (p.fecha_modificacion = CAST(? AS DATE) AND p.IdPedido > ?))
+                   AND p.fecha_modificacion < SYSDATE - NUMTODSINTERVAL(?, 'SECOND')
+                 ORDER BY p.fecha_modificacion, p.IdPedido
+                 FETCH FIRST ? ROWS ONLY
+                """;
+        return jdbcTemplate.query(sql, mapper(), f, f, despuesDeId != null ? despuesDeId : 0L, margenSegundos, limite);
+    }
+
+    /**
+     * Fecha de la base de datos menos el margen de cambios, usada como marca inicial
+     */
+    public java.time.LocalDateTime fechaServidor(int margenSegundos) {
+        return jdbcTemplate.queryForObject("SELECT SYSDATE - NUMTODSINTERVAL(?, 'SECOND') FROM DUAL",
+                java.sql.Timestamp.class, margenSegundos).toLocalDateTime();
+    }
+
     public Optional<Pedido> obtenerPorId(Long id) {
         SimpleJdbcCall call = new SimpleJdbcCall(jdbcTemplate)
                 .withCatalogName("PKG_COMPRAS").withFunctionName("FN_OBTENER_PEDIDO")
@@ -114,6 +197,223 @@ public class PedidoSpDao {
                 );
     }
 
+    /**
+     * Línea de detalle para la inserción por lotes de un pedido
+     */
+    public static class LineaPedido {
+        public Long idProducto;
+        public java.math.BigDecimal precio;
+        public Integer cantidad;
+
+        public LineaPedido() {}
+
+        public LineaPedido(Long idProducto, java.math.BigDecimal precio, Integer cantidad) {
+            this.idProducto = idProducto;
+            this.precio = precio;
+            this.cantidad = cantidad;
+        }
+    }
+
+    /**
+     * Inserta todas las líneas del pedido en un único lote JDBC.
+     * Oracle ejecuta el lote como una sola sentencia, por lo que
+     * trg_pedidos_actualizar_total recalcula el total una sola vez.
+     */
+    public int agregarDetalles(Long idPedido, List<LineaPedido> lineas) {
+        if (lineas == null || lineas.isEmpty()) return 0;
+        int[] filas = jdbcTemplate.batchUpdate(
+                "INSERT INTO detallePedido (IdPedido, IdProducto, precioUni, cantidad) VALUES (?, ?, ?, ?)",
+                new BatchPreparedStatementSetter() {
+                    @Override public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        LineaPedido l = lineas.get(i);
+                        ps.setLong(1, idPedido);
+                        ps.setLong(2, l.idProducto);
+                        ps.setBigDecimal(3, l.precio);
+                        ps.setInt(4, l.cantidad);
+                    }
+                    @Override public int getBatchSize() { return lineas.size(); }
+                });
+        return filas.length;
+    }
+
+    /**
+     * Elimina un pedido PENDIENTE recién creado y su detalle, cuando no se pudo completar
+     */
+    public void eliminarIncompleto(Long idPedido) {
+        jdbcTemplate.update("DELETE FROM detallePedido WHERE IdPedido = ?", idPedido);
+        jdbcTemplate.update("DELETE FROM Pedidos WHERE IdPedido = ? AND estado = 'PENDIENTE'", idPedido);
+    }
+
+    /**
+     * Cantidades pedidas y ya recibidas por producto (según el kardex)
+     */
+    public static class LineaPorRecibir {
+        public Long idProducto;
+        public long pedida;
+        public long recibida;
+
+        public long pendiente() { return Math.max(0, pedida - recibida); }
+    }
+
+    public List<LineaPorRecibir> lineasPorRecibir(Long idPedido) {
+        String sql = """
+                SELECT dp.IdProducto, dp.cantidad, NVL(m.recibida, 0) AS recibida
+                FROM detallePedido dp
+                LEFT JOIN (
+                    SELECT IdProducto, SUM(cantidad) AS recibida
+                    FROM MovimientosStock
+                    WHERE IdPedido = ? AND tipo = 'ENTRADA_PEDIDO'
+                    GROUP BY IdProducto
+                ) m ON m.IdProducto = dp.IdProducto
+                WHERE dp.IdPedido = ?
+                ORDER BY dp.IdDetalle
+                """;
+        return jdbcTemplate.query(sql, (rs, rowNum) -> {
+            LineaPorRecibir l = new LineaPorRecibir();
+            l.idProducto = rs.getLong("IDPRODUCTO");
+            l.pedida = rs.getLong("CANTIDAD");
+            l.recibida = rs.getLong("RECIBIDA");
+            return l;
+        }, idPedido, idPedido);
+    }
+
+    /**
+     * Bloquea la fila del pedido hasta el fin de la transacción para
+     * serializar recepciones concurrentes del mismo pedido
+     * @return estado actual del pedido o null si no existe
+     */
+    public String bloquearPedido(Long idPedido) {
+        List<String> estados = jdbcTemplate.queryForList(
+                "SELECT estado FROM Pedidos WHERE IdPedido = ? FOR UPDATE", String.class, idPedido);
+        return estados.isEmpty() ? null : estados.get(0);
+    }
+
+    /**
+     * Suma las cantidades recibidas al stock con un único MERGE por lotes.
+     * Crea la fila de stock si el producto aún no la tiene.
+     */
+    public void aplicarEntradaStock(Map<Long, Integer> cantidades) {
+        List<Map.Entry<Long, Integer>> filas = new ArrayList<>(cantidades.entrySet());
+        jdbcTemplate.batchUpdate("""
+                MERGE INTO Stock s
+                USING (SELECT ? AS IdProducto, ? AS cantidad FROM DUAL) r
+                ON (s.IdProducto = r.IdProducto)
+                WHEN MATCHED THEN UPDATE SET s.cantidad = s.cantidad + r.cantidad,
+                                             s.fecha_ultimo_movimiento = SYSDATE
+                WHEN NOT MATCHED THEN INSERT (cantidad, IdProducto, fecha_ultimo_movimiento)
+                                      VALUES (r.cantidad, r.IdProducto, SYSDATE)
+                """, new BatchPreparedStatementSetter() {
+            @Override public void setValues(PreparedStatement ps, int i) throws SQLException {
+                ps.setLong(1, filas.get(i).getKey());
+                ps.setInt(2, filas.get(i).getValue());
+            }
+            @Override public int getBatchSize() { return filas.size(); }
+        });
+    }
+
+    /**
+     * Stock actual de los productos indicados
+     */
+    public Map<Long, Long> obtenerStock(Collection<Long> idsProducto) {
+        Map<Long, Long> stock = new HashMap<>();
+        List<Long> ids = new ArrayList<>(idsProducto);
+        for (int desde = 0; desde < ids.size(); desde += 1000) {
+            List<Long> bloque = ids.subList(desde, Math.min(ids.size(), desde + 1000));
+            String marcadores = String.join(",", Collections.nCopies(bloque.size(), "?"));
+            jdbcTemplate.query("SELECT IdProducto, cantidad FROM Stock WHERE IdProducto IN (" + marcadores + ")",
+                    rs -> { stock.put(rs.getLong(1), rs.getLong(2)); }, bloque.toArray());
+        }
+        return stock;
+    }
+
+    /**
+     * Registra en el kardex las entradas de una recepción de pedido
+     */
+    public void registrarMovimientosEntrada(Long idPedido, Map<Long, Integer> cantidades, Map<Long, Long> stockResultante, String observaciones) {
+        List<Map.Entry<Long, Integer>> filas = new ArrayList<>(cantidades.entrySet());
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO MovimientosStock (IdProducto, tipo, cantidad, stock_resultante, IdPedido, observaciones) " +
+                "VALUES (?, 'ENTRADA_PEDIDO', ?, ?, ?, ?)",
+                new BatchPreparedStatementSetter() {
+                    @Override public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        Long idProducto = filas.get(i).getKey();
+                        ps.setLong(1, idProducto);
+                        ps.setInt(2, filas.get(i).getValue());
+                        Long resultante = stockResultante.get(idProducto);
+                        if (resultante != null) ps.setLong(3, resultante); else ps.setNull(3, java.sql.Types.NUMERIC);
+                        ps.setLong(4, idPedido);
+                        ps.setString(5, observaciones);
+                    }
+                    @Override public int getBatchSize() { return filas.size(); }
+                });
+    }
+
+    /**
+     * Cambia el estado dentro de la transacción actual (sin el COMMIT del paquete)
+     */
+    public void cambiarEstadoEnTransaccion(Long idPedido, String estado) {
+        jdbcTemplate.update("UPDATE Pedidos SET estado = ?, fecha_modificacion = SYSDATE WHERE IdPedido = ?", estado, idPedido);
+    }
+
+    /**
+     * Datos de un pedido cerrado (RECIBIDO o CANCELADO) para las estadísticas de proveedores
+     */
+    public static class PedidoCerrado {
+        public Long idPedido;
+        public Long idProveedor;
+        public String estado;
+        public java.time.LocalDate fecha;
+        public java.time.LocalDate fechaEntregaEsperada;
+        public java.time.LocalDate fechaRecepcion;
+        public long unidadesPedidas;
+        public long unidadesRecibidas;
+    }
+
+    private static final String SELECT_CERRADO = """
+            SELECT p.IdPedido, p.IdProveedor, p.estado, p.fecha, p.fecha_entrega_esperada,
+                   NVL(m.ultima, p.fecha_modificacion) AS fecha_recepcion,
+                   NVL(d.pedidas, 0) AS pedidas,
+                   CASE WHEN m.recibidas IS NOT NULL THEN m.recibidas
+                        WHEN p.estado = 'RECIBIDO' THEN NVL(d.pedidas, 0)
+                        ELSE 0 END AS recibidas
+            FROM Pedidos p
+            LEFT JOIN (SELECT IdPedido, SUM(cantidad) AS pedidas FROM detallePedido GROUP BY IdPedido) d
+                   ON d.IdPedido = p.IdPedido
+            LEFT JOIN (SELECT IdPedido, SUM(cantidad) AS recibidas, MAX(fecha) AS ultima
+                       FROM MovimientosStock WHERE tipo = 'ENTRADA_PEDIDO' GROUP BY IdPedido) m
+                   ON m.IdPedido = p.IdPedido
+            """;
+
+    private PedidoCerrado mapCerrado(ResultSet rs) throws SQLException {
+        PedidoCerrado c = new PedidoCerrado();
+        c.idPedido = rs.getLong("IDPEDIDO");
+        c.idProveedor = rs.getLong("IDPROVEEDOR");
+        c.estado = rs.getString("ESTADO");
+        java.sql.Timestamp f = rs.getTimestamp("FECHA");
+        c.fecha = f != null ? f.toLocalDateTime().toLocalDate() : null;
+        java.sql.Timestamp fe = rs.getTimestamp("FECHA_ENTREGA_ESPERADA");
+        c.fechaEntregaEsperada = fe != null ? fe.toLocalDateTime().toLocalDate() : null;
+        java.sql.Timestamp fr = rs.getTimestamp("FECHA_RECEPCION");
+        c.fechaRecepcion = fr != null ? fr.toLocalDateTime().toLocalDate() : null;
+        c.unidadesPedidas = rs.getLong("PEDIDAS");
+        c.unidadesRecibidas = rs.getLong("RECIBIDAS");
+        return c;
+    }
+
+    public Optional<PedidoCerrado> obtenerCerrado(Long idPedido) {
+        List<PedidoCerrado> l = jdbcTemplate.query(SELECT_CERRADO + " WHERE p.IdPedido = ? AND p.estado IN ('RECIBIDO', 'CANCELADO')",
+                (rs, rowNum) -> mapCerrado(rs), idPedido);
+        return l.isEmpty() ? Optional.empty() : Optional.of(l.get(0));
+    }
+
+    /**
+     * Recorre todos los pedidos cerrados; se usa una sola vez al iniciar
+     */
+    public void recorrerCerrados(java.util.function.Consumer<PedidoCerrado> consumidor) {
+        jdbcTemplate.query(SELECT_CERRADO + " WHERE p.estado IN ('RECIBIDO', 'CANCELADO')",
+                rs -> { consumidor.accept(mapCerrado(rs)); });
+    }
+
     public void actualizarEstado(Long idPedido, String estado) {
         new SimpleJdbcCall(jdbcTemplate)
                 .withCatalogName("PKG_COMPRAS").withProcedureName("SP_ACTUALIZAR_ESTADO_PEDIDO")
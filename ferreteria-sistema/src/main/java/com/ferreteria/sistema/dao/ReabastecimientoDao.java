@@ -0,0 +1,87 @@
+package com.ferreteria.sistema.dao;
+
+import com.ferreteria.sistema.config.DataSourceConfig;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.time.LocalDate;
+
+/**
+ * Consultas de solo lectura usadas por el proceso de reabastecimiento.
+ * Los resultados se recorren fila a fila para no materializar listas
+ * grandes en memoria.
+ */
+@Repository
+public class ReabastecimientoDao {
+    private final JdbcTemplate jdbcTemplate;
+
+    public ReabastecimientoDao(@Qualifier(DataSourceConfig.REPORTES) DataSource dataSource,
+            @Value("${ferreteria.reportes.datasource.timeout-consulta-segundos:300}") int timeoutSegundos) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setQueryTimeout(timeoutSegundos);
+        this.jdbcTemplate.setFetchSize(1000);
+    }
+
+    public interface VentaDiariaHandler {
+        void venta(long idProducto, LocalDate dia, long cantidad);
+    }
+
+    public interface InventarioHandler {
+        void producto(long idProducto, long idProveedor, long stock, long pendiente, long stockMinimo, BigDecimal precioCompra);
+    }
+
+    /**
+     * Unidades vendidas por producto y día en el rango [desde, hasta).
+     * Las facturas anuladas no cuentan como demanda.
+     */
+    public void recorrerVentasDiarias(LocalDate desde, LocalDate hasta, VentaDiariaHandler handler) {
+        String sql = """
+                SELECT df.IdProducto, TRUNC(f.fecha) AS dia, SUM(df.cantidad) AS cantidad
+                FROM detalleFactura df
+                JOIN Factura f ON f.IdFactura = df.IdFactura
+                WHERE f.fecha >= ? AND f.fecha < ?
+                  AND f.estado <> 'ANULADA'
+                GROUP BY df.IdProducto, TRUNC(f.fecha)
+                """;
+        jdbcTemplate.query(sql, rs -> {
+            handler.venta(rs.getLong("IDPRODUCTO"),
+                    rs.getDate("DIA").toLocalDate(),
+                    rs.getLong("CANTIDAD"));
+        }, Date.valueOf(desde), Date.valueOf(hasta));
+    }
+
+    /**
+     * Productos activos con su stock actual y las unidades que ya vienen
+     * en camino en pedidos abiertos (PENDIENTE, APROBADO o ENVIADO).
+     */
+    public void recorrerInventario(InventarioHandler handler) {
+        String sql = """
+                SELECT p.IdProducto, p.IdProveedor, NVL(p.stock_minimo, 0) AS stock_minimo,
+                       NVL(p.precio_compra, p.precio) AS precio_compra,
+                       NVL(s.cantidad, 0) AS stock, NVL(pp.pendiente, 0) AS pendiente
+                FROM Productos p
+                LEFT JOIN Stock s ON s.IdProducto = p.IdProducto
+                LEFT JOIN (
+                    SELECT dp.IdProducto, SUM(dp.cantidad) AS pendiente
+                    FROM detallePedido dp
+                    JOIN Pedidos pe ON pe.IdPedido = dp.IdPedido
+                    WHERE pe.estado IN ('PENDIENTE', 'APROBADO', 'ENVIADO')
+                    GROUP BY dp.IdProducto
+                ) pp ON pp.IdProducto = p.IdProducto
+                WHERE p.activo = 1
+                """;
+        jdbcTemplate.query(sql, rs -> {
+            handler.producto(rs.getLong("IDPRODUCTO"),
+                    rs.getLong("IDPROVEEDOR"),
+                    rs.getLong("STOCK"),
+                    rs.getLong("PENDIENTE"),
+                    rs.getLong("STOCK_MINIMO"),
+                    rs.getBigDecimal("PRECIO_COMPRA"));
+        });
+    }
+}
@@ -0,0 +1,277 @@
+package com.ferreteria.sistema.dao;
+
+import com.ferreteria.sistema.config.DataSourceConfig;
+import com.ferreteria.sistema.event.FacturaSnapshot;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Consultas de reportes de ventas
+ *
+ * Las series de tiempo leen el acumulado VentasHora; el detalle de facturas
+ * filtra Factura. Ambas usan rangos semiabiertos sobre la fecha
+ * (fecha >= inicio AND fecha < fin) para recorrer solo el tramo del índice.
+ */
+@Repository
+public class ReporteVentasDao {
+    private final JdbcTemplate jdbcTemplate;
+
+    public ReporteVentasDao(@Qualifier(DataSourceConfig.REPORTES) DataSource dataSource,
+            @Value("${ferreteria.reportes.datasource.timeout-consulta-segundos:300}") int timeoutSegundos) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setQueryTimeout(timeoutSegundos);
+    }
+
+    public static class VentaDiaMetodo {
+        public LocalDate dia;
+        public String metodoPago;
+        public BigDecimal total;
+        public long facturas;
+    }
+
+    public static class VentaHora {
+        public LocalDate dia;
+        public int hora;
+        public BigDecimal total;
+        public long facturas;
+    }
+
+    public static class ProductoVendido {
+        public Long idProducto;
+        public String nombreProducto;
+        public String categoria;
+        public String marca;
+        public long cantidad;
+        public BigDecimal ingresos;
+        public long facturas;
+    }
+
+    public interface FacturaHandler {
+        void factura(FacturaReporte f);
+    }
+
+    public interface VentaProductoHandler {
+        void venta(LocalDate dia, long idProducto, long cantidad);
+    }
+
+    public static class FacturaReporte {
+        public Long idFactura;
+        public String numeroFactura;
+        public java.time.LocalDateTime fecha;
+        public String cliente;
+        public BigDecimal subtotal;
+        public BigDecimal impuesto;
+        public BigDecimal total;
+        public String metodoPago;
+    }
+
+    /**
+     * Ventas pagadas por día y método de pago en [desde, hastaExclusivo)
+     */
+    public List<VentaDiaMetodo> ventasPorDiaYMetodo(LocalDate desde, LocalDate hastaExclusivo) {
+        String sql = """
+                SELECT v.dia, v.metodo_pago, SUM(v.total) AS total, SUM(v.num_facturas) AS facturas
+                FROM VentasHora v
+                WHERE v.dia >= ? AND v.dia < ?
+                GROUP BY v.dia, v.metodo_pago
+                ORDER BY v.dia, v.metodo_pago
+                """;
+        return jdbcTemplate.query(sql, (rs, i) -> {
+            VentaDiaMetodo v = new VentaDiaMetodo();
+            v.dia = rs.getTimestamp("dia").toLocalDateTime().toLocalDate();
+            v.metodoPago = rs.getString("metodo_pago");
+            v.total = rs.getBigDecimal("total");
+            v.facturas = rs.getLong("facturas");
+            return v;
+        }, inicio(desde), inicio(hastaExclusivo));
+    }
+
+    /**
+     * Ventas pagadas por día y hora en [desde, hastaExclusivo)
+     * @param metodoPago si no es null, solo ese método de pago
+     * @param idUsuario si no es null, solo las facturas de ese usuario (0 = sin usuario)
+     */
+    public List<VentaHora> ventasPorHora(LocalDate desde, LocalDate hastaExclusivo, String metodoPago, Long idUsuario) {
+        StringBuilder sql = new StringBuilder("""
+                SELECT v.dia, v.hora, SUM(v.total) AS total, SUM(v.num_facturas) AS facturas
+                FROM VentasHora v
+                WHERE v.dia >= ? AND v.dia < ?
+                """);
+        List<Object> args = new ArrayList<>();
+        args.add(inicio(desde));
+        args.add(inicio(hastaExclusivo));
+        if (metodoPago != null && !metodoPago.isBlank()) {
+            sql.append(" AND v.metodo_pago = ?");
+            args.add(metodoPago.trim().toUpperCase());
+        }
+        if (idUsuario != null) {
+            sql.append(" AND v.IdUsuario = ?");
+            args.add(idUsuario);
+        }
+        sql.append(" GROUP BY v.dia, v.hora ORDER BY v.dia, v.hora");
+        return jdbcTemplate.query(sql.toString(), (rs, i) -> {
+            VentaHora v = new VentaHora();
+            v.dia = rs.getTimestamp("dia").toLocalDateTime().toLocalDate();
+            v.hora = rs.getInt("hora");
+            v.total = rs.getBigDecimal("total");
+            v.facturas = rs.getLong("facturas");
+            return v;
+        }, args.toArray());
+    }
+
+    /**
+     * Facturas pagadas en [desde, hastaExclusivo), igual que PKG_FERRETERIA.fn_reporte_ventas_mes
+     */
+    public List<FacturaReporte> facturasPagadas(LocalDate desde, LocalDate hastaExclusivo) {
+        return jdbcTemplate.query(FACTURAS_PAGADAS + " ORDER BY f.fecha DESC, f.IdFactura DESC",
+                (rs, i) -> facturaReporte(rs), inicio(desde), inicio(hastaExclusivo));
+    }
+
+    /**
+     * Recorre en streaming las facturas pagadas en [desde, hastaExclusivo), de la más antigua a la más reciente
+     */
+    public void recorrerFacturasPagadas(LocalDate desde, LocalDate hastaExclusivo, FacturaHandler handler) {
+        JdbcTemplate streaming = new JdbcTemplate(jdbcTemplate.getDataSource());
+        streaming.setFetchSize(2000);
+        streaming.setQueryTimeout(jdbcTemplate.getQueryTimeout());
+        streaming.query(FACTURAS_PAGADAS + " ORDER BY f.fecha, f.IdFactura", rs -> {
+            handler.factura(facturaReporte(rs));
+        }, inicio(desde), inicio(hastaExclusivo));
+    }
+
+    /**
+     * Ejecuta las lecturas indicadas en una transacción SERIALIZABLE del pool de
+     * reportes: todas ven la base de datos en el mismo instante
+     */
+    public void enInstantanea(Runnable lecturas) {
+        TransactionTemplate tx = new TransactionTemplate(new DataSourceTransactionManager(jdbcTemplate.getDataSource()));
+        tx.setIsolationLevel(TransactionDefinition.ISOLATION_SERIALIZABLE);
+        tx.setReadOnly(true);
+        tx.executeWithoutResult(status -> lecturas.run());
+    }
+
+    /**
+     * Estado, fecha y unidades por línea de las facturas indicadas
+     */
+    public Map<Long, FacturaSnapshot> lineasFacturas(Collection<Long> ids) {
+        Map<Long, FacturaSnapshot> resultado = new HashMap<>();
+        List<Long> lista = new ArrayList<>(ids);
+        // Oracle admite hasta 1000 elementos por lista IN
+        for (int i = 0; i < lista.size(); i += 1000) {
+            List<Long> bloque = lista.subList(i, Math.min(i + 1000, lista.size()));
+            String marcas = String.join(",", Collections.nCopies(bloque.size(), "?"));
+            jdbcTemplate.query("SELECT f.IdFactura, f.estado, f.fecha, df.IdProducto, df.cantidad FROM Factura f " +
+                    "LEFT JOIN detalleFactura df ON df.IdFactura = f.IdFactura " +
+                    "WHERE f.IdFactura IN (" + marcas + ")", rs -> {
+                FacturaSnapshot f = resultado.computeIfAbsent(rs.getLong("IdFactura"), id -> new FacturaSnapshot());
+                if (f.idFactura == null) {
+                    f.idFactura = rs.getLong("IdFactura");
+                    f.estado = rs.getString("estado");
+                    Timestamp fecha = rs.getTimestamp("fecha");
+                    f.fecha = fecha != null ? fecha.toLocalDateTime() : null;
+                }
+                long idProducto = rs.getLong("IdProducto");
+                if (!rs.wasNull()) {
+                    FacturaSnapshot.Linea l = new FacturaSnapshot.Linea();
+                    l.idProducto = idProducto;
+                    l.cantidad = rs.getLong("cantidad");
+                    f.lineas.add(l);
+                }
+            }, bloque.toArray());
+        }
+        return resultado;
+    }
+
+    private static final String FACTURAS_PAGADAS = """
+            SELECT f.IdFactura, f.numero_factura, f.fecha, c.nombreCliente || ' ' || c.apellidos AS cliente,
+                   f.subtotal, f.impuesto, f.total, f.metodo_pago
+            FROM Factura f
+            INNER JOIN Clientes c ON f.IdCliente = c.IdCliente
+            WHERE f.estado = 'PAGADA' AND f.fecha >= ? AND f.fecha < ?
+            """;
+
+    private static FacturaReporte facturaReporte(ResultSet rs) throws SQLException {
+        FacturaReporte f = new FacturaReporte();
+        f.idFactura = rs.getLong("IdFactura");
+        f.numeroFactura = rs.getString("numero_factura");
+        Timestamp fecha = rs.getTimestamp("fecha");
+        if (fecha != null) f.fecha = fecha.toLocalDateTime();
+        f.cliente = rs.getString("cliente");
+        f.subtotal = rs.getBigDecimal("subtotal");
+        f.impuesto = rs.getBigDecimal("impuesto");
+        f.total = rs.getBigDecimal("total");
+        f.metodoPago = rs.getString("metodo_pago");
+        return f;
+    }
+
+    /**
+     * Productos más vendidos (por cantidad) en [desde, hastaExclusivo), igual que
+     * PKG_FERRETERIA.fn_productos_mas_vendidos pero con un rango cualquiera
+     */
+    public List<ProductoVendido> masVendidos(LocalDate desde, LocalDate hastaExclusivo, int limite) {
+        String sql = """
+                SELECT p.IdProducto, p.nombreProducto, p.categoria, p.marca, v.cantidad, v.ingresos, v.facturas
+                FROM (SELECT df.IdProducto, SUM(df.cantidad) AS cantidad, SUM(df.subtotal) AS ingresos,
+                             COUNT(DISTINCT df.IdFactura) AS facturas
+                      FROM detalleFactura df
+                      INNER JOIN Factura f ON df.IdFactura = f.IdFactura
+                      WHERE f.estado = 'PAGADA' AND f.fecha >= ? AND f.fecha < ?
+                      GROUP BY df.IdProducto
+                      ORDER BY cantidad DESC, df.IdProducto
+                      FETCH FIRST ? ROWS ONLY) v
+                INNER JOIN Productos p ON p.IdProducto = v.IdProducto
+                ORDER BY v.cantidad DESC, p.IdProducto
+                """;
+        return jdbcTemplate.query(sql, (rs, i) -> {
+            ProductoVendido p = new ProductoVendido();
+            p.idProducto = rs.getLong("IdProducto");
+            p.nombreProducto = rs.getString("nombreProducto");
+            p.categoria = rs.getString("categoria");
+            p.marca = rs.getString("marca");
+            p.cantidad = rs.getLong("cantidad");
+            p.ingresos = rs.getBigDecimal("ingresos");
+            p.facturas = rs.getLong("facturas");
+            return p;
+        }, inicio(desde), inicio(hastaExclusivo), limite);
+    }
+
+    /**
+     * Recorre la cantidad vendida por día y producto desde una fecha, para cargar
+     * los contadores en memoria
+     */
+    public void recorrerVentasProductoDia(LocalDate desde, VentaProductoHandler handler) {
+        jdbcTemplate.query("""
+                SELECT TRUNC(f.fecha) AS dia, df.IdProducto, SUM(df.cantidad) AS cantidad
+                FROM detalleFactura df
+                INNER JOIN Factura f ON df.IdFactura = f.IdFactura
+                WHERE f.estado = 'PAGADA' AND f.fecha >= ?
+                GROUP BY TRUNC(f.fecha), df.IdProducto
+                """, rs -> {
+            handler.venta(rs.getTimestamp("dia").toLocalDateTime().toLocalDate(),
+                    rs.getLong("IdProducto"), rs.getLong("cantidad"));
+        }, inicio(desde));
+    }
+
+    // Se enlaza como DATE: con un TIMESTAMP Oracle convertiría la columna y no usaría el índice
+    private static java.sql.Date inicio(LocalDate dia) {
+        return java.sql.Date.valueOf(dia);
+    }
+}
@@ -0,0 +1,184 @@
+package com.ferreteria.sistema.dao;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.util.*;
+
+/**
+ * Sesiones HTTP compartidas entre nodos (SesionesHttp y SesionesHttpAtributos).
+ *
+ * Cada atributo se guarda en su propia fila para poder escribir solo los
+ * que cambiaron. El id interno no cambia; el id de sesión (el de la cookie)
+ * se reemplaza al iniciar sesión sin mover los atributos.
+ */
+@Repository
+@ConditionalOnProperty(name = "ferreteria.sesiones.jdbc.habilitado", havingValue = "true")
+public class SesionHttpDao {
+    private final JdbcTemplate jdbcTemplate;
+
+    public SesionHttpDao(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    public static class SesionGuardada {
+        public String idInterno;
+        public String idSesion;
+        public long creacion;
+        public long ultimoAcceso;
+        public int maxInactivo;
+        public Map<String, byte[]> atributos = new HashMap<>();
+    }
+
+    /**
+     * Carga una sesión con todos sus atributos en una sola consulta
+     * @return la sesión, o null si no existe
+     */
+    public SesionGuardada cargar(String idSesion) {
+        return jdbcTemplate.query("""
+                SELECT s.id_interno, s.id_sesion, s.creacion, s.ultimo_acceso, s.max_inactivo, a.nombre, a.valor
+                FROM SesionesHttp s
+                LEFT JOIN SesionesHttpAtributos a ON a.id_interno = s.id_interno
+                WHERE s.id_sesion = ?
+                """, rs -> {
+            SesionGuardada s = null;
+            while (rs.next()) {
+                if (s == null) {
+                    s = new SesionGuardada();
+                    s.idInterno = rs.getString("ID_INTERNO");
+                    s.idSesion = rs.getString("ID_SESION");
+                    s.creacion = rs.getLong("CREACION");
+                    s.ultimoAcceso = rs.getLong("ULTIMO_ACCESO");
+                    s.maxInactivo = rs.getInt("MAX_INACTIVO");
+                }
+                String nombre = rs.getString("NOMBRE");
+                if (nombre != null) {
+                    s.atributos.put(nombre, rs.getBytes("VALOR"));
+                }
+            }
+            return s;
+        }, idSesion);
+    }
+
+    public void insertar(String idInterno, String idSesion, long creacion, long ultimoAcceso, int maxInactivo,
+                         String usuario) {
+        jdbcTemplate.update("""
+                INSERT INTO SesionesHttp (id_interno, id_sesion, creacion, ultimo_acceso, max_inactivo, expira, usuario)
+                VALUES (?, ?, ?, ?, ?, ?, ?)
+                """, idInterno, idSesion, creacion, ultimoAcceso, maxInactivo,
+                expira(ultimoAcceso, maxInactivo), usuario);
+    }
+
+    /**
+     * Escribe solo lo que cambió durante la solicitud
+     * @param cambiados atributos nuevos o reemplazados, ya serializados
+     * @param eliminados atributos quitados de la sesión
+     */
+    public void actualizar(String idInterno, String idSesion, long ultimoAcceso, int maxInactivo, String usuario,
+                           Map<String, byte[]> cambiados, Collection<String> eliminados) {
+        // expira sale del último acceso resultante y del nuevo máximo, así que también puede acortarse
+        jdbcTemplate.update("""
+                UPDATE SesionesHttp SET id_sesion = ?, ultimo_acceso = GREATEST(ultimo_acceso, ?), max_inactivo = ?,
+                       expira = CASE WHEN ? > 0 THEN GREATEST(ultimo_acceso, ?) + ? * 1000 ELSE ? END,
+                       usuario = NVL(?, usuario)
+                WHERE id_interno = ?
+                """, idSesion, ultimoAcceso, maxInactivo, maxInactivo, ultimoAcceso, maxInactivo, Long.MAX_VALUE,
+                usuario, idInterno);
+        // Los reemplazados se borran junto con los eliminados y se vuelven a insertar
+        List<Object[]> borrar = new ArrayList<>(eliminados.size() + cambiados.size());
+        for (String nombre : eliminados) borrar.add(new Object[]{idInterno, nombre});
+        for (String nombre : cambiados.keySet()) borrar.add(new Object[]{idInterno, nombre});
+        if (!borrar.isEmpty()) {
+            jdbcTemplate.batchUpdate("DELETE FROM SesionesHttpAtributos WHERE id_interno = ? AND nombre = ?", borrar);
+        }
+        insertarAtributos(idInterno, cambiados);
+    }
+
+    public void insertarAtributos(String idInterno, Map<String, byte[]> atributos) {
+        if (atributos.isEmpty()) return;
+        List<Object[]> args = new ArrayList<>(atributos.size());
+        for (Map.Entry<String, byte[]> e : atributos.entrySet()) {
+            args.add(new Object[]{idInterno, e.getKey(), e.getValue()});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO SesionesHttpAtributos (id_interno, nombre, valor) VALUES (?, ?, ?)",
+                args);
+    }
+
+    /**
+     * Registra en lote los últimos accesos acumulados en memoria
+     * @param accesos id interno → último acceso (epoch ms)
+     */
+    public void registrarAccesos(Map<String, Long> accesos) {
+        if (accesos.isEmpty()) return;
+        List<Object[]> args = new ArrayList<>(accesos.size());
+        for (Map.Entry<String, Long> e : accesos.entrySet()) {
+            args.add(new Object[]{e.getValue(), e.getValue(), e.getKey(), e.getValue()});
+        }
+        // Nunca retrocede el último acceso si otro nodo ya registró uno posterior
+        jdbcTemplate.batchUpdate("""
+                UPDATE SesionesHttp SET ultimo_acceso = ?,
+                       expira = CASE WHEN max_inactivo > 0 THEN ? + max_inactivo * 1000 ELSE expira END
+                WHERE id_interno = ? AND ultimo_acceso < ?
+                """, args);
+    }
+
+    public void eliminar(String idInterno) {
+        jdbcTemplate.update("DELETE FROM SesionesHttp WHERE id_interno = ?", idInterno);
+    }
+
+    /**
+     * Elimina la sesión con el id de cookie indicado; los atributos se borran en cascada
+     */
+    public void eliminarPorIdSesion(String idSesion) {
+        jdbcTemplate.update("DELETE FROM SesionesHttp WHERE id_sesion = ?", idSesion);
+    }
+
+    /**
+     * Sesiones vigentes de un usuario en todos los nodos: {id de sesión, último acceso}
+     */
+    public List<Object[]> sesionesDeUsuario(String usuario, long ahora) {
+        return jdbcTemplate.query("""
+                SELECT id_sesion, ultimo_acceso FROM SesionesHttp
+                WHERE usuario = ? AND expira >= ? ORDER BY ultimo_acceso
+                """, (rs, i) -> new Object[]{rs.getString(1), rs.getLong(2)}, usuario, ahora);
+    }
+
+    /**
+     * Usuarios con alguna sesión vigente
+     */
+    public List<String> usuarios(long ahora) {
+        return jdbcTemplate.queryForList(
+                "SELECT DISTINCT usuario FROM SesionesHttp WHERE usuario IS NOT NULL AND expira >= ?",
+                String.class, ahora);
+    }
+
+    /**
+     * Ids de sesión vencidos antes del instante indicado
+     */
+    public List<String[]> expiradas(long antes, int limite) {
+        return jdbcTemplate.query("""
+                SELECT id_interno, id_sesion FROM SesionesHttp
+                WHERE expira < ? ORDER BY expira FETCH FIRST ? ROWS ONLY
+                """, (rs, i) -> new String[]{rs.getString(1), rs.getString(2)}, antes, limite);
+    }
+
+    /**
+     * Elimina en lote las sesiones indicadas; los atributos se borran en cascada
+     */
+    public int eliminarLote(List<String> idsInternos, long antes) {
+        List<Object[]> args = new ArrayList<>(idsInternos.size());
+        for (String id : idsInternos) args.add(new Object[]{id, antes});
+        int total = 0;
+        // Se vuelve a comprobar el vencimiento por si otro nodo la tocó entretanto
+        for (int n : jdbcTemplate.batchUpdate("DELETE FROM SesionesHttp WHERE id_interno = ? AND expira < ?", args)) {
+            total += Math.max(n, 0);
+        }
+        return total;
+    }
+
+    private static long expira(long ultimoAcceso, int maxInactivo) {
+        return maxInactivo > 0 ? ultimoAcceso + maxInactivo * 1000L : Long.MAX_VALUE;
+    }
+}
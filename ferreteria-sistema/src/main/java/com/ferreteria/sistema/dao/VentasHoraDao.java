@@ -0,0 +1,259 @@
+package com.ferreteria.sistema.dao;
+
+import com.ferreteria.sistema.event.FacturaSnapshot;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Acumulado de ventas pagadas por día, hora, método de pago y usuario (VentasHora).
+ *
+ * Las facturas sin usuario se guardan con IdUsuario 0 y las que no tienen
+ * método de pago con SIN_METODO, porque ambas columnas forman la clave.
+ */
+@Repository
+public class VentasHoraDao {
+    private final JdbcTemplate jdbcTemplate;
+
+    public VentasHoraDao(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    public static final String SIN_METODO = "SIN_METODO";
+
+    // Agregación de Factura con la misma clave que VentasHora; %s es un filtro adicional
+    private static final String AGREGADO_FACTURAS = """
+            SELECT TRUNC(fecha) AS dia, TO_NUMBER(TO_CHAR(fecha, 'HH24')) AS hora,
+                   NVL(metodo_pago, '{sin}') AS metodo_pago, NVL(IdUsuario, 0) AS IdUsuario,
+                   SUM(total) AS total, COUNT(*) AS num_facturas
+            FROM Factura
+            WHERE estado = 'PAGADA' %s
+            GROUP BY TRUNC(fecha), TO_CHAR(fecha, 'HH24'), NVL(metodo_pago, '{sin}'), NVL(IdUsuario, 0)
+            """.replace("{sin}", SIN_METODO);
+    private static final String EN_RANGO = "AND fecha >= ? AND fecha < ?";
+
+    public static class Diferencia {
+        public LocalDate dia;
+        public int hora;
+        public String metodoPago;
+        public long idUsuario;
+        public BigDecimal totalFacturas;
+        public long numFacturas;
+        public BigDecimal totalAcumulado;
+        public long numAcumulado;
+    }
+
+    /**
+     * Suma (o resta, con valores negativos) ventas a una celda del acumulado;
+     * las celdas que quedan sin facturas se eliminan
+     */
+    public void aplicarDelta(LocalDate dia, int hora, String metodoPago, long idUsuario, BigDecimal total, int facturas) {
+        Date d = Date.valueOf(dia);
+        String merge = """
+                MERGE INTO VentasHora v
+                USING (SELECT ? AS dia, ? AS hora, ? AS metodo_pago, ? AS IdUsuario FROM dual) s
+                ON (v.dia = s.dia AND v.hora = s.hora AND v.metodo_pago = s.metodo_pago AND v.IdUsuario = s.IdUsuario)
+                WHEN MATCHED THEN UPDATE SET v.total = v.total + ?, v.num_facturas = v.num_facturas + ?
+                WHEN NOT MATCHED THEN INSERT (dia, hora, metodo_pago, IdUsuario, total, num_facturas)
+                     VALUES (s.dia, s.hora, s.metodo_pago, s.IdUsuario, ?, ?)
+                """;
+        Object[] args = {d, hora, metodoPago, idUsuario, total, facturas, total, facturas};
+        try {
+            jdbcTemplate.update(merge, args);
+        } catch (DuplicateKeyException ex) {
+            // Otro MERGE insertó la misma celda nueva a la vez (ORA-00001); ahora existe y se actualiza
+            jdbcTemplate.update(merge, args);
+        }
+        if (facturas < 0) {
+            jdbcTemplate.update("DELETE FROM VentasHora WHERE dia = ? AND hora = ? AND metodo_pago = ? " +
+                    "AND IdUsuario = ? AND num_facturas <= 0", d, hora, metodoPago, idUsuario);
+        }
+    }
+
+    /** Cambio de una factura que no se pudo aplicar al acumulado (VentasHoraPendiente) */
+    public static class Pendiente {
+        public Long id;
+        public Long idFactura;
+        // Celda y total que la factura aportaba antes y después; dia null si no aportaba
+        public LocalDate antesDia;
+        public int antesHora;
+        public String antesMetodoPago;
+        public long antesIdUsuario;
+        public BigDecimal antesTotal;
+        public LocalDate despuesDia;
+        public int despuesHora;
+        public String despuesMetodoPago;
+        public long despuesIdUsuario;
+        public BigDecimal despuesTotal;
+    }
+
+    /**
+     * Guarda un cambio pendiente de aplicar
+     * @return ID asignado
+     */
+    public long guardarPendiente(Pendiente p) {
+        KeyHolder clave = new GeneratedKeyHolder();
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement("""
+                    INSERT INTO VentasHoraPendiente (IdFactura, antes_dia, antes_hora, antes_metodo_pago,
+                        antes_IdUsuario, antes_total, despues_dia, despues_hora, despues_metodo_pago,
+                        despues_IdUsuario, despues_total)
+                    VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+                    """, new String[]{"ID"});
+            ps.setObject(1, p.idFactura);
+            ps.setObject(2, p.antesDia != null ? Date.valueOf(p.antesDia) : null);
+            ps.setObject(3, p.antesDia != null ? p.antesHora : null);
+            ps.setString(4, p.antesMetodoPago);
+            ps.setObject(5, p.antesDia != null ? p.antesIdUsuario : null);
+            ps.setBigDecimal(6, p.antesTotal);
+            ps.setObject(7, p.despuesDia != null ? Date.valueOf(p.despuesDia) : null);
+            ps.setObject(8, p.despuesDia != null ? p.despuesHora : null);
+            ps.setString(9, p.despuesMetodoPago);
+            ps.setObject(10, p.despuesDia != null ? p.despuesIdUsuario : null);
+            ps.setBigDecimal(11, p.despuesTotal);
+            return ps;
+        }, clave);
+        return clave.getKey().longValue();
+    }
+
+    /**
+     * Cambios pendientes, del más antiguo al más reciente
+     */
+    public List<Pendiente> pendientes(int limite) {
+        return jdbcTemplate.query("SELECT * FROM VentasHoraPendiente ORDER BY id FETCH FIRST ? ROWS ONLY", (rs, i) -> {
+            Pendiente p = new Pendiente();
+            p.id = rs.getLong("ID");
+            long idFactura = rs.getLong("IDFACTURA");
+            p.idFactura = rs.wasNull() ? null : idFactura;
+            Date antes = rs.getDate("ANTES_DIA");
+            if (antes != null) {
+                p.antesDia = antes.toLocalDate();
+                p.antesHora = rs.getInt("ANTES_HORA");
+                p.antesMetodoPago = rs.getString("ANTES_METODO_PAGO");
+                p.antesIdUsuario = rs.getLong("ANTES_IDUSUARIO");
+                p.antesTotal = rs.getBigDecimal("ANTES_TOTAL");
+            }
+            Date despues = rs.getDate("DESPUES_DIA");
+            if (despues != null) {
+                p.despuesDia = despues.toLocalDate();
+                p.despuesHora = rs.getInt("DESPUES_HORA");
+                p.despuesMetodoPago = rs.getString("DESPUES_METODO_PAGO");
+                p.despuesIdUsuario = rs.getLong("DESPUES_IDUSUARIO");
+                p.despuesTotal = rs.getBigDecimal("DESPUES_TOTAL");
+            }
+            return p;
+        }, limite);
+    }
+
+    /**
+     * Elimina un cambio pendiente; se llama en la misma transacción que lo aplica
+     * @return false si ya no estaba (otro hilo o nodo lo aplicó)
+     */
+    public boolean quitarPendiente(long id) {
+        return jdbcTemplate.update("DELETE FROM VentasHoraPendiente WHERE id = ?", id) > 0;
+    }
+
+    /**
+     * Vuelve a calcular el acumulado de [desde, hastaExclusivo) desde Factura.
+     * La tabla se bloquea hasta el fin de la transacción para que los cambios
+     * de otros nodos no modifiquen a medias las celdas que se recalculan.
+     * @return celdas cargadas
+     */
+    public int reconstruir(LocalDate desde, LocalDate hastaExclusivo) {
+        jdbcTemplate.execute("LOCK TABLE VentasHora IN EXCLUSIVE MODE");
+        jdbcTemplate.update("DELETE FROM VentasHora WHERE dia >= ? AND dia < ?",
+                Date.valueOf(desde), Date.valueOf(hastaExclusivo));
+        return jdbcTemplate.update("INSERT INTO VentasHora (dia, hora, metodo_pago, IdUsuario, total, num_facturas) "
+                + AGREGADO_FACTURAS.formatted(EN_RANGO), Date.valueOf(desde), Date.valueOf(hastaExclusivo));
+    }
+
+    /**
+     * Vuelve a calcular el acumulado completo desde Factura
+     * @return celdas cargadas
+     */
+    public int reconstruirTodo() {
+        jdbcTemplate.execute("LOCK TABLE VentasHora IN EXCLUSIVE MODE");
+        jdbcTemplate.update("DELETE FROM VentasHora");
+        return jdbcTemplate.update("INSERT INTO VentasHora (dia, hora, metodo_pago, IdUsuario, total, num_facturas) "
+                + AGREGADO_FACTURAS.formatted(""));
+    }
+
+    /**
+     * Cabecera actual de las facturas indicadas (sin líneas); dentro de una
+     * transacción SERIALIZABLE es la que vio la reconstrucción
+     */
+    public Map<Long, FacturaSnapshot> cabeceras(Collection<Long> ids) {
+        Map<Long, FacturaSnapshot> resultado = new HashMap<>();
+        List<Long> lista = new ArrayList<>(ids);
+        // Oracle admite hasta 1000 elementos por lista IN
+        for (int i = 0; i < lista.size(); i += 1000) {
+            List<Long> bloque = lista.subList(i, Math.min(i + 1000, lista.size()));
+            String marcas = String.join(",", Collections.nCopies(bloque.size(), "?"));
+            jdbcTemplate.query("SELECT IdFactura, IdUsuario, fecha, total, estado, metodo_pago FROM Factura " +
+                    "WHERE IdFactura IN (" + marcas + ")", rs -> {
+                FacturaSnapshot f = new FacturaSnapshot();
+                f.idFactura = rs.getLong("IdFactura");
+                long idUsuario = rs.getLong("IdUsuario");
+                f.idUsuario = rs.wasNull() ? null : idUsuario;
+                Timestamp fecha = rs.getTimestamp("fecha");
+                f.fecha = fecha != null ? fecha.toLocalDateTime() : null;
+                f.total = rs.getBigDecimal("total") != null ? rs.getBigDecimal("total") : BigDecimal.ZERO;
+                f.estado = rs.getString("estado");
+                f.metodoPago = rs.getString("metodo_pago");
+                resultado.put(f.idFactura, f);
+            }, bloque.toArray());
+        }
+        return resultado;
+    }
+
+    /**
+     * Celdas de [desde, hastaExclusivo) en las que el acumulado no coincide con Factura
+     * @param limite máximo de diferencias devueltas
+     */
+    public List<Diferencia> diferencias(LocalDate desde, LocalDate hastaExclusivo, int limite) {
+        String sql = """
+                SELECT NVL(f.dia, v.dia) AS dia, NVL(f.hora, v.hora) AS hora,
+                       NVL(f.metodo_pago, v.metodo_pago) AS metodo_pago, NVL(f.IdUsuario, v.IdUsuario) AS IdUsuario,
+                       NVL(f.total, 0) AS total_facturas, NVL(f.num_facturas, 0) AS num_facturas,
+                       NVL(v.total, 0) AS total_acumulado, NVL(v.num_facturas, 0) AS num_acumulado
+                FROM (%s) f
+                FULL OUTER JOIN (SELECT dia, hora, metodo_pago, IdUsuario, total, num_facturas
+                                 FROM VentasHora WHERE dia >= ? AND dia < ?) v
+                  ON v.dia = f.dia AND v.hora = f.hora AND v.metodo_pago = f.metodo_pago AND v.IdUsuario = f.IdUsuario
+                WHERE NVL(f.total, 0) <> NVL(v.total, 0) OR NVL(f.num_facturas, 0) <> NVL(v.num_facturas, 0)
+                ORDER BY 1, 2, 3, 4
+                FETCH FIRST ? ROWS ONLY
+                """.formatted(AGREGADO_FACTURAS.formatted(EN_RANGO));
+        Date d = Date.valueOf(desde);
+        Date h = Date.valueOf(hastaExclusivo);
+        List<Diferencia> lista = new ArrayList<>();
+        jdbcTemplate.query(sql, rs -> {
+            Diferencia x = new Diferencia();
+            x.dia = rs.getTimestamp("dia").toLocalDateTime().toLocalDate();
+            x.hora = rs.getInt("hora");
+            x.metodoPago = rs.getString("metodo_pago");
+            x.idUsuario = rs.getLong("IdUsuario");
+            x.totalFacturas = rs.getBigDecimal("total_facturas");
+            x.numFacturas = rs.getLong("num_facturas");
+            x.totalAcumulado = rs.getBigDecimal("total_acumulado");
+            x.numAcumulado = rs.getLong("num_acumulado");
+            lista.add(x);
+        }, d, h, d, h, limite);
+        return lista;
+    }
+}
@@ -0,0 +1,27 @@
+package com.ferreteria.sistema.event;
+
+import com.ferreteria.sistema.entity.Cliente;
+
+/**
+ * Evento publicado cuando se crea, modifica o elimina un cliente; los
+ * oyentes que mantienen copias en memoria lo aplican después del commit
+ */
+public class ClienteModificadoEvent {
+
+    private final Long idCliente;
+    // Estado guardado del cliente, null si se eliminó
+    private final Cliente cliente;
+
+    public ClienteModificadoEvent(Long idCliente, Cliente cliente) {
+        this.idCliente = idCliente;
+        this.cliente = cliente;
+    }
+
+    public Long getIdCliente() {
+        return idCliente;
+    }
+
+    public Cliente getCliente() {
+        return cliente;
+    }
+}
@@ -0,0 +1,18 @@
+package com.ferreteria.sistema.event;
+
+/**
+ * Evento publicado cuando se crea, modifica o elimina un registro de una
+ * entidad de catálogo (clientes, productos, proveedores, empleados, usuarios)
+ */
+public class EntidadModificadaEvent {
+
+    private final String entidad;
+
+    public EntidadModificadaEvent(String entidad) {
+        this.entidad = entidad;
+    }
+
+    public String getEntidad() {
+        return entidad;
+    }
+}
@@ -0,0 +1,25 @@
+package com.ferreteria.sistema.event;
+
+/**
+ * Evento publicado cuando una factura se crea, modifica, paga o anula.
+ * Lleva el estado anterior (null si es nueva) y el actual para que cada
+ * consumidor aplique solo la diferencia.
+ */
+public class FacturaCambioEvent {
+
+    private final FacturaSnapshot anterior;
+    private final FacturaSnapshot actual;
+
+    public FacturaCambioEvent(FacturaSnapshot anterior, FacturaSnapshot actual) {
+        this.anterior = anterior;
+        this.actual = actual;
+    }
+
+    public FacturaSnapshot getAnterior() {
+        return anterior;
+    }
+
+    public FacturaSnapshot getActual() {
+        return actual;
+    }
+}
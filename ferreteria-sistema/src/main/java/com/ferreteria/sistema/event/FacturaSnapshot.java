@@ -0,0 +1,31 @@
+package com.ferreteria.sistema.event;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Estado de una factura (cabecera y líneas) en un momento dado
+ */
+public class FacturaSnapshot {
+
+    public Long idFactura;
+    public Long idCliente;
+    public Long idUsuario;
+    public LocalDateTime fecha;
+    public BigDecimal total = BigDecimal.ZERO;
+    public String estado;
+    public String metodoPago;
+    public List<Linea> lineas = new ArrayList<>();
+
+    public boolean esPagada() {
+        return "PAGADA".equals(estado);
+    }
+
+    public static class Linea {
+        public Long idProducto;
+        public long cantidad;
+        public BigDecimal subtotal = BigDecimal.ZERO;
+    }
+}
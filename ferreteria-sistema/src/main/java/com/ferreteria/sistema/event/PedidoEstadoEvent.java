@@ -0,0 +1,23 @@
+package com.ferreteria.sistema.event;
+
+/**
+ * Evento publicado cuando un pedido de compra cambia de estado
+ */
+public class PedidoEstadoEvent {
+
+    private final Long idPedido;
+    private final String estado;
+
+    public PedidoEstadoEvent(Long idPedido, String estado) {
+        this.idPedido = idPedido;
+        this.estado = estado;
+    }
+
+    public Long getIdPedido() {
+        return idPedido;
+    }
+
+    public String getEstado() {
+        return estado;
+    }
+}
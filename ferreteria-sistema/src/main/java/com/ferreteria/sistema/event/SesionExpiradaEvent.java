@@ -0,0 +1,30 @@
+package com.ferreteria.sistema.event;
+
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.session.SessionDestroyedEvent;
+
+import java.util.List;
+
+/**
+ * Evento publicado cuando una sesión del almacén JDBC se invalida o vence,
+ * para que el registro de sesiones de Spring Security la olvide
+ */
+public class SesionExpiradaEvent extends SessionDestroyedEvent {
+
+    private final String idSesion;
+
+    public SesionExpiradaEvent(Object source, String idSesion) {
+        super(source);
+        this.idSesion = idSesion;
+    }
+
+    @Override
+    public String getId() {
+        return idSesion;
+    }
+
+    @Override
+    public List<SecurityContext> getSecurityContexts() {
+        return List.of();
+    }
+}
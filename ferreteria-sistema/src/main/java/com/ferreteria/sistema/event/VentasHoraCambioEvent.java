@@ -0,0 +1,31 @@
+package com.ferreteria.sistema.event;
+
+import java.time.LocalDate;
+import java.util.Set;
+
+/**
+ * Evento publicado cuando cambia el acumulado VentasHora: después de aplicar
+ * el cambio de una factura (días afectados) o de reconstruirlo (todos)
+ */
+public class VentasHoraCambioEvent {
+
+    private final Set<LocalDate> dias;
+
+    public VentasHoraCambioEvent(Set<LocalDate> dias) {
+        this.dias = dias;
+    }
+
+    /** Cambio de todo el acumulado (reconstrucción o reparación) */
+    public static VentasHoraCambioEvent todo() {
+        return new VentasHoraCambioEvent(null);
+    }
+
+    /** Días con celdas modificadas; null si puede haber cambiado cualquiera */
+    public Set<LocalDate> getDias() {
+        return dias;
+    }
+
+    public boolean incluye(LocalDate dia) {
+        return dias == null || dias.contains(dia);
+    }
+}
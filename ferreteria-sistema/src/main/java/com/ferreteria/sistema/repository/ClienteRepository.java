@@ -46,6 +46,18 @@ public interface ClienteRepository extends JpaRepository<Cliente, Long> {
      */
     List<Cliente> findByActivoFalse();
 
+    /**
+     * Cuenta clientes activos
+     * @return cantidad de clientes activos
+     */
+    long countByActivoTrue();
+
+    /**
+     * Cuenta clientes inactivos
+     * @return cantidad de clientes inactivos
+     */
+    long countByActivoFalse();
+
     /**
      * Obtiene clientes por tipo
      * @param tipoCliente el tipo de cliente
@@ -172,15 +184,5 @@ public interface ClienteRepository extends JpaRepository<Cliente, Long> {
      */
     @Query(value = "SELECT * FROM CLIENTES c WHERE REGEXP_LIKE(c.TELEFONO, ?1)", nativeQuery = true)
     List<Cliente> findByTelefonoMatchingPattern(String patron);
-
-    /**
-     * Obtiene estadísticas de clientes por tipo
-     * @return lista con estadísticas por tipo
-     */
-    @Query("SELECT c.tipoCliente, COUNT(c), AVG(c.limiteCredito) " +
-           "FROM Cliente c WHERE c.activo = true " +
-           "GROUP BY c.tipoCliente " +
-           "ORDER BY COUNT(c) DESC")
-    List<Object[]> getEstadisticasPorTipo();
 }
 
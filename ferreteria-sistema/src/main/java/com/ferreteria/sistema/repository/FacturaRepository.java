@@ -86,21 +86,32 @@ public interface FacturaRepository extends JpaRepository<Factura, Long> {
     @Query("SELECT f FROM Factura f WHERE f.total > :total ORDER BY f.total DESC")
     List<Factura> findByTotalGreaterThan(@Param("total") BigDecimal total);
 
+    /**
+     * Obtiene facturas con fecha en el rango semiabierto [inicio, fin)
+     * @param inicio primer día incluido
+     * @param fin primer día excluido
+     * @return lista de facturas en el rango
+     */
+    @Query("SELECT f FROM Factura f WHERE f.fecha >= :inicio AND f.fecha < :fin ORDER BY f.fecha DESC")
+    List<Factura> findFacturasEnPeriodo(@Param("inicio") LocalDate inicio, @Param("fin") LocalDate fin);
+
     /**
      * Obtiene facturas del día actual
      * @return lista de facturas de hoy
      */
-    @Query("SELECT f FROM Factura f WHERE f.fecha = CURRENT_DATE ORDER BY f.fechaCreacion DESC")
-    List<Factura> findFacturasDeHoy();
+    default List<Factura> findFacturasDeHoy() {
+        LocalDate hoy = LocalDate.now();
+        return findFacturasEnPeriodo(hoy, hoy.plusDays(1));
+    }
 
     /**
      * Obtiene facturas del mes actual
      * @return lista de facturas del mes
      */
-    @Query("SELECT f FROM Factura f WHERE EXTRACT(MONTH FROM f.fecha) = EXTRACT(MONTH FROM CURRENT_DATE) " +
-           "AND EXTRACT(YEAR FROM f.fecha) = EXTRACT(YEAR FROM CURRENT_DATE) " +
-           "ORDER BY f.fecha DESC")
-    List<Factura> findFacturasDelMes();
+    default List<Factura> findFacturasDelMes() {
+        LocalDate inicioMes = LocalDate.now().withDayOfMonth(1);
+        return findFacturasEnPeriodo(inicioMes, inicioMes.plusMonths(1));
+    }
 
     /**
      * Verifica si existe una factura con el número especificado
@@ -120,23 +131,34 @@ public interface FacturaRepository extends JpaRepository<Factura, Long> {
     BigDecimal calcularTotalVentasEnRango(@Param("fechaInicio") LocalDate fechaInicio, 
                                          @Param("fechaFin") LocalDate fechaFin);
 
+    /**
+     * Calcula el total de ventas pagadas en el rango semiabierto [inicio, fin)
+     * desde el acumulado VentasHora
+     * @param inicio primer día incluido
+     * @param fin primer día excluido
+     * @return total de ventas pagadas
+     */
+    @Query(value = "SELECT NVL(SUM(v.total), 0) FROM VENTASHORA v " +
+            "WHERE v.dia >= :inicio AND v.dia < :fin", nativeQuery = true)
+    BigDecimal calcularVentasEnPeriodo(@Param("inicio") LocalDate inicio, @Param("fin") LocalDate fin);
+
     /**
      * Calcula el total de ventas del día
      * @return total de ventas de hoy
      */
-    @Query("SELECT COALESCE(SUM(f.total), 0) FROM Factura f " +
-           "WHERE f.fecha = CURRENT_DATE AND f.estado = 'PAGADA'")
-    BigDecimal calcularVentasDelDia();
+    default BigDecimal calcularVentasDelDia() {
+        LocalDate hoy = LocalDate.now();
+        return calcularVentasEnPeriodo(hoy, hoy.plusDays(1));
+    }
 
     /**
      * Calcula el total de ventas del mes
      * @return total de ventas del mes
      */
-    @Query("SELECT COALESCE(SUM(f.total), 0) FROM Factura f " +
-           "WHERE EXTRACT(MONTH FROM f.fecha) = EXTRACT(MONTH FROM CURRENT_DATE) " +
-           "AND EXTRACT(YEAR FROM f.fecha) = EXTRACT(YEAR FROM CURRENT_DATE) " +
-           "AND f.estado = 'PAGADA'")
-    BigDecimal calcularVentasDelMes();
+    default BigDecimal calcularVentasDelMes() {
+        LocalDate inicioMes = LocalDate.now().withDayOfMonth(1);
+        return calcularVentasEnPeriodo(inicioMes, inicioMes.plusMonths(1));
+    }
 
     /**
      * Cuenta facturas por estado
@@ -150,8 +172,17 @@ public interface FacturaRepository extends JpaRepository<Factura, Long> {
      * @param estado el estado de la factura
      * @return cantidad de facturas de hoy en el estado
      */
-    @Query("SELECT COUNT(f) FROM Factura f WHERE f.fecha = CURRENT_DATE AND f.estado = :estado")
-    Long countFacturasDelDiaPorEstado(@Param("estado") Factura.EstadoFactura estado);
+    default Long countFacturasDelDiaPorEstado(Factura.EstadoFactura estado) {
+        LocalDate hoy = LocalDate.now();
+        return countFacturasEnPeriodoPorEstado(estado, hoy, hoy.plusDays(1));
+    }
+
+    /**
+     * Cuenta facturas por estado en el rango semiabierto [inicio, fin)
+     */
+    @Query("SELECT COUNT(f) FROM Factura f WHERE f.estado = :estado AND f.fecha >= :inicio AND f.fecha < :fin")
+    Long countFacturasEnPeriodoPorEstado(@Param("estado") Factura.EstadoFactura estado,
+                                         @Param("inicio") LocalDate inicio, @Param("fin") LocalDate fin);
 
     /**
      * Obtiene clientes con mayor volumen de compras
@@ -175,15 +206,15 @@ public interface FacturaRepository extends JpaRepository<Factura, Long> {
     List<Object[]> getEstadisticasPorMetodoPago();
 
     /**
-     * Obtiene ventas diarias de los últimos días
+     * Obtiene ventas diarias de los últimos días desde el acumulado VentasHora
      * @param dias cantidad de días hacia atrás
      * @return lista con fechas y totales diarios
      */
-    @Query(value = "SELECT TRUNC(f.fecha) AS FECHA, SUM(f.total) AS TOTAL, COUNT(1) AS NUM " +
-            "FROM FACTURA f " +
-            "WHERE TRUNC(f.fecha) >= TRUNC(SYSDATE) - :dias AND f.estado = 'PAGADA' " +
-            "GROUP BY TRUNC(f.fecha) " +
-            "ORDER BY TRUNC(f.fecha) DESC", nativeQuery = true)
+    @Query(value = "SELECT v.dia AS FECHA, SUM(v.total) AS TOTAL, SUM(v.num_facturas) AS NUM " +
+            "FROM VENTASHORA v " +
+            "WHERE v.dia >= TRUNC(SYSDATE) - :dias " +
+            "GROUP BY v.dia " +
+            "ORDER BY v.dia DESC", nativeQuery = true)
     List<Object[]> getVentasDiarias(@Param("dias") int dias);
 
     /**
@@ -199,18 +230,18 @@ public interface FacturaRepository extends JpaRepository<Factura, Long> {
      * @return lista de facturas pendientes antiguas
      */
     @Query(value = "SELECT * FROM FACTURA f WHERE f.estado = 'PENDIENTE' " +
-            "AND TRUNC(f.fecha) <= TRUNC(SYSDATE) - :dias ORDER BY f.fecha ASC",
+            "AND f.fecha < TRUNC(SYSDATE) - :dias + 1 ORDER BY f.fecha ASC",
             nativeQuery = true)
     List<Factura> findFacturasPendientesAntiguas(@Param("dias") int dias);
 
     /**
-     * Obtiene el promedio de ventas diarias del último mes
+     * Obtiene el promedio de ventas diarias del último mes desde el acumulado VentasHora
      * @return promedio de ventas diarias
      */
     @Query(value = "SELECT AVG(daily_total) FROM (" +
-            "SELECT SUM(f.total) as daily_total FROM FACTURA f " +
-            "WHERE f.fecha >= TRUNC(CURRENT_DATE) - 30 AND f.estado = 'PAGADA' " +
-            "GROUP BY f.fecha)", nativeQuery = true)
+            "SELECT SUM(v.total) as daily_total FROM VENTASHORA v " +
+            "WHERE v.dia >= TRUNC(SYSDATE) - 30 " +
+            "GROUP BY v.dia)", nativeQuery = true)
     BigDecimal getPromedioVentasDiarias();
 
     /**
@@ -75,6 +75,15 @@ public interface RolRepository extends JpaRepository<Rol, Long> {
     @Query("SELECT COUNT(u) FROM Usuario u WHERE u.rol.idRol = :idRol AND u.activo = true")
     Long countUsuariosActivosByRol(@Param("idRol") Long idRol);
 
+    /**
+     * Obtiene todos los roles con su cantidad de usuarios activos en una sola consulta
+     * @return filas [idRol, nombre, descripcion, activo, usuariosActivos] ordenadas por nombre
+     */
+    @Query("SELECT r.idRol, r.nombre, r.descripcion, r.activo, COUNT(u) FROM Rol r " +
+           "LEFT JOIN r.usuarios u ON u.activo = true " +
+           "GROUP BY r.idRol, r.nombre, r.descripcion, r.activo ORDER BY r.nombre")
+    List<Object[]> findAllConUsuariosActivos();
+
     /**
      * Obtiene roles ordenados por nombre
      * @return lista de roles ordenados alfabéticamente
@@ -55,6 +55,18 @@ public interface UsuarioRepository extends JpaRepository<Usuario, Long> {
      */
     List<Usuario> findByActivoFalse();
 
+    /**
+     * Cuenta usuarios activos
+     * @return cantidad de usuarios activos
+     */
+    long countByActivoTrue();
+
+    /**
+     * Cuenta usuarios inactivos
+     * @return cantidad de usuarios inactivos
+     */
+    long countByActivoFalse();
+
     /**
      * Obtiene usuarios por rol
      * @param idRol el ID del rol
@@ -71,6 +83,15 @@ public interface UsuarioRepository extends JpaRepository<Usuario, Long> {
     @Query("SELECT u FROM Usuario u WHERE u.rol.idRol = :idRol AND u.activo = true")
     List<Usuario> findByRolIdAndActivoTrue(@Param("idRol") Long idRol);
 
+    /**
+     * Datos básicos de los usuarios activos de un rol, sin cargar entidades
+     * @param idRol ID del rol
+     * @return filas [idUsuario, nombreUsuario, nombre, apellidos, email, activo]
+     */
+    @Query("SELECT u.idUsuario, u.nombreUsuario, u.nombre, u.apellidos, u.email, u.activo FROM Usuario u " +
+           "WHERE u.rol.idRol = :idRol AND u.activo = true ORDER BY u.nombreUsuario")
+    List<Object[]> findResumenActivosPorRol(@Param("idRol") Long idRol);
+
     /**
      * Busca usuarios por nombre o apellidos
      * @param texto texto a buscar
@@ -0,0 +1,336 @@
+package com.ferreteria.sistema.service;
+
+import com.ferreteria.sistema.dao.ClienteComprasDao;
+import com.ferreteria.sistema.event.FacturaCambioEvent;
+import com.ferreteria.sistema.event.FacturaSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Servicio de acumulados de compras por cliente
+ *
+ * Cada cambio de factura llega como FacturaCambioEvent con el estado anterior
+ * y el actual. Una factura aporta (total, 1) al mes de su fecha solo mientras
+ * está PAGADA; se resta el aporte anterior y se suma el actual. Los
+ * procedimientos de PKG_VENTAS confirman por su cuenta, así que el cambio se
+ * aplica después de confirmada la factura, en una transacción propia: si
+ * falla, la factura ya está guardada y el cambio queda pendiente para
+ * reintentarse, sin devolver error a la caja. Las consultas de VIP, ranking
+ * y RFM leen ClienteResumenCompras sin recorrer las facturas.
+ *
+ * Mientras se reconstruyen los acumulados, los cambios de este nodo se
+ * encolan. La reconstrucción lee, en su misma transacción SERIALIZABLE, el
+ * estado de cada factura encolada: los cambios que ese estado ya incluye se
+ * descartan y el resto se aplica antes de confirmar, así que ninguna factura
+ * confirmada durante la reconstrucción se pierde ni se cuenta dos veces.
+ */
+@Service
+@Transactional
+public class ClienteComprasService {
+
+    private static final Logger log = LoggerFactory.getLogger(ClienteComprasService.class);
+
+    @Autowired
+    private ClienteComprasDao clienteComprasDao;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // Cambios que fallaron al aplicarse, en orden de llegada
+    private final Queue<FacturaCambioEvent> reintentos = new ConcurrentLinkedQueue<>();
+    // Los cambios directos (compartido) no se cruzan con el inicio y el fin de una reconstrucción (exclusivo)
+    private final ReentrantReadWriteLock reconstruccion = new ReentrantReadWriteLock();
+    // Cambios recibidos durante una reconstrucción (null si no hay ninguna)
+    private List<FacturaCambioEvent> encolados;
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void facturaCambio(FacturaCambioEvent event) {
+        procesar(event);
+    }
+
+    /** Aplica el cambio, o lo encola si hay una reconstrucción en curso; false si falló */
+    private boolean procesar(FacturaCambioEvent event) {
+        reconstruccion.readLock().lock();
+        try {
+            synchronized (this) {
+                if (encolados != null) {
+                    encolados.add(event);
+                    return true;
+                }
+            }
+            aplicarEnTransaccion(event);
+            return true;
+        } catch (Exception ex) {
+            reintentos.add(event);
+            log.warn("No se pudo actualizar los acumulados de compras de la factura {}; se reintentará: {}",
+                    idFactura(event), ex.getMessage());
+            return false;
+        } finally {
+            reconstruccion.readLock().unlock();
+        }
+    }
+
+    private static Long idFactura(FacturaCambioEvent event) {
+        FacturaSnapshot s = event.getActual() != null ? event.getActual() : event.getAnterior();
+        return s != null ? s.idFactura : null;
+    }
+
+    /**
+     * Reintenta los cambios pendientes; los deltas se suman, así que el orden
+     * respecto a los cambios aplicados después no altera el resultado
+     */
+    @Scheduled(fixedDelay = 60000)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void reintentarPendientes() {
+        int pendientes = reintentos.size();
+        for (int i = 0; i < pendientes; i++) {
+            FacturaCambioEvent event = reintentos.poll();
+            if (event == null) return;
+            if (!procesar(event)) {
+                log.warn("Acumulados de compras: {} cambios pendientes de aplicar", reintentos.size());
+                return;
+            }
+        }
+        if (pendientes > 0) log.info("Acumulados de compras: {} cambios pendientes aplicados", pendientes);
+    }
+
+    // Los dos MERGE de un cambio se confirman juntos o no se aplican
+    private void aplicarEnTransaccion(FacturaCambioEvent event) {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        tx.executeWithoutResult(status -> aplicar(event));
+    }
+
+    private void aplicar(FacturaCambioEvent event) {
+        Aporte antes = Aporte.de(event.getAnterior());
+        Aporte despues = Aporte.de(event.getActual());
+        if (Objects.equals(antes, despues)) return;
+
+        if (antes != null && despues != null && antes.mismoBucket(despues)) {
+            // Si la fecha retrocede, la última compra se vuelve a leer (fecha null)
+            clienteComprasDao.aplicarDelta(despues.idCliente, despues.mes, despues.total.subtract(antes.total), 0,
+                    despues.snapshot.fecha.isBefore(antes.snapshot.fecha) ? null : despues.snapshot.fecha);
+            return;
+        }
+        if (antes != null) {
+            clienteComprasDao.aplicarDelta(antes.idCliente, antes.mes, antes.total.negate(), -1, null);
+        }
+        if (despues != null) {
+            clienteComprasDao.aplicarDelta(despues.idCliente, despues.mes, despues.total, 1, despues.snapshot.fecha);
+        }
+    }
+
+    /**
+     * Desplaza cada noche la ventana de 12 meses, que no cambia con las facturas
+     * sino con el calendario
+     */
+    @Scheduled(cron = "${ferreteria.clientes.compras.cron-refresco:0 5 0 * * *}")
+    public void refrescarUltimos12Meses() {
+        try {
+            int filas = clienteComprasDao.refrescarUltimos12Meses();
+            log.info("Acumulados de compras: ventana de 12 meses actualizada para {} clientes", filas);
+        } catch (Exception ex) {
+            log.warn("No se pudo refrescar la ventana de 12 meses de compras: {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * Vuelve a calcular todos los acumulados desde la tabla Factura,
+     * conciliando los cambios que llegan mientras tanto
+     * @return cantidad de clientes con compras
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public int reconstruir() {
+        long inicio = System.currentTimeMillis();
+        reconstruccion.writeLock().lock();
+        try {
+            synchronized (this) {
+                if (encolados != null) {
+                    throw new IllegalStateException("Ya hay una reconstrucción de los acumulados de compras en curso");
+                }
+                encolados = new ArrayList<>();
+            }
+        } finally {
+            reconstruccion.writeLock().unlock();
+        }
+
+        List<FacturaCambioEvent> recibidos = new ArrayList<>();
+        int[] clientes = new int[1];
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        tx.setIsolationLevel(TransactionDefinition.ISOLATION_SERIALIZABLE);
+        try {
+            tx.executeWithoutResult(status -> {
+                clientes[0] = clienteComprasDao.reconstruir();
+                while (true) {
+                    List<FacturaCambioEvent> lote;
+                    reconstruccion.writeLock().lock();
+                    try {
+                        synchronized (this) {
+                            lote = encolados;
+                            // Sin cambios por conciliar, los siguientes se aplican directamente
+                            // (esperan a que esta transacción libere las tablas)
+                            encolados = lote.isEmpty() ? null : new ArrayList<>();
+                        }
+                    } finally {
+                        reconstruccion.writeLock().unlock();
+                    }
+                    if (lote.isEmpty()) break;
+                    recibidos.addAll(lote);
+                    conciliar(lote);
+                }
+            });
+        } catch (RuntimeException ex) {
+            // Nada de la reconstrucción quedó guardado: los cambios recibidos se aplican sobre lo anterior
+            reconstruccion.writeLock().lock();
+            try {
+                synchronized (this) {
+                    if (encolados != null) recibidos.addAll(encolados);
+                    encolados = null;
+                }
+            } finally {
+                reconstruccion.writeLock().unlock();
+            }
+            recibidos.forEach(this::procesar);
+            throw ex;
+        }
+        log.info("Acumulados de compras reconstruidos: {} clientes en {} ms", clientes[0], System.currentTimeMillis() - inicio);
+        return clientes[0];
+    }
+
+    /**
+     * Aplica los cambios encolados que la reconstrucción no vio. Para cada
+     * factura se busca, en orden, el cambio que la dejó en el estado leído
+     * dentro de la misma transacción; ese y los anteriores ya están incluidos.
+     */
+    private void conciliar(List<FacturaCambioEvent> lote) {
+        Map<Long, List<FacturaCambioEvent>> porFactura = new LinkedHashMap<>();
+        for (FacturaCambioEvent e : lote) {
+            Long id = idFactura(e);
+            if (id == null) {
+                aplicar(e);
+            } else {
+                porFactura.computeIfAbsent(id, k -> new ArrayList<>()).add(e);
+            }
+        }
+        Map<Long, FacturaSnapshot> vistas = clienteComprasDao.cabeceras(porFactura.keySet());
+        for (Map.Entry<Long, List<FacturaCambioEvent>> e : porFactura.entrySet()) {
+            List<FacturaCambioEvent> cambios = e.getValue();
+            Aporte visto = Aporte.de(vistas.get(e.getKey()));
+            int incluidos = 0;
+            if (!Objects.equals(Aporte.de(cambios.get(0).getAnterior()), visto)) {
+                incluidos = -1;
+                for (int i = 0; i < cambios.size() && incluidos < 0; i++) {
+                    if (Objects.equals(Aporte.de(cambios.get(i).getActual()), visto)) incluidos = i + 1;
+                }
+                if (incluidos < 0) {
+                    log.warn("Factura {}: estado no reconocido al conciliar los acumulados de compras", e.getKey());
+                    incluidos = 0;
+                }
+            }
+            for (int i = incluidos; i < cambios.size(); i++) aplicar(cambios.get(i));
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public List<Long> idsVip(BigDecimal limite) {
+        return clienteComprasDao.idsVip(limite != null ? limite : BigDecimal.ZERO);
+    }
+
+    @Transactional(readOnly = true)
+    public List<ClienteComprasDao.ResumenCompras> top(int limite, boolean ultimos12Meses, BigDecimal minimo) {
+        if (limite <= 0) {
+            throw new IllegalArgumentException("El límite debe ser mayor a cero");
+        }
+        return clienteComprasDao.top(Math.min(limite, 1000), ultimos12Meses, minimo);
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<ClienteComprasDao.ResumenCompras> obtener(Long idCliente) {
+        return clienteComprasDao.obtener(idCliente);
+    }
+
+    /**
+     * Clientes con puntajes RFM y su segmento
+     * @param segmento si no es null, solo se devuelven los clientes de ese segmento
+     */
+    @Transactional(readOnly = true)
+    public List<ClienteComprasDao.ResumenRfm> rfm(String segmento) {
+        List<ClienteComprasDao.ResumenRfm> clientes = clienteComprasDao.rfm();
+        for (ClienteComprasDao.ResumenRfm c : clientes) {
+            c.segmento = segmento(c.recencia, c.frecuencia, c.monto);
+        }
+        if (segmento != null && !segmento.isBlank()) {
+            clientes.removeIf(c -> !c.segmento.equalsIgnoreCase(segmento.trim()));
+        }
+        return clientes;
+    }
+
+    static String segmento(int r, int f, int m) {
+        int fm = (f + m + 1) / 2;
+        if (r >= 4 && fm >= 4) return "CAMPEONES";
+        if (r >= 3 && fm >= 3) return "LEALES";
+        if (r >= 4) return "NUEVOS";
+        if (r <= 2 && fm >= 4) return "EN_RIESGO";
+        if (r <= 2 && fm <= 2) return "PERDIDOS";
+        return "OCASIONALES";
+    }
+
+    /** Aporte de una factura a los acumulados: cliente, mes y total */
+    private static final class Aporte {
+        final Long idCliente;
+        final LocalDate mes;
+        final BigDecimal total;
+        final FacturaSnapshot snapshot;
+
+        private Aporte(FacturaSnapshot s) {
+            this.idCliente = s.idCliente;
+            this.mes = s.fecha.toLocalDate().withDayOfMonth(1);
+            this.total = s.total != null ? s.total : BigDecimal.ZERO;
+            this.snapshot = s;
+        }
+
+        static Aporte de(FacturaSnapshot s) {
+            return s != null && s.esPagada() && s.idCliente != null && s.fecha != null ? new Aporte(s) : null;
+        }
+
+        boolean mismoBucket(Aporte o) {
+            return idCliente.equals(o.idCliente) && mes.equals(o.mes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Aporte a)) return false;
+            return mismoBucket(a) && total.compareTo(a.total) == 0
+                    && Objects.equals(snapshot.fecha, a.snapshot.fecha);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(idCliente, mes);
+        }
+    }
+}
@@ -3,9 +3,13 @@ package com.ferreteria.sistema.service;
 import com.ferreteria.sistema.entity.Cliente;
 import com.ferreteria.sistema.repository.ClienteRepository;
 import com.ferreteria.sistema.dao.ClienteSpDao;
+import com.ferreteria.sistema.dao.EstadisticasDao;
+import com.ferreteria.sistema.event.ClienteModificadoEvent;
+import com.ferreteria.sistema.event.EntidadModificadaEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -29,6 +33,21 @@ public class ClienteService {
     @Autowired
     private ClienteSpDao clienteSpDao;
 
+    @Autowired
+    private EstadisticasDao estadisticasDao;
+
+    @Autowired
+    private ClienteSugerenciaService clienteSugerenciaService;
+
+    @Autowired
+    private ClienteComprasService clienteComprasService;
+
+    @Autowired
+    private ExposicionCreditoService exposicionCreditoService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     private static final Logger log = LoggerFactory.getLogger(ClienteService.class);
 
     /**
@@ -97,6 +116,37 @@ public class ClienteService {
         return clienteRepository.buscarActivosPorNombreOApellidos(texto);
     }
 
+    /**
+     * Sugiere clientes por prefijo de nombre, apellidos, cédula, email o teléfono
+     * @param texto texto escrito por el usuario
+     * @param limite máximo de resultados
+     * @param incluirInactivos si se incluyen clientes desactivados
+     * @return sugerencias del índice en memoria
+     */
+    public List<ClienteSugerenciaService.Sugerencia> sugerir(String texto, int limite, boolean incluirInactivos) {
+        int tam = Math.max(1, Math.min(limite, 50));
+        if (clienteSugerenciaService.estaCargado()) {
+            return clienteSugerenciaService.sugerir(texto, tam, incluirInactivos);
+        }
+        // Mientras el índice se carga se usa la búsqueda por nombre
+        List<ClienteSugerenciaService.Sugerencia> resultado = new java.util.ArrayList<>();
+        List<Cliente> encontrados = incluirInactivos
+                ? clienteRepository.buscarPorNombreOApellidos(texto)
+                : clienteRepository.buscarActivosPorNombreOApellidos(texto);
+        for (Cliente c : encontrados) {
+            if (resultado.size() >= tam) break;
+            ClienteSugerenciaService.Sugerencia s = new ClienteSugerenciaService.Sugerencia();
+            s.idCliente = c.getIdCliente();
+            s.nombreCompleto = c.getNombreCliente() + " " + c.getApellidos();
+            s.cedula = c.getCedula();
+            s.email = c.getEmail();
+            s.telefono = c.getTelefono();
+            s.activo = Boolean.TRUE.equals(c.getActivo());
+            resultado.add(s);
+        }
+        return resultado;
+    }
+
     /**
      * Obtiene clientes por tipo
      * @param tipoCliente tipo de cliente
@@ -151,11 +201,17 @@ public class ClienteService {
 
         // Inserta vía SP; luego consulta por cédula/email o retorna básico
         clienteSpDao.insertar(cliente);
-        // Intentar obtener por email si está disponible para devolver entidad completa
+        // Intentar obtener por email o cédula para devolver entidad completa (con ID)
+        Cliente creado = cliente;
         if (cliente.getEmail() != null) {
-            return clienteRepository.findByEmail(cliente.getEmail()).orElse(cliente);
+            creado = clienteRepository.findByEmail(cliente.getEmail()).orElse(cliente);
+        } else if (cliente.getCedula() != null) {
+            creado = clienteRepository.findByCedula(cliente.getCedula()).orElse(cliente);
         }
-        return cliente;
+        eventPublisher.publishEvent(new ClienteModificadoEvent(creado.getIdCliente(), creado));
+        exposicionCreditoService.recargarCliente(creado.getIdCliente());
+        eventPublisher.publishEvent(new EntidadModificadaEvent(EstadisticasService.CLIENTES));
+        return creado;
     }
 
     /**
@@ -207,7 +263,11 @@ public class ClienteService {
 
         // Usar SP para actualizar y devolver objeto limpio
         clienteSpDao.actualizar(id, cliente);
-        return clienteSpDao.obtenerPorId(id).orElse(cliente);
+        Cliente actualizado = clienteSpDao.obtenerPorId(id).orElse(cliente);
+        eventPublisher.publishEvent(new ClienteModificadoEvent(id, actualizado));
+        exposicionCreditoService.actualizarLimite(id, actualizado.getLimiteCredito());
+        eventPublisher.publishEvent(new EntidadModificadaEvent(EstadisticasService.CLIENTES));
+        return actualizado;
     }
 
     /**
@@ -223,7 +283,12 @@ public class ClienteService {
         cliente.setActivo(activo);
         cliente.setFechaModificacion(LocalDateTime.now());
 
-        return clienteRepository.save(cliente);
+        Cliente guardado = clienteRepository.save(cliente);
+        eventPublisher.publishEvent(new ClienteModificadoEvent(id, guardado));
+        // Al reactivarlo vuelven a contar sus facturas pendientes, que no estaban en memoria
+        exposicionCreditoService.recargarCliente(id);
+        eventPublisher.publishEvent(new EntidadModificadaEvent(EstadisticasService.CLIENTES));
+        return guardado;
     }
 
     /**
@@ -241,6 +306,8 @@ public class ClienteService {
         // El SP ya maneja la verificación de facturas asociadas
         // y lanza excepción si no se puede eliminar
         clienteSpDao.eliminar(id);
+        eventPublisher.publishEvent(new ClienteModificadoEvent(id, null));
+        eventPublisher.publishEvent(new EntidadModificadaEvent(EstadisticasService.CLIENTES));
     }
 
     /**
@@ -274,7 +341,7 @@ public class ClienteService {
      * @return cantidad de clientes activos
      */
     public long contarActivos() {
-        return clienteRepository.findByActivoTrue().size();
+        return clienteRepository.countByActivoTrue();
     }
 
     /**
@@ -319,7 +386,39 @@ public class ClienteService {
      * @return lista de clientes VIP
      */
     public List<Cliente> obtenerClientesVIPConMayorCompras(java.math.BigDecimal limite) {
-        return clienteRepository.findClientesVIPConMayorCompras(limite);
+        // Se leen los acumulados de ClienteResumenCompras y se conserva su orden
+        List<Long> ids = clienteComprasService.idsVip(limite);
+        java.util.Map<Long, Cliente> porId = new java.util.HashMap<>();
+        for (Cliente c : clienteRepository.findAllById(ids)) {
+            porId.put(c.getIdCliente(), c);
+        }
+        List<Cliente> clientes = new java.util.ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Cliente c = porId.get(id);
+            if (c != null) clientes.add(c);
+        }
+        return clientes;
+    }
+
+    /**
+     * Obtiene los clientes con mayor volumen de compras pagadas
+     * @param limite cantidad de clientes
+     * @param ultimos12Meses si se ordena por los últimos 12 meses en lugar del histórico
+     * @param minimo monto mínimo de compras en el periodo (opcional)
+     * @return resumen de compras de cada cliente
+     */
+    public List<com.ferreteria.sistema.dao.ClienteComprasDao.ResumenCompras> obtenerTopCompradores(int limite, boolean ultimos12Meses,
+                                                                                                  java.math.BigDecimal minimo) {
+        return clienteComprasService.top(limite, ultimos12Meses, minimo);
+    }
+
+    /**
+     * Obtiene la segmentación RFM (recencia, frecuencia, monto) de los clientes
+     * @param segmento segmento a filtrar (opcional)
+     * @return clientes con puntajes y segmento
+     */
+    public List<com.ferreteria.sistema.dao.ClienteComprasDao.ResumenRfm> obtenerSegmentosRfm(String segmento) {
+        return clienteComprasService.rfm(segmento);
     }
 
     /**
@@ -327,6 +426,6 @@ public class ClienteService {
      * @return lista con estadísticas por tipo
      */
     public List<Object[]> obtenerEstadisticasPorTipo() {
-        return clienteRepository.getEstadisticasPorTipo();
+        return estadisticasDao.clientesPorTipo();
     }
 }
@@ -0,0 +1,369 @@
+package com.ferreteria.sistema.service;
+
+import com.ferreteria.sistema.dao.ClienteSpDao;
+import com.ferreteria.sistema.entity.Cliente;
+import com.ferreteria.sistema.event.ClienteModificadoEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Índice en memoria para sugerir clientes mientras se escribe en caja
+ *
+ * Cada cliente se descompone en términos normalizados (minúsculas, sin
+ * tildes) de nombre, apellidos, cédula, email y teléfono. Los términos se
+ * guardan en un diccionario ordenado con sus listas de clientes, de modo que
+ * una búsqueda por prefijo es una búsqueda binaria más un recorrido corto.
+ *
+ * Los cambios de clientes llegan como ClienteModificadoEvent después del
+ * commit y se agregan a un índice delta pequeño; cuando crece se reconstruye
+ * el índice base desde memoria. La reconstrucción se hace sin el monitor:
+ * al empezar, el delta actual pasa a consultarse junto al índice base viejo y
+ * los cambios siguientes van a un delta nuevo, que sobrevive al reemplazo.
+ * Cada candidato se verifica contra el documento vigente del cliente, así
+ * que los términos que quedaron obsoletos en el índice base no aparecen.
+ */
+@Service
+public class ClienteSugerenciaService {
+
+    private static final Logger log = LoggerFactory.getLogger(ClienteSugerenciaService.class);
+
+    private static final Pattern MARCAS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARADORES = Pattern.compile("[^a-z0-9]+");
+    private static final int MAX_CANDIDATOS = 20000;
+    private static final int UMBRAL_DELTA = 5000;
+
+    @Autowired
+    private ClienteSpDao clienteSpDao;
+
+    // Se reemplaza entero en cada recarga, nunca se vacía
+    private volatile Map<Long, Documento> documentos = new ConcurrentHashMap<>();
+    private volatile Indice indice = new Indice(new IndiceBase(new String[0], new long[0][]), null,
+            new ConcurrentSkipListMap<>());
+    // Una sola reconstrucción del índice base a la vez
+    private final ReentrantLock reconstruccion = new ReentrantLock();
+    private volatile boolean cargado;
+    // Cambios recibidos durante una recarga, para aplicarlos sobre lo leído (null si no hay recarga)
+    private List<Consumer<Map<Long, Documento>>> pendientes;
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void cargarAlIniciar() {
+        recargar();
+    }
+
+    /**
+     * Recarga completa desde la base de datos (nocturna)
+     */
+    @Scheduled(cron = "${ferreteria.clientes.indice.cron-recarga:0 15 3 * * *}")
+    public void recargar() {
+        synchronized (this) {
+            if (pendientes != null) return;
+            pendientes = new ArrayList<>();
+        }
+        Map<Long, Documento> nuevos = null;
+        try {
+            long inicio = System.currentTimeMillis();
+            Map<Long, Documento> leidos = new ConcurrentHashMap<>();
+            clienteSpDao.recorrerParaIndice((id, nombre, apellidos, cedula, email, telefono, activo) ->
+                    leidos.put(id, new Documento(id, nombre, apellidos, cedula, email, telefono, activo)));
+            nuevos = leidos;
+            log.info("Índice de clientes leído: {} clientes en {} ms", leidos.size(), System.currentTimeMillis() - inicio);
+        } catch (Exception ex) {
+            log.warn("No se pudo cargar el índice de clientes: {}", ex.getMessage());
+        } finally {
+            synchronized (this) {
+                if (nuevos != null) {
+                    // Los cambios llegados durante la lectura pueden no estar en ella
+                    for (Consumer<Map<Long, Documento>> cambio : pendientes) cambio.accept(nuevos);
+                    documentos = nuevos;
+                }
+                pendientes = null;
+            }
+        }
+        if (nuevos != null) {
+            reconstruir();
+            cargado = true;
+        }
+    }
+
+    @Scheduled(fixedDelay = 60000)
+    public void compactarSiEsNecesario() {
+        if (indice.delta.size() >= UMBRAL_DELTA) {
+            reconstruir();
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void clienteModificado(ClienteModificadoEvent event) {
+        if (event.getCliente() != null) {
+            actualizar(event.getCliente());
+        } else {
+            eliminar(event.getIdCliente());
+        }
+    }
+
+    public boolean estaCargado() {
+        return cargado;
+    }
+
+    /**
+     * Registra o reemplaza un cliente en el índice
+     */
+    public synchronized void actualizar(Cliente c) {
+        if (c == null || c.getIdCliente() == null) return;
+        Documento d = new Documento(c.getIdCliente(), c.getNombreCliente(), c.getApellidos(), c.getCedula(),
+                c.getEmail(), c.getTelefono(), Boolean.TRUE.equals(c.getActivo()));
+        documentos.put(d.idCliente, d);
+        for (String t : d.terminos) {
+            indice.delta.computeIfAbsent(t, k -> ConcurrentHashMap.newKeySet()).add(d.idCliente);
+        }
+        if (pendientes != null) pendientes.add(m -> m.put(d.idCliente, d));
+    }
+
+    public synchronized void eliminar(Long idCliente) {
+        if (idCliente == null) return;
+        documentos.remove(idCliente);
+        if (pendientes != null) pendientes.add(m -> m.remove(idCliente));
+    }
+
+    /**
+     * Sugiere clientes cuyo texto coincide por prefijo con todos los términos de la consulta
+     * @param consulta texto escrito por el usuario
+     * @param limite máximo de sugerencias
+     * @param incluirInactivos si se incluyen clientes desactivados
+     */
+    public List<Sugerencia> sugerir(String consulta, int limite, boolean incluirInactivos) {
+        String[] terminos = terminosConsulta(consulta);
+        if (terminos.length == 0) return Collections.emptyList();
+
+        // Se recorre el término más largo, que es el más selectivo
+        String guia = terminos[0];
+        for (String t : terminos) if (t.length() > guia.length()) guia = t;
+
+        List<Sugerencia> resultado = new ArrayList<>(limite);
+        Set<Long> vistos = new HashSet<>();
+        int[] examinados = new int[1];
+
+        Indice actual = indice;
+        Map<Long, Documento> docs = documentos;
+        IndiceBase base = actual.base;
+        for (int i = base.desde(guia); i < base.terminos.length && base.terminos[i].startsWith(guia); i++) {
+            for (long id : base.clientes[i]) {
+                if (agregar(id, terminos, incluirInactivos, docs, vistos, resultado, examinados) >= limite) return resultado;
+            }
+            if (examinados[0] > MAX_CANDIDATOS) return resultado;
+        }
+        for (ConcurrentSkipListMap<String, Set<Long>> d : Arrays.asList(actual.anterior, actual.delta)) {
+            if (d == null) continue;
+            for (Set<Long> ids : d.subMap(guia, true, guia + Character.MAX_VALUE, false).values()) {
+                for (Long id : ids) {
+                    if (agregar(id, terminos, incluirInactivos, docs, vistos, resultado, examinados) >= limite) return resultado;
+                }
+            }
+        }
+        return resultado;
+    }
+
+    private int agregar(long id, String[] terminos, boolean incluirInactivos, Map<Long, Documento> docs,
+                        Set<Long> vistos, List<Sugerencia> resultado, int[] examinados) {
+        examinados[0]++;
+        if (!vistos.add(id)) return resultado.size();
+        Documento d = docs.get(id);
+        if (d == null || (!incluirInactivos && !d.activo) || !d.coincide(terminos)) return resultado.size();
+        resultado.add(d.sugerencia());
+        return resultado.size();
+    }
+
+    /**
+     * Reconstruye el índice base sin bloquear a los que actualizan: el monitor
+     * solo se toma para apartar el delta al empezar y para publicar al terminar
+     */
+    private void reconstruir() {
+        reconstruccion.lock();
+        try {
+            Map<Long, Documento> docs;
+            synchronized (this) {
+                Indice actual = indice;
+                // Lo que cambie desde aquí queda en el delta nuevo, aunque no llegue al índice base
+                indice = new Indice(actual.base, actual.delta, new ConcurrentSkipListMap<>());
+                docs = documentos;
+            }
+            IndiceBase base = construir(docs);
+            synchronized (this) {
+                indice = new Indice(base, null, indice.delta);
+            }
+        } finally {
+            reconstruccion.unlock();
+        }
+    }
+
+    private static IndiceBase construir(Map<Long, Documento> docs) {
+        Map<String, long[]> postings = new HashMap<>();
+        Map<String, Integer> tamanos = new HashMap<>();
+        for (Documento d : docs.values()) {
+            for (String t : d.terminos) {
+                int n = tamanos.merge(t, 1, Integer::sum);
+                long[] ids = postings.get(t);
+                if (ids == null) {
+                    ids = new long[2];
+                } else if (ids.length < n) {
+                    ids = Arrays.copyOf(ids, ids.length * 2);
+                }
+                ids[n - 1] = d.idCliente;
+                postings.put(t, ids);
+            }
+        }
+        String[] terminos = postings.keySet().toArray(new String[0]);
+        Arrays.sort(terminos);
+        long[][] clientes = new long[terminos.length][];
+        for (int i = 0; i < terminos.length; i++) {
+            clientes[i] = Arrays.copyOf(postings.get(terminos[i]), tamanos.get(terminos[i]));
+        }
+        return new IndiceBase(terminos, clientes);
+    }
+
+    // ===== NORMALIZACIÓN =====
+
+    static String normalizar(String texto) {
+        if (texto == null) return "";
+        String s = Normalizer.normalize(texto.toLowerCase(Locale.ROOT), Normalizer.Form.NFD);
+        return MARCAS.matcher(s).replaceAll("");
+    }
+
+    private static void agregarTerminos(String texto, Set<String> destino) {
+        for (String t : SEPARADORES.split(normalizar(texto))) {
+            if (!t.isEmpty()) destino.add(t);
+        }
+    }
+
+    private static String soloDigitos(String texto) {
+        return texto == null ? "" : texto.replaceAll("\\D", "");
+    }
+
+    static String[] terminosConsulta(String consulta) {
+        String n = normalizar(consulta).trim();
+        if (n.isEmpty()) return new String[0];
+        // "099-123 45" se busca como un solo número
+        if (n.matches("[0-9\\s().+-]+")) {
+            String digitos = soloDigitos(n);
+            return digitos.isEmpty() ? new String[0] : new String[]{digitos};
+        }
+        Set<String> t = new LinkedHashSet<>();
+        agregarTerminos(n, t);
+        return t.toArray(new String[0]);
+    }
+
+    // ===== ESTRUCTURAS =====
+
+    /** Índice base más los deltas que se consultan con él; se reemplaza entero */
+    private static final class Indice {
+        final IndiceBase base;
+        // Delta que se estaba llenando cuando empezó la reconstrucción en curso
+        final ConcurrentSkipListMap<String, Set<Long>> anterior;
+        final ConcurrentSkipListMap<String, Set<Long>> delta;
+
+        Indice(IndiceBase base, ConcurrentSkipListMap<String, Set<Long>> anterior,
+               ConcurrentSkipListMap<String, Set<Long>> delta) {
+            this.base = base;
+            this.anterior = anterior;
+            this.delta = delta;
+        }
+    }
+
+    private static final class IndiceBase {
+        final String[] terminos;
+        final long[][] clientes;
+
+        IndiceBase(String[] terminos, long[][] clientes) {
+            this.terminos = terminos;
+            this.clientes = clientes;
+        }
+
+        /** Primera posición cuyo término es >= prefijo */
+        int desde(String prefijo) {
+            int i = Arrays.binarySearch(terminos, prefijo);
+            return i >= 0 ? i : -i - 1;
+        }
+    }
+
+    private static final class Documento {
+        final long idCliente;
+        final String nombreCompleto;
+        final String cedula;
+        final String email;
+        final String telefono;
+        final boolean activo;
+        final String[] terminos;
+
+        Documento(long idCliente, String nombre, String apellidos, String cedula, String email, String telefono, boolean activo) {
+            this.idCliente = idCliente;
+            this.nombreCompleto = ((nombre != null ? nombre : "") + " " + (apellidos != null ? apellidos : "")).trim();
+            this.cedula = cedula;
+            this.email = email;
+            this.telefono = telefono;
+            this.activo = activo;
+
+            Set<String> t = new LinkedHashSet<>();
+            agregarTerminos(nombre, t);
+            agregarTerminos(apellidos, t);
+            agregarTerminos(email, t);
+            if (email != null && email.indexOf('@') > 0) {
+                // "juan.perez@..." también se encuentra escribiendo "juanperez"
+                String local = SEPARADORES.matcher(normalizar(email.substring(0, email.indexOf('@')))).replaceAll("");
+                if (!local.isEmpty()) t.add(local);
+            }
+            String ced = soloDigitos(cedula);
+            if (!ced.isEmpty()) t.add(ced); else agregarTerminos(cedula, t);
+            String tel = soloDigitos(telefono);
+            if (!tel.isEmpty()) t.add(tel);
+            this.terminos = t.toArray(new String[0]);
+        }
+
+        boolean coincide(String[] consulta) {
+            for (String q : consulta) {
+                boolean encontrado = false;
+                for (String t : terminos) {
+                    if (t.startsWith(q)) { encontrado = true; break; }
+                }
+                if (!encontrado) return false;
+            }
+            return true;
+        }
+
+        Sugerencia sugerencia() {
+            Sugerencia s = new Sugerencia();
+            s.idCliente = idCliente;
+            s.nombreCompleto = nombreCompleto;
+            s.cedula = cedula;
+            s.email = email;
+            s.telefono = telefono;
+            s.activo = activo;
+            return s;
+        }
+    }
+
+    public static class Sugerencia {
+        public Long idCliente;
+        public String nombreCompleto;
+        public String cedula;
+        public String email;
+        public String telefono;
+        public boolean activo;
+    }
+}
@@ -0,0 +1,571 @@
+package com.ferreteria.sistema.service;
+
+import com.ferreteria.sistema.dao.CuboVentasDao;
+import com.ferreteria.sistema.dao.VentasHoraDao;
+import com.ferreteria.sistema.event.EntidadModificadaEvent;
+import com.ferreteria.sistema.event.FacturaCambioEvent;
+import com.ferreteria.sistema.event.FacturaSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * Cubo de ventas en memoria
+ *
+ * Guarda las líneas de las facturas PAGADA por columnas: cada dimensión
+ * (producto, mes, método de pago, vendedor) como códigos int de un
+ * diccionario y las medidas (cantidad e importe en centavos) como long.
+ * Categoría y marca se resuelven a través del producto, así que cambiar un
+ * producto solo actualiza su fila del diccionario.
+ *
+ * Las filas se reparten en segmentos de tamaño fijo que se recorren en
+ * paralelo; cada segmento agrupa en su propia tabla y al final se suman.
+ * Cada FacturaCambioEvent confirmado marca como borradas las filas que tenía
+ * la factura y, si ahora está PAGADA, agrega sus líneas actuales. La recarga
+ * nocturna descarta las filas borradas.
+ *
+ * Cuando cambian productos o usuarios, la tabla se lee sin el lock y bajo el
+ * lock de escritura solo se copian los valores al diccionario. Cada lectura
+ * lleva un número tomado antes de empezar; el cubo recuerda el último que
+ * aplicó y descarta las lecturas que empezaron antes, que pueden ser más viejas.
+ */
+@Service
+public class CuboVentasService {
+
+    private static final Logger log = LoggerFactory.getLogger(CuboVentasService.class);
+
+    public enum Dimension {
+        CATEGORIA("categoria"), MARCA("marca"), MES("mes"), METODO_PAGO("metodoPago"), VENDEDOR("vendedor");
+
+        public final String nombre;
+
+        Dimension(String nombre) {
+            this.nombre = nombre;
+        }
+
+        public static Dimension de(String nombre) {
+            for (Dimension d : values()) {
+                if (d.nombre.equalsIgnoreCase(nombre.trim())) return d;
+            }
+            throw new IllegalArgumentException("Dimensión desconocida: " + nombre
+                    + " (use categoria, marca, mes, metodoPago o vendedor)");
+        }
+    }
+
+    @Autowired
+    private CuboVentasDao cuboVentasDao;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Numera las lecturas de productos y usuarios, incluidas las de la recarga
+    private final AtomicLong lecturas = new AtomicLong();
+    private Cubo cubo = new Cubo();
+    // Cambios recibidos durante una recarga; se repiten sobre el cubo nuevo antes de publicarlo
+    private List<Consumer<Cubo>> pendientes;
+    private volatile boolean cargado;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void cargarAlIniciar() {
+        recargar();
+    }
+
+    /**
+     * Vuelve a construir el cubo desde la base de datos, sin bloquear las consultas mientras tanto
+     */
+    @Scheduled(cron = "${ferreteria.reportes.cubo.cron-recarga:0 30 4 * * *}")
+    public void recargar() {
+        lock.writeLock().lock();
+        try {
+            if (pendientes != null) return;
+            pendientes = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        Cubo nuevo = null;
+        try {
+            long inicio = System.currentTimeMillis();
+            Cubo c = new Cubo();
+            c.lecturaProductos = c.lecturaUsuarios = lecturas.incrementAndGet();
+            cuboVentasDao.recorrerProductos(c::fijarProducto);
+            cuboVentasDao.recorrerUsuarios(c.nombresUsuario::put);
+            cuboVentasDao.recorrerLineasPagadas(c::cargarLinea);
+            nuevo = c;
+            log.info("Cubo de ventas cargado: {} líneas en {} ms", c.filas, System.currentTimeMillis() - inicio);
+        } catch (Exception ex) {
+            log.warn("No se pudo cargar el cubo de ventas: {}", ex.getMessage());
+        } finally {
+            lock.writeLock().lock();
+            try {
+                if (nuevo != null) {
+                    for (Consumer<Cubo> cambio : pendientes) cambio.accept(nuevo);
+                    cubo = nuevo;
+                    cargado = true;
+                }
+                pendientes = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    public boolean estaCargado() {
+        return cargado;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void facturaCambio(FacturaCambioEvent event) {
+        FacturaSnapshot s = event.getActual() != null ? event.getActual() : event.getAnterior();
+        if (s == null || s.idFactura == null) return;
+        FacturaSnapshot actual = event.getActual();
+        aplicar(c -> c.reemplazarFactura(s.idFactura, actual));
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void entidadModificada(EntidadModificadaEvent event) {
+        if (EstadisticasService.PRODUCTOS.equals(event.getEntidad())) {
+            long lectura = lecturas.incrementAndGet();
+            List<Object[]> leidos = new ArrayList<>();
+            cuboVentasDao.recorrerProductos((id, categoria, marca) -> leidos.add(new Object[]{id, categoria, marca}));
+            aplicar(c -> {
+                if (lectura < c.lecturaProductos) return;
+                c.lecturaProductos = lectura;
+                for (Object[] p : leidos) c.fijarProducto((Long) p[0], (String) p[1], (String) p[2]);
+            });
+        } else if (EstadisticasService.USUARIOS.equals(event.getEntidad())) {
+            long lectura = lecturas.incrementAndGet();
+            Map<Long, String> leidos = new HashMap<>();
+            cuboVentasDao.recorrerUsuarios(leidos::put);
+            aplicar(c -> {
+                if (lectura < c.lecturaUsuarios) return;
+                c.lecturaUsuarios = lectura;
+                c.nombresUsuario.putAll(leidos);
+            });
+        }
+    }
+
+    private void aplicar(Consumer<Cubo> cambio) {
+        lock.writeLock().lock();
+        try {
+            cambio.accept(cubo);
+            if (pendientes != null) pendientes.add(cambio);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Agrupa las ventas por las dimensiones indicadas
+     * @param agrupar dimensiones de agrupación, en orden (vacío = solo totales)
+     * @param filtros valores permitidos por dimensión (comparados sin distinguir mayúsculas)
+     * @param desde primer mes incluido, o null
+     * @param hasta último mes incluido, o null
+     */
+    public Resultado consultar(List<String> agrupar, Map<String, List<String>> filtros, YearMonth desde, YearMonth hasta) {
+        List<Dimension> grupos = new ArrayList<>();
+        if (agrupar != null) {
+            for (String a : agrupar) {
+                if (a == null || a.isBlank()) continue;
+                Dimension d = Dimension.de(a);
+                if (grupos.contains(d)) throw new IllegalArgumentException("Dimensión repetida: " + a);
+                grupos.add(d);
+            }
+        }
+        Map<Dimension, Set<String>> permitidos = new EnumMap<>(Dimension.class);
+        if (filtros != null) {
+            filtros.forEach((nombre, valores) -> {
+                if (valores == null || valores.isEmpty()) return;
+                Set<String> set = new HashSet<>();
+                for (String v : valores) set.add(v.trim().toUpperCase());
+                permitidos.put(Dimension.de(nombre), set);
+            });
+        }
+        if (desde != null && hasta != null && hasta.isBefore(desde)) {
+            throw new IllegalArgumentException("El mes hasta no puede ser anterior al mes desde");
+        }
+
+        long inicio = System.currentTimeMillis();
+        lock.readLock().lock();
+        try {
+            Resultado r = cubo.consultar(grupos, permitidos, desde, hasta);
+            r.milisegundos = System.currentTimeMillis() - inicio;
+            return r;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Datos del cubo; no es seguro para hilos, lo protege el lock del servicio */
+    static final class Cubo {
+        static final int BITS_SEGMENTO = 16;
+        static final int TAM_SEGMENTO = 1 << BITS_SEGMENTO;
+
+        final Diccionario productos = new Diccionario();
+        int[] categoriaProducto = new int[256];
+        int[] marcaProducto = new int[256];
+        final Diccionario categorias = new Diccionario();
+        final Diccionario marcas = new Diccionario();
+        final Diccionario meses = new Diccionario();
+        final Diccionario metodos = new Diccionario();
+        final Diccionario vendedores = new Diccionario();
+        final Map<Long, String> nombresUsuario = new HashMap<>();
+
+        final List<Segmento> segmentos = new ArrayList<>();
+        // Primera fila y cantidad de filas de cada factura; sus líneas siempre quedan contiguas
+        final Map<Long, int[]> filasFactura = new HashMap<>();
+        int filas;
+        int borradas;
+        private long ultimaFactura = -1;
+        // Número de la última lectura de productos y de usuarios aplicada
+        long lecturaProductos;
+        long lecturaUsuarios;
+
+        void fijarProducto(long idProducto, String categoria, String marca) {
+            int p = productos.codigo(idProducto);
+            if (p >= categoriaProducto.length) {
+                categoriaProducto = Arrays.copyOf(categoriaProducto, Math.max(p + 1, categoriaProducto.length * 2));
+                marcaProducto = Arrays.copyOf(marcaProducto, categoriaProducto.length);
+            }
+            categoriaProducto[p] = categorias.codigo(categoria != null ? categoria.toUpperCase() : "SIN_CATEGORIA");
+            marcaProducto[p] = marcas.codigo(marca != null ? marca.toUpperCase() : "SIN_MARCA");
+        }
+
+        private int producto(long idProducto) {
+            int conocidos = productos.tamano();
+            int p = productos.codigo(idProducto);
+            if (p == conocidos) fijarProducto(idProducto, null, null);
+            return p;
+        }
+
+        /** Carga inicial: las líneas llegan ordenadas por factura */
+        void cargarLinea(long idFactura, int mes, String metodoPago, long idUsuario, long idProducto, long cantidad, long importe) {
+            if (idFactura != ultimaFactura) {
+                filasFactura.put(idFactura, new int[]{filas, 0});
+                ultimaFactura = idFactura;
+            }
+            filasFactura.get(idFactura)[1]++;
+            agregarFila(mes, metodoPago, idUsuario, idProducto, cantidad, importe);
+        }
+
+        void reemplazarFactura(long idFactura, FacturaSnapshot actual) {
+            int[] previas = filasFactura.remove(idFactura);
+            if (previas != null) {
+                for (int f = previas[0]; f < previas[0] + previas[1]; f++) {
+                    segmentos.get(f >>> BITS_SEGMENTO).borrar(f & (TAM_SEGMENTO - 1));
+                }
+                borradas += previas[1];
+            }
+            if (actual == null || !actual.esPagada() || actual.fecha == null || actual.lineas.isEmpty()) return;
+            int mes = actual.fecha.getYear() * 12 + actual.fecha.getMonthValue() - 1;
+            long idUsuario = actual.idUsuario != null ? actual.idUsuario : 0L;
+            filasFactura.put(idFactura, new int[]{filas, actual.lineas.size()});
+            for (FacturaSnapshot.Linea l : actual.lineas) {
+                agregarFila(mes, actual.metodoPago, idUsuario, l.idProducto != null ? l.idProducto : 0L,
+                        l.cantidad, ExposicionCreditoService.centavos(l.subtotal));
+            }
+        }
+
+        private void agregarFila(int mes, String metodoPago, long idUsuario, long idProducto, long cantidad, long importe) {
+            Segmento s = segmentos.isEmpty() ? null : segmentos.get(segmentos.size() - 1);
+            if (s == null || s.filas == TAM_SEGMENTO) {
+                s = new Segmento();
+                segmentos.add(s);
+            }
+            int i = s.filas;
+            s.producto[i] = producto(idProducto);
+            s.mes[i] = meses.codigo(mes);
+            s.metodo[i] = metodos.codigo(metodoPago != null ? metodoPago : VentasHoraDao.SIN_METODO);
+            s.vendedor[i] = vendedores.codigo(idUsuario);
+            s.cantidad[i] = cantidad;
+            s.importe[i] = importe;
+            s.filas++;
+            filas++;
+        }
+
+        Resultado consultar(List<Dimension> grupos, Map<Dimension, Set<String>> permitidos, YearMonth desde, YearMonth hasta) {
+            int n = grupos.size();
+            int[] desplazamiento = new int[n];
+            long[] mascara = new long[n];
+            int bits = 0;
+            for (int g = 0; g < n; g++) {
+                int b = Math.max(1, 32 - Integer.numberOfLeadingZeros(diccionario(grupos.get(g)).tamano()));
+                desplazamiento[g] = bits;
+                mascara[g] = (1L << b) - 1;
+                bits += b;
+            }
+            if (bits > 63) throw new IllegalArgumentException("Demasiadas combinaciones de dimensiones para agrupar");
+
+            boolean[] mesOk = filtro(Dimension.MES, permitidos.get(Dimension.MES));
+            if (desde != null || hasta != null) {
+                if (mesOk == null) {
+                    mesOk = new boolean[meses.tamano()];
+                    Arrays.fill(mesOk, true);
+                }
+                int min = desde != null ? desde.getYear() * 12 + desde.getMonthValue() - 1 : Integer.MIN_VALUE;
+                int max = hasta != null ? hasta.getYear() * 12 + hasta.getMonthValue() - 1 : Integer.MAX_VALUE;
+                for (int c = 0; c < mesOk.length; c++) {
+                    int m = (Integer) meses.clave(c);
+                    if (m < min || m > max) mesOk[c] = false;
+                }
+            }
+            boolean[] categoriaOk = filtro(Dimension.CATEGORIA, permitidos.get(Dimension.CATEGORIA));
+            boolean[] marcaOk = filtro(Dimension.MARCA, permitidos.get(Dimension.MARCA));
+            boolean[] productoOk = null;
+            if (categoriaOk != null || marcaOk != null) {
+                productoOk = new boolean[productos.tamano()];
+                for (int p = 0; p < productoOk.length; p++) {
+                    productoOk[p] = (categoriaOk == null || categoriaOk[categoriaProducto[p]])
+                            && (marcaOk == null || marcaOk[marcaProducto[p]]);
+                }
+            }
+            Escaneo e = new Escaneo(grupos.toArray(new Dimension[0]), desplazamiento, productoOk, mesOk,
+                    filtro(Dimension.METODO_PAGO, permitidos.get(Dimension.METODO_PAGO)),
+                    filtro(Dimension.VENDEDOR, permitidos.get(Dimension.VENDEDOR)),
+                    categoriaProducto, marcaProducto);
+
+            Agregado total = IntStream.range(0, segmentos.size()).parallel()
+                    .mapToObj(i -> e.recorrer(segmentos.get(i)))
+                    .reduce(Agregado::sumar)
+                    .orElseGet(Agregado::new);
+
+            Resultado r = new Resultado();
+            for (Dimension d : grupos) r.dimensiones.add(d.nombre);
+            r.filasLeidas = filas - borradas;
+            long cantidad = 0, importe = 0;
+            for (int k = 0; k < total.n; k++) {
+                Fila f = new Fila();
+                for (int g = 0; g < n; g++) {
+                    f.valores.add(etiqueta(grupos.get(g), (int) ((total.claves[k] >>> desplazamiento[g]) & mascara[g])));
+                }
+                f.cantidad = total.cantidad[k];
+                f.importe = ExposicionCreditoService.aMonto(total.importe[k]);
+                f.lineas = total.lineas[k];
+                cantidad += total.cantidad[k];
+                importe += total.importe[k];
+                r.filas.add(f);
+            }
+            r.filas.sort((a, b) -> {
+                for (int g = 0; g < n; g++) {
+                    int c = a.valores.get(g).compareTo(b.valores.get(g));
+                    if (c != 0) return c;
+                }
+                return 0;
+            });
+            r.cantidadTotal = cantidad;
+            r.importeTotal = ExposicionCreditoService.aMonto(importe);
+            return r;
+        }
+
+        private boolean[] filtro(Dimension d, Set<String> valores) {
+            if (valores == null) return null;
+            Diccionario dic = diccionario(d);
+            boolean[] ok = new boolean[dic.tamano()];
+            for (int c = 0; c < ok.length; c++) ok[c] = valores.contains(etiqueta(d, c).toUpperCase());
+            return ok;
+        }
+
+        private Diccionario diccionario(Dimension d) {
+            return switch (d) {
+                case CATEGORIA -> categorias;
+                case MARCA -> marcas;
+                case MES -> meses;
+                case METODO_PAGO -> metodos;
+                case VENDEDOR -> vendedores;
+            };
+        }
+
+        private String etiqueta(Dimension d, int codigo) {
+            Object clave = diccionario(d).clave(codigo);
+            return switch (d) {
+                case MES -> {
+                    int m = (Integer) clave;
+                    yield YearMonth.of(m / 12, m % 12 + 1).toString();
+                }
+                case VENDEDOR -> {
+                    long id = (Long) clave;
+                    yield id == 0 ? "SIN_USUARIO" : nombresUsuario.getOrDefault(id, "USUARIO " + id);
+                }
+                default -> (String) clave;
+            };
+        }
+    }
+
+    /** Recorrido de un segmento con filtros y agrupación ya resueltos a códigos */
+    private static final class Escaneo {
+        final Dimension[] grupos;
+        final int[] desplazamiento;
+        final boolean[] productoOk;
+        final boolean[] mesOk;
+        final boolean[] metodoOk;
+        final boolean[] vendedorOk;
+        final int[] categoriaProducto;
+        final int[] marcaProducto;
+
+        Escaneo(Dimension[] grupos, int[] desplazamiento, boolean[] productoOk, boolean[] mesOk,
+                boolean[] metodoOk, boolean[] vendedorOk, int[] categoriaProducto, int[] marcaProducto) {
+            this.grupos = grupos;
+            this.desplazamiento = desplazamiento;
+            this.productoOk = productoOk;
+            this.mesOk = mesOk;
+            this.metodoOk = metodoOk;
+            this.vendedorOk = vendedorOk;
+            this.categoriaProducto = categoriaProducto;
+            this.marcaProducto = marcaProducto;
+        }
+
+        Agregado recorrer(Segmento s) {
+            Agregado a = new Agregado();
+            for (int i = 0; i < s.filas; i++) {
+                if (s.borrada(i)) continue;
+                int p = s.producto[i];
+                if (productoOk != null && !productoOk[p]) continue;
+                if (mesOk != null && !mesOk[s.mes[i]]) continue;
+                if (metodoOk != null && !metodoOk[s.metodo[i]]) continue;
+                if (vendedorOk != null && !vendedorOk[s.vendedor[i]]) continue;
+                long clave = 0;
+                for (int g = 0; g < grupos.length; g++) {
+                    int codigo = switch (grupos[g]) {
+                        case CATEGORIA -> categoriaProducto[p];
+                        case MARCA -> marcaProducto[p];
+                        case MES -> s.mes[i];
+                        case METODO_PAGO -> s.metodo[i];
+                        case VENDEDOR -> s.vendedor[i];
+                    };
+                    clave |= (long) codigo << desplazamiento[g];
+                }
+                a.sumar(clave, s.cantidad[i], s.importe[i], 1);
+            }
+            return a;
+        }
+    }
+
+    static final class Segmento {
+        final int[] producto = new int[Cubo.TAM_SEGMENTO];
+        final int[] mes = new int[Cubo.TAM_SEGMENTO];
+        final int[] metodo = new int[Cubo.TAM_SEGMENTO];
+        final int[] vendedor = new int[Cubo.TAM_SEGMENTO];
+        final long[] cantidad = new long[Cubo.TAM_SEGMENTO];
+        final long[] importe = new long[Cubo.TAM_SEGMENTO];
+        final long[] borradas = new long[Cubo.TAM_SEGMENTO >>> 6];
+        int filas;
+
+        boolean borrada(int i) {
+            return (borradas[i >>> 6] & (1L << i)) != 0;
+        }
+
+        void borrar(int i) {
+            borradas[i >>> 6] |= 1L << i;
+        }
+    }
+
+    /** Valores distintos de una dimensión, numerados en orden de aparición */
+    static final class Diccionario {
+        private final Map<Object, Integer> codigos = new HashMap<>();
+        private final List<Object> claves = new ArrayList<>();
+
+        int codigo(Object clave) {
+            Integer c = codigos.get(clave);
+            if (c == null) {
+                c = claves.size();
+                codigos.put(clave, c);
+                claves.add(clave);
+            }
+            return c;
+        }
+
+        Object clave(int codigo) {
+            return claves.get(codigo);
+        }
+
+        int tamano() {
+            return claves.size();
+        }
+    }
+
+    /** Tabla de direccionamiento abierto clave de grupo -> medidas */
+    static final class Agregado {
+        private int[] tabla = new int[64];
+        long[] claves = new long[32];
+        long[] cantidad = new long[32];
+        long[] importe = new long[32];
+        long[] lineas = new long[32];
+        int n;
+
+        void sumar(long clave, long cant, long imp, long lin) {
+            int mascara = tabla.length - 1;
+            int h = posicion(clave, mascara);
+            while (tabla[h] != 0) {
+                int k = tabla[h] - 1;
+                if (claves[k] == clave) {
+                    cantidad[k] += cant;
+                    importe[k] += imp;
+                    lineas[k] += lin;
+                    return;
+                }
+                h = (h + 1) & mascara;
+            }
+            if (n == claves.length) {
+                claves = Arrays.copyOf(claves, n * 2);
+                cantidad = Arrays.copyOf(cantidad, n * 2);
+                importe = Arrays.copyOf(importe, n * 2);
+                lineas = Arrays.copyOf(lineas, n * 2);
+            }
+            claves[n] = clave;
+            cantidad[n] = cant;
+            importe[n] = imp;
+            lineas[n] = lin;
+            tabla[h] = ++n;
+            if (n * 2 > tabla.length) crecer();
+        }
+
+        Agregado sumar(Agregado otro) {
+            for (int k = 0; k < otro.n; k++) sumar(otro.claves[k], otro.cantidad[k], otro.importe[k], otro.lineas[k]);
+            return this;
+        }
+
+        private void crecer() {
+            tabla = new int[tabla.length * 2];
+            int mascara = tabla.length - 1;
+            for (int k = 0; k < n; k++) {
+                int h = posicion(claves[k], mascara);
+                while (tabla[h] != 0) h = (h + 1) & mascara;
+                tabla[h] = k + 1;
+            }
+        }
+
+        private static int posicion(long clave, int mascara) {
+            long x = clave * 0x9E3779B97F4A7C15L;
+            return (int) (x ^ (x >>> 32)) & mascara;
+        }
+    }
+
+    // ===== CLASES DE RESPUESTA =====
+
+    public static class Fila {
+        public List<String> valores = new ArrayList<>();
+        public long cantidad;
+        public BigDecimal importe;
+        public long lineas;
+    }
+
+    public static class Resultado {
+        public List<String> dimensiones = new ArrayList<>();
+        public List<Fila> filas = new ArrayList<>();
+        public long cantidadTotal;
+        public BigDecimal importeTotal;
+        public long filasLeidas;
+        public long milisegundos;
+    }
+}
@@ -1,19 +1,27 @@
 package com.ferreteria.sistema.service;
 
+import com.ferreteria.sistema.config.ReplicasDataSource;
 import com.ferreteria.sistema.entity.Usuario;
 import com.ferreteria.sistema.repository.UsuarioRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.CredentialsContainer;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.time.LocalDateTime;
-import java.util.Collections;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.Serial;
+import java.io.Serializable;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * Servicio personalizado para cargar detalles de usuario en Spring Security
@@ -28,6 +36,15 @@ public class CustomUserDetailsService implements UserDetailsService {
     @Autowired
     private UsuarioRepository usuarioRepository;
 
+    @Autowired
+    private IntentosLoginService intentosLoginService;
+
+    @Autowired
+    private RolAutoridadService rolAutoridadService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
     /**
      * Carga un usuario por su nombre de usuario o email
      * 
@@ -36,26 +53,86 @@ public class CustomUserDetailsService implements UserDetailsService {
      * @throws UsernameNotFoundException si el usuario no existe
      */
     @Override
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public UserDetails loadUserByUsername(String usernameOrEmail) throws UsernameNotFoundException {
-        // Buscar usuario por nombre de usuario o email
-        Usuario usuario = usuarioRepository.findByNombreUsuarioOrEmail(usernameOrEmail, usernameOrEmail)
-                .orElseThrow(() -> new UsernameNotFoundException(
-                        "Usuario no encontrado con nombre de usuario o email: " + usernameOrEmail));
+        // La lectura y el cálculo de intentos no se cruzan con la escritura en lote de los contadores.
+        // El candado se toma antes de pedir la conexión, porque esa escritura usa el mismo pool.
+        // Se lee de la principal: una réplica atrasada no vería los intentos ya confirmados.
+        TransactionTemplate lectura = new TransactionTemplate(transactionManager);
+        lectura.setReadOnly(true);
+        return intentosLoginService.leerConsistente(() -> ReplicasDataSource.enPrincipal(() -> lectura.execute(status -> {
+            // Buscar usuario por nombre de usuario o email
+            Usuario usuario = usuarioRepository.findByNombreUsuarioOrEmail(usernameOrEmail, usernameOrEmail)
+                    .orElseThrow(() -> new UsernameNotFoundException(
+                            "Usuario no encontrado con nombre de usuario o email: " + usernameOrEmail));
 
-        // Crear y retornar objeto UserDetails personalizado
-        return new CustomUserPrincipal(usuario);
+            // Crear y retornar objeto UserDetails personalizado
+            // Los intentos fallidos aún no escritos también cuentan para el bloqueo
+            int guardados = usuario.getIntentosFallidos() != null ? usuario.getIntentosFallidos() : 0;
+            boolean bloqueado = intentosLoginService.estaBloqueado(guardados,
+                    usuario.getNombreUsuario(), usuario.getEmail());
+            return CustomUserPrincipal.desde(usuario, !bloqueado,
+                    rolAutoridadService.autoridades(usuario.getRol().getNombre()));
+        })));
     }
 
     /**
-     * Clase interna que implementa UserDetails
-     * Representa los detalles del usuario para Spring Security
+     * Detalles del usuario autenticado para Spring Security
+     *
+     * Es inmutable y solo guarda los datos que usan las vistas y los
+     * controladores (id, usuario, nombre, email y rol), no la entidad Usuario:
+     * así la sesión no retiene el grafo JPA ni proxies de Hibernate y el
+     * principal puede leerse sin ir a la base de datos. La contraseña solo
+     * existe durante la autenticación y nunca se serializa.
      */
-    public static class CustomUserPrincipal implements UserDetails {
-        private Usuario usuario;
+    public static final class CustomUserPrincipal implements UserDetails, CredentialsContainer {
 
-        public CustomUserPrincipal(Usuario usuario) {
-            this.usuario = usuario;
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final Long id;
+        private final String username;
+        private final String nombreCompleto;
+        private final String email;
+        private final String rol;
+        private final boolean activo;
+        private final boolean noBloqueado;
+        private final List<GrantedAuthority> authorities;
+        private transient String password;
+
+        private CustomUserPrincipal(Long id, String username, String nombreCompleto, String email, String rol,
+                                    boolean activo, boolean noBloqueado, String password,
+                                    List<GrantedAuthority> authorities) {
+            this.id = id;
+            this.username = username;
+            this.nombreCompleto = nombreCompleto;
+            this.email = email;
+            this.rol = rol;
+            this.activo = activo;
+            this.noBloqueado = noBloqueado;
+            this.password = password;
+            this.authorities = authorities;
+        }
+
+        /**
+         * Copia del usuario los datos necesarios para la sesión
+         * @param usuario usuario con su rol cargado
+         * @param noBloqueado false si superó el máximo de intentos fallidos
+         * @param autoridades autoridades del rol, tomadas de la cache de roles
+         * @return principal sin referencias a la entidad
+         */
+        public static CustomUserPrincipal desde(Usuario usuario, boolean noBloqueado,
+                                                List<GrantedAuthority> autoridades) {
+            return new CustomUserPrincipal(
+                    usuario.getIdUsuario(),
+                    usuario.getNombreUsuario(),
+                    usuario.getNombreCompleto(),
+                    usuario.getEmail(),
+                    usuario.getRol().getNombre(),
+                    Boolean.TRUE.equals(usuario.getActivo()),
+                    noBloqueado,
+                    usuario.getContraseña(),
+                    autoridades);
         }
 
         /**
@@ -64,18 +141,24 @@ public class CustomUserDetailsService implements UserDetailsService {
          */
         @Override
         public List<GrantedAuthority> getAuthorities() {
-            // Convertir el rol del usuario en una autoridad de Spring Security
-            String roleName = "ROLE_" + usuario.getRol().getNombre().toUpperCase();
-            return Collections.singletonList(new SimpleGrantedAuthority(roleName));
+            return authorities;
         }
 
         /**
          * Obtiene la contraseña del usuario
-         * @return contraseña encriptada
+         * @return contraseña encriptada, o null después de autenticar
          */
         @Override
         public String getPassword() {
-            return usuario.getContraseña();
+            return password;
+        }
+
+        /**
+         * Descarta la contraseña una vez autenticado el usuario
+         */
+        @Override
+        public void eraseCredentials() {
+            this.password = null;
         }
 
         /**
@@ -84,7 +167,7 @@ public class CustomUserDetailsService implements UserDetailsService {
          */
         @Override
         public String getUsername() {
-            return usuario.getNombreUsuario();
+            return username;
         }
 
         /**
@@ -93,7 +176,6 @@ public class CustomUserDetailsService implements UserDetailsService {
          */
         @Override
         public boolean isAccountNonExpired() {
-            // Implementar lógica de expiración si es necesario
             // Por ahora, las cuentas no expiran
             return true;
         }
@@ -104,8 +186,7 @@ public class CustomUserDetailsService implements UserDetailsService {
          */
         @Override
         public boolean isAccountNonLocked() {
-            // Bloquear cuenta si hay demasiados intentos fallidos
-            return usuario.getIntentosFallidos() < 5;
+            return noBloqueado;
         }
 
         /**
@@ -115,7 +196,6 @@ public class CustomUserDetailsService implements UserDetailsService {
         @Override
         public boolean isCredentialsNonExpired() {
             // Las credenciales no expiran por defecto
-            // Se puede implementar lógica de expiración de contraseñas aquí
             return true;
         }
 
@@ -125,15 +205,7 @@ public class CustomUserDetailsService implements UserDetailsService {
          */
         @Override
         public boolean isEnabled() {
-            return usuario.getActivo();
-        }
-
-        /**
-         * Obtiene el objeto Usuario completo
-         * @return usuario
-         */
-        public Usuario getUsuario() {
-            return usuario;
+            return activo;
         }
 
         /**
@@ -141,7 +213,7 @@ public class CustomUserDetailsService implements UserDetailsService {
          * @return ID del usuario
          */
         public Long getId() {
-            return usuario.getIdUsuario();
+            return id;
         }
 
         /**
@@ -149,7 +221,7 @@ public class CustomUserDetailsService implements UserDetailsService {
          * @return nombre completo
          */
         public String getNombreCompleto() {
-            return usuario.getNombreCompleto();
+            return nombreCompleto;
         }
 
         /**
@@ -157,7 +229,7 @@ public class CustomUserDetailsService implements UserDetailsService {
          * @return email
          */
         public String getEmail() {
-            return usuario.getEmail();
+            return email;
         }
 
         /**
@@ -165,7 +237,7 @@ public class CustomUserDetailsService implements UserDetailsService {
          * @return nombre del rol
          */
         public String getRol() {
-            return usuario.getRol().getNombre();
+            return rol;
         }
 
         /**
@@ -174,7 +246,7 @@ public class CustomUserDetailsService implements UserDetailsService {
          * @return true si el usuario tiene el rol
          */
         public boolean hasRole(String rol) {
-            return usuario.getRol().getNombre().equalsIgnoreCase(rol);
+            return this.rol.equalsIgnoreCase(rol);
         }
 
         /**
@@ -208,6 +280,68 @@ public class CustomUserDetailsService implements UserDetailsService {
         public boolean isBodeguero() {
             return hasRole("BODEGUERO");
         }
+
+        /**
+         * Dos principales son iguales si son del mismo usuario; el registro
+         * de sesiones usa esta igualdad para limitar sesiones por usuario
+         */
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CustomUserPrincipal otro && username.equals(otro.username);
+        }
+
+        @Override
+        public int hashCode() {
+            return username.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return username + " [" + rol + "]";
+        }
+
+        /**
+         * En la sesión se escribe un proxy con los campos mínimos; las
+         * autoridades se reconstruyen desde el rol al leerlo y se validan
+         * contra la cache de roles en cada comprobación
+         */
+        @Serial
+        private Object writeReplace() {
+            return new FormaSerial(this);
+        }
+
+        @Serial
+        private void readObject(ObjectInputStream in) throws InvalidObjectException {
+            throw new InvalidObjectException("Se requiere el proxy de serialización");
+        }
+
+        private static final class FormaSerial implements Serializable {
+            @Serial
+            private static final long serialVersionUID = 1L;
+
+            private final long id;
+            private final String username;
+            private final String nombreCompleto;
+            private final String email;
+            private final String rol;
+            private final byte flags;
+
+            FormaSerial(CustomUserPrincipal p) {
+                this.id = p.id != null ? p.id : 0L;
+                this.username = p.username;
+                this.nombreCompleto = p.nombreCompleto;
+                this.email = p.email;
+                this.rol = p.rol;
+                this.flags = (byte) ((p.activo ? 1 : 0) | (p.noBloqueado ? 2 : 0));
+            }
+
+            @Serial
+            private Object readResolve() {
+                return new CustomUserPrincipal(id != 0L ? id : null, Objects.requireNonNull(username),
+                        nombreCompleto, email, Objects.requireNonNull(rol),
+                        (flags & 1) != 0, (flags & 2) != 0, null,
+                        List.of(new SimpleGrantedAuthority("ROLE_" + rol.toUpperCase())));
+            }
+        }
     }
 }
-
@@ -2,7 +2,9 @@ package com.ferreteria.sistema.service;
 
 import com.ferreteria.sistema.dao.EmpleadoSpDao;
 import com.ferreteria.sistema.entity.Empleado;
+import com.ferreteria.sistema.event.EntidadModificadaEvent;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -16,15 +18,27 @@ public class EmpleadoService {
     @Autowired
     private EmpleadoSpDao empleadoSpDao;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     public List<Empleado> obtenerTodos() { return empleadoSpDao.listar(); }
 
     public Optional<Empleado> obtenerPorId(Long id) { return empleadoSpDao.obtenerPorId(id); }
 
-    public void crear(Empleado e) { empleadoSpDao.insertar(e); }
+    public void crear(Empleado e) {
+        empleadoSpDao.insertar(e);
+        eventPublisher.publishEvent(new EntidadModificadaEvent(EstadisticasService.EMPLEADOS));
+    }
 
-    public void actualizar(Long id, Empleado e) { empleadoSpDao.actualizar(id, e); }
+    public void actualizar(Long id, Empleado e) {
+        empleadoSpDao.actualizar(id, e);
+        eventPublisher.publishEvent(new EntidadModificadaEvent(EstadisticasService.EMPLEADOS));
+    }
 
-    public void eliminar(Long id) { empleadoSpDao.eliminar(id); }
+    public void eliminar(Long id) {
+        empleadoSpDao.eliminar(id);
+        eventPublisher.publishEvent(new EntidadModificadaEvent(EstadisticasService.EMPLEADOS));
+    }
 }
 
 
@@ -0,0 +1,119 @@
+package com.ferreteria.sistema.service;
+
+import com.ferreteria.sistema.dao.EstadisticasDao;
+import com.ferreteria.sistema.event.EntidadModificadaEvent;
+import com.ferreteria.sistema.event.FacturaCambioEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Servicio de estadísticas de catálogo
+ *
+ * Responde conteos por estado, tipo, categoría, marca, puesto o rol con
+ * consultas agrupadas. Cada resultado se guarda unos segundos y se descarta
+ * en cuanto se confirma una escritura sobre la entidad correspondiente.
+ */
+@Service
+public class EstadisticasService {
+
+    public static final String CLIENTES = "clientes";
+    public static final String PRODUCTOS = "productos";
+    public static final String PROVEEDORES = "proveedores";
+    public static final String EMPLEADOS = "empleados";
+    public static final String USUARIOS = "usuarios";
+    private static final String RESUMEN = "resumen";
+
+    public static final Set<String> ENTIDADES = Set.of(CLIENTES, PRODUCTOS, PROVEEDORES, EMPLEADOS, USUARIOS);
+
+    @Autowired
+    private EstadisticasDao estadisticasDao;
+
+    @Value("${ferreteria.estadisticas.ttl-segundos:60}")
+    private long ttlSegundos;
+
+    private final Map<String, Entrada> cache = new ConcurrentHashMap<>();
+    // Cambia con cada invalidación; una lectura que empezó antes no guarda su resultado
+    private final AtomicLong generacion = new AtomicLong();
+
+    /**
+     * Conteos agrupados de una entidad
+     * @param entidad clientes, productos, proveedores, empleados o usuarios
+     * @throws IllegalArgumentException si la entidad no existe
+     */
+    public EstadisticasDao.Conteos obtener(String entidad) {
+        String clave = entidad != null ? entidad.toLowerCase() : "";
+        return switch (clave) {
+            case CLIENTES -> leer(clave, estadisticasDao::clientes);
+            case PRODUCTOS -> leer(clave, estadisticasDao::productos);
+            case PROVEEDORES -> leer(clave, estadisticasDao::proveedores);
+            case EMPLEADOS -> leer(clave, estadisticasDao::empleados);
+            case USUARIOS -> leer(clave, estadisticasDao::usuarios);
+            default -> throw new IllegalArgumentException("Entidad no soportada: " + entidad
+                    + ". Valores válidos: " + ENTIDADES);
+        };
+    }
+
+    /**
+     * Totales del tablero principal para el mes en curso
+     */
+    public EstadisticasDao.ResumenGeneral resumen() {
+        LocalDate inicioMes = LocalDate.now().withDayOfMonth(1);
+        return leer(RESUMEN + ":" + inicioMes, () -> estadisticasDao.resumenGeneral(inicioMes));
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void entidadModificada(EntidadModificadaEvent event) {
+        generacion.incrementAndGet();
+        cache.remove(event.getEntidad());
+        if (RolAutoridadService.ROLES.equals(event.getEntidad())) {
+            // Los conteos de usuarios se agrupan por nombre de rol
+            cache.remove(USUARIOS);
+        }
+        if (CLIENTES.equals(event.getEntidad()) || PRODUCTOS.equals(event.getEntidad())) {
+            invalidarResumen();
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void facturaCambio(FacturaCambioEvent event) {
+        invalidarResumen();
+    }
+
+    private void invalidarResumen() {
+        generacion.incrementAndGet();
+        cache.keySet().removeIf(k -> k.startsWith(RESUMEN));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T leer(String clave, Supplier<T> cargar) {
+        long ahora = System.currentTimeMillis();
+        Entrada e = cache.get(clave);
+        if (e != null && e.expira > ahora) return (T) e.valor;
+        long gen = generacion.get();
+        T valor = cargar.get();
+        if (generacion.get() == gen) {
+            cache.put(clave, new Entrada(valor, ahora + ttlSegundos * 1000));
+        }
+        return valor;
+    }
+
+    private static final class Entrada {
+        final Object valor;
+        final long expira;
+
+        Entrada(Object valor, long expira) {
+            this.valor = valor;
+            this.expira = expira;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.ferreteria.sistema.service;
+
+import com.ferreteria.sistema.dao.ClienteSpDao;
+import com.ferreteria.sistema.event.FacturaCambioEvent;
+import com.ferreteria.sistema.event.FacturaSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Exposición de crédito por cliente
+ *
+ * Mantiene en memoria, por cliente, el límite de crédito y el saldo de sus
+ * facturas PENDIENTE (en centavos). El saldo se ajusta con cada
+ * FacturaCambioEvent confirmado, de modo que validar una venta a crédito no
+ * requiere consultar la base de datos.
+ *
+ * Mientras la transacción que valida no termina, el monto queda reservado
+ * para que dos ventas simultáneas no excedan juntas el límite. Hasta que
+ * termina la carga inicial, cada validación lee el cliente de la base.
+ *
+ * Una factura confirmada durante la carga puede estar incluida o no en lo
+ * leído: los clientes que reciben cambios mientras tanto se vuelven a leer
+ * al terminar, hasta que una pasada no deja ninguno pendiente.
+ */
+@Service
+public class ExposicionCreditoService {
+
+    private static final Logger log = LoggerFactory.getLogger(ExposicionCreditoService.class);
+
+    @Autowired
+    private ClienteSpDao clienteSpDao;
+
+    private final Map<Long, Cuenta> cuentas = new ConcurrentHashMap<>();
+    private volatile boolean cargado;
+    // Clientes con cambios durante una recarga (null si no hay ninguna)
+    private Set<Long> tocados;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void cargarAlIniciar() {
+        recargar();
+    }
+
+    /**
+     * Vuelve a leer límites y saldos pendientes de todos los clientes activos
+     */
+    public void recargar() {
+        synchronized (this) {
+            if (tocados != null) return;
+            tocados = new HashSet<>();
+        }
+        try {
+            long inicio = System.currentTimeMillis();
+            Map<Long, long[]> leidos = new HashMap<>();
+            clienteSpDao.recorrerExposicion((id, limite, saldo) ->
+                    leidos.put(id, new long[]{centavos(limite), centavos(saldo)}));
+            leidos.forEach((id, v) -> cuenta(id).fijar(v[0], v[1]));
+            while (true) {
+                Set<Long> lote;
+                synchronized (this) {
+                    lote = tocados;
+                    if (lote.isEmpty()) {
+                        tocados = null;
+                        break;
+                    }
+                    tocados = new HashSet<>();
+                }
+                lote.forEach(this::leerCliente);
+            }
+            cargado = true;
+            log.info("Exposición de crédito cargada: {} clientes en {} ms", leidos.size(), System.currentTimeMillis() - inicio);
+        } catch (Exception ex) {
+            log.warn("No se pudo cargar la exposición de crédito: {}", ex.getMessage());
+        } finally {
+            synchronized (this) {
+                tocados = null;
+            }
+        }
+    }
+
+    public boolean estaCargado() {
+        return cargado;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void facturaCambio(FacturaCambioEvent event) {
+        FacturaSnapshot antes = event.getAnterior();
+        FacturaSnapshot despues = event.getActual();
+        if (esPendiente(antes)) cuenta(antes.idCliente).sumarSaldo(-centavos(antes.total));
+        if (esPendiente(despues)) cuenta(despues.idCliente).sumarSaldo(centavos(despues.total));
+        synchronized (this) {
+            if (tocados != null) {
+                if (antes != null && antes.idCliente != null) tocados.add(antes.idCliente);
+                if (despues != null && despues.idCliente != null) tocados.add(despues.idCliente);
+            }
+        }
+    }
+
+    /**
+     * Registra un nuevo límite de crédito (desde el mantenimiento de clientes o el recálculo)
+     * cuando se confirma la transacción en curso
+     */
+    public void actualizarLimite(Long idCliente, BigDecimal limite) {
+        if (idCliente != null && limite != null) alConfirmar(() -> cuenta(idCliente).fijarLimite(centavos(limite)));
+    }
+
+    /**
+     * Vuelve a leer de la base el límite y el saldo pendiente de un cliente
+     * (alta o reactivación) cuando se confirma la transacción en curso
+     */
+    public void recargarCliente(Long idCliente) {
+        if (idCliente != null) alConfirmar(() -> leerCliente(idCliente));
+    }
+
+    private Cuenta leerCliente(Long idCliente) {
+        Cuenta cuenta = cuenta(idCliente);
+        clienteSpDao.leerExposicion(idCliente, (id, limite, saldo) -> cuenta.fijar(centavos(limite), centavos(saldo)));
+        return cuenta;
+    }
+
+    private static void alConfirmar(Runnable accion) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    accion.run();
+                }
+            });
+        } else {
+            accion.run();
+        }
+    }
+
+    /**
+     * Verifica que el cliente pueda asumir un nuevo saldo pendiente y lo reserva
+     * hasta que termine la transacción en curso
+     * @param idCliente ID del cliente
+     * @param monto monto nuevo a crédito
+     * @param liberado saldo pendiente que deja de contar (la versión anterior de la factura al editarla)
+     * @throws IllegalArgumentException si se excede el límite
+     */
+    public void reservar(Long idCliente, BigDecimal monto, BigDecimal liberado) {
+        // Sin la carga inicial (fallida o en curso) la cuenta en memoria no es confiable
+        Cuenta cuenta = cargado ? cuenta(idCliente) : leerCliente(idCliente);
+        long delta = centavos(monto) - centavos(liberado);
+        long disponible = cuenta.reservar(delta);
+        if (disponible < 0) {
+            throw new IllegalArgumentException("La factura excede el crédito disponible del cliente: disponible "
+                    + aMonto(disponible + delta) + ", requerido " + aMonto(delta));
+        }
+        if (delta > 0 && TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    cuenta.liberar(delta);
+                }
+            });
+        } else if (delta > 0) {
+            cuenta.liberar(delta);
+        }
+    }
+
+    /**
+     * Obtiene la exposición actual de un cliente
+     */
+    public Exposicion obtener(Long idCliente) {
+        Exposicion e = new Exposicion();
+        e.idCliente = idCliente;
+        Cuenta c = cuentas.get(idCliente);
+        long[] v = c != null ? c.leer() : new long[3];
+        e.limiteCredito = aMonto(v[0]);
+        e.saldoPendiente = aMonto(v[1]);
+        e.reservado = aMonto(v[2]);
+        e.disponible = aMonto(v[0] - v[1] - v[2]);
+        return e;
+    }
+
+    private Cuenta cuenta(Long idCliente) {
+        return cuentas.computeIfAbsent(idCliente, k -> new Cuenta());
+    }
+
+    private static boolean esPendiente(FacturaSnapshot s) {
+        return s != null && s.idCliente != null && "PENDIENTE".equals(s.estado);
+    }
+
+    static long centavos(BigDecimal monto) {
+        return monto == null ? 0L : monto.setScale(2, RoundingMode.HALF_UP).movePointRight(2).longValue();
+    }
+
+    static BigDecimal aMonto(long centavos) {
+        return BigDecimal.valueOf(centavos, 2);
+    }
+
+    /** Límite, saldo pendiente y reservas en curso de un cliente, en centavos */
+    private static final class Cuenta {
+        private long limite;
+        private long saldo;
+        private long reservado;
+
+        synchronized void fijar(long limite, long saldo) {
+            this.limite = limite;
+            this.saldo = saldo;
+        }
+
+        synchronized void fijarLimite(long limite) {
+            this.limite = limite;
+        }
+
+        synchronized void sumarSaldo(long delta) {
+            saldo += delta;
+        }
+
+        /** Reserva el delta si cabe; devuelve el disponible que quedaría */
+        synchronized long reservar(long delta) {
+            long disponible = limite - saldo - reservado - delta;
+            if (delta > 0 && disponible >= 0) reservado += delta;
+            return delta > 0 ? disponible : 0L;
+        }
+
+        synchronized void liberar(long delta) {
+            reservado -= delta;
+        }
+
+        synchronized long[] leer() {
+            return new long[]{limite, saldo, reservado};
+        }
+    }
+
+    public static class Exposicion {
+        public Long idCliente;
+        public BigDecimal limiteCredito;
+        public BigDecimal saldoPendiente;
+        public BigDecimal reservado;
+        public BigDecimal disponible;
+    }
+}
@@ -2,11 +2,16 @@ package com.ferreteria.sistema.service;
 
 import com.ferreteria.sistema.dao.FacturaSpDao;
 import com.ferreteria.sistema.entity.Factura;
+import com.ferreteria.sistema.event.FacturaCambioEvent;
+import com.ferreteria.sistema.event.FacturaSnapshot;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
@@ -18,6 +23,18 @@ public class FacturaService {
     @Autowired
     private FacturaSpDao facturaSpDao;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private ExposicionCreditoService exposicionCreditoService;
+
+    @Value("${ferreteria.facturacion.validar-limite-credito:true}")
+    private boolean validarLimiteCredito;
+
+    @Value("${ferreteria.facturacion.impuesto-iva:0.15}")
+    private BigDecimal impuestoIva;
+
     public List<Factura> obtenerTodos() { return facturaSpDao.listar(); }
 
     public Optional<Factura> obtenerPorId(Long id) { return facturaSpDao.obtenerPorId(id); }
@@ -27,27 +44,64 @@ public class FacturaService {
     }
 
     public Long crearBasica(String numero, Date fecha, Long idCliente, String metodoPago, String estado, String obs) {
-        return facturaSpDao.crearFacturaBasica(numero, fecha, idCliente, metodoPago, estado, obs);
+        Long id = facturaSpDao.crearFacturaBasica(numero, fecha, idCliente, metodoPago, estado, obs);
+        publicarCambio(null, id);
+        return id;
     }
 
     public void actualizar(Long id, String numero, Date fecha, Long idCliente, String metodoPago, String estado, String obs) {
+        FacturaSnapshot anterior = snapshot(id);
         facturaSpDao.actualizarFactura(id, numero, fecha, idCliente, metodoPago, estado, obs);
+        publicarCambio(anterior, id);
     }
 
     public void agregarDetalle(Long idFactura, Long idProducto, BigDecimal precio, Integer cantidad, BigDecimal descuento) {
-        System.out.println("DEBUG - Service: Agregando detalle - Factura: " + idFactura + ", Producto: " + idProducto);
-        facturaSpDao.agregarDetalle(idFactura, idProducto, precio, cantidad, descuento);
+        agregarDetalles(idFactura, List.of(new DetalleFacturaRequest(idProducto, precio, cantidad, descuento)));
+    }
+
+    /**
+     * Agrega varias líneas leyendo la factura una vez antes y una después,
+     * en lugar de dos veces por línea
+     */
+    public void agregarDetalles(Long idFactura, List<DetalleFacturaRequest> detalles) {
+        FacturaSnapshot anterior = snapshot(idFactura);
+        for (DetalleFacturaRequest d : detalles) {
+            facturaSpDao.agregarDetalle(idFactura, d.getIdProducto(), d.getPrecio(), d.getCantidad(), d.getDescuento());
+        }
+        publicarCambio(anterior, idFactura);
     }
 
     public void eliminarDetalles(Long idFactura) {
+        FacturaSnapshot anterior = snapshot(idFactura);
         facturaSpDao.eliminarDetalles(idFactura);
+        publicarCambio(anterior, idFactura);
+    }
+
+    public void anular(Long id) {
+        FacturaSnapshot anterior = snapshot(id);
+        facturaSpDao.anular(id);
+        publicarCambio(anterior, id);
+    }
+
+    private FacturaSnapshot snapshot(Long id) {
+        return id != null ? facturaSpDao.obtenerSnapshot(id).orElse(null) : null;
     }
 
-    public void anular(Long id) { facturaSpDao.anular(id); }
+    /**
+     * Publica el cambio de la factura (antes/después) para los acumulados que dependen de ella
+     */
+    private void publicarCambio(FacturaSnapshot anterior, Long id) {
+        FacturaSnapshot actual = snapshot(id);
+        if (anterior != null || actual != null) {
+            eventPublisher.publishEvent(new FacturaCambioEvent(anterior, actual));
+        }
+    }
 
     // Método completo para crear factura con productos
     @Transactional
     public Long crearFacturaCompleta(String numero, Date fecha, Long idCliente, String metodoPago, String estado, String obs, List<DetalleFacturaRequest> productos) {
+        verificarCredito(idCliente, metodoPago, estado, productos, null);
+
         // Crear factura básica
         Long facturaId = facturaSpDao.crearFacturaBasica(numero, fecha, idCliente, metodoPago, estado, obs);
         
@@ -57,13 +111,17 @@ public class FacturaService {
                 facturaSpDao.agregarDetalle(facturaId, detalle.getIdProducto(), detalle.getPrecio(), detalle.getCantidad(), detalle.getDescuento());
             }
         }
-        
+
+        publicarCambio(null, facturaId);
         return facturaId;
     }
 
     // Método completo para actualizar factura con productos  
     @Transactional
     public void actualizarFacturaCompleta(Long id, String numero, Date fecha, Long idCliente, String metodoPago, String estado, String obs, List<DetalleFacturaRequest> productos) {
+        FacturaSnapshot anterior = snapshot(id);
+        verificarCredito(idCliente, metodoPago, estado, productos, anterior);
+
         // Actualizar datos básicos de la factura
         facturaSpDao.actualizarFactura(id, numero, fecha, idCliente, metodoPago, estado, obs);
         
@@ -76,6 +134,35 @@ public class FacturaService {
                 facturaSpDao.agregarDetalle(id, detalle.getIdProducto(), detalle.getPrecio(), detalle.getCantidad(), detalle.getDescuento());
             }
         }
+
+        publicarCambio(anterior, id);
+    }
+
+    /**
+     * Valida una venta a crédito contra la exposición en memoria del cliente.
+     * El total se calcula igual que trg_factura_actualizar_total, sin consultar la base.
+     */
+    private void verificarCredito(Long idCliente, String metodoPago, String estado,
+                                  List<DetalleFacturaRequest> productos, FacturaSnapshot anterior) {
+        if (!validarLimiteCredito || idCliente == null
+                || !"CREDITO".equals(metodoPago) || !"PENDIENTE".equals(estado)) {
+            return;
+        }
+        BigDecimal subtotal = BigDecimal.ZERO;
+        if (productos != null) {
+            for (DetalleFacturaRequest d : productos) {
+                if (d.getPrecio() == null || d.getCantidad() == null) continue;
+                subtotal = subtotal.add(d.getPrecio().multiply(BigDecimal.valueOf(d.getCantidad())))
+                        .subtract(d.getDescuento() != null ? d.getDescuento() : BigDecimal.ZERO);
+            }
+        }
+        subtotal = subtotal.setScale(2, RoundingMode.HALF_UP);
+        BigDecimal total = subtotal.add(subtotal.multiply(impuestoIva).setScale(2, RoundingMode.HALF_UP));
+
+        // Al editar, el saldo anterior de la misma factura deja de contar
+        BigDecimal liberado = anterior != null && "PENDIENTE".equals(anterior.estado)
+                && idCliente.equals(anterior.idCliente) ? anterior.total : BigDecimal.ZERO;
+        exposicionCreditoService.reservar(idCliente, total, liberado);
     }
 
     // Clase interna para los datos del detalle
@@ -0,0 +1,321 @@
+package com.ferreteria.sistema.service;
+
+import com.ferreteria.sistema.dao.EmpleadoSpDao;
+import com.ferreteria.sistema.dao.HorarioSpDao;
+import com.ferreteria.sistema.entity.Empleado;
+import com.ferreteria.sistema.entity.Horario;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.*;
+
+/**
+ * Genera el rol de un mes a partir de plantillas de turnos
+ *
+ * Cada plantilla indica empleados, días de la semana y horario; se expande
+ * a un Horario por empleado y día del mes. Antes de escribir se comprueban
+ * conflictos con un árbol de intervalos por empleado que contiene los
+ * turnos ya registrados (incluido el último día del mes anterior, por los
+ * turnos que cruzan la medianoche) y los generados. Los horarios sin
+ * conflicto se insertan en un solo lote.
+ *
+ * Si otra solicitud registra un horario del mismo empleado y día entre la
+ * comprobación y el lote, uk_horario_empleado_fecha rechaza la inserción: el
+ * lote se deshace hasta un savepoint y se vuelven a comprobar los conflictos
+ * con los horarios ya registrados, de modo que se informan como tales.
+ */
+@Service
+public class GeneracionHorariosService {
+
+    private static final int MINUTOS_DIA = 24 * 60;
+    private static final int MAX_INTENTOS = 3;
+
+    @Autowired
+    private HorarioSpDao horarioSpDao;
+
+    @Autowired
+    private EmpleadoSpDao empleadoSpDao;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Transactional
+    public ResultadoGeneracion generar(SolicitudGeneracion solicitud) {
+        if (solicitud == null || solicitud.anio == null || solicitud.mes == null) {
+            throw new IllegalArgumentException("Debe indicar el año y el mes");
+        }
+        if (solicitud.mes < 1 || solicitud.mes > 12) {
+            throw new IllegalArgumentException("El mes debe estar entre 1 y 12");
+        }
+        if (solicitud.plantillas == null || solicitud.plantillas.isEmpty()) {
+            throw new IllegalArgumentException("Debe enviar al menos una plantilla");
+        }
+        YearMonth mes = YearMonth.of(solicitud.anio, solicitud.mes);
+        LocalDate inicio = mes.atDay(1);
+        LocalDate finExclusivo = mes.plusMonths(1).atDay(1);
+
+        Set<Long> empleadosActivos = new HashSet<>();
+        for (Empleado e : empleadoSpDao.listar()) {
+            if (!Boolean.FALSE.equals(e.getActivo())) empleadosActivos.add(e.getIdEmpleado());
+        }
+        List<Horario> generados = expandir(solicitud.plantillas, inicio, finExclusivo, empleadosActivos);
+
+        // El lote se deshace solo hasta aquí si choca con horarios registrados entretanto
+        TransactionTemplate anidada = new TransactionTemplate(transactionManager);
+        anidada.setPropagationBehavior(TransactionDefinition.PROPAGATION_NESTED);
+        for (int intento = 1; ; intento++) {
+            ResultadoGeneracion resultado = comprobar(generados, inicio, finExclusivo, solicitud.omitirConflictos);
+            if (resultado.aInsertar == null) {
+                resultado.generados = 0;
+                return resultado;
+            }
+            List<Horario> aInsertar = resultado.aInsertar;
+            try {
+                resultado.generados = anidada.execute(status -> horarioSpDao.insertarLote(aInsertar));
+                return resultado;
+            } catch (DataIntegrityViolationException ex) {
+                if (intento == MAX_INTENTOS) {
+                    throw new IllegalStateException("Se registraron otros horarios del mismo período mientras se "
+                            + "generaban; intente nuevamente");
+                }
+            }
+        }
+    }
+
+    /**
+     * Busca conflictos de los horarios generados con los registrados y entre sí
+     * @return conflictos y, si corresponde insertar, los horarios sin conflicto en aInsertar
+     */
+    private ResultadoGeneracion comprobar(List<Horario> generados, LocalDate inicio, LocalDate finExclusivo,
+                                           boolean omitirConflictos) {
+        // Turnos por empleado: primero los existentes y luego los generados
+        Map<Long, List<Turno>> porEmpleado = new HashMap<>();
+        for (Horario h : horarioSpDao.listarTurnos(inicio.minusDays(1), finExclusivo.plusDays(1))) {
+            porEmpleado.computeIfAbsent(h.getIdEmpleado(), k -> new ArrayList<>()).add(new Turno(h, false));
+        }
+        List<Turno> nuevos = new ArrayList<>(generados.size());
+        for (Horario h : generados) {
+            Turno t = new Turno(h, true);
+            nuevos.add(t);
+            porEmpleado.computeIfAbsent(h.getIdEmpleado(), k -> new ArrayList<>()).add(t);
+        }
+
+        ResultadoGeneracion resultado = new ResultadoGeneracion();
+        resultado.conflictos = new ArrayList<>();
+        Set<Turno> enConflicto = new HashSet<>();
+        List<Turno> solapados = new ArrayList<>();
+        for (Map.Entry<Long, List<Turno>> e : porEmpleado.entrySet()) {
+            List<Turno> turnos = e.getValue();
+            if (turnos.stream().noneMatch(t -> t.nuevo)) continue;
+            ArbolIntervalos arbol = new ArbolIntervalos(turnos);
+            for (Turno t : turnos) {
+                if (!t.nuevo) continue;
+                solapados.clear();
+                arbol.solapados(t, solapados);
+                for (Turno otro : solapados) {
+                    enConflicto.add(t);
+                    resultado.conflictos.add(conflicto(t, otro, "Se superpone con " + describir(otro)));
+                }
+                if (solapados.isEmpty()) {
+                    // La tabla admite un horario por empleado y fecha aunque los turnos no se toquen
+                    for (Turno otro : turnos) {
+                        if (otro != t && otro.horario.getFecha().equals(t.horario.getFecha())) {
+                            enConflicto.add(t);
+                            resultado.conflictos.add(conflicto(t, otro, "Ya hay " + describir(otro) + " ese día"));
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+
+        if (!enConflicto.isEmpty() && !omitirConflictos) {
+            return resultado;
+        }
+        resultado.aInsertar = new ArrayList<>(nuevos.size());
+        for (Turno t : nuevos) {
+            if (!enConflicto.contains(t)) resultado.aInsertar.add(t.horario);
+        }
+        return resultado;
+    }
+
+    private List<Horario> expandir(List<Plantilla> plantillas, LocalDate inicio, LocalDate finExclusivo,
+                                   Set<Long> empleadosActivos) {
+        List<Horario> horarios = new ArrayList<>();
+        int n = 0;
+        for (Plantilla p : plantillas) {
+            n++;
+            if (p == null || p.idEmpleados == null || p.idEmpleados.isEmpty()) {
+                throw new IllegalArgumentException("La plantilla " + n + " no indica empleados");
+            }
+            if (p.dias == null || p.dias.isEmpty()) {
+                throw new IllegalArgumentException("La plantilla " + n + " no indica días de la semana");
+            }
+            validarHora(p.horaEntrada, "entrada", n);
+            validarHora(p.horaSalida, "salida", n);
+            if (p.horaEntrada.compareTo(p.horaSalida) == 0) {
+                throw new IllegalArgumentException("La plantilla " + n + " tiene la misma hora de entrada y salida");
+            }
+            if (p.observaciones != null && p.observaciones.length() > 200) {
+                throw new IllegalArgumentException("Las observaciones no pueden exceder 200 caracteres (plantilla " + n + ")");
+            }
+            boolean[] dias = new boolean[8];
+            for (Integer d : p.dias) {
+                if (d == null || d < 1 || d > 7) {
+                    throw new IllegalArgumentException("Los días de la plantilla " + n + " van de 1 (lunes) a 7 (domingo)");
+                }
+                dias[d] = true;
+            }
+            for (Long idEmpleado : new LinkedHashSet<>(p.idEmpleados)) {
+                if (!empleadosActivos.contains(idEmpleado)) {
+                    throw new IllegalArgumentException("Empleado no encontrado o inactivo: " + idEmpleado);
+                }
+                for (LocalDate f = inicio; f.isBefore(finExclusivo); f = f.plusDays(1)) {
+                    if (!dias[f.getDayOfWeek().getValue()]) continue;
+                    Horario h = new Horario();
+                    h.setIdEmpleado(idEmpleado);
+                    h.setFecha(f);
+                    h.setHoraEntrada(p.horaEntrada);
+                    h.setHoraSalida(p.horaSalida);
+                    h.setObservaciones(p.observaciones);
+                    horarios.add(h);
+                }
+            }
+        }
+        return horarios;
+    }
+
+    private static void validarHora(BigDecimal hora, String tipo, int plantilla) {
+        if (hora == null || hora.signum() < 0 || hora.compareTo(BigDecimal.valueOf(24)) >= 0) {
+            throw new IllegalArgumentException("La hora de " + tipo + " de la plantilla " + plantilla + " debe estar entre 0 y 23.99");
+        }
+    }
+
+    private static Conflicto conflicto(Turno t, Turno otro, String motivo) {
+        Conflicto c = new Conflicto();
+        c.idEmpleado = t.horario.getIdEmpleado();
+        c.fecha = t.horario.getFecha();
+        c.horaEntrada = t.horario.getHoraEntrada();
+        c.horaSalida = t.horario.getHoraSalida();
+        c.idHorarioExistente = otro.nuevo ? null : otro.horario.getIdHorario();
+        c.motivo = motivo;
+        return c;
+    }
+
+    private static String describir(Turno t) {
+        return (t.nuevo ? "otro turno generado" : "el horario #" + t.horario.getIdHorario())
+                + " del " + t.horario.getFecha();
+    }
+
+    private static int minutos(BigDecimal hora) {
+        return hora.multiply(BigDecimal.valueOf(60)).setScale(0, RoundingMode.HALF_UP).intValue();
+    }
+
+    /**
+     * Turno como intervalo [inicio, fin) en minutos absolutos; si la salida es
+     * anterior a la entrada, termina al día siguiente
+     */
+    private static final class Turno {
+        final Horario horario;
+        final boolean nuevo;
+        final long inicio;
+        final long fin;
+
+        Turno(Horario horario, boolean nuevo) {
+            this.horario = horario;
+            this.nuevo = nuevo;
+            int entrada = minutos(horario.getHoraEntrada());
+            int salida = minutos(horario.getHoraSalida());
+            this.inicio = horario.getFecha().toEpochDay() * MINUTOS_DIA + entrada;
+            this.fin = inicio + (salida >= entrada ? salida - entrada : salida + MINUTOS_DIA - entrada);
+        }
+    }
+
+    /**
+     * Árbol de intervalos estático: los turnos ordenados por inicio forman un
+     * árbol binario balanceado implícito (la raíz de cada rango es su punto
+     * medio) y cada nodo guarda el mayor fin de su subárbol para descartar
+     * ramas completas
+     */
+    static final class ArbolIntervalos {
+        private final Turno[] turnos;
+        private final long[] maxFin;
+
+        ArbolIntervalos(List<Turno> lista) {
+            turnos = lista.toArray(new Turno[0]);
+            Arrays.sort(turnos, Comparator.comparingLong(t -> t.inicio));
+            maxFin = new long[turnos.length];
+            construir(0, turnos.length);
+        }
+
+        private long construir(int desde, int hasta) {
+            if (desde >= hasta) return Long.MIN_VALUE;
+            int medio = (desde + hasta) >>> 1;
+            long max = Math.max(turnos[medio].fin, Math.max(construir(desde, medio), construir(medio + 1, hasta)));
+            maxFin[medio] = max;
+            return max;
+        }
+
+        /** Agrega a la lista los turnos, distintos de t, que se superponen con él */
+        void solapados(Turno t, List<Turno> resultado) {
+            buscar(0, turnos.length, t, resultado);
+        }
+
+        private void buscar(int desde, int hasta, Turno t, List<Turno> resultado) {
+            if (desde >= hasta) return;
+            int medio = (desde + hasta) >>> 1;
+            if (maxFin[medio] <= t.inicio) return;
+            buscar(desde, medio, t, resultado);
+            Turno nodo = turnos[medio];
+            if (nodo.inicio < t.fin) {
+                if (nodo != t && nodo.fin > t.inicio) resultado.add(nodo);
+                buscar(medio + 1, hasta, t, resultado);
+            }
+        }
+    }
+
+    // ===== CLASES DE SOLICITUD Y RESPUESTA =====
+
+    public static class SolicitudGeneracion {
+        public Integer anio;
+        public Integer mes;
+        /** Si es true se insertan los horarios sin conflicto; si no, un conflicto cancela todo */
+        public boolean omitirConflictos;
+        public List<Plantilla> plantillas;
+    }
+
+    public static class Plantilla {
+        public List<Long> idEmpleados;
+        /** Días de la semana: 1 = lunes ... 7 = domingo */
+        public List<Integer> dias;
+        public BigDecimal horaEntrada;
+        public BigDecimal horaSalida;
+        public String observaciones;
+    }
+
+    public static class ResultadoGeneracion {
+        public int generados;
+        public List<Conflicto> conflictos;
+        @JsonIgnore
+        List<Horario> aInsertar;
+    }
+
+    public static class Conflicto {
+        public Long idEmpleado;
+        public LocalDate fecha;
+        public BigDecimal horaEntrada;
+        public BigDecimal horaSalida;
+        public Long idHorarioExistente;
+        public String motivo;
+    }
+}
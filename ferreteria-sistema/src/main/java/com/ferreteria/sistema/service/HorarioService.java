@@ -6,6 +6,14 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
 import java.util.Optional;
 
@@ -13,6 +21,8 @@ import java.util.Optional;
 @Transactional
 public class HorarioService {
 
+    private static final int DIAS_SEMANA = 7;
+
     @Autowired
     private HorarioSpDao horarioSpDao;
 
@@ -22,13 +32,119 @@ public class HorarioService {
 
     public List<Horario> listarPorEmpleado(Long idEmpleado) { return horarioSpDao.listarPorEmpleado(idEmpleado); }
 
+    /**
+     * Página de horarios entre dos fechas (ambas incluidas), con cursor opaco para la página siguiente
+     */
+    @Transactional(readOnly = true)
+    public PaginaHorarios buscarRango(LocalDate desde, LocalDate hasta, Long idEmpleado, String cursor, int limite) {
+        if (desde == null || hasta == null) {
+            throw new IllegalArgumentException("Debe indicar las fechas desde y hasta");
+        }
+        if (hasta.isBefore(desde)) {
+            throw new IllegalArgumentException("La fecha hasta no puede ser anterior a la fecha desde");
+        }
+        int tam = Math.max(1, Math.min(limite, 500));
+        Marca despuesDe = cursor == null || cursor.isBlank() ? null : Marca.decodificar(cursor);
+        List<Horario> items = horarioSpDao.buscarRango(desde, hasta.plusDays(1), idEmpleado,
+                despuesDe != null ? despuesDe.fecha : null, despuesDe != null ? despuesDe.id : null, tam + 1);
+
+        PaginaHorarios pagina = new PaginaHorarios();
+        if (items.size() > tam) {
+            items = items.subList(0, tam);
+            Horario ultimo = items.get(tam - 1);
+            pagina.siguienteCursor = new Marca(ultimo.getFecha(), ultimo.getIdHorario()).codificar();
+        }
+        pagina.items = items;
+        return pagina;
+    }
+
+    /**
+     * Horas por empleado y día de la semana (lunes a domingo) que contiene la fecha indicada
+     */
+    @Transactional(readOnly = true)
+    public ResumenSemana resumenSemana(LocalDate fecha, Long idEmpleado) {
+        LocalDate lunes = (fecha != null ? fecha : LocalDate.now()).with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        LocalDate siguienteLunes = lunes.plusDays(DIAS_SEMANA);
+
+        ResumenSemana resumen = new ResumenSemana();
+        resumen.inicio = lunes;
+        resumen.fin = siguienteLunes.minusDays(1);
+        resumen.empleados = new ArrayList<>();
+
+        // Las filas llegan ordenadas por empleado: basta con comparar con el último
+        HorasEmpleado actual = null;
+        for (HorarioSpDao.HorasDia d : horarioSpDao.horasPorDia(lunes, siguienteLunes, idEmpleado)) {
+            if (actual == null || !actual.idEmpleado.equals(d.idEmpleado)) {
+                actual = new HorasEmpleado();
+                actual.idEmpleado = d.idEmpleado;
+                actual.nombreEmpleado = d.nombreEmpleado;
+                actual.apellidos = d.apellidos;
+                actual.puesto = d.puesto;
+                actual.horas = new BigDecimal[DIAS_SEMANA];
+                actual.total = BigDecimal.ZERO;
+                resumen.empleados.add(actual);
+            }
+            BigDecimal horas = d.horas != null ? d.horas : BigDecimal.ZERO;
+            actual.horas[(int) ChronoUnit.DAYS.between(lunes, d.fecha)] = horas;
+            actual.total = actual.total.add(horas);
+        }
+        return resumen;
+    }
+
     public Long crear(Horario h) { return horarioSpDao.insertar(h); }
 
     public void actualizar(Long id, Horario h) { horarioSpDao.actualizar(id, h); }
 
     public void eliminar(Long id) { horarioSpDao.eliminar(id); }
-}
 
+    // ===== CLASES DE RESPUESTA =====
+
+    public static class PaginaHorarios {
+        public List<Horario> items;
+        public String siguienteCursor;
+    }
+
+    public static class ResumenSemana {
+        public LocalDate inicio;
+        public LocalDate fin;
+        public List<HorasEmpleado> empleados;
+    }
 
+    public static class HorasEmpleado {
+        public Long idEmpleado;
+        public String nombreEmpleado;
+        public String apellidos;
+        public String puesto;
+        /** Horas de lunes (posición 0) a domingo; null si no tiene horario ese día */
+        public BigDecimal[] horas;
+        public BigDecimal total;
+    }
 
+    /**
+     * Posición (fecha, IdHorario) codificada como texto opaco para el cliente
+     */
+    private static class Marca {
+        final LocalDate fecha;
+        final Long id;
 
+        Marca(LocalDate fecha, Long id) {
+            this.fecha = fecha;
+            this.id = id;
+        }
+
+        String codificar() {
+            String texto = fecha + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(texto.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Marca decodificar(String valor) {
+            try {
+                String texto = new String(Base64.getUrlDecoder().decode(valor), StandardCharsets.UTF_8);
+                int sep = texto.indexOf('|');
+                return new Marca(LocalDate.parse(texto.substring(0, sep)), Long.parseLong(texto.substring(sep + 1)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Cursor inválido");
+            }
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.ferreteria.sistema.service;
+
+import com.ferreteria.sistema.dao.IntentosLoginDao;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.authentication.event.AuthenticationFailureBadCredentialsEvent;
+import org.springframework.security.authentication.event.AuthenticationSuccessEvent;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Contadores de intentos fallidos y último acceso con escritura diferida
+ *
+ * Los inicios de sesión no escriben en Usuarios: cada fallo o ingreso se
+ * anota en memoria, repartido en franjas con su propio candado para que los
+ * hilos de login no compitan entre sí, y cada pocos segundos los cambios
+ * acumulados se aplican con dos sentencias en lote.
+ *
+ * La decisión de bloqueo suma al valor leído de la base de datos los
+ * cambios que todavía no se escribieron, así que en este nodo un fallo
+ * cuenta desde el primer momento. Entre nodos el retraso es, como máximo,
+ * un intervalo de escritura. La lectura del usuario (leerConsistente) y la
+ * confirmación de un lote no se cruzan: o la lectura ya ve el lote y este
+ * dejó de sumarse en memoria, o no lo ve y se suma, nunca ambas cosas.
+ */
+@Service
+public class IntentosLoginService {
+
+    private static final Logger log = LoggerFactory.getLogger(IntentosLoginService.class);
+
+    /** Intentos fallidos a partir de los cuales la cuenta queda bloqueada */
+    public static final int MAX_INTENTOS = 5;
+
+    private static final int FRANJAS = 16;
+
+    @Autowired
+    private IntentosLoginDao intentosLoginDao;
+
+    @Value("${ferreteria.seguridad.intentos.max-pendientes:10000}")
+    private int maxPendientes;
+
+    private final Franja[] franjas = new Franja[FRANJAS];
+    private final AtomicInteger pendientes = new AtomicInteger();
+    private final ReentrantLock escribiendo = new ReentrantLock();
+    // Lecturas de usuarios (compartido) frente a la confirmación de un lote (exclusivo)
+    private final ReentrantReadWriteLock confirmacion = new ReentrantReadWriteLock();
+    // Cambios tomados por la escritura en curso; siguen contando hasta confirmarse
+    private volatile Map<String, Contador> enVuelo = Map.of();
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    public IntentosLoginService() {
+        for (int i = 0; i < FRANJAS; i++) franjas[i] = new Franja();
+    }
+
+    @EventListener
+    public void alFallar(AuthenticationFailureBadCredentialsEvent event) {
+        registrarFallo(event.getAuthentication().getName());
+    }
+
+    @EventListener
+    public void alAutenticar(AuthenticationSuccessEvent event) {
+        Object principal = event.getAuthentication().getPrincipal();
+        String email = principal instanceof CustomUserDetailsService.CustomUserPrincipal p ? p.getEmail() : null;
+        registrarExito(event.getAuthentication().getName(), email);
+    }
+
+    /**
+     * Anota un intento fallido
+     * @param login nombre de usuario o email tal como se escribió
+     */
+    public void registrarFallo(String login) {
+        if (login == null || login.isEmpty()) return;
+        Franja f = franja(login);
+        synchronized (f) {
+            Contador c = f.contadores.get(login);
+            if (c == null) {
+                c = new Contador();
+                f.contadores.put(login, c);
+                pendientes.incrementAndGet();
+            }
+            c.fallos++;
+        }
+        if (pendientes.get() >= maxPendientes) {
+            escribir();
+        }
+    }
+
+    /**
+     * Anota un ingreso correcto: reinicia el contador y actualiza el último acceso
+     * @param nombreUsuario nombre de usuario
+     * @param email email del usuario, para descartar fallos anotados con él
+     */
+    public void registrarExito(String nombreUsuario, String email) {
+        LocalDateTime ahora = LocalDateTime.now();
+        Franja f = franja(nombreUsuario);
+        synchronized (f) {
+            Contador c = f.contadores.get(nombreUsuario);
+            if (c == null) {
+                c = new Contador();
+                f.contadores.put(nombreUsuario, c);
+                pendientes.incrementAndGet();
+            }
+            c.reiniciar = true;
+            c.fallos = 0;
+            c.ultimoAcceso = ahora;
+        }
+        if (email != null && !email.equals(nombreUsuario)) {
+            Franja fe = franja(email);
+            synchronized (fe) {
+                if (fe.contadores.remove(email) != null) pendientes.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Ejecuta la lectura del usuario y el cálculo de sus intentos sin que un
+     * lote se confirme en medio
+     */
+    public <T> T leerConsistente(Supplier<T> lectura) {
+        confirmacion.readLock().lock();
+        try {
+            return lectura.get();
+        } finally {
+            confirmacion.readLock().unlock();
+        }
+    }
+
+    /**
+     * Intentos fallidos vigentes de un usuario; debe llamarse dentro de leerConsistente
+     * @param intentosGuardados valor leído de la tabla Usuarios
+     * @param claves nombre de usuario y email con los que pudo intentar entrar
+     */
+    public int intentosEfectivos(int intentosGuardados, String... claves) {
+        int intentos = intentosGuardados;
+        Map<String, Contador> vuelo = enVuelo;
+        for (String clave : claves) {
+            if (clave == null) continue;
+            intentos = aplicar(vuelo.get(clave), intentos);
+            Franja f = franja(clave);
+            synchronized (f) {
+                intentos = aplicar(f.contadores.get(clave), intentos);
+            }
+        }
+        return intentos;
+    }
+
+    public boolean estaBloqueado(int intentosGuardados, String... claves) {
+        return intentosEfectivos(intentosGuardados, claves) >= MAX_INTENTOS;
+    }
+
+    private static int aplicar(Contador c, int intentos) {
+        if (c == null) return intentos;
+        return c.reiniciar ? c.fallos : intentos + c.fallos;
+    }
+
+    /**
+     * Escribe en lote los cambios acumulados
+     */
+    @Scheduled(fixedDelayString = "${ferreteria.seguridad.intentos.escritura-ms:2000}")
+    public void escribir() {
+        if (!escribiendo.tryLock()) return;
+        try {
+            Map<String, Contador> lote = new HashMap<>();
+            // Los contadores pasan de las franjas a enVuelo sin que una lectura vea el paso a medias
+            confirmacion.writeLock().lock();
+            try {
+                for (Franja f : franjas) {
+                    synchronized (f) {
+                        if (f.contadores.isEmpty()) continue;
+                        lote.putAll(f.contadores);
+                        pendientes.addAndGet(-f.contadores.size());
+                        f.contadores = new HashMap<>();
+                    }
+                }
+                if (lote.isEmpty()) return;
+                enVuelo = lote;
+            } finally {
+                confirmacion.writeLock().unlock();
+            }
+
+            List<IntentosLoginDao.Cambio> cambios = new ArrayList<>(lote.size());
+            for (Map.Entry<String, Contador> e : lote.entrySet()) {
+                IntentosLoginDao.Cambio c = new IntentosLoginDao.Cambio();
+                c.login = e.getKey();
+                c.reiniciar = e.getValue().reiniciar;
+                c.fallos = e.getValue().fallos;
+                c.ultimoAcceso = e.getValue().ultimoAcceso;
+                cambios.add(c);
+            }
+            // Las dos sentencias se confirman juntas: si fallan, nada del lote quedó guardado
+            TransactionTemplate tx = new TransactionTemplate(transactionManager);
+            tx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+            confirmacion.writeLock().lock();
+            try {
+                try {
+                    tx.executeWithoutResult(status -> intentosLoginDao.aplicar(cambios));
+                } catch (Exception ex) {
+                    log.warn("No se pudieron guardar {} contadores de login: {}", lote.size(), ex.getMessage());
+                    devolver(lote);
+                }
+                enVuelo = Map.of();
+            } finally {
+                confirmacion.writeLock().unlock();
+            }
+        } finally {
+            escribiendo.unlock();
+        }
+    }
+
+    /**
+     * Reinicia a los usuarios bloqueados hace más de las horas indicadas,
+     * con una sola sentencia UPDATE
+     * @return usuarios desbloqueados
+     */
+    public int desbloquear(int horasDeBloqueo) {
+        escribir();
+        return intentosLoginDao.desbloquear(MAX_INTENTOS, LocalDateTime.now().minusHours(horasDeBloqueo));
+    }
+
+    // Reincorpora un lote que no se pudo escribir, combinándolo con lo anotado después
+    private void devolver(Map<String, Contador> lote) {
+        for (Map.Entry<String, Contador> e : lote.entrySet()) {
+            Franja f = franja(e.getKey());
+            synchronized (f) {
+                Contador nuevo = f.contadores.get(e.getKey());
+                if (nuevo == null) {
+                    f.contadores.put(e.getKey(), e.getValue());
+                    pendientes.incrementAndGet();
+                } else if (!nuevo.reiniciar) {
+                    Contador anterior = e.getValue();
+                    nuevo.fallos += anterior.fallos;
+                    nuevo.reiniciar = anterior.reiniciar;
+                    nuevo.ultimoAcceso = anterior.ultimoAcceso;
+                }
+            }
+        }
+    }
+
+    private Franja franja(String clave) {
+        int h = clave.hashCode();
+        return franjas[(h ^ (h >>> 16)) & (FRANJAS - 1)];
+    }
+
+    private static final class Franja {
+        Map<String, Contador> contadores = new HashMap<>();
+    }
+
+    private static final class Contador {
+        boolean reiniciar;
+        int fallos;
+        LocalDateTime ultimoAcceso;
+    }
+}
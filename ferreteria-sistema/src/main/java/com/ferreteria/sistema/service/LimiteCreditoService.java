@@ -0,0 +1,139 @@
+package com.ferreteria.sistema.service;
+
+import com.ferreteria.sistema.dao.ClienteComprasDao;
+import com.ferreteria.sistema.dao.ClienteSpDao;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Recálculo de límites de crédito de clientes VIP
+ *
+ * Reemplaza el recorrido fila a fila de sp_actualizar_limites_credito: los
+ * candidatos se leen en una sola consulta (los meses completos de
+ * ClienteComprasMes más las facturas del tramo inicial de la ventana), se
+ * dividen en bloques y cada bloque se actualiza con un batchUpdate en su
+ * propio hilo y su propia transacción. Las reglas son las mismas: 20% de lo
+ * comprado en los últimos 12 meses (ventana móvil), con un mínimo de 5000,
+ * para VIP activos que superan 10000.
+ *
+ * La exposición de crédito en memoria recibe los límites de un bloque solo
+ * cuando ese bloque se confirmó.
+ */
+@Service
+public class LimiteCreditoService {
+
+    private static final Logger log = LoggerFactory.getLogger(LimiteCreditoService.class);
+
+    @Autowired
+    private ClienteComprasDao clienteComprasDao;
+
+    @Autowired
+    private ClienteSpDao clienteSpDao;
+
+    @Autowired
+    private ExposicionCreditoService exposicionCreditoService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${ferreteria.clientes.limite-credito.umbral-compras:10000}")
+    private BigDecimal umbralCompras;
+
+    @Value("${ferreteria.clientes.limite-credito.porcentaje:0.20}")
+    private BigDecimal porcentaje;
+
+    @Value("${ferreteria.clientes.limite-credito.minimo:5000}")
+    private BigDecimal limiteMinimo;
+
+    @Value("${ferreteria.clientes.limite-credito.tamano-lote:500}")
+    private int tamanoLote;
+
+    @Value("${ferreteria.clientes.limite-credito.hilos:4}")
+    private int hilos;
+
+    @Scheduled(cron = "${ferreteria.clientes.limite-credito.cron:0 30 0 * * *}")
+    public void recalcularNocturno() {
+        try {
+            ResultadoRecalculo r = recalcular();
+            log.info("Límites de crédito: {} candidatos, {} actualizados en {} lotes ({} ms)",
+                    r.candidatos, r.actualizados, r.lotes, r.duracionMs);
+        } catch (Exception ex) {
+            log.error("Error al recalcular límites de crédito: {}", ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Recalcula los límites de crédito en bloques paralelos
+     * @return resumen de la ejecución
+     */
+    public synchronized ResultadoRecalculo recalcular() {
+        long inicio = System.currentTimeMillis();
+        Map<Long, BigDecimal> limites = new LinkedHashMap<>();
+        clienteComprasDao.recorrerCandidatosLimite(umbralCompras, (id, total) -> {
+            BigDecimal limite = total.multiply(porcentaje).setScale(2, RoundingMode.HALF_UP);
+            limites.put(id, limite.compareTo(limiteMinimo) < 0 ? limiteMinimo : limite);
+        });
+
+        List<Map<Long, BigDecimal>> lotes = new ArrayList<>();
+        Map<Long, BigDecimal> actual = null;
+        for (Map.Entry<Long, BigDecimal> e : limites.entrySet()) {
+            if (actual == null || actual.size() >= Math.max(1, tamanoLote)) {
+                actual = new LinkedHashMap<>();
+                lotes.add(actual);
+            }
+            actual.put(e.getKey(), e.getValue());
+        }
+
+        ResultadoRecalculo resultado = new ResultadoRecalculo();
+        resultado.candidatos = limites.size();
+        resultado.lotes = lotes.size();
+        if (!lotes.isEmpty()) {
+            TransactionTemplate tx = new TransactionTemplate(transactionManager);
+            tx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+            ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(hilos, lotes.size())));
+            try {
+                List<Future<Integer>> pendientes = new ArrayList<>(lotes.size());
+                for (Map<Long, BigDecimal> lote : lotes) {
+                    pendientes.add(executor.submit(() -> tx.execute(status -> clienteSpDao.actualizarLimitesCredito(lote))));
+                }
+                for (int i = 0; i < pendientes.size(); i++) {
+                    try {
+                        resultado.actualizados += pendientes.get(i).get();
+                        lotes.get(i).forEach(exposicionCreditoService::actualizarLimite);
+                    } catch (ExecutionException ex) {
+                        // Cada lote se confirma por separado; un lote fallido no deshace los demás
+                        resultado.lotesFallidos++;
+                        log.warn("Falló el lote {} de límites de crédito: {}", i, ex.getCause().getMessage());
+                    }
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Recálculo de límites interrumpido", ex);
+            } finally {
+                executor.shutdown();
+            }
+        }
+        resultado.duracionMs = System.currentTimeMillis() - inicio;
+        return resultado;
+    }
+
+    public static class ResultadoRecalculo {
+        public int candidatos;
+        public int actualizados;
+        public int lotes;
+        public int lotesFallidos;
+        public long duracionMs;
+    }
+}
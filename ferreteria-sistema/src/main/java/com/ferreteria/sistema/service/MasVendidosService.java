@@ -0,0 +1,459 @@
+package com.ferreteria.sistema.service;
+
+import com.ferreteria.sistema.dao.ReporteVentasDao;
+import com.ferreteria.sistema.entity.Producto;
+import com.ferreteria.sistema.event.FacturaCambioEvent;
+import com.ferreteria.sistema.event.FacturaSnapshot;
+import com.ferreteria.sistema.repository.ProductoRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.*;
+
+/**
+ * Productos más vendidos por día, semana y mes
+ *
+ * Para el periodo actual y el anterior de cada tipo se mantiene en memoria
+ * un resumen Space-Saving (los productos con más unidades, con una cota de
+ * error por contador) y un Count-Min (cota superior de las unidades de
+ * cualquier producto). Ambos se actualizan con cada FacturaCambioEvent
+ * confirmado, así que consultar esas ventanas no toca la base de datos.
+ * Los periodos más antiguos y los rangos arbitrarios usan la consulta exacta.
+ *
+ * La recarga lee las ventas sin retener el monitor: mientras tanto los
+ * cambios se siguen aplicando a las ventanas vigentes y además se anotan.
+ * Al terminar, dentro de la misma lectura consistente, se consulta el estado
+ * de cada factura anotada y solo se suman a las ventanas nuevas los cambios
+ * que la lectura todavía no incluía.
+ */
+@Service
+public class MasVendidosService {
+
+    private static final Logger log = LoggerFactory.getLogger(MasVendidosService.class);
+
+    public enum Periodo {
+        DIA, SEMANA, MES;
+
+        LocalDate inicio(LocalDate fecha) {
+            return switch (this) {
+                case DIA -> fecha;
+                case SEMANA -> fecha.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+                case MES -> fecha.withDayOfMonth(1);
+            };
+        }
+
+        LocalDate fin(LocalDate inicio) {
+            return switch (this) {
+                case DIA -> inicio.plusDays(1);
+                case SEMANA -> inicio.plusWeeks(1);
+                case MES -> inicio.plusMonths(1);
+            };
+        }
+
+        static Periodo de(String nombre) {
+            try {
+                return valueOf(nombre.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Periodo desconocido: " + nombre + " (use dia, semana o mes)");
+            }
+        }
+    }
+
+    @Autowired
+    private ReporteVentasDao reporteVentasDao;
+
+    @Autowired
+    private ProductoRepository productoRepository;
+
+    @Value("${ferreteria.reportes.mas-vendidos.capacidad:256}")
+    private int capacidad;
+
+    // Por periodo: [0] el actual y [1] el anterior
+    private Map<Periodo, Ventana[]> ventanas = new EnumMap<>(Periodo.class);
+    private boolean cargado;
+    // Cambios recibidos durante una recarga (null si no hay ninguna)
+    private List<FacturaCambioEvent> pendientes;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void cargarAlIniciar() {
+        recargar();
+    }
+
+    /**
+     * Vuelve a cargar las ventanas en memoria desde la base de datos, sin
+     * detener las consultas ni los cambios mientras tanto
+     */
+    public void recargar() {
+        synchronized (this) {
+            if (pendientes != null) return;
+            pendientes = new ArrayList<>();
+        }
+        try {
+            long inicio = System.currentTimeMillis();
+            LocalDate hoy = LocalDate.now();
+            Map<Periodo, Ventana[]> nuevas = new EnumMap<>(Periodo.class);
+            LocalDate desde = hoy;
+            for (Periodo p : Periodo.values()) {
+                desde = min(desde, vigentes(nuevas, p, hoy)[1].inicio);
+            }
+            LocalDate cargaDesde = desde;
+            reporteVentasDao.enInstantanea(() -> {
+                reporteVentasDao.recorrerVentasProductoDia(cargaDesde,
+                        (dia, idProducto, cantidad) -> registrar(nuevas, hoy, dia, idProducto, cantidad));
+                while (true) {
+                    List<FacturaCambioEvent> lote;
+                    synchronized (this) {
+                        lote = pendientes;
+                        if (lote.isEmpty()) {
+                            ventanas = nuevas;
+                            cargado = true;
+                            pendientes = null;
+                            return;
+                        }
+                        pendientes = new ArrayList<>();
+                    }
+                    conciliar(nuevas, hoy, lote);
+                }
+            });
+            log.info("Productos más vendidos cargados desde {} en {} ms", desde, System.currentTimeMillis() - inicio);
+        } catch (Exception ex) {
+            log.warn("No se pudieron cargar los productos más vendidos: {}", ex.getMessage());
+        } finally {
+            synchronized (this) {
+                pendientes = null;
+            }
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public synchronized void facturaCambio(FacturaCambioEvent event) {
+        LocalDate hoy = LocalDate.now();
+        sumarLineas(ventanas, hoy, event.getAnterior(), -1);
+        sumarLineas(ventanas, hoy, event.getActual(), 1);
+        if (pendientes != null) pendientes.add(event);
+    }
+
+    /**
+     * Suma a las ventanas recién cargadas los cambios anotados que la lectura
+     * no vio. Para cada factura se busca, en orden, el cambio que la dejó en
+     * el estado leído en el mismo instante que las ventas; ese y los
+     * anteriores ya están contados.
+     */
+    private void conciliar(Map<Periodo, Ventana[]> nuevas, LocalDate hoy, List<FacturaCambioEvent> lote) {
+        Map<Long, List<FacturaCambioEvent>> porFactura = new LinkedHashMap<>();
+        for (FacturaCambioEvent e : lote) {
+            FacturaSnapshot s = e.getActual() != null ? e.getActual() : e.getAnterior();
+            if (s == null || s.idFactura == null) {
+                sumarLineas(nuevas, hoy, e.getAnterior(), -1);
+                sumarLineas(nuevas, hoy, e.getActual(), 1);
+            } else {
+                porFactura.computeIfAbsent(s.idFactura, k -> new ArrayList<>()).add(e);
+            }
+        }
+        Map<Long, FacturaSnapshot> vistas = reporteVentasDao.lineasFacturas(porFactura.keySet());
+        for (Map.Entry<Long, List<FacturaCambioEvent>> e : porFactura.entrySet()) {
+            List<FacturaCambioEvent> cambios = e.getValue();
+            Map<Object, Long> visto = unidades(vistas.get(e.getKey()));
+            int contados = 0;
+            if (!unidades(cambios.get(0).getAnterior()).equals(visto)) {
+                contados = -1;
+                for (int i = 0; i < cambios.size() && contados < 0; i++) {
+                    if (unidades(cambios.get(i).getActual()).equals(visto)) contados = i + 1;
+                }
+                if (contados < 0) {
+                    log.warn("Factura {}: estado no reconocido al recargar los más vendidos", e.getKey());
+                    contados = 0;
+                }
+            }
+            for (int i = contados; i < cambios.size(); i++) {
+                sumarLineas(nuevas, hoy, cambios.get(i).getAnterior(), -1);
+                sumarLineas(nuevas, hoy, cambios.get(i).getActual(), 1);
+            }
+        }
+    }
+
+    /** Día y unidades por producto con que una factura cuenta en las ventanas (vacío si no cuenta) */
+    private static Map<Object, Long> unidades(FacturaSnapshot s) {
+        Map<Object, Long> u = new HashMap<>();
+        if (s == null || !s.esPagada() || s.fecha == null) return u;
+        u.put(s.fecha.toLocalDate(), 0L);
+        for (FacturaSnapshot.Linea l : s.lineas) {
+            if (l.idProducto != null) u.merge(l.idProducto, l.cantidad, Long::sum);
+        }
+        return u;
+    }
+
+    private void sumarLineas(Map<Periodo, Ventana[]> destino, LocalDate hoy, FacturaSnapshot s, int signo) {
+        if (s == null || !s.esPagada() || s.fecha == null) return;
+        for (FacturaSnapshot.Linea l : s.lineas) {
+            if (l.idProducto != null) registrar(destino, hoy, s.fecha.toLocalDate(), l.idProducto, signo * l.cantidad);
+        }
+    }
+
+    private void registrar(Map<Periodo, Ventana[]> destino, LocalDate hoy, LocalDate dia, long idProducto, long cantidad) {
+        for (Periodo p : Periodo.values()) {
+            LocalDate inicio = p.inicio(dia);
+            for (Ventana v : vigentes(destino, p, hoy)) {
+                if (v.inicio.equals(inicio)) v.sumar(idProducto, cantidad);
+            }
+        }
+    }
+
+    /** Ventanas actual y anterior del periodo; al cambiar de periodo la actual pasa a ser la anterior */
+    private Ventana[] vigentes(Map<Periodo, Ventana[]> ventanas, Periodo p, LocalDate hoy) {
+        LocalDate actual = p.inicio(hoy);
+        Ventana[] v = ventanas.get(p);
+        if (v == null || !v[0].inicio.equals(actual)) {
+            LocalDate anterior = p.inicio(actual.minusDays(1));
+            Ventana previa = v != null && v[0].inicio.equals(anterior) ? v[0] : new Ventana(anterior, capacidad);
+            v = new Ventana[]{new Ventana(actual, capacidad), previa};
+            ventanas.put(p, v);
+        }
+        return v;
+    }
+
+    /**
+     * Productos más vendidos
+     * @param periodo dia, semana o mes; se ignora si se indican desde y hasta
+     * @param fecha día dentro del periodo (por defecto hoy)
+     * @param desde inicio de un rango arbitrario (incluido)
+     * @param hasta fin de un rango arbitrario (incluido)
+     * @param limite cantidad de productos (1 a 100)
+     */
+    public Resultado masVendidos(String periodo, LocalDate fecha, LocalDate desde, LocalDate hasta, int limite) {
+        if (limite < 1 || limite > 100) {
+            throw new IllegalArgumentException("El límite debe estar entre 1 y 100");
+        }
+        if (desde != null || hasta != null) {
+            if (desde == null || hasta == null) {
+                throw new IllegalArgumentException("Debe indicar las fechas desde y hasta");
+            }
+            if (hasta.isBefore(desde)) {
+                throw new IllegalArgumentException("La fecha hasta no puede ser anterior a la fecha desde");
+            }
+            return exacto(null, desde, hasta.plusDays(1), limite);
+        }
+        Periodo p = Periodo.de(periodo != null ? periodo : "mes");
+        LocalDate inicio = p.inicio(fecha != null ? fecha : LocalDate.now());
+        List<MasVendido> estimados = estimar(p, inicio, limite);
+        if (estimados == null) {
+            return exacto(p, inicio, p.fin(inicio), limite);
+        }
+
+        Map<Long, Producto> productos = new HashMap<>();
+        for (Producto prod : productoRepository.findAllById(estimados.stream().map(m -> m.idProducto).toList())) {
+            productos.put(prod.getIdProducto(), prod);
+        }
+        Resultado r = new Resultado();
+        r.periodo = p.name().toLowerCase();
+        r.desde = inicio;
+        r.hasta = p.fin(inicio).minusDays(1);
+        r.exacto = false;
+        for (MasVendido m : estimados) {
+            Producto prod = productos.get(m.idProducto);
+            if (prod != null) {
+                m.nombreProducto = prod.getNombreProducto();
+                m.categoria = prod.getCategoria();
+                m.marca = prod.getMarca();
+            }
+            r.errorMaximo = Math.max(r.errorMaximo, m.cantidad - m.cantidadMinima);
+        }
+        r.productos = estimados;
+        return r;
+    }
+
+    /** Resultado estimado desde la ventana en memoria, o null si el periodo no está en memoria */
+    private synchronized List<MasVendido> estimar(Periodo p, LocalDate inicio, int limite) {
+        if (!cargado) return null;
+        for (Ventana v : vigentes(ventanas, p, LocalDate.now())) {
+            if (v.inicio.equals(inicio)) return v.top(limite);
+        }
+        return null;
+    }
+
+    private Resultado exacto(Periodo p, LocalDate desde, LocalDate hastaExclusivo, int limite) {
+        Resultado r = new Resultado();
+        r.periodo = p != null ? p.name().toLowerCase() : null;
+        r.desde = desde;
+        r.hasta = hastaExclusivo.minusDays(1);
+        r.exacto = true;
+        r.productos = new ArrayList<>();
+        for (ReporteVentasDao.ProductoVendido v : reporteVentasDao.masVendidos(desde, hastaExclusivo, limite)) {
+            MasVendido m = new MasVendido();
+            m.idProducto = v.idProducto;
+            m.nombreProducto = v.nombreProducto;
+            m.categoria = v.categoria;
+            m.marca = v.marca;
+            m.cantidad = v.cantidad;
+            m.cantidadMinima = v.cantidad;
+            m.garantizado = true;
+            m.ingresos = v.ingresos;
+            m.facturas = v.facturas;
+            r.productos.add(m);
+        }
+        return r;
+    }
+
+    private static LocalDate min(LocalDate a, LocalDate b) {
+        return a.isBefore(b) ? a : b;
+    }
+
+    /** Resúmenes de un periodo */
+    private static final class Ventana {
+        final LocalDate inicio;
+        final SpaceSaving frecuentes;
+        final CountMin conteo = new CountMin();
+
+        Ventana(LocalDate inicio, int capacidad) {
+            this.inicio = inicio;
+            this.frecuentes = new SpaceSaving(capacidad);
+        }
+
+        void sumar(long idProducto, long cantidad) {
+            frecuentes.sumar(idProducto, cantidad);
+            conteo.sumar(idProducto, cantidad);
+        }
+
+        /**
+         * Los limite contadores con más unidades. La cantidad es la menor de las
+         * dos cotas superiores; un producto está garantizado en el top si su
+         * cota inferior supera tanto la cuenta del primer contador que quedó
+         * fuera como la mayor cuenta expulsada, que acota a los productos sin
+         * contador.
+         */
+        List<MasVendido> top(int limite) {
+            List<Map.Entry<Long, long[]>> orden = new ArrayList<>(frecuentes.contadores.entrySet());
+            orden.sort((a, b) -> a.getValue()[0] != b.getValue()[0]
+                    ? Long.compare(b.getValue()[0], a.getValue()[0])
+                    : Long.compare(a.getKey(), b.getKey()));
+            long fuera = Math.max(orden.size() > limite ? orden.get(limite).getValue()[0] : frecuentes.minimo(),
+                    frecuentes.maxExpulsado);
+            List<MasVendido> lista = new ArrayList<>();
+            for (int i = 0; i < Math.min(limite, orden.size()); i++) {
+                long id = orden.get(i).getKey();
+                long[] c = orden.get(i).getValue();
+                if (c[0] <= 0) break;
+                MasVendido m = new MasVendido();
+                m.idProducto = id;
+                m.cantidad = Math.min(c[0], conteo.estimar(id));
+                m.cantidadMinima = Math.max(0, c[0] - c[1]);
+                m.garantizado = m.cantidadMinima > fuera;
+                lista.add(m);
+            }
+            return lista;
+        }
+    }
+
+    /**
+     * Space-Saving ponderado: mantiene como mucho "capacidad" contadores
+     * {cuenta, error}. Un producto nuevo sin lugar reemplaza al de menor cuenta
+     * y hereda esa cuenta como error, así que cuenta - error <= real <= cuenta.
+     * Restar unidades (facturas anuladas) conserva ambas cotas. La búsqueda del
+     * mínimo es lineal; con la capacidad por defecto cuesta mucho menos que
+     * confirmar la factura que la provoca.
+     */
+    static final class SpaceSaving {
+        private final int capacidad;
+        final Map<Long, long[]> contadores = new HashMap<>();
+        // Mayor cuenta que tenía un contador al ser reemplazado
+        long maxExpulsado;
+
+        SpaceSaving(int capacidad) {
+            this.capacidad = Math.max(1, capacidad);
+        }
+
+        void sumar(long id, long cantidad) {
+            long[] c = contadores.get(id);
+            if (c != null) {
+                c[0] = Math.max(0, c[0] + cantidad);
+                return;
+            }
+            if (cantidad <= 0) return;
+            if (contadores.size() < capacidad) {
+                contadores.put(id, new long[]{cantidad, 0});
+                return;
+            }
+            Long idMinimo = null;
+            long[] minimo = null;
+            for (Map.Entry<Long, long[]> e : contadores.entrySet()) {
+                if (minimo == null || e.getValue()[0] < minimo[0]) {
+                    idMinimo = e.getKey();
+                    minimo = e.getValue();
+                }
+            }
+            contadores.remove(idMinimo);
+            maxExpulsado = Math.max(maxExpulsado, minimo[0]);
+            contadores.put(id, new long[]{minimo[0] + cantidad, minimo[0]});
+        }
+
+        /** Cota superior de las unidades de cualquier producto sin contador */
+        long minimo() {
+            if (contadores.size() < capacidad) return 0;
+            long m = Long.MAX_VALUE;
+            for (long[] c : contadores.values()) m = Math.min(m, c[0]);
+            return m;
+        }
+    }
+
+    /**
+     * Count-Min de 4 filas x 2048 columnas: la estimación nunca es menor que
+     * el valor real y lo supera en a lo sumo ~0.13% del total de unidades
+     * con probabilidad ~98%
+     */
+    static final class CountMin {
+        private static final int BITS = 11;
+        private static final long[] SEMILLAS = {
+                0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L
+        };
+        private final long[][] tabla = new long[SEMILLAS.length][1 << BITS];
+
+        void sumar(long id, long cantidad) {
+            for (int f = 0; f < SEMILLAS.length; f++) tabla[f][columna(f, id)] += cantidad;
+        }
+
+        long estimar(long id) {
+            long m = Long.MAX_VALUE;
+            for (int f = 0; f < SEMILLAS.length; f++) m = Math.min(m, tabla[f][columna(f, id)]);
+            return Math.max(0, m);
+        }
+
+        private static int columna(int fila, long id) {
+            long x = (id ^ (id >>> 29)) * SEMILLAS[fila];
+            return (int) (x >>> (64 - BITS));
+        }
+    }
+
+    // ===== CLASES DE RESPUESTA =====
+
+    public static class MasVendido {
+        public Long idProducto;
+        public String nombreProducto;
+        public String categoria;
+        public String marca;
+        public long cantidad;
+        public long cantidadMinima;
+        public boolean garantizado;
+        public BigDecimal ingresos;
+        public Long facturas;
+    }
+
+    public static class Resultado {
+        public String periodo;
+        public LocalDate desde;
+        public LocalDate hasta;
+        public boolean exacto;
+        public long errorMaximo;
+        public List<MasVendido> productos;
+    }
+}
@@ -0,0 +1,215 @@
+package com.ferreteria.sistema.service;
+
+import com.ferreteria.sistema.dao.EmpleadoSpDao;
+import com.ferreteria.sistema.dao.HorarioSpDao;
+import com.ferreteria.sistema.entity.Empleado;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Totales de horas por empleado para un periodo de planilla
+ *
+ * Los turnos se recorren en streaming y se acumulan en minutos enteros por
+ * empleado: horas ordinarias (hasta la jornada diaria), extraordinarias (el
+ * resto del turno) y nocturnas (la parte del turno dentro de la franja
+ * nocturna, sea ordinaria o extra). Un turno cuya salida es anterior a la
+ * entrada termina al día siguiente, igual que la columna HORAS_TRABAJADAS.
+ */
+@Service
+public class NominaHorasService {
+
+    private static final int MINUTOS_DIA = 24 * 60;
+
+    @Autowired
+    private HorarioSpDao horarioSpDao;
+
+    @Autowired
+    private EmpleadoSpDao empleadoSpDao;
+
+    @Value("${ferreteria.nomina.jornada-horas:8}")
+    private int jornadaHoras;
+
+    @Value("${ferreteria.nomina.nocturno-desde:19}")
+    private int nocturnoDesde;
+
+    @Value("${ferreteria.nomina.nocturno-hasta:5}")
+    private int nocturnoHasta;
+
+    /**
+     * Horas por empleado con turnos entre las fechas indicadas (ambas incluidas)
+     */
+    @Transactional(readOnly = true)
+    public ResumenNomina totales(LocalDate desde, LocalDate hasta) {
+        if (desde == null || hasta == null) {
+            throw new IllegalArgumentException("Debe indicar las fechas desde y hasta");
+        }
+        if (hasta.isBefore(desde)) {
+            throw new IllegalArgumentException("La fecha hasta no puede ser anterior a la fecha desde");
+        }
+        Acumulador acumulador = new Acumulador(jornadaHoras * 60, nocturnoDesde * 60, nocturnoHasta * 60);
+        horarioSpDao.recorrerTurnos(desde, hasta.plusDays(1), acumulador::turno);
+
+        Map<Long, Empleado> empleados = new HashMap<>();
+        if (acumulador.empleados() > 0) {
+            for (Empleado e : empleadoSpDao.listar()) empleados.put(e.getIdEmpleado(), e);
+        }
+
+        List<HorasNomina> filas = new ArrayList<>(acumulador.empleados());
+        for (int i = 0; i < acumulador.empleados(); i++) {
+            HorasNomina h = new HorasNomina();
+            h.idEmpleado = acumulador.idEmpleado(i);
+            Empleado e = empleados.get(h.idEmpleado);
+            if (e != null) {
+                h.nombreEmpleado = e.getNombreEmpleado();
+                h.apellidos = e.getApellidos();
+                h.puesto = e.getPuesto();
+            }
+            h.turnos = acumulador.turnos[i];
+            h.horasOrdinarias = horas(acumulador.ordinarios[i]);
+            h.horasExtra = horas(acumulador.extras[i]);
+            h.horasNocturnas = horas(acumulador.nocturnos[i]);
+            h.horasTotales = horas(acumulador.ordinarios[i] + acumulador.extras[i]);
+            filas.add(h);
+        }
+        filas.sort(Comparator.comparing((HorasNomina h) -> h.nombreEmpleado, Comparator.nullsLast(Comparator.naturalOrder()))
+                .thenComparing(h -> h.apellidos, Comparator.nullsLast(Comparator.naturalOrder()))
+                .thenComparing(h -> h.idEmpleado));
+
+        ResumenNomina resumen = new ResumenNomina();
+        resumen.desde = desde;
+        resumen.hasta = hasta;
+        resumen.empleados = filas;
+        return resumen;
+    }
+
+    private static BigDecimal horas(long minutos) {
+        return BigDecimal.valueOf(minutos).divide(BigDecimal.valueOf(60), 2, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * Acumula minutos por empleado en arreglos primitivos
+     *
+     * Cada empleado ocupa una posición de los arreglos paralelos; la posición
+     * se localiza con una tabla de direccionamiento abierto sobre el id, así
+     * que sumar un turno no crea objetos.
+     */
+    static final class Acumulador {
+        private final int jornadaMinutos;
+        // Franjas nocturnas [inicio, fin) en minutos, cubriendo el día del turno y el siguiente
+        private final int[] franjasNocturnas;
+
+        private long[] ids = new long[64];
+        long[] ordinarios = new long[64];
+        long[] extras = new long[64];
+        long[] nocturnos = new long[64];
+        int[] turnos = new int[64];
+        private int n;
+        // Posición + 1 de cada empleado; 0 indica celda libre
+        private int[] tabla = new int[128];
+
+        Acumulador(int jornadaMinutos, int nocturnoDesde, int nocturnoHasta) {
+            this.jornadaMinutos = jornadaMinutos;
+            int[] franjas = new int[8];
+            int k = 0;
+            for (int dia = 0; dia <= MINUTOS_DIA; dia += MINUTOS_DIA) {
+                if (nocturnoDesde < nocturnoHasta) {
+                    franjas[k++] = dia + nocturnoDesde;
+                    franjas[k++] = dia + nocturnoHasta;
+                } else if (nocturnoDesde > nocturnoHasta) {
+                    franjas[k++] = dia;
+                    franjas[k++] = dia + nocturnoHasta;
+                    franjas[k++] = dia + nocturnoDesde;
+                    franjas[k++] = dia + MINUTOS_DIA;
+                }
+            }
+            this.franjasNocturnas = Arrays.copyOf(franjas, k);
+        }
+
+        void turno(long idEmpleado, int entrada, int salida) {
+            int fin = salida >= entrada ? salida : salida + MINUTOS_DIA;
+            int minutos = fin - entrada;
+            int noche = 0;
+            for (int k = 0; k < franjasNocturnas.length; k += 2) {
+                int a = Math.max(entrada, franjasNocturnas[k]);
+                int b = Math.min(fin, franjasNocturnas[k + 1]);
+                if (b > a) noche += b - a;
+            }
+            int i = posicion(idEmpleado);
+            int ordinario = Math.min(minutos, jornadaMinutos);
+            ordinarios[i] += ordinario;
+            extras[i] += minutos - ordinario;
+            nocturnos[i] += noche;
+            turnos[i]++;
+        }
+
+        int empleados() { return n; }
+
+        long idEmpleado(int posicion) { return ids[posicion]; }
+
+        private int posicion(long id) {
+            int mascara = tabla.length - 1;
+            int c = celda(id, mascara);
+            while (tabla[c] != 0) {
+                if (ids[tabla[c] - 1] == id) return tabla[c] - 1;
+                c = (c + 1) & mascara;
+            }
+            if (n == ids.length) crecerArreglos();
+            ids[n] = id;
+            tabla[c] = ++n;
+            // Se mantiene la tabla a menos de la mitad de ocupación
+            if (n * 2 > tabla.length) redimensionarTabla();
+            return n - 1;
+        }
+
+        private static int celda(long id, int mascara) {
+            return Long.hashCode(id * 0x9E3779B97F4A7C15L) & mascara;
+        }
+
+        private void crecerArreglos() {
+            int tam = ids.length * 2;
+            ids = Arrays.copyOf(ids, tam);
+            ordinarios = Arrays.copyOf(ordinarios, tam);
+            extras = Arrays.copyOf(extras, tam);
+            nocturnos = Arrays.copyOf(nocturnos, tam);
+            turnos = Arrays.copyOf(turnos, tam);
+        }
+
+        private void redimensionarTabla() {
+            int[] nueva = new int[tabla.length * 2];
+            int mascara = nueva.length - 1;
+            for (int p = 0; p < n; p++) {
+                int c = celda(ids[p], mascara);
+                while (nueva[c] != 0) c = (c + 1) & mascara;
+                nueva[c] = p + 1;
+            }
+            tabla = nueva;
+        }
+    }
+
+    // ===== CLASES DE RESPUESTA =====
+
+    public static class ResumenNomina {
+        public LocalDate desde;
+        public LocalDate hasta;
+        public List<HorasNomina> empleados;
+    }
+
+    public static class HorasNomina {
+        public Long idEmpleado;
+        public String nombreEmpleado;
+        public String apellidos;
+        public String puesto;
+        public int turnos;
+        public BigDecimal horasOrdinarias;
+        public BigDecimal horasExtra;
+        public BigDecimal horasNocturnas;
+        public BigDecimal horasTotales;
+    }
+}
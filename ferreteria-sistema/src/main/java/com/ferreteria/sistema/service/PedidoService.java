@@ -1,13 +1,24 @@
 package com.ferreteria.sistema.service;
 
+import com.ferreteria.sistema.config.ReplicasDataSource;
 import com.ferreteria.sistema.dao.PedidoSpDao;
 import com.ferreteria.sistema.entity.Pedido;
+import com.ferreteria.sistema.event.PedidoEstadoEvent;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
@@ -17,17 +28,154 @@ public class PedidoService {
     @Autowired
     private PedidoSpDao pedidoSpDao;
 
+    @Autowired
+    private RecepcionPedidoService recepcionPedidoService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    // Antigüedad mínima de un cambio para entregarlo: cubre transacciones que confirman tarde
+    @Value("${ferreteria.pedidos.cambios.margen-segundos:30}")
+    private int margenCambiosSegundos;
+
     public List<Pedido> obtenerTodos() { return pedidoSpDao.listar(); }
 
     public Optional<Pedido> obtenerPorId(Long id) { return pedidoSpDao.obtenerPorId(id); }
 
+    /**
+     * Página de pedidos filtrada, con cursor opaco para la página siguiente
+     */
+    @Transactional(readOnly = true)
+    public PaginaPedidos buscarPagina(Long idProveedor, String estado, LocalDate entregaDesde, LocalDate entregaHasta,
+                                      String cursor, int limite) {
+        int tam = Math.max(1, Math.min(limite, 500));
+        Marca despuesDe = cursor == null || cursor.isBlank() ? null : Marca.decodificar(cursor);
+        PedidoSpDao.FilasPagina filas = pedidoSpDao.buscarPagina(idProveedor, estado, entregaDesde, entregaHasta,
+                despuesDe != null ? despuesDe.fecha : null, despuesDe != null ? despuesDe.id : null, tam + 1);
+
+        PaginaPedidos pagina = new PaginaPedidos();
+        List<Pedido> items = filas.pedidos;
+        if (items.size() > tam) {
+            items = items.subList(0, tam);
+            pagina.siguienteCursor = new Marca(filas.fechas.get(tam - 1), items.get(tam - 1).getIdPedido()).codificar();
+        }
+        pagina.items = items;
+        return pagina;
+    }
+
+    /**
+     * Pedidos modificados desde la marca indicada. Sin marca devuelve una
+     * marca inicial (sin pedidos) a partir de la cual consultar. Se lee de
+     * la principal: en una réplica atrasada la marca avanzaría sobre cambios
+     * que todavía no llegaron.
+     */
+    @Transactional(readOnly = true)
+    public PaginaPedidos cambiosDesde(String marca, int limite) {
+        return ReplicasDataSource.enPrincipal(() -> leerCambios(marca, limite));
+    }
+
+    private PaginaPedidos leerCambios(String marca, int limite) {
+        int tam = Math.max(1, Math.min(limite, 1000));
+        PaginaPedidos pagina = new PaginaPedidos();
+        if (marca == null || marca.isBlank()) {
+            pagina.items = new ArrayList<>();
+            pagina.siguienteCursor = new Marca(pedidoSpDao.fechaServidor(margenCambiosSegundos), Long.MAX_VALUE).codificar();
+            return pagina;
+        }
+        Marca desde = Marca.decodificar(marca);
+        List<Pedido> items = pedidoSpDao.cambiosDesde(desde.fecha, desde.id, margenCambiosSegundos, tam);
+        pagina.items = items;
+        if (items.isEmpty()) {
+            pagina.siguienteCursor = marca;
+        } else {
+            Pedido ultimo = items.get(items.size() - 1);
+            pagina.siguienteCursor = new Marca(ultimo.getFechaModificacion(), ultimo.getIdPedido()).codificar();
+        }
+        return pagina;
+    }
+
     public Long crear(String numero, Date fecha, Long idProveedor, String estado, Date fechaEntrega, String descripcion, String observaciones) {
         return pedidoSpDao.crear(numero, fecha, idProveedor, estado, fechaEntrega, descripcion, observaciones);
     }
 
-    public void actualizarEstado(Long id, String estado) { pedidoSpDao.actualizarEstado(id, estado); }
-}
+    public void actualizarEstado(Long id, String estado) {
+        // La recepción se aplica desde la aplicación para registrar el kardex
+        if ("RECIBIDO".equalsIgnoreCase(estado)) {
+            recepcionPedidoService.recibir(id, null);
+            return;
+        }
+        pedidoSpDao.actualizarEstado(id, estado);
+        if (estado != null) eventPublisher.publishEvent(new PedidoEstadoEvent(id, estado.trim().toUpperCase()));
+    }
 
+    /**
+     * Agrega varias líneas a un pedido en una sola operación.
+     * Las líneas repetidas del mismo producto se consolidan porque
+     * detallePedido admite un único registro por producto y pedido.
+     */
+    public int agregarDetalles(Long idPedido, List<PedidoSpDao.LineaPedido> lineas) {
+        if (lineas == null || lineas.isEmpty()) {
+            throw new IllegalArgumentException("Debe enviar al menos una línea de detalle");
+        }
+        Pedido pedido = pedidoSpDao.obtenerPorId(idPedido)
+                .orElseThrow(() -> new IllegalArgumentException("Pedido no encontrado con ID: " + idPedido));
+        if (pedido.getEstado() != null && pedido.getEstado() != Pedido.EstadoPedido.PENDIENTE) {
+            throw new IllegalArgumentException("Solo se pueden agregar líneas a pedidos en estado PENDIENTE");
+        }
 
+        Map<Long, PedidoSpDao.LineaPedido> porProducto = new LinkedHashMap<>();
+        for (PedidoSpDao.LineaPedido l : lineas) {
+            if (l == null || l.idProducto == null) {
+                throw new IllegalArgumentException("Cada línea debe indicar el producto");
+            }
+            if (l.cantidad == null || l.cantidad <= 0) {
+                throw new IllegalArgumentException("La cantidad debe ser mayor a cero (producto " + l.idProducto + ")");
+            }
+            if (l.precio == null || l.precio.signum() <= 0) {
+                throw new IllegalArgumentException("El precio debe ser mayor a cero (producto " + l.idProducto + ")");
+            }
+            PedidoSpDao.LineaPedido previa = porProducto.get(l.idProducto);
+            if (previa == null) {
+                porProducto.put(l.idProducto, new PedidoSpDao.LineaPedido(l.idProducto, l.precio, l.cantidad));
+            } else {
+                previa.cantidad += l.cantidad;
+            }
+        }
+        return pedidoSpDao.agregarDetalles(idPedido, new ArrayList<>(porProducto.values()));
+    }
+
+    // ===== CLASES DE RESPUESTA =====
 
+    public static class PaginaPedidos {
+        public List<Pedido> items;
+        public String siguienteCursor;
+    }
 
+    /**
+     * Posición (fecha, IdPedido) codificada como texto opaco para el cliente
+     */
+    private static class Marca {
+        final LocalDateTime fecha;
+        final Long id;
+
+        Marca(LocalDateTime fecha, Long id) {
+            this.fecha = fecha;
+            this.id = id;
+        }
+
+        String codificar() {
+            String texto = fecha.withNano(0) + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(texto.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Marca decodificar(String valor) {
+            try {
+                String texto = new String(Base64.getUrlDecoder().decode(valor), StandardCharsets.UTF_8);
+                int sep = texto.indexOf('|');
+                return new Marca(LocalDateTime.parse(texto.substring(0, sep)), Long.parseLong(texto.substring(sep + 1)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Cursor inválido");
+            }
+        }
+    }
+}
@@ -2,7 +2,9 @@ package com.ferreteria.sistema.service;
 
 import com.ferreteria.sistema.dao.ProductoSpDao;
 import com.ferreteria.sistema.entity.Producto;
+import com.ferreteria.sistema.event.EntidadModificadaEvent;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -16,15 +18,27 @@ public class ProductoService {
     @Autowired
     private ProductoSpDao productoSpDao;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     public List<Producto> obtenerTodos() { return productoSpDao.listar(); }
 
     public Optional<Producto> obtenerPorId(Long id) { return productoSpDao.obtenerPorId(id); }
 
-    public void crear(Producto p) { productoSpDao.insertar(p); }
+    public void crear(Producto p) {
+        productoSpDao.insertar(p);
+        eventPublisher.publishEvent(new EntidadModificadaEvent(EstadisticasService.PRODUCTOS));
+    }
 
-    public void actualizar(Long id, Producto p) { productoSpDao.actualizar(id, p); }
+    public void actualizar(Long id, Producto p) {
+        productoSpDao.actualizar(id, p);
+        eventPublisher.publishEvent(new EntidadModificadaEvent(EstadisticasService.PRODUCTOS));
+    }
 
-    public void eliminar(Long id) { productoSpDao.eliminar(id); }
+    public void eliminar(Long id) {
+        productoSpDao.eliminar(id);
+        eventPublisher.publishEvent(new EntidadModificadaEvent(EstadisticasService.PRODUCTOS));
+    }
 }
 
 
@@ -0,0 +1,225 @@
+package com.ferreteria.sistema.service;
+
+import com.ferreteria.sistema.dao.PedidoSpDao;
+import com.ferreteria.sistema.event.PedidoEstadoEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Servicio de rendimiento de proveedores
+ *
+ * Mantiene en memoria estadísticas acumuladas por proveedor (tiempo de
+ * entrega, entregas a tiempo y tasa de cumplimiento) que se actualizan
+ * cada vez que un pedido se cierra. Las consultas no recorren el histórico:
+ * solo leen los acumulados. El histórico se carga al iniciar y se recarga
+ * cada noche.
+ *
+ * Para no contar dos veces un pedido, la carga marca el día en que empezó:
+ * un aviso de un pedido cerrado antes de ese día ya está en la carga y se
+ * ignora, y solo los cerrados desde ese día se recuerdan por id. Así el
+ * conjunto de ids no pasa de los pedidos cerrados desde la última recarga.
+ */
+@Service
+public class ProveedorRendimientoService {
+
+    private static final Logger log = LoggerFactory.getLogger(ProveedorRendimientoService.class);
+
+    @Autowired
+    private PedidoSpDao pedidoSpDao;
+
+    private volatile Acumulados acumulados = new Acumulados(null);
+    // Pedidos cerrados avisados durante una recarga, para aplicarlos sobre lo leído (null si no hay recarga)
+    private List<PedidoSpDao.PedidoCerrado> pendientes;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void cargarHistorico() {
+        recargar();
+    }
+
+    /**
+     * Vuelve a leer todos los pedidos cerrados y reemplaza los acumulados
+     */
+    @Scheduled(cron = "${ferreteria.proveedores.rendimiento.cron-recarga:0 50 2 * * *}")
+    public void recargar() {
+        synchronized (this) {
+            if (pendientes != null) return;
+            pendientes = new ArrayList<>();
+        }
+        Acumulados nuevos = null;
+        try {
+            long inicio = System.currentTimeMillis();
+            Acumulados leidos = new Acumulados(LocalDate.now());
+            pedidoSpDao.recorrerCerrados(c -> leidos.registrar(c, true));
+            nuevos = leidos;
+            log.info("Rendimiento de proveedores cargado: {} proveedores en {} ms",
+                    leidos.estadisticas.size(), System.currentTimeMillis() - inicio);
+        } catch (Exception ex) {
+            log.warn("No se pudo cargar el histórico de rendimiento de proveedores: {}", ex.getMessage());
+        } finally {
+            synchronized (this) {
+                if (nuevos != null) {
+                    for (PedidoSpDao.PedidoCerrado c : pendientes) nuevos.registrar(c, false);
+                    acumulados = nuevos;
+                }
+                pendientes = null;
+            }
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void pedidoCambioEstado(PedidoEstadoEvent event) {
+        if (!"RECIBIDO".equals(event.getEstado()) && !"CANCELADO".equals(event.getEstado())) return;
+        try {
+            pedidoSpDao.obtenerCerrado(event.getIdPedido()).ifPresent(c -> {
+                synchronized (this) {
+                    acumulados.registrar(c, false);
+                    if (pendientes != null) pendientes.add(c);
+                }
+            });
+        } catch (Exception ex) {
+            log.warn("No se pudo actualizar el rendimiento del pedido {}: {}", event.getIdPedido(), ex.getMessage());
+        }
+    }
+
+    /**
+     * Obtiene el rendimiento acumulado de un proveedor
+     * @param idProveedor ID del proveedor
+     * @return rendimiento (vacío si el proveedor no tiene pedidos cerrados)
+     */
+    public RendimientoProveedor obtener(Long idProveedor) {
+        EstadisticaProveedor e = acumulados.estadisticas.get(idProveedor);
+        return e != null ? e.resumen(idProveedor) : new EstadisticaProveedor().resumen(idProveedor);
+    }
+
+    /**
+     * Estadísticas de una carga más los pedidos avisados después
+     */
+    private static final class Acumulados {
+        final Map<Long, EstadisticaProveedor> estadisticas = new ConcurrentHashMap<>();
+        // Día en que empezó la carga (null si todavía no hubo ninguna)
+        final LocalDate desde;
+        // Pedidos ya contados que se cerraron desde ese día
+        final Set<Long> procesados = ConcurrentHashMap.newKeySet();
+
+        Acumulados(LocalDate desde) {
+            this.desde = desde;
+        }
+
+        /**
+         * @param deCarga true para los pedidos leídos por la carga, que aparecen una sola vez
+         */
+        void registrar(PedidoSpDao.PedidoCerrado c, boolean deCarga) {
+            if (c.idProveedor == null) return;
+            boolean anterior = desde != null && c.fechaRecepcion != null && c.fechaRecepcion.isBefore(desde);
+            if (anterior) {
+                // Un aviso de un pedido cerrado antes de la carga ya está contado en ella
+                if (!deCarga) return;
+            } else if (!procesados.add(c.idPedido)) {
+                return;
+            }
+            estadisticas.computeIfAbsent(c.idProveedor, k -> new EstadisticaProveedor()).registrar(c);
+        }
+    }
+
+    /**
+     * Acumulados de un proveedor. El tiempo de entrega se guarda en un
+     * histograma de días enteros (0 a 365 y un desborde), que da los
+     * percentiles exactos a resolución de un día con memoria fija.
+     */
+    static class EstadisticaProveedor {
+        private static final int MAX_DIAS = 366;
+
+        private final int[] histograma = new int[MAX_DIAS + 1];
+        private long recibidos;
+        private long cancelados;
+        private long sumaDias;
+        private long conFechaEsperada;
+        private long aTiempo;
+        private long unidadesPedidas;
+        private long unidadesRecibidas;
+
+        synchronized void registrar(PedidoSpDao.PedidoCerrado c) {
+            if ("CANCELADO".equals(c.estado)) {
+                cancelados++;
+                // Un pedido cancelado tras recibir parte cuenta como entrega incompleta
+                if (c.unidadesRecibidas > 0) {
+                    unidadesPedidas += c.unidadesPedidas;
+                    unidadesRecibidas += c.unidadesRecibidas;
+                }
+                return;
+            }
+            recibidos++;
+            unidadesPedidas += c.unidadesPedidas;
+            unidadesRecibidas += Math.min(c.unidadesRecibidas, c.unidadesPedidas);
+            if (c.fecha != null && c.fechaRecepcion != null) {
+                long dias = Math.max(0, ChronoUnit.DAYS.between(c.fecha, c.fechaRecepcion));
+                sumaDias += dias;
+                histograma[(int) Math.min(dias, MAX_DIAS)]++;
+            }
+            if (c.fechaEntregaEsperada != null && c.fechaRecepcion != null) {
+                conFechaEsperada++;
+                if (!c.fechaRecepcion.isAfter(c.fechaEntregaEsperada)) aTiempo++;
+            }
+        }
+
+        private int percentil(long total, double q) {
+            if (total == 0) return 0;
+            long objetivo = (long) Math.ceil(q * total);
+            long acumulado = 0;
+            for (int d = 0; d < histograma.length; d++) {
+                acumulado += histograma[d];
+                if (acumulado >= objetivo) return d;
+            }
+            return MAX_DIAS;
+        }
+
+        synchronized RendimientoProveedor resumen(Long idProveedor) {
+            RendimientoProveedor r = new RendimientoProveedor();
+            r.idProveedor = idProveedor;
+            r.pedidosRecibidos = recibidos;
+            r.pedidosCancelados = cancelados;
+            long medidos = 0;
+            for (int n : histograma) medidos += n;
+            r.tiempoEntregaPromedioDias = medidos > 0 ? Math.round(sumaDias * 100d / medidos) / 100d : null;
+            r.tiempoEntregaP50Dias = medidos > 0 ? percentil(medidos, 0.50) : null;
+            r.tiempoEntregaP90Dias = medidos > 0 ? percentil(medidos, 0.90) : null;
+            r.tiempoEntregaP95Dias = medidos > 0 ? percentil(medidos, 0.95) : null;
+            r.tasaATiempo = conFechaEsperada > 0 ? Math.round(aTiempo * 10000d / conFechaEsperada) / 10000d : null;
+            r.tasaCumplimiento = unidadesPedidas > 0 ? Math.round(unidadesRecibidas * 10000d / unidadesPedidas) / 10000d : null;
+            r.unidadesPedidas = unidadesPedidas;
+            r.unidadesRecibidas = unidadesRecibidas;
+            return r;
+        }
+    }
+
+    // ===== CLASES DE RESPUESTA =====
+
+    public static class RendimientoProveedor {
+        public Long idProveedor;
+        public long pedidosRecibidos;
+        public long pedidosCancelados;
+        public Double tiempoEntregaPromedioDias;
+        public Integer tiempoEntregaP50Dias;
+        public Integer tiempoEntregaP90Dias;
+        public Integer tiempoEntregaP95Dias;
+        public Double tasaATiempo;
+        public Double tasaCumplimiento;
+        public long unidadesPedidas;
+        public long unidadesRecibidas;
+    }
+}
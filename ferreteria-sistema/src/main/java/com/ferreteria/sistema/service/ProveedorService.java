@@ -2,7 +2,9 @@ package com.ferreteria.sistema.service;
 
 import com.ferreteria.sistema.dao.ProveedorSpDao;
 import com.ferreteria.sistema.entity.Proveedor;
+import com.ferreteria.sistema.event.EntidadModificadaEvent;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -16,15 +18,27 @@ public class ProveedorService {
     @Autowired
     private ProveedorSpDao proveedorSpDao;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     public List<Proveedor> obtenerTodos() { return proveedorSpDao.listar(); }
 
     public Optional<Proveedor> obtenerPorId(Long id) { return proveedorSpDao.obtenerPorId(id); }
 
-    public void crear(Proveedor p) { proveedorSpDao.insertar(p); }
+    public void crear(Proveedor p) {
+        proveedorSpDao.insertar(p);
+        eventPublisher.publishEvent(new EntidadModificadaEvent(EstadisticasService.PROVEEDORES));
+    }
 
-    public void actualizar(Long id, Proveedor p) { proveedorSpDao.actualizar(id, p); }
+    public void actualizar(Long id, Proveedor p) {
+        proveedorSpDao.actualizar(id, p);
+        eventPublisher.publishEvent(new EntidadModificadaEvent(EstadisticasService.PROVEEDORES));
+    }
 
-    public void eliminar(Long id) { proveedorSpDao.eliminar(id); }
+    public void eliminar(Long id) {
+        proveedorSpDao.eliminar(id);
+        eventPublisher.publishEvent(new EntidadModificadaEvent(EstadisticasService.PROVEEDORES));
+    }
 }
 
 
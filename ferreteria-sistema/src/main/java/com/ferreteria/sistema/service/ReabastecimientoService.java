@@ -0,0 +1,275 @@
+package com.ferreteria.sistema.service;
+
+import com.ferreteria.sistema.dao.PedidoSpDao;
+import com.ferreteria.sistema.dao.ReabastecimientoDao;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Servicio de reabastecimiento automático
+ *
+ * Calcula la velocidad de venta de cada producto sobre una ventana móvil
+ * de días y genera pedidos en estado PENDIENTE, agrupados por proveedor,
+ * para los productos cuya cobertura proyectada no alcanza el plazo de entrega.
+ *
+ * Las ventas diarias se guardan en arreglos primitivos (un anillo de
+ * ventanaDias posiciones por producto) y en cada ejecución solo se leen
+ * los días cerrados que aún no se habían cargado, más los últimos
+ * diasRevision ya cargados, que se vuelven a leer para recoger las
+ * anulaciones y correcciones de facturas recientes.
+ *
+ * La ventana se actualiza con el monitor del servicio, solo el tiempo de
+ * leer los días nuevos; la consulta previa (sin pedidos) no espera a que
+ * termine una generación en curso. Cada pedido se crea con su detalle
+ * completo o se elimina.
+ */
+@Service
+public class ReabastecimientoService {
+
+    private static final Logger log = LoggerFactory.getLogger(ReabastecimientoService.class);
+
+    @Autowired
+    private ReabastecimientoDao reabastecimientoDao;
+
+    @Autowired
+    private PedidoSpDao pedidoSpDao;
+
+    @Value("${ferreteria.inventario.reabastecimiento.habilitado:true}")
+    private boolean habilitado;
+
+    @Value("${ferreteria.inventario.reabastecimiento.ventana-dias:28}")
+    private int ventanaDias;
+
+    @Value("${ferreteria.inventario.reabastecimiento.dias-entrega:7}")
+    private int diasEntrega;
+
+    @Value("${ferreteria.inventario.reabastecimiento.dias-cobertura:30}")
+    private int diasCobertura;
+
+    @Value("${ferreteria.inventario.reabastecimiento.dias-revision:3}")
+    private int diasRevision;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // Solo una generación de pedidos a la vez
+    private final ReentrantLock generando = new ReentrantLock();
+
+    // Estado incremental de la ventana móvil (protegido por "this")
+    private final Map<Long, Integer> indiceProducto = new HashMap<>();
+    private int productos;
+    private int[] ventas = new int[0];        // productos * ventanaDias, indexado por día % ventanaDias
+    private long[] sumaVentana = new long[0];
+    private int ventanaCargada;
+    private LocalDate ultimoDiaCargado;
+
+    /**
+     * Proceso nocturno: actualiza la ventana y crea los pedidos propuestos
+     */
+    @Scheduled(cron = "${ferreteria.inventario.reabastecimiento.cron:0 30 2 * * *}")
+    public void ejecutarNocturno() {
+        if (!habilitado) return;
+        try {
+            ResultadoReabastecimiento r = ejecutar(true);
+            log.info("Reabastecimiento: {} productos evaluados, {} pedidos creados en {} ms",
+                    r.productosEvaluados, r.pedidosCreados.size(), r.duracionMs);
+        } catch (Exception ex) {
+            log.error("Error en el proceso de reabastecimiento: {}", ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Calcula las propuestas de reabastecimiento
+     * @param generarPedidos si es true crea un pedido PENDIENTE por proveedor
+     * @return propuestas calculadas y pedidos creados
+     */
+    public ResultadoReabastecimiento ejecutar(boolean generarPedidos) {
+        if (!generarPedidos) return calcular(false);
+        generando.lock();
+        try {
+            return calcular(true);
+        } finally {
+            generando.unlock();
+        }
+    }
+
+    private ResultadoReabastecimiento calcular(boolean generarPedidos) {
+        long inicio = System.currentTimeMillis();
+        Map<Long, Double> velocidades = new HashMap<>();
+        synchronized (this) {
+            actualizarVentana(LocalDate.now());
+            indiceProducto.forEach((id, pos) -> velocidades.put(id, (double) sumaVentana[pos] / ventanaDias));
+        }
+
+        Map<Long, PropuestaProveedor> porProveedor = new TreeMap<>();
+        int[] evaluados = new int[1];
+        reabastecimientoDao.recorrerInventario((idProducto, idProveedor, stock, pendiente, stockMinimo, precioCompra) -> {
+            evaluados[0]++;
+            double velocidad = velocidades.getOrDefault(idProducto, 0d);
+            long disponible = stock + pendiente;
+
+            double puntoReorden = velocidad * diasEntrega + stockMinimo;
+            if (disponible > puntoReorden) return;
+
+            long objetivo = (long) Math.ceil(velocidad * (diasEntrega + diasCobertura)) + stockMinimo;
+            long cantidad = objetivo - disponible;
+            if (cantidad <= 0 || precioCompra == null || precioCompra.signum() <= 0) return;
+
+            LineaPropuesta linea = new LineaPropuesta();
+            linea.idProducto = idProducto;
+            linea.cantidad = (int) Math.min(cantidad, Integer.MAX_VALUE);
+            linea.precio = precioCompra;
+            linea.stockActual = stock;
+            linea.enCamino = pendiente;
+            linea.velocidadDiaria = Math.round(velocidad * 100d) / 100d;
+            linea.diasCobertura = velocidad > 0d ? Math.round(disponible / velocidad * 10d) / 10d : null;
+            porProveedor.computeIfAbsent(idProveedor, PropuestaProveedor::new).lineas.add(linea);
+        });
+
+        ResultadoReabastecimiento resultado = new ResultadoReabastecimiento();
+        resultado.productosEvaluados = evaluados[0];
+        resultado.propuestas = new ArrayList<>(porProveedor.values());
+        if (generarPedidos) {
+            Date entrega = Date.from(LocalDate.now().plusDays(diasEntrega).atStartOfDay(ZoneId.systemDefault()).toInstant());
+            TransactionTemplate tx = new TransactionTemplate(transactionManager);
+            tx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+            for (PropuestaProveedor p : resultado.propuestas) {
+                List<PedidoSpDao.LineaPedido> lineas = new ArrayList<>(p.lineas.size());
+                for (LineaPropuesta l : p.lineas) {
+                    lineas.add(new PedidoSpDao.LineaPedido(l.idProducto, l.precio, l.cantidad));
+                }
+                Long idPedido = pedidoSpDao.crear(null, new Date(), p.idProveedor, "PENDIENTE", entrega,
+                        "Reabastecimiento automático",
+                        "Propuesta generada por velocidad de venta de los últimos " + ventanaDias + " días");
+                try {
+                    tx.executeWithoutResult(status -> pedidoSpDao.agregarDetalles(idPedido, lineas));
+                } catch (RuntimeException ex) {
+                    // SP_INSERTAR_PEDIDO confirma por su cuenta: un pedido sin su detalle no debe quedar
+                    log.warn("No se pudo agregar el detalle del pedido {} del proveedor {}: {}",
+                            idPedido, p.idProveedor, ex.getMessage());
+                    descartarPedido(idPedido);
+                    continue;
+                }
+                p.idPedido = idPedido;
+                resultado.pedidosCreados.add(idPedido);
+            }
+        }
+        resultado.duracionMs = System.currentTimeMillis() - inicio;
+        return resultado;
+    }
+
+    private void descartarPedido(Long idPedido) {
+        try {
+            pedidoSpDao.eliminarIncompleto(idPedido);
+        } catch (Exception ex) {
+            log.error("No se pudo eliminar el pedido incompleto {}: {}", idPedido, ex.getMessage());
+        }
+    }
+
+    /**
+     * Avanza la ventana móvil hasta el último día cerrado (ayer).
+     * Si la ventana cambió de tamaño o el último cargado quedó fuera de ella,
+     * se vuelve a cargar completa.
+     */
+    private void actualizarVentana(LocalDate hoy) {
+        LocalDate ultimoCerrado = hoy.minusDays(1);
+        if (ultimoDiaCargado != null && !ultimoCerrado.isAfter(ultimoDiaCargado)) return;
+
+        LocalDate desde;
+        LocalDate inicioVentana = ultimoCerrado.minusDays(ventanaDias - 1L);
+        if (ultimoDiaCargado == null || ventanaCargada != ventanaDias
+                || ChronoUnit.DAYS.between(ultimoDiaCargado, ultimoCerrado) >= ventanaDias) {
+            reiniciarVentana();
+            desde = inicioVentana;
+        } else {
+            // Los últimos días ya cargados se vuelven a leer junto con los nuevos
+            desde = ultimoDiaCargado.plusDays(1).minusDays(Math.max(0, diasRevision));
+            if (desde.isBefore(inicioVentana)) desde = inicioVentana;
+            for (LocalDate d = desde; !d.isAfter(ultimoCerrado); d = d.plusDays(1)) {
+                limpiarPosicion(posicionDia(d));
+            }
+        }
+
+        reabastecimientoDao.recorrerVentasDiarias(desde, hoy, (idProducto, dia, cantidad) -> {
+            int pos = posicionProducto(idProducto);
+            int celda = pos * ventanaDias + posicionDia(dia);
+            int valor = (int) Math.min(cantidad, Integer.MAX_VALUE);
+            ventas[celda] += valor;
+            sumaVentana[pos] += valor;
+        });
+        ultimoDiaCargado = ultimoCerrado;
+    }
+
+    private void reiniciarVentana() {
+        indiceProducto.clear();
+        productos = 0;
+        ventas = new int[1024 * ventanaDias];
+        sumaVentana = new long[1024];
+        ventanaCargada = ventanaDias;
+    }
+
+    private void limpiarPosicion(int dia) {
+        for (int p = 0; p < productos; p++) {
+            int celda = p * ventanaDias + dia;
+            sumaVentana[p] -= ventas[celda];
+            ventas[celda] = 0;
+        }
+    }
+
+    private int posicionDia(LocalDate dia) {
+        return (int) Math.floorMod(dia.toEpochDay(), (long) ventanaDias);
+    }
+
+    private int posicionProducto(long idProducto) {
+        Integer pos = indiceProducto.get(idProducto);
+        if (pos != null) return pos;
+        if (productos == sumaVentana.length) {
+            int capacidad = sumaVentana.length * 2;
+            sumaVentana = Arrays.copyOf(sumaVentana, capacidad);
+            ventas = Arrays.copyOf(ventas, capacidad * ventanaDias);
+        }
+        indiceProducto.put(idProducto, productos);
+        return productos++;
+    }
+
+    // ===== CLASES DE RESPUESTA =====
+
+    public static class LineaPropuesta {
+        public Long idProducto;
+        public Integer cantidad;
+        public BigDecimal precio;
+        public long stockActual;
+        public long enCamino;
+        public double velocidadDiaria;
+        public Double diasCobertura;
+    }
+
+    public static class PropuestaProveedor {
+        public Long idProveedor;
+        public Long idPedido;
+        public List<LineaPropuesta> lineas = new ArrayList<>();
+
+        public PropuestaProveedor(Long idProveedor) { this.idProveedor = idProveedor; }
+    }
+
+    public static class ResultadoReabastecimiento {
+        public int productosEvaluados;
+        public List<PropuestaProveedor> propuestas = new ArrayList<>();
+        public List<Long> pedidosCreados = new ArrayList<>();
+        public long duracionMs;
+    }
+}
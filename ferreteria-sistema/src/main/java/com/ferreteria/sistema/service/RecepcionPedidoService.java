@@ -0,0 +1,150 @@
+package com.ferreteria.sistema.service;
+
+import com.ferreteria.sistema.dao.PedidoSpDao;
+import com.ferreteria.sistema.event.PedidoEstadoEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+
+/**
+ * Servicio de recepción de pedidos de compra
+ *
+ * Aplica la mercadería recibida al stock con un MERGE por lotes, registra
+ * cada entrada en el kardex (MovimientosStock) y admite recepciones parciales.
+ * Cuando todas las líneas quedan completas el pedido pasa a RECIBIDO; como el
+ * kardex ya tiene las entradas, trg_stock_actualizar_pedido no vuelve a sumar.
+ *
+ * Con ferreteria.compras.recepcion.stock-por-trigger=true se conserva el
+ * comportamiento anterior: el trigger suma todo el pedido al marcarlo RECIBIDO.
+ */
+@Service
+@Transactional
+public class RecepcionPedidoService {
+
+    @Autowired
+    private PedidoSpDao pedidoSpDao;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${ferreteria.compras.recepcion.stock-por-trigger:false}")
+    private boolean stockPorTrigger;
+
+    /**
+     * Registra la recepción de un pedido
+     * @param idPedido ID del pedido
+     * @param lineas cantidades recibidas por producto; null o vacío recibe todo lo pendiente
+     * @return variación de stock por producto y estado final del pedido
+     */
+    public ResultadoRecepcion recibir(Long idPedido, List<LineaRecepcion> lineas) {
+        String estado = pedidoSpDao.bloquearPedido(idPedido);
+        if (estado == null) {
+            throw new IllegalArgumentException("Pedido no encontrado con ID: " + idPedido);
+        }
+        if ("RECIBIDO".equals(estado) || "CANCELADO".equals(estado)) {
+            throw new IllegalArgumentException("El pedido está " + estado + " y no admite recepciones");
+        }
+
+        boolean completa = lineas == null || lineas.isEmpty();
+        if (stockPorTrigger) {
+            if (!completa) {
+                throw new IllegalArgumentException("Las recepciones parciales requieren ferreteria.compras.recepcion.stock-por-trigger=false");
+            }
+            pedidoSpDao.cambiarEstadoEnTransaccion(idPedido, "RECIBIDO");
+            eventPublisher.publishEvent(new PedidoEstadoEvent(idPedido, "RECIBIDO"));
+            ResultadoRecepcion r = new ResultadoRecepcion();
+            r.idPedido = idPedido;
+            r.estado = "RECIBIDO";
+            r.completo = true;
+            return r;
+        }
+
+        Map<Long, PedidoSpDao.LineaPorRecibir> porProducto = new LinkedHashMap<>();
+        for (PedidoSpDao.LineaPorRecibir l : pedidoSpDao.lineasPorRecibir(idPedido)) {
+            porProducto.put(l.idProducto, l);
+        }
+        if (porProducto.isEmpty()) {
+            throw new IllegalArgumentException("El pedido no tiene líneas de detalle");
+        }
+
+        Map<Long, Integer> cantidades = new LinkedHashMap<>();
+        if (completa) {
+            for (PedidoSpDao.LineaPorRecibir l : porProducto.values()) {
+                if (l.pendiente() > 0) cantidades.put(l.idProducto, (int) l.pendiente());
+            }
+        } else {
+            for (LineaRecepcion l : lineas) {
+                if (l == null || l.idProducto == null || l.cantidad == null || l.cantidad <= 0) {
+                    throw new IllegalArgumentException("Cada línea debe indicar producto y una cantidad mayor a cero");
+                }
+                PedidoSpDao.LineaPorRecibir pedida = porProducto.get(l.idProducto);
+                if (pedida == null) {
+                    throw new IllegalArgumentException("El producto " + l.idProducto + " no forma parte del pedido");
+                }
+                int total = cantidades.getOrDefault(l.idProducto, 0) + l.cantidad;
+                if (total > pedida.pendiente()) {
+                    throw new IllegalArgumentException("Se reciben " + total + " unidades del producto " + l.idProducto
+                            + " pero solo quedan " + pedida.pendiente() + " pendientes");
+                }
+                cantidades.put(l.idProducto, total);
+            }
+        }
+
+        ResultadoRecepcion resultado = new ResultadoRecepcion();
+        resultado.idPedido = idPedido;
+        if (!cantidades.isEmpty()) {
+            pedidoSpDao.aplicarEntradaStock(cantidades);
+            Map<Long, Long> stock = pedidoSpDao.obtenerStock(cantidades.keySet());
+            pedidoSpDao.registrarMovimientosEntrada(idPedido, cantidades, stock,
+                    completa ? "Recepción completa" : "Recepción parcial");
+
+            for (Map.Entry<Long, Integer> e : cantidades.entrySet()) {
+                PedidoSpDao.LineaPorRecibir l = porProducto.get(e.getKey());
+                l.recibida += e.getValue();
+                DeltaStock d = new DeltaStock();
+                d.idProducto = e.getKey();
+                d.cantidadRecibida = e.getValue();
+                d.stockActual = stock.getOrDefault(e.getKey(), 0L);
+                d.stockAnterior = d.stockActual - e.getValue();
+                d.pendientePorRecibir = l.pendiente();
+                resultado.movimientos.add(d);
+            }
+        }
+
+        resultado.completo = porProducto.values().stream().allMatch(l -> l.pendiente() == 0);
+        if (resultado.completo) {
+            pedidoSpDao.cambiarEstadoEnTransaccion(idPedido, "RECIBIDO");
+            eventPublisher.publishEvent(new PedidoEstadoEvent(idPedido, "RECIBIDO"));
+            resultado.estado = "RECIBIDO";
+        } else {
+            resultado.estado = estado;
+        }
+        return resultado;
+    }
+
+    // ===== CLASES DE PETICIÓN Y RESPUESTA =====
+
+    public static class LineaRecepcion {
+        public Long idProducto;
+        public Integer cantidad;
+    }
+
+    public static class DeltaStock {
+        public Long idProducto;
+        public int cantidadRecibida;
+        public long stockAnterior;
+        public long stockActual;
+        public long pendientePorRecibir;
+    }
+
+    public static class ResultadoRecepcion {
+        public Long idPedido;
+        public String estado;
+        public boolean completo;
+        public List<DeltaStock> movimientos = new ArrayList<>();
+    }
+}
@@ -0,0 +1,194 @@
+package com.ferreteria.sistema.service;
+
+import com.ferreteria.sistema.dao.ReporteVentasDao;
+import com.ferreteria.sistema.event.VentasHoraCambioEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reportes de ventas diarias y mensuales
+ *
+ * Los totales de un mes se leen del acumulado VentasHora con una sola
+ * consulta agrupada por día y método de pago. Los meses ya cerrados se
+ * guardan en memoria: sus facturas solo cambian si alguien paga o anula una
+ * factura atrasada. El mes afectado se descarta cuando el acumulado ya
+ * incluye el cambio (VentasHoraCambioEvent), no al confirmarse la factura,
+ * para que una lectura intermedia no quede guardada con el total anterior;
+ * reconstruir el acumulado descarta todos. El mes en curso se consulta
+ * siempre.
+ */
+@Service
+public class ReporteVentasService {
+
+    @Autowired
+    private ReporteVentasDao reporteVentasDao;
+
+    @Value("${ferreteria.reportes.meses-cache:36}")
+    private int mesesCache;
+
+    private final Map<YearMonth, VentasMes> meses = new LinkedHashMap<>(16, 0.75f, true);
+    // Cambia con cada invalidación; una carga que empezó antes no se guarda
+    private final AtomicLong generacion = new AtomicLong();
+
+    /**
+     * Ventas pagadas por día entre dos fechas (ambas incluidas); los días sin ventas no aparecen
+     */
+    public List<VentaDia> ventasDiarias(LocalDate desde, LocalDate hasta) {
+        if (desde == null || hasta == null) {
+            throw new IllegalArgumentException("Debe indicar las fechas desde y hasta");
+        }
+        if (hasta.isBefore(desde)) {
+            throw new IllegalArgumentException("La fecha hasta no puede ser anterior a la fecha desde");
+        }
+        List<VentaDia> dias = new ArrayList<>();
+        for (YearMonth m = YearMonth.from(desde); !m.isAfter(YearMonth.from(hasta)); m = m.plusMonths(1)) {
+            for (VentaDia d : mes(m).dias) {
+                if (!d.fecha.isBefore(desde) && !d.fecha.isAfter(hasta)) dias.add(d);
+            }
+        }
+        return dias;
+    }
+
+    /**
+     * Ventas pagadas por día y hora entre dos fechas (ambas incluidas)
+     */
+    public List<ReporteVentasDao.VentaHora> ventasPorHora(LocalDate desde, LocalDate hasta, String metodoPago, Long idUsuario) {
+        if (desde == null || hasta == null) {
+            throw new IllegalArgumentException("Debe indicar las fechas desde y hasta");
+        }
+        if (hasta.isBefore(desde)) {
+            throw new IllegalArgumentException("La fecha hasta no puede ser anterior a la fecha desde");
+        }
+        return reporteVentasDao.ventasPorHora(desde, hasta.plusDays(1), metodoPago, idUsuario);
+    }
+
+    /**
+     * Resumen y detalle de las facturas pagadas de un mes
+     */
+    public ReporteMes reporteMes(int anio, int mes) {
+        if (mes < 1 || mes > 12) {
+            throw new IllegalArgumentException("El mes debe estar entre 1 y 12");
+        }
+        YearMonth ym = YearMonth.of(anio, mes);
+        VentasMes ventas = mes(ym);
+        ReporteMes r = new ReporteMes();
+        r.anio = anio;
+        r.mes = mes;
+        r.total = ventas.total;
+        r.facturas = ventas.facturas;
+        r.porMetodoPago = ventas.porMetodoPago;
+        r.dias = ventas.dias;
+        r.detalle = reporteVentasDao.facturasPagadas(ym.atDay(1), ym.plusMonths(1).atDay(1));
+        return r;
+    }
+
+    @EventListener
+    public void ventasHoraCambio(VentasHoraCambioEvent event) {
+        generacion.incrementAndGet();
+        synchronized (meses) {
+            if (event.getDias() == null) {
+                meses.clear();
+            } else {
+                for (LocalDate dia : event.getDias()) meses.remove(YearMonth.from(dia));
+            }
+        }
+    }
+
+    private VentasMes mes(YearMonth mes) {
+        boolean cerrado = mes.isBefore(YearMonth.now());
+        if (cerrado) {
+            synchronized (meses) {
+                VentasMes v = meses.get(mes);
+                if (v != null) return v;
+            }
+        }
+        long gen = generacion.get();
+        VentasMes v = calcular(mes);
+        if (cerrado && generacion.get() == gen) {
+            synchronized (meses) {
+                meses.put(mes, v);
+                Iterator<YearMonth> it = meses.keySet().iterator();
+                while (meses.size() > mesesCache && it.hasNext()) {
+                    it.next();
+                    it.remove();
+                }
+            }
+        }
+        return v;
+    }
+
+    private VentasMes calcular(YearMonth mes) {
+        List<ReporteVentasDao.VentaDiaMetodo> filas =
+                reporteVentasDao.ventasPorDiaYMetodo(mes.atDay(1), mes.plusMonths(1).atDay(1));
+        Map<LocalDate, VentaDia> porDia = new LinkedHashMap<>();
+        Map<String, VentaMetodo> porMetodo = new TreeMap<>();
+        BigDecimal total = BigDecimal.ZERO;
+        long facturas = 0;
+        for (ReporteVentasDao.VentaDiaMetodo f : filas) {
+            BigDecimal importe = f.total != null ? f.total : BigDecimal.ZERO;
+            VentaDia d = porDia.computeIfAbsent(f.dia, VentaDia::new);
+            d.total = d.total.add(importe);
+            d.facturas += f.facturas;
+            VentaMetodo m = porMetodo.computeIfAbsent(f.metodoPago, VentaMetodo::new);
+            m.total = m.total.add(importe);
+            m.facturas += f.facturas;
+            total = total.add(importe);
+            facturas += f.facturas;
+        }
+        return new VentasMes(List.copyOf(porDia.values()), List.copyOf(porMetodo.values()), total, facturas);
+    }
+
+    private static final class VentasMes {
+        final List<VentaDia> dias;
+        final List<VentaMetodo> porMetodoPago;
+        final BigDecimal total;
+        final long facturas;
+
+        VentasMes(List<VentaDia> dias, List<VentaMetodo> porMetodoPago, BigDecimal total, long facturas) {
+            this.dias = dias;
+            this.porMetodoPago = porMetodoPago;
+            this.total = total;
+            this.facturas = facturas;
+        }
+    }
+
+    // ===== CLASES DE RESPUESTA =====
+
+    public static class VentaDia {
+        public LocalDate fecha;
+        public BigDecimal total = BigDecimal.ZERO;
+        public long facturas;
+
+        public VentaDia(LocalDate fecha) {
+            this.fecha = fecha;
+        }
+    }
+
+    public static class VentaMetodo {
+        public String metodoPago;
+        public BigDecimal total = BigDecimal.ZERO;
+        public long facturas;
+
+        public VentaMetodo(String metodoPago) {
+            this.metodoPago = metodoPago;
+        }
+    }
+
+    public static class ReporteMes {
+        public int anio;
+        public int mes;
+        public BigDecimal total;
+        public long facturas;
+        public List<VentaMetodo> porMetodoPago;
+        public List<VentaDia> dias;
+        public List<ReporteVentasDao.FacturaReporte> detalle;
+    }
+}
@@ -0,0 +1,115 @@
+package com.ferreteria.sistema.service;
+
+import com.ferreteria.sistema.entity.Rol;
+import com.ferreteria.sistema.event.EntidadModificadaEvent;
+import com.ferreteria.sistema.repository.RolRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache de roles y sus autoridades
+ *
+ * Carga la tabla Roles completa (son pocas filas) en un mapa inmutable que
+ * se reemplaza entero cuando se escribe un rol. El principal de la sesión
+ * toma de aquí sus autoridades, y las comprobaciones de URL y de
+ * {@code @PreAuthorize} pasan por {@link #vigentes}, de modo que desactivar
+ * o renombrar un rol retira sus permisos sin esperar a que el usuario vuelva
+ * a iniciar sesión.
+ */
+@Service
+public class RolAutoridadService {
+
+    public static final String ROLES = "roles";
+    private static final String PREFIJO = "ROLE_";
+
+    @Autowired
+    private RolRepository rolRepository;
+
+    private volatile Map<String, Entrada> porAutoridad;
+    // Cambia con cada invalidación; una carga que empezó antes no se publica
+    private final AtomicLong generacion = new AtomicLong();
+
+    /**
+     * Autoridades de un rol
+     * @param nombreRol nombre del rol
+     * @return lista compartida; vacía si el rol no existe o está inactivo
+     */
+    public List<GrantedAuthority> autoridades(String nombreRol) {
+        if (nombreRol == null) return List.of();
+        Entrada e = roles().get(PREFIJO + nombreRol.toUpperCase());
+        return e != null && e.activo ? e.autoridades : List.of();
+    }
+
+    /**
+     * Filtra las autoridades de una autenticación según el estado actual de
+     * los roles: se descartan las de roles eliminados, renombrados o inactivos.
+     * Las autoridades que no son de rol pasan sin cambios.
+     */
+    public Collection<? extends GrantedAuthority> vigentes(Collection<? extends GrantedAuthority> autoridades) {
+        if (autoridades == null || autoridades.isEmpty()) return autoridades;
+        Map<String, Entrada> mapa = roles();
+        List<GrantedAuthority> filtradas = null;
+        int i = 0;
+        for (GrantedAuthority a : autoridades) {
+            String nombre = a.getAuthority();
+            boolean valida = nombre == null || !nombre.startsWith(PREFIJO) || esActivo(mapa.get(nombre));
+            if (!valida && filtradas == null) {
+                // Solo se copia la colección si hay algo que quitar
+                filtradas = new ArrayList<>(autoridades.size());
+                Iterator<? extends GrantedAuthority> it = autoridades.iterator();
+                for (int j = 0; j < i; j++) filtradas.add(it.next());
+            } else if (valida && filtradas != null) {
+                filtradas.add(a);
+            }
+            i++;
+        }
+        return filtradas != null ? filtradas : autoridades;
+    }
+
+    private static boolean esActivo(Entrada e) {
+        return e != null && e.activo;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void entidadModificada(EntidadModificadaEvent event) {
+        if (ROLES.equals(event.getEntidad())) {
+            generacion.incrementAndGet();
+            porAutoridad = null;
+        }
+    }
+
+    private Map<String, Entrada> roles() {
+        Map<String, Entrada> mapa = porAutoridad;
+        if (mapa == null) {
+            long gen = generacion.get();
+            Map<String, Entrada> nuevo = new HashMap<>();
+            for (Rol r : rolRepository.findAll()) {
+                String autoridad = PREFIJO + r.getNombre().toUpperCase();
+                nuevo.put(autoridad, new Entrada(Boolean.TRUE.equals(r.getActivo()),
+                        List.of(new SimpleGrantedAuthority(autoridad))));
+            }
+            mapa = Map.copyOf(nuevo);
+            if (generacion.get() == gen) {
+                porAutoridad = mapa;
+            }
+        }
+        return mapa;
+    }
+
+    private static final class Entrada {
+        final boolean activo;
+        final List<GrantedAuthority> autoridades;
+
+        Entrada(boolean activo, List<GrantedAuthority> autoridades) {
+            this.activo = activo;
+            this.autoridades = autoridades;
+        }
+    }
+}
@@ -0,0 +1,381 @@
+package com.ferreteria.sistema.service;
+
+import com.ferreteria.sistema.dao.SesionHttpDao;
+import com.ferreteria.sistema.event.SesionExpiradaEvent;
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.http.HttpSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.serializer.support.DeserializingConverter;
+import org.springframework.core.serializer.support.SerializingConverter;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.web.context.HttpSessionSecurityContextRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Almacén de sesiones HTTP en Oracle, compartido por todos los nodos
+ *
+ * Cada solicitud carga la sesión con una consulta y al terminar escribe solo
+ * los atributos que se asignaron o quitaron. Si nada cambió, el último acceso
+ * se acumula en memoria y se registra en lote cada pocos segundos, de modo que
+ * la mayoría de las solicitudes no escribe en la base de datos. Las sesiones
+ * vencidas se eliminan por lotes en un barrido periódico.
+ *
+ * Igual que en otras implementaciones de sesión distribuida, un objeto
+ * obtenido con getAttribute y modificado en sitio no se vuelve a guardar:
+ * hay que asignarlo otra vez con setAttribute.
+ */
+@Service
+@ConditionalOnProperty(name = "ferreteria.sesiones.jdbc.habilitado", havingValue = "true")
+public class SesionJdbcService {
+
+    private static final Logger log = LoggerFactory.getLogger(SesionJdbcService.class);
+
+    // Primer byte de cada atributo serializado
+    private static final byte PLANO = 0;
+    private static final byte COMPRIMIDO = 1;
+    private static final int UMBRAL_COMPRESION = 512;
+
+    @Autowired
+    private SesionHttpDao sesionHttpDao;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private ServletContext servletContext;
+
+    @Value("${server.servlet.session.timeout:30m}")
+    private Duration timeout;
+
+    @Value("${ferreteria.sesiones.jdbc.accesos-ms:5000}")
+    private long intervaloAccesosMs;
+
+    @Value("${ferreteria.sesiones.jdbc.tamano-lote-barrido:500}")
+    private int tamanoLoteBarrido;
+
+    private final SerializingConverter serializador = new SerializingConverter();
+    private final DeserializingConverter deserializador =
+            new DeserializingConverter(SesionJdbcService.class.getClassLoader());
+
+    // Últimos accesos aún no escritos: id interno → epoch ms
+    private volatile Map<String, Long> accesosPendientes = new ConcurrentHashMap<>();
+
+    /**
+     * Busca una sesión vigente por el id de la cookie
+     * @return la sesión, o null si no existe o ya venció
+     */
+    public SesionJdbc cargar(String idSesion) {
+        SesionHttpDao.SesionGuardada g = sesionHttpDao.cargar(idSesion);
+        if (g == null) return null;
+        long ultimoAcceso = Math.max(g.ultimoAcceso, accesosPendientes.getOrDefault(g.idInterno, 0L));
+        long ahora = System.currentTimeMillis();
+        if (g.maxInactivo > 0 && ultimoAcceso + g.maxInactivo * 1000L < ahora) {
+            // La fila la elimina el barrido, que deja margen para accesos pendientes en otros nodos
+            return null;
+        }
+        SesionJdbc s = new SesionJdbc(this, g.idInterno, g.idSesion, g.creacion, ultimoAcceso, g.maxInactivo, false);
+        s.crudos.putAll(g.atributos);
+        s.ultimoAcceso = ahora;
+        return s;
+    }
+
+    public SesionJdbc crear() {
+        long ahora = System.currentTimeMillis();
+        return new SesionJdbc(this, UUID.randomUUID().toString(), nuevoId(), ahora, ahora,
+                (int) timeout.getSeconds(), true);
+    }
+
+    String nuevoId() {
+        return UUID.randomUUID().toString();
+    }
+
+    /**
+     * Persiste lo que cambió en la sesión durante la solicitud
+     */
+    @Transactional
+    public void guardar(SesionJdbc s) {
+        if (s.invalidada) return;
+        if (s.nueva && !s.persistida) {
+            Map<String, byte[]> todos = new HashMap<>();
+            for (String nombre : s.cambiados) todos.put(nombre, serializar(s.valores.get(nombre)));
+            sesionHttpDao.insertar(s.idInterno, s.id, s.creacion, s.ultimoAcceso, s.maxInactivo, usuario(s));
+            sesionHttpDao.insertarAtributos(s.idInterno, todos);
+        } else if (s.sucia || !s.cambiados.isEmpty() || !s.eliminados.isEmpty()) {
+            Map<String, byte[]> cambiados = new HashMap<>();
+            for (String nombre : s.cambiados) cambiados.put(nombre, serializar(s.valores.get(nombre)));
+            sesionHttpDao.actualizar(s.idInterno, s.id, s.ultimoAcceso, s.maxInactivo, usuario(s),
+                    cambiados, s.eliminados);
+        } else {
+            accesosPendientes.merge(s.idInterno, s.ultimoAcceso, Math::max);
+            return;
+        }
+        s.persistida = true;
+        s.sucia = false;
+        s.cambiados.clear();
+        s.eliminados.clear();
+    }
+
+    void invalidar(SesionJdbc s) {
+        if (s.persistida) {
+            sesionHttpDao.eliminar(s.idInterno);
+        }
+        accesosPendientes.remove(s.idInterno);
+        eventPublisher.publishEvent(new SesionExpiradaEvent(this, s.id));
+    }
+
+    /**
+     * Registra en lote los últimos accesos de las sesiones que no cambiaron
+     */
+    @Scheduled(fixedDelayString = "${ferreteria.sesiones.jdbc.accesos-ms:5000}")
+    public void registrarAccesos() {
+        if (accesosPendientes.isEmpty()) return;
+        Map<String, Long> lote = accesosPendientes;
+        accesosPendientes = new ConcurrentHashMap<>();
+        try {
+            sesionHttpDao.registrarAccesos(lote);
+        } catch (Exception ex) {
+            log.warn("No se pudieron registrar {} accesos de sesión: {}", lote.size(), ex.getMessage());
+            lote.forEach((id, t) -> accesosPendientes.merge(id, t, Math::max));
+        }
+    }
+
+    /**
+     * Elimina por lotes las sesiones vencidas. Se deja un margen de dos
+     * intervalos de registro de accesos para no borrar una sesión cuyo último
+     * acceso todavía está pendiente en otro nodo.
+     */
+    @Scheduled(fixedDelayString = "${ferreteria.sesiones.jdbc.barrido-ms:60000}")
+    public void barrerExpiradas() {
+        long antes = System.currentTimeMillis() - 2 * intervaloAccesosMs;
+        int total = 0;
+        List<String[]> lote;
+        do {
+            lote = sesionHttpDao.expiradas(antes, tamanoLoteBarrido);
+            if (lote.isEmpty()) break;
+            List<String> ids = new ArrayList<>(lote.size());
+            for (String[] s : lote) ids.add(s[0]);
+            total += sesionHttpDao.eliminarLote(ids, antes);
+            for (String[] s : lote) eventPublisher.publishEvent(new SesionExpiradaEvent(this, s[1]));
+        } while (lote.size() == tamanoLoteBarrido);
+        if (total > 0) {
+            log.debug("Sesiones vencidas eliminadas: {}", total);
+        }
+    }
+
+    private String usuario(SesionJdbc s) {
+        Object ctx = s.valores.get(HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY);
+        if (ctx instanceof SecurityContext sc) {
+            Authentication auth = sc.getAuthentication();
+            if (auth != null) return auth.getName();
+        }
+        return null;
+    }
+
+    /**
+     * Serialización Java del atributo; los valores grandes se comprimen
+     */
+    byte[] serializar(Object valor) {
+        byte[] datos = serializador.convert(valor);
+        if (datos.length < UMBRAL_COMPRESION) {
+            byte[] r = new byte[datos.length + 1];
+            r[0] = PLANO;
+            System.arraycopy(datos, 0, r, 1, datos.length);
+            return r;
+        }
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(datos);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(datos.length / 2 + 16);
+            out.write(COMPRIMIDO);
+            byte[] buf = new byte[1024];
+            while (!deflater.finished()) {
+                out.write(buf, 0, deflater.deflate(buf));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    Object deserializar(byte[] datos) {
+        if (datos[0] == PLANO) {
+            return deserializador.convert(Arrays.copyOfRange(datos, 1, datos.length));
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(datos, 1, datos.length - 1);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(datos.length * 3);
+            byte[] buf = new byte[1024];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buf);
+                if (n == 0 && inflater.needsInput()) break;
+                out.write(buf, 0, n);
+            }
+            return deserializador.convert(out.toByteArray());
+        } catch (DataFormatException ex) {
+            throw new IllegalStateException("Atributo de sesión dañado", ex);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Sesión respaldada por el almacén JDBC. Vive solo durante una solicitud;
+     * los atributos se deserializan la primera vez que se leen.
+     */
+    public static final class SesionJdbc implements HttpSession {
+        private final SesionJdbcService servicio;
+        private final String idInterno;
+        private String id;
+        private final long creacion;
+        private long ultimoAcceso;
+        private int maxInactivo;
+        private final boolean nueva;
+
+        private final Map<String, byte[]> crudos = new HashMap<>();
+        private final Map<String, Object> valores = new HashMap<>();
+        private final Set<String> cambiados = new HashSet<>();
+        private final Set<String> eliminados = new HashSet<>();
+        private boolean sucia;
+        private boolean persistida;
+        private boolean invalidada;
+
+        SesionJdbc(SesionJdbcService servicio, String idInterno, String id, long creacion, long ultimoAcceso,
+                   int maxInactivo, boolean nueva) {
+            this.servicio = servicio;
+            this.idInterno = idInterno;
+            this.id = id;
+            this.creacion = creacion;
+            this.ultimoAcceso = ultimoAcceso;
+            this.maxInactivo = maxInactivo;
+            this.nueva = nueva;
+            this.persistida = !nueva;
+        }
+
+        /**
+         * Asigna un id nuevo conservando los atributos (protección contra fijación de sesión)
+         */
+        public String cambiarId() {
+            vigente();
+            String anterior = id;
+            id = servicio.nuevoId();
+            sucia = true;
+            servicio.eventPublisher.publishEvent(new SesionExpiradaEvent(servicio, anterior));
+            return id;
+        }
+
+        public boolean isInvalidada() {
+            return invalidada;
+        }
+
+        private void vigente() {
+            if (invalidada) throw new IllegalStateException("La sesión ya fue invalidada");
+        }
+
+        @Override
+        public long getCreationTime() {
+            vigente();
+            return creacion;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public long getLastAccessedTime() {
+            vigente();
+            return ultimoAcceso;
+        }
+
+        @Override
+        public ServletContext getServletContext() {
+            return servicio.servletContext;
+        }
+
+        @Override
+        public void setMaxInactiveInterval(int interval) {
+            maxInactivo = interval;
+            sucia = true;
+        }
+
+        @Override
+        public int getMaxInactiveInterval() {
+            return maxInactivo;
+        }
+
+        @Override
+        public Object getAttribute(String name) {
+            vigente();
+            Object valor = valores.get(name);
+            if (valor == null) {
+                byte[] datos = crudos.remove(name);
+                if (datos != null) {
+                    valor = servicio.deserializar(datos);
+                    valores.put(name, valor);
+                }
+            }
+            return valor;
+        }
+
+        @Override
+        public Enumeration<String> getAttributeNames() {
+            vigente();
+            Set<String> nombres = new HashSet<>(valores.keySet());
+            nombres.addAll(crudos.keySet());
+            return Collections.enumeration(nombres);
+        }
+
+        @Override
+        public void setAttribute(String name, Object value) {
+            vigente();
+            if (value == null) {
+                removeAttribute(name);
+                return;
+            }
+            crudos.remove(name);
+            valores.put(name, value);
+            cambiados.add(name);
+            eliminados.remove(name);
+        }
+
+        @Override
+        public void removeAttribute(String name) {
+            vigente();
+            boolean existia = valores.remove(name) != null | crudos.remove(name) != null;
+            cambiados.remove(name);
+            if (existia) eliminados.add(name);
+        }
+
+        @Override
+        public void invalidate() {
+            vigente();
+            invalidada = true;
+            servicio.invalidar(this);
+        }
+
+        @Override
+        public boolean isNew() {
+            vigente();
+            return nueva;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.ferreteria.sistema.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.AuthenticatedPrincipal;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Emisión y verificación de tokens firmados para la API REST
+ *
+ * Formato: base64url(carga) + "." + base64url(HMAC-SHA256(carga)), donde la
+ * carga es "kid|tipo|idUsuario|usuario|expiración|autoridades". El kid indica
+ * con qué clave se firmó, lo que permite rotar claves sin invalidar los
+ * tokens vigentes. Las autoridades viajan en el token, así que verificar una
+ * solicitud no consulta la base de datos.
+ *
+ * Cada hilo reutiliza una instancia de Mac por clave y las listas de
+ * autoridades se comparten entre tokens con los mismos roles.
+ */
+@Service
+public class TokenService {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenService.class);
+
+    public static final String ACCESO = "A";
+    public static final String REFRESCO = "R";
+
+    private static final Base64.Encoder B64 = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder B64D = Base64.getUrlDecoder();
+
+    private final Map<String, ThreadLocal<Mac>> macs = new HashMap<>();
+    private final String kidActivo;
+    private final Map<String, List<GrantedAuthority>> autoridadesCache = new ConcurrentHashMap<>();
+
+    @Value("${ferreteria.api.token.acceso-segundos:900}")
+    private long accesoSegundos;
+
+    @Value("${ferreteria.api.token.refresco-segundos:43200}")
+    private long refrescoSegundos;
+
+    /**
+     * @param claves lista "kid:secretoBase64,kid2:secreto2"; la primera firma los tokens nuevos
+     */
+    public TokenService(@Value("${ferreteria.api.token.claves:}") String claves) {
+        String activo = null;
+        for (String par : claves.split(",")) {
+            int i = par.indexOf(':');
+            if (i <= 0) continue;
+            String kid = par.substring(0, i).trim();
+            byte[] secreto = Base64.getDecoder().decode(par.substring(i + 1).trim());
+            if (secreto.length < 32) {
+                throw new IllegalStateException("La clave de tokens '" + kid + "' debe tener al menos 256 bits");
+            }
+            macs.put(kid, macPorHilo(secreto));
+            if (activo == null) activo = kid;
+        }
+        if (activo == null) {
+            byte[] secreto = new byte[32];
+            new SecureRandom().nextBytes(secreto);
+            activo = "local";
+            macs.put(activo, macPorHilo(secreto));
+            log.warn("ferreteria.api.token.claves no está configurado: se usa una clave temporal y los tokens "
+                    + "dejarán de ser válidos al reiniciar o en otros nodos");
+        }
+        this.kidActivo = activo;
+    }
+
+    private static ThreadLocal<Mac> macPorHilo(byte[] secreto) {
+        SecretKeySpec clave = new SecretKeySpec(secreto, "HmacSHA256");
+        return ThreadLocal.withInitial(() -> {
+            try {
+                Mac m = Mac.getInstance("HmacSHA256");
+                m.init(clave);
+                return m;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("HmacSHA256 no disponible", e);
+            }
+        });
+    }
+
+    /**
+     * Emite el par de tokens de acceso y refresco
+     */
+    public Tokens emitir(Long idUsuario, String nombreUsuario, Collection<? extends GrantedAuthority> autoridades) {
+        StringJoiner roles = new StringJoiner(",");
+        for (GrantedAuthority a : autoridades) roles.add(a.getAuthority());
+        long ahora = System.currentTimeMillis() / 1000;
+
+        Tokens t = new Tokens();
+        t.accessToken = firmar(ACCESO, idUsuario, nombreUsuario, ahora + accesoSegundos, roles.toString());
+        t.refreshToken = firmar(REFRESCO, idUsuario, nombreUsuario, ahora + refrescoSegundos, roles.toString());
+        t.expiresIn = accesoSegundos;
+        return t;
+    }
+
+    private String firmar(String tipo, Long idUsuario, String nombreUsuario, long expira, String roles) {
+        if (nombreUsuario.indexOf('|') >= 0) {
+            throw new IllegalArgumentException("Nombre de usuario no válido para tokens");
+        }
+        String carga = kidActivo + "|" + tipo + "|" + idUsuario + "|" + nombreUsuario + "|" + expira + "|" + roles;
+        byte[] bytes = carga.getBytes(StandardCharsets.UTF_8);
+        byte[] firma = macs.get(kidActivo).get().doFinal(bytes);
+        return B64.encodeToString(bytes) + "." + B64.encodeToString(firma);
+    }
+
+    /**
+     * Verifica firma, tipo y vigencia de un token
+     * @param token token recibido
+     * @param tipoEsperado ACCESO o REFRESCO
+     * @return datos del usuario, o vacío si el token no es válido
+     */
+    public Optional<UsuarioToken> verificar(String token, String tipoEsperado) {
+        if (token == null) return Optional.empty();
+        int punto = token.indexOf('.');
+        if (punto <= 0 || punto != token.lastIndexOf('.')) return Optional.empty();
+        try {
+            byte[] carga = B64D.decode(token.substring(0, punto));
+            byte[] firma = B64D.decode(token.substring(punto + 1));
+
+            String texto = new String(carga, StandardCharsets.UTF_8);
+            String[] p = texto.split("\\|", 6);
+            if (p.length != 6) return Optional.empty();
+
+            ThreadLocal<Mac> mac = macs.get(p[0]);
+            if (mac == null || !MessageDigest.isEqual(mac.get().doFinal(carga), firma)) return Optional.empty();
+            if (!tipoEsperado.equals(p[1])) return Optional.empty();
+            long expira = Long.parseLong(p[4]);
+            if (expira <= System.currentTimeMillis() / 1000) return Optional.empty();
+
+            return Optional.of(new UsuarioToken(Long.valueOf(p[2]), p[3], autoridades(p[5]), expira));
+        } catch (IllegalArgumentException ex) {
+            // Base64 o números mal formados
+            return Optional.empty();
+        }
+    }
+
+    private List<GrantedAuthority> autoridades(String roles) {
+        return autoridadesCache.computeIfAbsent(roles, r -> {
+            if (r.isEmpty()) return List.of();
+            List<GrantedAuthority> lista = new ArrayList<>();
+            for (String a : r.split(",")) lista.add(new SimpleGrantedAuthority(a));
+            return List.copyOf(lista);
+        });
+    }
+
+    /**
+     * Usuario autenticado por token; no guarda la entidad ni la contraseña
+     */
+    public static final class UsuarioToken implements AuthenticatedPrincipal {
+        private final Long idUsuario;
+        private final String nombreUsuario;
+        private final List<GrantedAuthority> autoridades;
+        private final long expira;
+
+        UsuarioToken(Long idUsuario, String nombreUsuario, List<GrantedAuthority> autoridades, long expira) {
+            this.idUsuario = idUsuario;
+            this.nombreUsuario = nombreUsuario;
+            this.autoridades = autoridades;
+            this.expira = expira;
+        }
+
+        public Long getIdUsuario() { return idUsuario; }
+        public List<GrantedAuthority> getAutoridades() { return autoridades; }
+        public long getExpira() { return expira; }
+
+        @Override
+        public String getName() { return nombreUsuario; }
+    }
+
+    public static class Tokens {
+        public String accessToken;
+        public String refreshToken;
+        public String tokenType = "Bearer";
+        public long expiresIn;
+    }
+}
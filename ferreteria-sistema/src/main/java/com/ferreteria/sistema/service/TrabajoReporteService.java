@@ -0,0 +1,369 @@
+package com.ferreteria.sistema.service;
+
+import com.ferreteria.sistema.dao.ReporteVentasDao;
+import com.ferreteria.sistema.event.FacturaCambioEvent;
+import com.ferreteria.sistema.event.FacturaSnapshot;
+import com.ferreteria.sistema.event.VentasHoraCambioEvent;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Trabajos de reportes en segundo plano
+ *
+ * Cada reporte se genera en un pool propio de pocos hilos con cola limitada,
+ * separado de los hilos de Tomcat: a lo sumo "hilos" reportes ocupan una
+ * conexión a la vez, así que un reporte lento no deja sin conexiones a la
+ * facturación. Las filas se escriben en streaming a un CSV en
+ * ferreteria.reportes.directorio.
+ *
+ * Los trabajos se identifican por sus parámetros. Una solicitud igual a un
+ * trabajo en curso lo reutiliza, y los reportes de meses ya cerrados quedan
+ * en caché hasta que una factura de su rango cambie.
+ */
+@Service
+public class TrabajoReporteService {
+
+    private static final Logger log = LoggerFactory.getLogger(TrabajoReporteService.class);
+
+    public enum TipoReporte {
+        VENTAS_DETALLE("ventas-detalle"), VENTAS_DIARIAS("ventas-diarias"), PRODUCTOS_VENDIDOS("productos-vendidos");
+
+        public final String nombre;
+
+        TipoReporte(String nombre) {
+            this.nombre = nombre;
+        }
+
+        public static TipoReporte de(String nombre) {
+            for (TipoReporte t : values()) {
+                if (t.nombre.equalsIgnoreCase(nombre != null ? nombre.trim() : "")) return t;
+            }
+            throw new IllegalArgumentException("Tipo de reporte desconocido: " + nombre
+                    + " (use ventas-detalle, ventas-diarias o productos-vendidos)");
+        }
+    }
+
+    public enum EstadoTrabajo { PENDIENTE, EN_PROCESO, COMPLETADO, ERROR }
+
+    @Autowired
+    private ReporteVentasDao reporteVentasDao;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${ferreteria.reportes.directorio:./reportes/}")
+    private String directorio;
+
+    @Value("${ferreteria.reportes.formato-fecha:dd/MM/yyyy}")
+    private String formatoFecha;
+
+    @Value("${ferreteria.reportes.moneda:USD}")
+    private String moneda;
+
+    @Value("${ferreteria.reportes.trabajos.hilos:2}")
+    private int hilos;
+
+    @Value("${ferreteria.reportes.trabajos.capacidad-cola:20}")
+    private int capacidadCola;
+
+    @Value("${ferreteria.reportes.trabajos.retencion-horas:24}")
+    private int retencionHoras;
+
+    @Value("${ferreteria.reportes.trabajos.max-cache:100}")
+    private int maxCache;
+
+    private ThreadPoolExecutor executor;
+    private Path carpeta;
+    private DateTimeFormatter fechaCsv;
+    private DateTimeFormatter fechaHoraCsv;
+
+    private final Map<String, Trabajo> trabajos = new ConcurrentHashMap<>();
+    // Trabajo vigente por parámetros: en curso, o completado de un periodo cerrado
+    private final Map<String, Trabajo> porClave = new LinkedHashMap<>(16, 0.75f, true);
+
+    @PostConstruct
+    void iniciar() throws IOException {
+        carpeta = Paths.get(directorio).toAbsolutePath().normalize();
+        Files.createDirectories(carpeta);
+        fechaCsv = DateTimeFormatter.ofPattern(formatoFecha);
+        fechaHoraCsv = DateTimeFormatter.ofPattern(formatoFecha + " HH:mm:ss");
+        AtomicInteger n = new AtomicInteger();
+        int h = Math.max(1, hilos);
+        executor = new ThreadPoolExecutor(h, h, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, capacidadCola)), r -> {
+                    Thread t = new Thread(r, "reporte-" + n.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        Gauge.builder("ferreteria.reportes.trabajos.cola", executor, e -> e.getQueue().size()).register(meterRegistry);
+        Gauge.builder("ferreteria.reportes.trabajos.activos", executor, ThreadPoolExecutor::getActiveCount).register(meterRegistry);
+    }
+
+    @PreDestroy
+    void detener() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Solicita un reporte entre dos fechas (ambas incluidas)
+     * @return el trabajo nuevo, o uno existente con los mismos parámetros
+     * @throws RejectedExecutionException si la cola de reportes está llena
+     */
+    public Trabajo solicitar(String tipo, LocalDate desde, LocalDate hasta, String usuario) {
+        TipoReporte t = TipoReporte.de(tipo);
+        if (desde == null || hasta == null) {
+            throw new IllegalArgumentException("Debe indicar las fechas desde y hasta");
+        }
+        if (hasta.isBefore(desde)) {
+            throw new IllegalArgumentException("La fecha hasta no puede ser anterior a la fecha desde");
+        }
+        if (desde.isBefore(hasta.minusYears(5))) {
+            throw new IllegalArgumentException("El rango no puede superar 5 años");
+        }
+        String clave = t.nombre + "|" + desde + "|" + hasta;
+        synchronized (porClave) {
+            Trabajo existente = porClave.get(clave);
+            if (existente != null && (existente.estado != EstadoTrabajo.COMPLETADO || Files.exists(existente.archivo))) {
+                return existente;
+            }
+            Trabajo nuevo = new Trabajo(t, desde, hasta, usuario, clave,
+                    carpeta.resolve(t.nombre + "_" + desde + "_" + hasta + "_" + UUID.randomUUID().toString().substring(0, 8) + ".csv"));
+            executor.execute(() -> ejecutar(nuevo));
+            trabajos.put(nuevo.id, nuevo);
+            porClave.put(clave, nuevo);
+            return nuevo;
+        }
+    }
+
+    public Optional<Trabajo> obtener(String id) {
+        return Optional.ofNullable(trabajos.get(id));
+    }
+
+    private void ejecutar(Trabajo t) {
+        t.estado = EstadoTrabajo.EN_PROCESO;
+        t.iniciado = LocalDateTime.now();
+        Path temporal = t.archivo.resolveSibling(t.archivo.getFileName() + ".tmp");
+        try {
+            try (BufferedWriter w = Files.newBufferedWriter(temporal, StandardCharsets.UTF_8)) {
+                t.filas = escribir(t, w);
+            }
+            Files.move(temporal, t.archivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            t.terminado = LocalDateTime.now();
+            t.estado = EstadoTrabajo.COMPLETADO;
+            log.info("Reporte {} {} a {} generado: {} filas en {} ms", t.tipo, t.desde, t.hasta, t.filas,
+                    Duration.between(t.iniciado, t.terminado).toMillis());
+        } catch (Exception ex) {
+            t.terminado = LocalDateTime.now();
+            t.mensaje = ex.getMessage();
+            t.estado = EstadoTrabajo.ERROR;
+            log.warn("Error al generar el reporte {} {} a {}: {}", t.tipo, t.desde, t.hasta, ex.getMessage());
+            try {
+                Files.deleteIfExists(temporal);
+            } catch (IOException ignored) {
+                // se borra en la limpieza periódica
+            }
+        } finally {
+            // Solo se reutiliza un resultado si su periodo está cerrado: el mes en curso sigue cambiando
+            boolean cerrado = YearMonth.from(t.hasta).isBefore(YearMonth.now());
+            if (t.estado != EstadoTrabajo.COMPLETADO || !cerrado || t.invalidado) {
+                synchronized (porClave) {
+                    porClave.remove(t.clave, t);
+                }
+            } else {
+                recortarCache();
+            }
+        }
+    }
+
+    private long escribir(Trabajo t, BufferedWriter w) throws IOException {
+        LocalDate hastaExclusivo = t.hasta.plusDays(1);
+        long[] filas = {0};
+        switch (t.tipo) {
+            case VENTAS_DETALLE -> {
+                w.write("numero_factura,fecha,cliente,metodo_pago,subtotal_" + moneda + ",impuesto_" + moneda + ",total_" + moneda);
+                w.newLine();
+                reporteVentasDao.recorrerFacturasPagadas(t.desde, hastaExclusivo, f -> {
+                    linea(w, f.numeroFactura, f.fecha != null ? f.fecha.format(fechaHoraCsv) : "", f.cliente,
+                            f.metodoPago, f.subtotal, f.impuesto, f.total);
+                    filas[0]++;
+                });
+            }
+            case VENTAS_DIARIAS -> {
+                w.write("fecha,metodo_pago,facturas,total_" + moneda);
+                w.newLine();
+                for (ReporteVentasDao.VentaDiaMetodo v : reporteVentasDao.ventasPorDiaYMetodo(t.desde, hastaExclusivo)) {
+                    linea(w, v.dia.format(fechaCsv), v.metodoPago, v.facturas, v.total);
+                    filas[0]++;
+                }
+            }
+            case PRODUCTOS_VENDIDOS -> {
+                w.write("id_producto,producto,categoria,marca,cantidad,facturas,ingresos_" + moneda);
+                w.newLine();
+                for (ReporteVentasDao.ProductoVendido p : reporteVentasDao.masVendidos(t.desde, hastaExclusivo, Integer.MAX_VALUE)) {
+                    linea(w, p.idProducto, p.nombreProducto, p.categoria, p.marca, p.cantidad, p.facturas, p.ingresos);
+                    filas[0]++;
+                }
+            }
+        }
+        return filas[0];
+    }
+
+    private static void linea(BufferedWriter w, Object... valores) {
+        try {
+            for (int i = 0; i < valores.length; i++) {
+                if (i > 0) w.write(',');
+                Object v = valores[i];
+                if (v == null) continue;
+                String s = v instanceof BigDecimal b ? b.toPlainString() : v.toString();
+                if (s.indexOf(',') >= 0 || s.indexOf('"') >= 0 || s.indexOf('\n') >= 0 || s.indexOf('\r') >= 0) {
+                    s = '"' + s.replace("\"", "\"\"") + '"';
+                }
+                w.write(s);
+            }
+            w.newLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void recortarCache() {
+        synchronized (porClave) {
+            int completados = 0;
+            for (Trabajo t : porClave.values()) {
+                if (t.estado == EstadoTrabajo.COMPLETADO) completados++;
+            }
+            Iterator<Trabajo> it = porClave.values().iterator();
+            while (completados > maxCache && it.hasNext()) {
+                Trabajo t = it.next();
+                if (t.estado == EstadoTrabajo.COMPLETADO) {
+                    it.remove();
+                    completados--;
+                }
+            }
+        }
+    }
+
+    /**
+     * Una factura pagada o anulada con fecha atrasada invalida los reportes en caché que la incluyen.
+     * Las ventas diarias se leen del acumulado VentasHora y se invalidan cuando este ya incluye el cambio.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void facturaCambio(FacturaCambioEvent event) {
+        descartar(event.getAnterior());
+        descartar(event.getActual());
+    }
+
+    @EventListener
+    public void ventasHoraCambio(VentasHoraCambioEvent event) {
+        synchronized (porClave) {
+            porClave.values().removeIf(t -> {
+                if (t.tipo != TipoReporte.VENTAS_DIARIAS) return false;
+                if (event.getDias() != null && event.getDias().stream()
+                        .noneMatch(dia -> !dia.isBefore(t.desde) && !dia.isAfter(t.hasta))) return false;
+                t.invalidado = true;
+                return t.estado == EstadoTrabajo.COMPLETADO;
+            });
+        }
+    }
+
+    private void descartar(FacturaSnapshot s) {
+        if (s == null || s.fecha == null) return;
+        LocalDate dia = s.fecha.toLocalDate();
+        synchronized (porClave) {
+            porClave.values().removeIf(t -> {
+                if (t.tipo == TipoReporte.VENTAS_DIARIAS) return false;
+                if (dia.isBefore(t.desde) || dia.isAfter(t.hasta)) return false;
+                // Un trabajo en curso puede haber leído la factura antes del cambio: no se guarda al terminar
+                t.invalidado = true;
+                return t.estado == EstadoTrabajo.COMPLETADO;
+            });
+        }
+    }
+
+    /**
+     * Elimina los trabajos vencidos y sus archivos; los que siguen en caché se conservan
+     */
+    @Scheduled(cron = "${ferreteria.reportes.trabajos.cron-limpieza:0 20 * * * *}")
+    public void limpiar() {
+        LocalDateTime limite = LocalDateTime.now().minusHours(retencionHoras);
+        Set<Path> vigentes = new HashSet<>();
+        synchronized (porClave) {
+            for (Trabajo t : porClave.values()) vigentes.add(t.archivo);
+        }
+        trabajos.values().removeIf(t -> t.terminado != null && t.terminado.isBefore(limite) && !vigentes.contains(t.archivo));
+        for (Trabajo t : trabajos.values()) vigentes.add(t.archivo);
+        try (DirectoryStream<Path> archivos = Files.newDirectoryStream(carpeta, "*.{csv,tmp}")) {
+            for (Path p : archivos) {
+                if (!vigentes.contains(p) && !vigentes.contains(p.resolveSibling(p.getFileName().toString().replaceFirst("\\.tmp$", "")))) {
+                    Files.deleteIfExists(p);
+                }
+            }
+        } catch (IOException ex) {
+            log.warn("No se pudo limpiar la carpeta de reportes: {}", ex.getMessage());
+        }
+    }
+
+    public static class Trabajo {
+        public final String id = UUID.randomUUID().toString();
+        public final TipoReporte tipo;
+        public final LocalDate desde;
+        public final LocalDate hasta;
+        public final String usuario;
+        public final LocalDateTime creado = LocalDateTime.now();
+        public volatile EstadoTrabajo estado = EstadoTrabajo.PENDIENTE;
+        public volatile LocalDateTime iniciado;
+        public volatile LocalDateTime terminado;
+        public volatile long filas;
+        public volatile String mensaje;
+        final String clave;
+        final Path archivo;
+        volatile boolean invalidado;
+
+        Trabajo(TipoReporte tipo, LocalDate desde, LocalDate hasta, String usuario, String clave, Path archivo) {
+            this.tipo = tipo;
+            this.desde = desde;
+            this.hasta = hasta;
+            this.usuario = usuario;
+            this.clave = clave;
+            this.archivo = archivo;
+        }
+
+        public Path rutaArchivo() {
+            return archivo;
+        }
+
+        public String nombreArchivo() {
+            return tipo.nombre + "_" + desde + "_" + hasta + ".csv";
+        }
+    }
+}
@@ -2,9 +2,11 @@ package com.ferreteria.sistema.service;
 
 import com.ferreteria.sistema.entity.Rol;
 import com.ferreteria.sistema.entity.Usuario;
+import com.ferreteria.sistema.event.EntidadModificadaEvent;
 import com.ferreteria.sistema.repository.RolRepository;
 import com.ferreteria.sistema.repository.UsuarioRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -32,6 +34,12 @@ public class UsuarioService {
     @Autowired
     private PasswordEncoder passwordEncoder;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private IntentosLoginService intentosLoginService;
+
     /**
      * Obtiene todos los usuarios
      * @return lista de usuarios
@@ -132,7 +140,9 @@ public class UsuarioService {
         usuario.setFechaModificacion(LocalDateTime.now());
         usuario.setRol(rol);
 
-        return usuarioRepository.save(usuario);
+        Usuario guardado = usuarioRepository.save(usuario);
+        eventPublisher.publishEvent(new EntidadModificadaEvent(EstadisticasService.USUARIOS));
+        return guardado;
     }
 
     /**
@@ -184,7 +194,9 @@ public class UsuarioService {
 
         usuario.setFechaModificacion(LocalDateTime.now());
 
-        return usuarioRepository.save(usuario);
+        Usuario guardado = usuarioRepository.save(usuario);
+        eventPublisher.publishEvent(new EntidadModificadaEvent(EstadisticasService.USUARIOS));
+        return guardado;
     }
 
     /**
@@ -223,7 +235,9 @@ public class UsuarioService {
         usuario.setActivo(activo);
         usuario.setFechaModificacion(LocalDateTime.now());
 
-        return usuarioRepository.save(usuario);
+        Usuario guardado = usuarioRepository.save(usuario);
+        eventPublisher.publishEvent(new EntidadModificadaEvent(EstadisticasService.USUARIOS));
+        return guardado;
     }
 
     /**
@@ -241,47 +255,33 @@ public class UsuarioService {
         }
 
         usuarioRepository.delete(usuario);
+        eventPublisher.publishEvent(new EntidadModificadaEvent(EstadisticasService.USUARIOS));
     }
 
     /**
-     * Incrementa el contador de intentos fallidos de login
+     * Incrementa el contador de intentos fallidos de login.
+     * Se anota en memoria y se escribe en lote (ver IntentosLoginService).
      * @param nombreUsuario nombre de usuario
      */
     public void incrementarIntentosFallidos(String nombreUsuario) {
-        usuarioRepository.findByNombreUsuario(nombreUsuario)
-                .ifPresent(usuario -> {
-                    usuario.incrementarIntentosFallidos();
-                    usuarioRepository.save(usuario);
-                });
+        intentosLoginService.registrarFallo(nombreUsuario);
     }
 
     /**
-     * Reinicia el contador de intentos fallidos de login
+     * Reinicia el contador de intentos fallidos de login y registra el acceso
      * @param nombreUsuario nombre de usuario
      */
     public void reiniciarIntentosFallidos(String nombreUsuario) {
-        usuarioRepository.findByNombreUsuario(nombreUsuario)
-                .ifPresent(usuario -> {
-                    usuario.reiniciarIntentosFallidos();
-                    usuario.actualizarUltimoAcceso();
-                    usuarioRepository.save(usuario);
-                });
+        intentosLoginService.registrarExito(nombreUsuario, null);
     }
 
     /**
      * Desbloquea usuarios que han estado bloqueados por intentos fallidos
      * @param horasDeBloqueo horas que debe durar el bloqueo
+     * @return usuarios desbloqueados
      */
-    public void desbloquearUsuarios(int horasDeBloqueo) {
-        LocalDateTime fechaLimite = LocalDateTime.now().minusHours(horasDeBloqueo);
-        List<Usuario> usuariosBloqueados = usuarioRepository.findUsuariosConIntentosExcesivos(5);
-
-        usuariosBloqueados.stream()
-                .filter(u -> u.getFechaModificacion().isBefore(fechaLimite))
-                .forEach(usuario -> {
-                    usuario.reiniciarIntentosFallidos();
-                    usuarioRepository.save(usuario);
-                });
+    public int desbloquearUsuarios(int horasDeBloqueo) {
+        return intentosLoginService.desbloquear(horasDeBloqueo);
     }
 
     /**
@@ -308,8 +308,8 @@ public class UsuarioService {
      */
     public EstadisticasUsuarios obtenerEstadisticas() {
         long totalUsuarios = usuarioRepository.count();
-        long usuariosActivos = usuarioRepository.findByActivoTrue().size();
-        long usuariosInactivos = usuarioRepository.findByActivoFalse().size();
+        long usuariosActivos = usuarioRepository.countByActivoTrue();
+        long usuariosInactivos = usuarioRepository.countByActivoFalse();
         long administradores = usuarioRepository.countByRolNombreAndActivoTrue("ADMINISTRADOR");
         long vendedores = usuarioRepository.countByRolNombreAndActivoTrue("VENDEDOR");
         long bodegueros = usuarioRepository.countByRolNombreAndActivoTrue("BODEGUERO");
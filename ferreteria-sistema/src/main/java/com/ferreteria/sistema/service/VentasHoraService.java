@@ -0,0 +1,438 @@
+package com.ferreteria.sistema.service;
+
+import com.ferreteria.sistema.dao.VentasHoraDao;
+import com.ferreteria.sistema.event.FacturaCambioEvent;
+import com.ferreteria.sistema.event.FacturaSnapshot;
+import com.ferreteria.sistema.event.VentasHoraCambioEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Mantenimiento del acumulado de ventas por hora (VentasHora)
+ *
+ * Cada FacturaCambioEvent resta el aporte anterior de la factura y suma el
+ * actual. Una factura aporta (total, 1) a la celda de su día, hora, método
+ * de pago y usuario solo mientras está PAGADA. Como PKG_VENTAS confirma por
+ * su cuenta, el cambio se aplica después de confirmada la factura, en una
+ * transacción propia; si falla se guarda en VentasHoraPendiente y se
+ * reintenta cada minuto, también tras reiniciar la aplicación. Quitar la
+ * fila pendiente y aplicar el cambio van en la misma transacción, así que un
+ * cambio pendiente no se aplica dos veces. Solo si la base no permite
+ * guardarlo queda en memoria. Después de cada cambio aplicado se publica un
+ * VentasHoraCambioEvent con los días afectados, para que los reportes en
+ * caché se descarten cuando el acumulado ya los incluye.
+ *
+ * Mientras se reconstruye un rango, los cambios de este nodo no se escriben:
+ * se encolan y, dentro de la misma transacción SERIALIZABLE que recalcula
+ * desde Factura, se lee el estado de cada factura que vio la reconstrucción.
+ * Los cambios que ese estado ya incluye se descartan para el rango
+ * reconstruido y el resto se aplica antes de confirmar, sin contar nada dos
+ * veces y sin bloquear a las cajas de este nodo durante la recarga. Los
+ * cambios pendientes guardados entran en la misma conciliación.
+ *
+ * Cada noche se compara el acumulado de los últimos días con Factura; si
+ * hay diferencias se registran y, si está habilitado, se reconstruye ese
+ * rango.
+ */
+@Service
+@Transactional
+public class VentasHoraService {
+
+    private static final Logger log = LoggerFactory.getLogger(VentasHoraService.class);
+
+    @Autowired
+    private VentasHoraDao ventasHoraDao;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${ferreteria.reportes.ventas-hora.dias-verificacion:35}")
+    private int diasVerificacion;
+
+    @Value("${ferreteria.reportes.ventas-hora.reparar:true}")
+    private boolean reparar;
+
+    // Los cambios directos (compartido) no se cruzan con el inicio y el fin de una reconstrucción (exclusivo)
+    private final ReentrantReadWriteLock reconstruccion = new ReentrantReadWriteLock();
+    // Cambios recibidos durante una reconstrucción (null si no hay ninguna)
+    private List<Cambio> encolados;
+    // Cambios que fallaron al aplicarse y tampoco se pudieron guardar como pendientes
+    private final Queue<Cambio> reintentos = new ConcurrentLinkedQueue<>();
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void facturaCambio(FacturaCambioEvent event) {
+        FacturaSnapshot s = event.getActual() != null ? event.getActual() : event.getAnterior();
+        Cambio cambio = new Cambio(s != null ? s.idFactura : null,
+                Aporte.de(event.getAnterior()), Aporte.de(event.getActual()));
+        if (Objects.equals(cambio.antes, cambio.despues)) return;
+        procesar(cambio);
+    }
+
+    private void procesar(Cambio cambio) {
+        reconstruccion.readLock().lock();
+        try {
+            synchronized (this) {
+                if (encolados != null) {
+                    encolados.add(cambio);
+                    return;
+                }
+            }
+            try {
+                enTransaccion(TransactionDefinition.ISOLATION_DEFAULT, () -> {
+                    if (cambio.idPendiente == null || ventasHoraDao.quitarPendiente(cambio.idPendiente)) {
+                        aplicar(cambio, null, null);
+                    }
+                });
+            } catch (Exception ex) {
+                log.warn("No se pudo actualizar el acumulado de ventas por hora de la factura {}; se reintentará: {}",
+                        cambio.idFactura, ex.getMessage());
+                if (cambio.idPendiente == null) guardarPendiente(cambio);
+                return;
+            }
+        } finally {
+            reconstruccion.readLock().unlock();
+        }
+        eventPublisher.publishEvent(new VentasHoraCambioEvent(cambio.dias()));
+    }
+
+    private void guardarPendiente(Cambio cambio) {
+        try {
+            ventasHoraDao.guardarPendiente(cambio.pendiente());
+        } catch (Exception ex) {
+            reintentos.add(cambio);
+            log.warn("No se pudo guardar el cambio pendiente de la factura {}; queda en memoria: {}",
+                    cambio.idFactura, ex.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelay = 60000)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void reintentarPendientes() {
+        int enMemoria = reintentos.size();
+        for (int i = 0; i < enMemoria; i++) {
+            Cambio cambio = reintentos.poll();
+            if (cambio == null) break;
+            procesar(cambio);
+        }
+        try {
+            for (VentasHoraDao.Pendiente p : ventasHoraDao.pendientes(1000)) {
+                procesar(new Cambio(p));
+            }
+        } catch (Exception ex) {
+            log.warn("No se pudieron leer los cambios pendientes del acumulado de ventas por hora: {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * Aplica un cambio al acumulado. Las partes cuya celda cae en
+     * [cubiertoDesde, cubiertoHasta) no se aplican: ya las incluye la reconstrucción.
+     */
+    private void aplicar(Cambio c, LocalDate cubiertoDesde, LocalDate cubiertoHasta) {
+        boolean sinAntes = c.antes == null || c.antes.en(cubiertoDesde, cubiertoHasta);
+        boolean sinDespues = c.despues == null || c.despues.en(cubiertoDesde, cubiertoHasta);
+        if (!sinAntes && !sinDespues && c.antes.mismaCelda(c.despues)) {
+            ventasHoraDao.aplicarDelta(c.despues.dia, c.despues.hora, c.despues.metodoPago, c.despues.idUsuario,
+                    c.despues.total.subtract(c.antes.total), 0);
+            return;
+        }
+        if (!sinAntes) {
+            ventasHoraDao.aplicarDelta(c.antes.dia, c.antes.hora, c.antes.metodoPago, c.antes.idUsuario,
+                    c.antes.total.negate(), -1);
+        }
+        if (!sinDespues) {
+            ventasHoraDao.aplicarDelta(c.despues.dia, c.despues.hora, c.despues.metodoPago, c.despues.idUsuario,
+                    c.despues.total, 1);
+        }
+    }
+
+    /**
+     * Vuelve a calcular todo el acumulado desde la tabla Factura
+     * @return celdas cargadas
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public int reconstruir() {
+        long inicio = System.currentTimeMillis();
+        int celdas = reconstruir(null, null);
+        log.info("Acumulado de ventas por hora reconstruido: {} celdas en {} ms", celdas, System.currentTimeMillis() - inicio);
+        return celdas;
+    }
+
+    /**
+     * Recalcula [desde, hastaExclusivo) (todo si desde es null) conciliando
+     * los cambios que llegan mientras tanto
+     */
+    private int reconstruir(LocalDate desde, LocalDate hastaExclusivo) {
+        reconstruccion.writeLock().lock();
+        try {
+            synchronized (this) {
+                if (encolados != null) {
+                    throw new IllegalStateException("Ya hay una reconstrucción del acumulado en curso");
+                }
+                encolados = new ArrayList<>();
+            }
+        } finally {
+            reconstruccion.writeLock().unlock();
+        }
+
+        List<Cambio> recibidos = new ArrayList<>();
+        int[] celdas = new int[1];
+        try {
+            enTransaccion(TransactionDefinition.ISOLATION_SERIALIZABLE, () -> {
+                celdas[0] = desde != null ? ventasHoraDao.reconstruir(desde, hastaExclusivo) : ventasHoraDao.reconstruirTodo();
+                // Los pendientes guardados son anteriores a la reconstrucción y se concilian como los encolados
+                List<Cambio> guardados = new ArrayList<>();
+                for (VentasHoraDao.Pendiente p : ventasHoraDao.pendientes(Integer.MAX_VALUE)) guardados.add(new Cambio(p));
+                if (!guardados.isEmpty()) conciliar(guardados, desde, hastaExclusivo);
+                while (true) {
+                    List<Cambio> lote;
+                    reconstruccion.writeLock().lock();
+                    try {
+                        synchronized (this) {
+                            lote = encolados;
+                            // Sin cambios por conciliar, los siguientes se aplican directamente
+                            // (esperan a que esta transacción libere la tabla)
+                            encolados = lote.isEmpty() ? null : new ArrayList<>();
+                        }
+                    } finally {
+                        reconstruccion.writeLock().unlock();
+                    }
+                    if (lote.isEmpty()) break;
+                    recibidos.addAll(lote);
+                    conciliar(lote, desde, hastaExclusivo);
+                }
+            });
+        } catch (RuntimeException ex) {
+            // Nada de la reconstrucción quedó guardado: los cambios recibidos se aplican sobre lo anterior
+            reconstruccion.writeLock().lock();
+            try {
+                synchronized (this) {
+                    if (encolados != null) recibidos.addAll(encolados);
+                    encolados = null;
+                }
+            } finally {
+                reconstruccion.writeLock().unlock();
+            }
+            recibidos.forEach(this::procesar);
+            throw ex;
+        }
+        eventPublisher.publishEvent(VentasHoraCambioEvent.todo());
+        return celdas[0];
+    }
+
+    /**
+     * Aplica los cambios encolados que la reconstrucción no vio. Para cada
+     * factura se busca, en orden, el cambio que la dejó en el estado leído
+     * dentro de la misma transacción; ese y los anteriores ya están incluidos
+     * en el rango reconstruido y solo se aplican sus partes fuera de él.
+     */
+    private void conciliar(List<Cambio> lote, LocalDate desde, LocalDate hastaExclusivo) {
+        Map<Long, List<Cambio>> porFactura = new LinkedHashMap<>();
+        for (Cambio c : lote) {
+            // Un pendiente ya quitado en esta transacción (leído y además reintentado) se descarta
+            if (c.idPendiente != null && !ventasHoraDao.quitarPendiente(c.idPendiente)) continue;
+            if (c.idFactura == null) {
+                aplicar(c, null, null);
+            } else {
+                porFactura.computeIfAbsent(c.idFactura, k -> new ArrayList<>()).add(c);
+            }
+        }
+        Map<Long, FacturaSnapshot> vistas = ventasHoraDao.cabeceras(porFactura.keySet());
+        for (Map.Entry<Long, List<Cambio>> e : porFactura.entrySet()) {
+            List<Cambio> cambios = e.getValue();
+            Aporte visto = Aporte.de(vistas.get(e.getKey()));
+            int cubiertos = 0;
+            if (!Objects.equals(cambios.get(0).antes, visto)) {
+                cubiertos = -1;
+                for (int i = 0; i < cambios.size() && cubiertos < 0; i++) {
+                    if (Objects.equals(cambios.get(i).despues, visto)) cubiertos = i + 1;
+                }
+                if (cubiertos < 0) {
+                    log.warn("Factura {}: estado no reconocido al conciliar el acumulado de ventas por hora; " +
+                            "la verificación nocturna lo corregirá", e.getKey());
+                    cubiertos = 0;
+                }
+            }
+            for (int i = 0; i < cambios.size(); i++) {
+                if (i < cubiertos) {
+                    // Fuera del rango no hubo reconstrucción: esa parte sigue faltando
+                    aplicar(cambios.get(i), desde != null ? desde : LocalDate.MIN, desde != null ? hastaExclusivo : LocalDate.MAX);
+                } else {
+                    aplicar(cambios.get(i), null, null);
+                }
+            }
+        }
+    }
+
+    private void enTransaccion(int aislamiento, Runnable trabajo) {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        tx.setIsolationLevel(aislamiento);
+        tx.executeWithoutResult(status -> trabajo.run());
+    }
+
+    /**
+     * Diferencias entre el acumulado y Factura entre dos fechas (ambas incluidas)
+     */
+    @Transactional(readOnly = true)
+    public List<VentasHoraDao.Diferencia> verificar(LocalDate desde, LocalDate hasta, int limite) {
+        if (desde == null || hasta == null) {
+            throw new IllegalArgumentException("Debe indicar las fechas desde y hasta");
+        }
+        if (hasta.isBefore(desde)) {
+            throw new IllegalArgumentException("La fecha hasta no puede ser anterior a la fecha desde");
+        }
+        return ventasHoraDao.diferencias(desde, hasta.plusDays(1), Math.max(1, Math.min(limite, 1000)));
+    }
+
+    /**
+     * Compara los últimos días del acumulado con Factura y repara el rango si difiere.
+     * La reparación se confirma entera o no se aplica.
+     */
+    @Scheduled(cron = "${ferreteria.reportes.ventas-hora.cron-verificacion:0 45 3 * * *}")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void verificarUltimosDias() {
+        LocalDate hasta = LocalDate.now().plusDays(1);
+        LocalDate desde = hasta.minusDays(diasVerificacion + 1L);
+        List<VentasHoraDao.Diferencia> diferencias = ventasHoraDao.diferencias(desde, hasta, 100);
+        if (diferencias.isEmpty()) {
+            log.info("Acumulado de ventas por hora consistente desde {}", desde);
+            return;
+        }
+        VentasHoraDao.Diferencia d = diferencias.get(0);
+        log.warn("Acumulado de ventas por hora con {}{} diferencias desde {}; primera: {} {}h {} usuario {} " +
+                        "(facturas {} / {}, acumulado {} / {})",
+                diferencias.size(), diferencias.size() == 100 ? "+" : "", desde, d.dia, d.hora, d.metodoPago,
+                d.idUsuario, d.totalFacturas, d.numFacturas, d.totalAcumulado, d.numAcumulado);
+        if (reparar) {
+            int celdas = reconstruir(desde, hasta);
+            log.info("Acumulado de ventas por hora reparado desde {}: {} celdas", desde, celdas);
+        }
+    }
+
+    /** Cambio de una factura: su aporte antes y después */
+    private static final class Cambio {
+        final Long idFactura;
+        final Aporte antes;
+        final Aporte despues;
+        // Fila de VentasHoraPendiente, si el cambio se guardó
+        final Long idPendiente;
+
+        Cambio(Long idFactura, Aporte antes, Aporte despues) {
+            this.idFactura = idFactura;
+            this.antes = antes;
+            this.despues = despues;
+            this.idPendiente = null;
+        }
+
+        Cambio(VentasHoraDao.Pendiente p) {
+            this.idFactura = p.idFactura;
+            this.antes = p.antesDia != null
+                    ? new Aporte(p.antesDia, p.antesHora, p.antesMetodoPago, p.antesIdUsuario, p.antesTotal) : null;
+            this.despues = p.despuesDia != null
+                    ? new Aporte(p.despuesDia, p.despuesHora, p.despuesMetodoPago, p.despuesIdUsuario, p.despuesTotal) : null;
+            this.idPendiente = p.id;
+        }
+
+        VentasHoraDao.Pendiente pendiente() {
+            VentasHoraDao.Pendiente p = new VentasHoraDao.Pendiente();
+            p.idFactura = idFactura;
+            if (antes != null) {
+                p.antesDia = antes.dia;
+                p.antesHora = antes.hora;
+                p.antesMetodoPago = antes.metodoPago;
+                p.antesIdUsuario = antes.idUsuario;
+                p.antesTotal = antes.total;
+            }
+            if (despues != null) {
+                p.despuesDia = despues.dia;
+                p.despuesHora = despues.hora;
+                p.despuesMetodoPago = despues.metodoPago;
+                p.despuesIdUsuario = despues.idUsuario;
+                p.despuesTotal = despues.total;
+            }
+            return p;
+        }
+
+        Set<LocalDate> dias() {
+            Set<LocalDate> dias = new HashSet<>();
+            if (antes != null) dias.add(antes.dia);
+            if (despues != null) dias.add(despues.dia);
+            return dias;
+        }
+    }
+
+    /** Aporte de una factura al acumulado: celda y total */
+    private static final class Aporte {
+        final LocalDate dia;
+        final int hora;
+        final String metodoPago;
+        final long idUsuario;
+        final BigDecimal total;
+
+        private Aporte(FacturaSnapshot s) {
+            this(s.fecha.toLocalDate(), s.fecha.getHour(), s.metodoPago != null ? s.metodoPago : VentasHoraDao.SIN_METODO,
+                    s.idUsuario != null ? s.idUsuario : 0L, s.total);
+        }
+
+        Aporte(LocalDate dia, int hora, String metodoPago, long idUsuario, BigDecimal total) {
+            this.dia = dia;
+            this.hora = hora;
+            this.metodoPago = metodoPago;
+            this.idUsuario = idUsuario;
+            this.total = total != null ? total : BigDecimal.ZERO;
+        }
+
+        static Aporte de(FacturaSnapshot s) {
+            return s != null && s.esPagada() && s.fecha != null ? new Aporte(s) : null;
+        }
+
+        /** true si la celda está en [desde, hastaExclusivo); sin rango, ninguna lo está */
+        boolean en(LocalDate desde, LocalDate hastaExclusivo) {
+            return desde != null && !dia.isBefore(desde) && dia.isBefore(hastaExclusivo);
+        }
+
+        boolean mismaCelda(Aporte o) {
+            return dia.equals(o.dia) && hora == o.hora && metodoPago.equals(o.metodoPago) && idUsuario == o.idUsuario;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Aporte a)) return false;
+            return mismaCelda(a) && total.compareTo(a.total) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(dia, hora, metodoPago, idUsuario);
+        }
+    }
+}
@@ -34,33 +34,13 @@ async function loadStats() {
 
 async function getStatsFromApi() {
   try {
-    const [clientes, productos, facturas] = await Promise.all([
-      apiGet('/api/clientes').catch(() => []),
-      apiGet('/api/productos').catch(() => []),
-      apiGet('/api/facturas').catch(() => []),
-    ]);
-
-    const now = new Date();
-    const m = now.getMonth();
-    const y = now.getFullYear();
-
-    const monthlyFacturas = (Array.isArray(facturas) ? facturas : []).filter((f) => {
-      if (!f.fecha) return false;
-      const d = new Date(f.fecha);
-      return d.getMonth() === m && d.getFullYear() === y;
-    });
-
-    const totalVentas = monthlyFacturas.reduce((sum, f) => {
-      const estadoOk = !f.estado || String(f.estado).toUpperCase() === 'PAGADA';
-      const total = Number(f.total || 0);
-      return sum + (estadoOk ? total : 0);
-    }, 0);
-
+    // Conteos agregados en el servidor; no se descargan los listados completos
+    const r = await apiGet('/api/estadisticas/resumen');
     return {
-      clientes: Array.isArray(clientes) ? clientes.length : 0,
-      productos: Array.isArray(productos) ? productos.length : 0,
-      facturas: monthlyFacturas.length,
-      ventas: totalVentas,
+      clientes: Number(r.clientes || 0),
+      productos: Number(r.productos || 0),
+      facturas: Number(r.facturasMes || 0),
+      ventas: Number(r.ventasMes || 0),
     };
   } catch (_e) {
     return { clientes: 0, productos: 0, facturas: 0, ventas: 0 };
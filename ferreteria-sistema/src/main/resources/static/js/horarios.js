@@ -1,4 +1,6 @@
 let currentHorarioId = null;
+// Lunes de la semana visible (AAAA-MM-DD); calendario y lista cargan solo esa semana
+let currentWeekStart = mondayOf(new Date());
 const daysOfWeek = [
   "lunes",
   "martes",
@@ -67,19 +69,26 @@ function initializeDayCheckboxes() {
 
 async function loadHorarios() {
   try {
-    const horarios = await apiGet('/api/horarios');
-    console.log('DEBUG - Horarios recibidos del backend:', horarios);
-    
-    // Inspeccionar estructura de cada horario
-    if (horarios.length > 0) {
-      console.log('DEBUG - Primer horario completo:', JSON.stringify(horarios[0], null, 2));
-      console.log('DEBUG - ID del primer horario:', horarios[0].idHorario);
-      console.log('DEBUG - Empleado del primer horario:', horarios[0].empleado);
-    }
-    
-    // Los datos ya vienen con información del empleado desde el backend
+    const params = new URLSearchParams({
+      desde: currentWeekStart,
+      hasta: addDays(currentWeekStart, 6),
+      limite: 200,
+    });
+    const employeeId = document.getElementById("employeeFilter")?.value;
+    if (employeeId) params.set("idEmpleado", employeeId);
+
+    // Recorre las páginas de la semana siguiendo el cursor
+    const horarios = [];
+    let cursor = null;
+    do {
+      if (cursor) params.set("cursor", cursor);
+      const pagina = await apiGet(`/api/horarios/rango?${params}`);
+      horarios.push(...pagina.items);
+      cursor = pagina.siguienteCursor;
+    } while (cursor);
+
     window.horariosData = horarios; // Guardar para uso posterior
-    renderHorariosTable(horarios);
+    applyFilters();
   } catch (e) {
     console.error('Error cargando horarios:', e);
     showAlert(`Error cargando horarios: ${e.message}`, 'danger');
@@ -207,7 +216,8 @@ function filterByStatus() {
 }
 
 function filterByEmployee() {
-  applyFilters();
+  loadHorarios();
+  loadScheduleCalendar();
 }
 
 function applyFilters() {
@@ -249,71 +259,80 @@ function applyFilters() {
   renderHorariosTable(filteredHorarios);
 }
 
-function loadScheduleCalendar() {
-  // Simplificado por ahora - el calendario semanal es complejo para la estructura actual
-  // Podemos implementarlo más adelante si es necesario
+function mondayOf(date) {
+  const d = new Date(date.getFullYear(), date.getMonth(), date.getDate());
+  d.setDate(d.getDate() - ((d.getDay() + 6) % 7));
+  return toIsoDate(d);
+}
+
+function addDays(isoDate, days) {
+  const [y, m, d] = isoDate.split("-").map(Number);
+  return toIsoDate(new Date(y, m - 1, d + days));
+}
+
+function toIsoDate(d) {
+  return `${d.getFullYear()}-${String(d.getMonth() + 1).padStart(2, "0")}-${String(d.getDate()).padStart(2, "0")}`;
+}
+
+function changeWeek(offset) {
+  currentWeekStart = offset === 0 ? mondayOf(new Date()) : addDays(currentWeekStart, offset * 7);
+  loadHorarios();
+  loadScheduleCalendar();
+}
+
+async function loadScheduleCalendar() {
   const calendarContainer = document.getElementById("scheduleCalendar");
-  if (calendarContainer) {
-    calendarContainer.innerHTML = '<p class="text-muted">Calendario de horarios en desarrollo</p>';
+  if (!calendarContainer) return;
+  try {
+    const params = new URLSearchParams({ fecha: currentWeekStart });
+    const employeeId = document.getElementById("employeeFilter")?.value;
+    if (employeeId) params.set("idEmpleado", employeeId);
+    const resumen = await apiGet(`/api/horarios/semana?${params}`);
+    calendarContainer.innerHTML = generateWeeklyCalendar(resumen);
+  } catch (e) {
+    console.error('Error cargando calendario:', e);
+    calendarContainer.innerHTML = '<p class="text-muted">No se pudo cargar el calendario</p>';
   }
 }
 
-function generateWeeklyCalendar(schedules, employees) {
-  const daysHeader = [
-    "Empleado",
-    "Lunes",
-    "Martes",
-    "Miércoles",
-    "Jueves",
-    "Viernes",
-    "Sábado",
-    "Domingo",
-  ];
+function generateWeeklyCalendar(resumen) {
+  const dias = daysOfWeek.map((day, i) => {
+    const [, m, d] = addDays(resumen.inicio, i).split("-");
+    return `${dayNames[day]} ${d}/${m}`;
+  });
 
   let calendarHtml = `
+        <div class="d-flex gap-2">
+            <button class="btn btn-secondary" onclick="changeWeek(-1)"><i class="fas fa-chevron-left"></i></button>
+            <button class="btn btn-secondary" onclick="changeWeek(0)">Hoy</button>
+            <button class="btn btn-secondary" onclick="changeWeek(1)"><i class="fas fa-chevron-right"></i></button>
+            <strong>Semana del ${resumen.inicio} al ${resumen.fin}</strong>
+        </div>
         <table class="calendar-table">
             <thead>
                 <tr>
-                    ${daysHeader.map((day) => `<th>${day}</th>`).join("")}
+                    <th>Empleado</th>
+                    ${dias.map((dia) => `<th>${dia}</th>`).join("")}
+                    <th>Total</th>
                 </tr>
             </thead>
             <tbody>
     `;
 
-  const employeesWithSchedules = employees.filter((emp) =>
-    schedules.some((schedule) => schedule.idEmpleado === emp.id)
-  );
-
-  employeesWithSchedules.forEach((employee) => {
-    const employeeSchedules = schedules.filter(
-      (s) => s.idEmpleado === employee.id
-    );
+  if (resumen.empleados.length === 0) {
+    calendarHtml += `<tr><td colspan="9" class="text-muted">Sin horarios en esta semana</td></tr>`;
+  }
 
+  resumen.empleados.forEach((empleado) => {
+    const nombre = `${empleado.nombreEmpleado || ''} ${empleado.apellidos || ''}`.trim() || `Empleado #${empleado.idEmpleado}`;
     calendarHtml += `<tr>`;
-    calendarHtml += `<td><strong>${employee.nombre}</strong><br><small>${employee.puesto}</small></td>`;
-
-    daysOfWeek.forEach((day) => {
-      calendarHtml += `<td>`;
-
-      employeeSchedules.forEach((schedule) => {
-        if (schedule.horarios && schedule.horarios[day]) {
-          const daySchedule = schedule.horarios[day];
-          if (daySchedule.entrada || daySchedule.salida) {
-            calendarHtml += `<div class="employee-schedule">`;
-            if (daySchedule.entrada && daySchedule.salida) {
-              calendarHtml += `${daySchedule.entrada} - ${daySchedule.salida}`;
-            }
-            if (daySchedule.entrada_tarde && daySchedule.salida_tarde) {
-              calendarHtml += `<br>${daySchedule.entrada_tarde} - ${daySchedule.salida_tarde}`;
-            }
-            calendarHtml += `</div>`;
-          }
-        }
-      });
-
-      calendarHtml += `</td>`;
+    calendarHtml += `<td><strong>${nombre}</strong><br><small>${empleado.puesto || ''}</small></td>`;
+    empleado.horas.forEach((horas) => {
+      calendarHtml += horas != null
+        ? `<td><div class="employee-schedule">${horas}h</div></td>`
+        : `<td></td>`;
     });
-
+    calendarHtml += `<td><strong>${empleado.total}h</strong></td>`;
     calendarHtml += `</tr>`;
   });
 
@@ -628,6 +647,7 @@ async function duplicateHorario(id) {
       await apiPost('/api/horarios', newHorario);
       showAlert(`Horario duplicado correctamente para el ${new Date(fechaDuplicado).toLocaleDateString()}`, "success");
       await loadHorarios();
+      loadScheduleCalendar();
     } catch (e) {
       console.error('Error duplicando horario:', e);
       
@@ -697,6 +717,7 @@ async function deleteHorario(id) {
       await apiDelete(`/api/horarios/${id}`);
       showAlert("Horario eliminado correctamente", "success");
       await loadHorarios();
+      loadScheduleCalendar();
     } catch (e) {
       console.error('Error eliminando horario:', e);
       showAlert(e.data?.mensaje || `Error al eliminar horario: ${e.message}`, 'danger');
@@ -754,6 +775,7 @@ async function handleFormSubmit(e) {
     }
     closeModal("horarioModal");
     await loadHorarios();
+    loadScheduleCalendar();
   } catch (e) {
     console.error('Error guardando horario:', e);
     showAlert(e.data?.mensaje || `Error al guardar horario: ${e.message}`, 'danger');
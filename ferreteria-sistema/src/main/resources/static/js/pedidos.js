@@ -43,29 +43,79 @@ function generateOrderNumber() {
   return number;
 }
 
+// Pedidos visibles indexados por id y marca para consultar solo los cambios
+let pedidosCache = new Map();
+let marcaCambios = null;
+let cursorPedidos = null;
+let pollingPedidos = null;
+
+function mapPedido(p) {
+  const estadoNorm = ((p.estado ?? '').toString().trim() || 'PENDIENTE').toUpperCase();
+  return ({
+    id: p.idPedido || p.id,
+    numeroPedido: p.numero || p.numeroPedido || '-',
+    fechaPedido: p.fecha,
+    idProveedor: p.proveedor?.idProveedor || p.idProveedor,
+    nombreProveedor: p.proveedor?.nombreProveedor || '-',
+    fechaEntregaEsperada: p.fechaEntrega || p.fechaEntregaEsperada,
+    total: p.total || 0,
+    estado: estadoNorm,
+  });
+}
+
+function renderPedidosCache() {
+  const status = document.getElementById("statusFilter")?.value || "";
+  let list = Array.from(pedidosCache.values()).sort((a, b) => b.id - a.id);
+  if (status) list = list.filter(p => (p.estado || '').toLowerCase() === status.toLowerCase());
+  renderPedidosTable(list);
+  const btnMas = document.getElementById("btnMasPedidos");
+  if (btnMas) btnMas.style.display = cursorPedidos ? "" : "none";
+}
+
+// Trae la página siguiente del servidor con el filtro de estado aplicado allí
+async function cargarPaginaPedidos(reiniciar) {
+  const status = document.getElementById("statusFilter")?.value || "";
+  const params = new URLSearchParams({ limite: 200 });
+  if (status) params.set('estado', status.toUpperCase());
+  if (!reiniciar && cursorPedidos) params.set('cursor', cursorPedidos);
+  const pagina = await apiGet(`/api/pedidos/pagina?${params}`);
+  if (reiniciar) pedidosCache = new Map();
+  (pagina.items || []).forEach(p => { const m = mapPedido(p); pedidosCache.set(m.id, m); });
+  cursorPedidos = pagina.siguienteCursor || null;
+  renderPedidosCache();
+}
+
+async function cargarMasPedidos() {
+  try {
+    await cargarPaginaPedidos(false);
+  } catch (e) {
+    showAlert(`Error cargando pedidos: ${e.message}`, 'danger');
+  }
+}
+
 async function loadPedidos() {
   try {
-    const pedidos = await apiGet('/api/pedidos');
-    const proveedores = await apiGet('/api/proveedores');
-    const pedidosWithSuppliers = pedidos.map(p => {
-      const estadoNorm = ((p.estado ?? '').toString().trim() || 'PENDIENTE').toUpperCase();
-      return ({
-        id: p.idPedido || p.id,
-        numeroPedido: p.numero || p.numeroPedido || '-',
-        fechaPedido: p.fecha,
-        idProveedor: p.proveedor?.idProveedor || p.idProveedor,
-        nombreProveedor: p.proveedor?.nombreProveedor || (proveedores.find(x=> (x.idProveedor||x.id) === (p.idProveedor))?.nombreProveedor) || '-',
-        fechaEntregaEsperada: p.fechaEntrega || p.fechaEntregaEsperada,
-        total: p.total || 0,
-        estado: estadoNorm,
-      });
-    });
-    renderPedidosTable(pedidosWithSuppliers);
+    const inicio = await apiGet('/api/pedidos/cambios');
+    marcaCambios = inicio.siguienteCursor;
+    await cargarPaginaPedidos(true);
+    if (!pollingPedidos) pollingPedidos = setInterval(pollPedidos, 30000);
   } catch (e) {
     showAlert(`Error cargando pedidos: ${e.message}`, 'danger');
   }
 }
 
+async function pollPedidos() {
+  if (!marcaCambios) return;
+  try {
+    const cambios = await apiGet(`/api/pedidos/cambios?desde=${encodeURIComponent(marcaCambios)}`);
+    marcaCambios = cambios.siguienteCursor;
+    if (cambios.items && cambios.items.length) {
+      cambios.items.forEach(p => { const m = mapPedido(p); pedidosCache.set(m.id, m); });
+      renderPedidosCache();
+    }
+  } catch (e) { /* se reintenta en el siguiente ciclo */ }
+}
+
 async function loadProveedores() {
   try {
     const proveedores = await apiGet('/api/proveedores');
@@ -154,23 +204,11 @@ function renderPedidosTable(pedidos) {
 
 // Filtros y acciones mínimas
 async function filterByStatus() {
-  const status = document.getElementById("statusFilter")?.value || "";
   try {
-    const pedidos = await apiGet('/api/pedidos');
-    const proveedores = await apiGet('/api/proveedores');
-    let list = pedidos.map(p => ({
-      id: p.idPedido || p.id,
-      numeroPedido: p.numero || p.numeroPedido || '-',
-      fechaPedido: p.fecha,
-      idProveedor: p.proveedor?.idProveedor || p.idProveedor,
-      nombreProveedor: p.proveedor?.nombreProveedor || (proveedores.find(x=> (x.idProveedor||x.id) === (p.idProveedor))?.nombreProveedor) || '-',
-      fechaEntregaEsperada: p.fechaEntrega || p.fechaEntregaEsperada,
-      total: p.total || 0,
-      estado: p.estado || 'pendiente',
-    }));
-    if (status) list = list.filter(p => (p.estado||'').toLowerCase() === status.toLowerCase());
-    renderPedidosTable(list);
-  } catch (e) { showAlert(`Error filtrando pedidos: ${e.message}`, 'danger'); }
+    await cargarPaginaPedidos(true);
+  } catch (e) {
+    showAlert(`Error cargando pedidos: ${e.message}`, 'danger');
+  }
 }
 
 function openAddModal() {
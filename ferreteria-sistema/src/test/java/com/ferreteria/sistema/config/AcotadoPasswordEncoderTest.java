@@ -0,0 +1,141 @@
+package com.ferreteria.sistema.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AcotadoPasswordEncoderTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final CountDownLatch liberar = new CountDownLatch(1);
+    private final AtomicInteger verificaciones = new AtomicInteger();
+    private AcotadoPasswordEncoder encoder;
+
+    // Codificador que se queda "calculando" hasta que el test lo libera, como un BCrypt lento
+    private final PasswordEncoder lento = new PasswordEncoder() {
+        @Override
+        public String encode(CharSequence rawPassword) {
+            return "hash:" + rawPassword;
+        }
+
+        @Override
+        public boolean matches(CharSequence rawPassword, String encodedPassword) {
+            verificaciones.incrementAndGet();
+            try {
+                liberar.await();
+            } catch (InterruptedException e) {
+                // BCrypt no atiende interrupciones: se ignora igual que él
+            }
+            return encodedPassword.equals("hash:" + rawPassword);
+        }
+    };
+
+    @AfterEach
+    void cerrar() {
+        liberar.countDown();
+        if (encoder != null) encoder.destroy();
+    }
+
+    private double enCurso() {
+        return registry.get("ferreteria.auth.bcrypt.encurso").gauge().value();
+    }
+
+    private void esperarEnCurso(double valor) throws InterruptedException {
+        long limite = System.currentTimeMillis() + 5000;
+        while (enCurso() != valor && System.currentTimeMillis() < limite) {
+            Thread.sleep(10);
+        }
+        assertThat(enCurso()).isEqualTo(valor);
+    }
+
+    @Test
+    void verificacionAbandonadaSigueOcupandoSuLugarHastaTerminar() throws Exception {
+        encoder = new AcotadoPasswordEncoder(lento, 1, 1, 100, 0, 100, registry);
+
+        // Se agota la espera pero BCrypt sigue en el hilo del pool
+        assertThatThrownBy(() -> encoder.matches("clave", "hash:clave"))
+                .isInstanceOf(AuthenticationServiceException.class)
+                .hasMessageContaining("Tiempo de espera");
+        assertThat(enCurso()).isEqualTo(1);
+
+        // La segunda queda en la cola y ocupa el último lugar
+        CompletableFuture<Boolean> encolada = CompletableFuture.supplyAsync(() -> {
+            try {
+                return encoder.matches("otra", "hash:otra");
+            } catch (AuthenticationServiceException e) {
+                return null;
+            }
+        });
+        esperarEnCurso(2);
+
+        long inicio = System.nanoTime();
+        assertThatThrownBy(() -> encoder.matches("tercera", "hash:tercera"))
+                .isInstanceOf(AuthenticationServiceException.class)
+                .hasMessageContaining("Demasiados");
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio)).isLessThan(100);
+
+        encolada.get(5, TimeUnit.SECONDS);
+        liberar.countDown();
+        esperarEnCurso(0);
+        assertThat(registry.get("ferreteria.auth.bcrypt.rechazos").counter().count()).isGreaterThanOrEqualTo(2);
+    }
+
+    @Test
+    void verificacionEncoladaQueSeAbandonaNoLlegaAEjecutarse() throws Exception {
+        encoder = new AcotadoPasswordEncoder(lento, 1, 1, 100, 0, 100, registry);
+
+        assertThatThrownBy(() -> encoder.matches("clave", "hash:clave"))
+                .isInstanceOf(AuthenticationServiceException.class);
+        assertThatThrownBy(() -> encoder.matches("otra", "hash:otra"))
+                .isInstanceOf(AuthenticationServiceException.class);
+        // La primera sigue en ejecución; la encolada se retiró
+        assertThat(enCurso()).isEqualTo(1);
+
+        liberar.countDown();
+        esperarEnCurso(0);
+        Thread.sleep(50);
+        assertThat(verificaciones.get()).isEqualTo(1);
+    }
+
+    @Test
+    void encodeNoPasaPorElPoolDeInicioDeSesion() throws Exception {
+        encoder = new AcotadoPasswordEncoder(lento, 1, 1, 100, 0, 100, registry);
+
+        assertThatThrownBy(() -> encoder.matches("clave", "hash:clave"))
+                .isInstanceOf(AuthenticationServiceException.class);
+        CompletableFuture.runAsync(() -> {
+            try {
+                encoder.matches("otra", "hash:otra");
+            } catch (AuthenticationServiceException ignorada) {
+                // Se agota su espera
+            }
+        });
+        esperarEnCurso(2);
+
+        // Con el pool y la cola ocupados, un hash nuevo se calcula igual
+        assertThat(encoder.encode("nueva")).isEqualTo("hash:nueva");
+    }
+
+    @Test
+    void verificacionExitosaSeRecuerdaSinVolverALlamarABcrypt() {
+        liberar.countDown();
+        encoder = new AcotadoPasswordEncoder(lento, 2, 10, 1000, 60, 100, registry);
+
+        assertThat(encoder.matches("clave", "hash:clave")).isTrue();
+        assertThat(encoder.matches("clave", "hash:clave")).isTrue();
+        assertThat(encoder.matches("incorrecta", "hash:clave")).isFalse();
+
+        assertThat(verificaciones.get()).isEqualTo(2);
+        assertThat(registry.get("ferreteria.auth.cache").tag("resultado", "acierto").counter().count()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,116 @@
+package com.ferreteria.sistema.config;
+
+import com.ferreteria.sistema.dao.SesionHttpDao;
+import com.ferreteria.sistema.service.SesionJdbcService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Costo por solicitud del almacén de sesiones JDBC: cuántas consultas y
+ * escrituras hace cada tipo de solicitud
+ */
+class SesionJdbcFilterTest {
+
+    private static final String COOKIE = "FERRETERIA_SESSION";
+
+    private SesionHttpDao dao;
+    private SesionJdbcService servicio;
+    private SesionJdbcFilter filtro;
+
+    @BeforeEach
+    void preparar() {
+        dao = mock(SesionHttpDao.class);
+        servicio = new SesionJdbcService();
+        ReflectionTestUtils.setField(servicio, "sesionHttpDao", dao);
+        ReflectionTestUtils.setField(servicio, "eventPublisher", mock(ApplicationEventPublisher.class));
+        ReflectionTestUtils.setField(servicio, "servletContext", new MockServletContext());
+        ReflectionTestUtils.setField(servicio, "timeout", Duration.ofMinutes(30));
+        filtro = new SesionJdbcFilter(servicio, COOKIE, false, true);
+
+        SesionHttpDao.SesionGuardada guardada = new SesionHttpDao.SesionGuardada();
+        guardada.idInterno = "interno-1";
+        guardada.idSesion = "sesion-1";
+        guardada.creacion = System.currentTimeMillis() - 60000;
+        guardada.ultimoAcceso = System.currentTimeMillis() - 1000;
+        guardada.maxInactivo = 1800;
+        guardada.atributos.put("carrito", ReflectionTestUtils.<byte[]>invokeMethod(servicio, "serializar", "tres tornillos"));
+        when(dao.cargar("sesion-1")).thenReturn(guardada);
+    }
+
+    private void atender(MockHttpServletRequest request, FilterChain chain) throws Exception {
+        filtro.doFilter(request, new MockHttpServletResponse(), chain);
+    }
+
+    private static MockHttpServletRequest conCookie() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/productos");
+        request.setCookies(new Cookie(COOKIE, "sesion-1"));
+        return request;
+    }
+
+    @Test
+    void solicitudQueNoPideLaSesionNoTocaLaBaseDeDatos() throws Exception {
+        MockHttpServletRequest request = conCookie();
+        request.setRequestURI("/css/estilos.css");
+
+        atender(request, (req, res) -> { });
+
+        verifyNoInteractions(dao);
+    }
+
+    @Test
+    void lecturaSinCambiosHaceUnaConsultaYNingunaEscritura() throws Exception {
+        Object[] leido = new Object[1];
+        atender(conCookie(), (req, res) ->
+                leido[0] = ((HttpServletRequest) req).getSession(false).getAttribute("carrito"));
+
+        assertThat(leido[0]).isEqualTo("tres tornillos");
+        verify(dao, times(1)).cargar("sesion-1");
+        verifyNoMoreInteractions(dao);
+
+        // El último acceso de varias solicitudes se escribe en un solo lote
+        atender(conCookie(), (req, res) -> ((HttpServletRequest) req).getSession(false));
+        servicio.registrarAccesos();
+        verify(dao, times(1)).registrarAccesos(argThat(m -> m.size() == 1 && m.containsKey("interno-1")));
+        verify(dao, never()).actualizar(any(), any(), anyLong(), anyInt(), any(), any(), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void cambioDeUnAtributoEscribeSoloEseAtributo() throws Exception {
+        atender(conCookie(), (req, res) ->
+                ((HttpServletRequest) req).getSession(false).setAttribute("filtro", "herramientas"));
+
+        verify(dao, times(1)).cargar("sesion-1");
+        verify(dao, times(1)).actualizar(eq("interno-1"), eq("sesion-1"), anyLong(), eq(1800), isNull(),
+                argThat((Map<String, byte[]> m) -> m.keySet().equals(Set.of("filtro"))),
+                argThat(Collection::isEmpty));
+        verifyNoMoreInteractions(dao);
+    }
+
+    @Test
+    void sesionNuevaSeInsertaUnaSolaVez() throws Exception {
+        atender(new MockHttpServletRequest("GET", "/login"), (req, res) ->
+                ((HttpServletRequest) req).getSession().setAttribute("destino", "/ventas"));
+
+        verify(dao, times(1)).insertar(anyString(), anyString(), anyLong(), anyLong(), eq(1800), isNull());
+        verify(dao, times(1)).insertarAtributos(anyString(), argThat(m -> m.size() == 1));
+        verifyNoMoreInteractions(dao);
+    }
+}
@@ -0,0 +1,91 @@
+package com.ferreteria.sistema.dao;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Escrituras de SesionHttpDao sobre H2 en modo Oracle
+ */
+class SesionHttpDaoTest {
+
+    private JdbcTemplate jdbc;
+    private SesionHttpDao dao;
+
+    @BeforeEach
+    void preparar() {
+        DriverManagerDataSource ds = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=Oracle;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbc = new JdbcTemplate(ds);
+        jdbc.execute("""
+                CREATE TABLE SesionesHttp (
+                    id_interno VARCHAR2(36) PRIMARY KEY,
+                    id_sesion VARCHAR2(36) NOT NULL UNIQUE,
+                    creacion NUMBER(19) NOT NULL,
+                    ultimo_acceso NUMBER(19) NOT NULL,
+                    max_inactivo NUMBER(10) NOT NULL,
+                    expira NUMBER(19) NOT NULL,
+                    usuario VARCHAR2(100))
+                """);
+        jdbc.execute("""
+                CREATE TABLE SesionesHttpAtributos (
+                    id_interno VARCHAR2(36) NOT NULL REFERENCES SesionesHttp(id_interno) ON DELETE CASCADE,
+                    nombre VARCHAR2(200) NOT NULL,
+                    valor BLOB,
+                    PRIMARY KEY (id_interno, nombre))
+                """);
+        dao = new SesionHttpDao(ds);
+    }
+
+    private long expira(String idInterno) {
+        return jdbc.queryForObject("SELECT expira FROM SesionesHttp WHERE id_interno = ?", Long.class, idInterno);
+    }
+
+    @Test
+    void reducirElMaximoDeInactividadAcortaElVencimiento() {
+        dao.insertar("i1", "s1", 0, 1000, 1800, null);
+        assertThat(expira("i1")).isEqualTo(1000 + 1800 * 1000L);
+
+        dao.actualizar("i1", "s1", 2000, 60, "ana", Map.of(), List.of());
+
+        assertThat(expira("i1")).isEqualTo(2000 + 60 * 1000L);
+    }
+
+    @Test
+    void unAccesoAnteriorNoRetrocedeElUltimoAcceso() {
+        dao.insertar("i1", "s1", 0, 5000, 1800, null);
+
+        dao.actualizar("i1", "s1", 3000, 1800, null, Map.of(), List.of());
+
+        assertThat(expira("i1")).isEqualTo(5000 + 1800 * 1000L);
+    }
+
+    @Test
+    void sinMaximoDeInactividadNoVence() {
+        dao.insertar("i1", "s1", 0, 1000, 1800, null);
+
+        dao.actualizar("i1", "s1", 2000, 0, null, Map.of(), List.of());
+
+        assertThat(expira("i1")).isEqualTo(Long.MAX_VALUE);
+    }
+
+    @Test
+    void sesionesDeUsuarioSoloDevuelveLasVigentesDeEseUsuario() {
+        dao.insertar("i1", "s1", 0, 1000, 1800, "ana");
+        dao.insertar("i2", "s2", 0, 2000, 1, "ana");
+        dao.insertar("i3", "s3", 0, 3000, 1800, "luis");
+
+        List<Object[]> sesiones = dao.sesionesDeUsuario("ana", 10000);
+
+        assertThat(sesiones).extracting(s -> s[0]).containsExactly("s1");
+        dao.eliminarPorIdSesion("s1");
+        assertThat(dao.sesionesDeUsuario("ana", 10000)).isEmpty();
+    }
+}
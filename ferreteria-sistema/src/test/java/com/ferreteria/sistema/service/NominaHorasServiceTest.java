@@ -0,0 +1,106 @@
+package com.ferreteria.sistema.service;
+
+import com.ferreteria.sistema.service.NominaHorasService.Acumulador;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Reparto de minutos del Acumulador: jornada, extras y franja nocturna
+ */
+class NominaHorasServiceTest {
+
+    private static int h(int horas, int minutos) {
+        return horas * 60 + minutos;
+    }
+
+    // Jornada de 8 h y noche de 19:00 a 05:00, los valores por defecto
+    private static Acumulador porDefecto() {
+        return new Acumulador(8 * 60, 19 * 60, 5 * 60);
+    }
+
+    @Test
+    void turnoDiurnoNoSumaMinutosNocturnos() {
+        Acumulador a = porDefecto();
+        a.turno(1, h(8, 0), h(16, 0));
+
+        assertThat(a.ordinarios[0]).isEqualTo(480);
+        assertThat(a.extras[0]).isZero();
+        assertThat(a.nocturnos[0]).isZero();
+    }
+
+    @Test
+    void turnoQueEntraEnLaNocheSoloCuentaLaParteNocturna() {
+        Acumulador a = porDefecto();
+        a.turno(1, h(14, 0), h(22, 30));
+
+        assertThat(a.ordinarios[0]).isEqualTo(480);
+        assertThat(a.extras[0]).isEqualTo(30);
+        assertThat(a.nocturnos[0]).isEqualTo(h(3, 30));
+    }
+
+    @Test
+    void turnoDeMadrugadaCuentaLaFranjaDelMismoDia() {
+        Acumulador a = porDefecto();
+        a.turno(1, h(3, 0), h(11, 0));
+
+        assertThat(a.nocturnos[0]).isEqualTo(120);
+    }
+
+    @Test
+    void turnoQueCruzaLaMedianocheSeCuentaEnteroYConLasDosFranjas() {
+        Acumulador a = porDefecto();
+        // 22:00 a 07:00 del día siguiente: 9 h, de ellas 22-24 y 0-5 nocturnas
+        a.turno(1, h(22, 0), h(7, 0));
+
+        assertThat(a.ordinarios[0]).isEqualTo(480);
+        assertThat(a.extras[0]).isEqualTo(60);
+        assertThat(a.nocturnos[0]).isEqualTo(h(7, 0));
+        assertThat(a.turnos[0]).isEqualTo(1);
+    }
+
+    @Test
+    void turnoQueTerminaExactamenteAMedianoche() {
+        Acumulador a = porDefecto();
+        a.turno(1, h(16, 0), 0);
+
+        assertThat(a.ordinarios[0]).isEqualTo(480);
+        assertThat(a.nocturnos[0]).isEqualTo(h(5, 0));
+    }
+
+    @Test
+    void nocheQueNoCruzaLaMedianoche() {
+        // Franja de 00:00 a 06:00
+        Acumulador a = new Acumulador(8 * 60, 0, 6 * 60);
+        a.turno(1, h(22, 0), h(6, 0));
+
+        assertThat(a.nocturnos[0]).isEqualTo(h(6, 0));
+    }
+
+    @Test
+    void sinFranjaNocturnaNoHayMinutosNocturnos() {
+        Acumulador a = new Acumulador(8 * 60, 0, 0);
+        a.turno(1, h(20, 0), h(4, 0));
+
+        assertThat(a.ordinarios[0]).isEqualTo(480);
+        assertThat(a.nocturnos[0]).isZero();
+    }
+
+    @Test
+    void acumulaPorEmpleadoAunqueLaTablaCrezca() {
+        Acumulador a = porDefecto();
+        for (long id = 1; id <= 1000; id++) {
+            a.turno(id, h(8, 0), h(18, 0));
+            a.turno(id, h(22, 0), h(2, 0));
+        }
+
+        assertThat(a.empleados()).isEqualTo(1000);
+        for (int i = 0; i < a.empleados(); i++) {
+            assertThat(a.turnos[i]).isEqualTo(2);
+            assertThat(a.ordinarios[i]).isEqualTo(480 + 240);
+            assertThat(a.extras[i]).isEqualTo(120);
+            assertThat(a.nocturnos[i]).isEqualTo(240);
+        }
+        assertThat(a.idEmpleado(999)).isEqualTo(1000);
+    }
+}